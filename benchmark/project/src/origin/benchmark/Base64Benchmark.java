@@ -0,0 +1,50 @@
+package origin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import origin.util.Base64;
+
+/**
+ * Base64ベンチマーク. バイナリのエンコードとデコードを計測します.
+ *
+ * length はバイナリのサイズを表します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Base64Benchmark {
+
+    @Param({ "32", "4096" })
+    public int length;
+
+    private byte[] binary;
+    private String base64;
+
+    @Setup
+    public void setup() {
+        binary = new byte[length];
+        for (int i = 0; i < length; i++) {
+            binary[i] = (byte) (i * 31);
+        }
+        base64 = Base64.encode(binary);
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base64.encode(binary);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base64.decode(base64);
+    }
+}
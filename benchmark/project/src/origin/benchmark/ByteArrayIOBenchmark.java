@@ -0,0 +1,68 @@
+package origin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import origin.util.ByteArrayIO;
+
+/**
+ * ByteArrayIOベンチマーク. 受信データの書き込みと読み込み、
+ * Httpヘッダ終端の検索を計測します.
+ *
+ * length は1回の書き込みサイズを表します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ByteArrayIOBenchmark {
+
+    /** ヘッダ終端. **/
+    private static final byte[] END_LINE = "\r\n\r\n".getBytes();
+
+    @Param({ "512", "8192" })
+    public int length;
+
+    private byte[] data;
+    private byte[] read;
+    private ByteArrayIO buffer;
+    private ByteArrayIO header;
+
+    @Setup
+    public void setup() throws Exception {
+        data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + (i % 26));
+        }
+        read = new byte[length];
+        buffer = new ByteArrayIO();
+
+        // 終端がデータの最後にあるヘッダ.
+        header = new ByteArrayIO();
+        for (int i = 0; i < 4; i++) {
+            header.write(data);
+        }
+        header.write(END_LINE);
+    }
+
+    @Benchmark
+    public int writeRead() throws Exception {
+        ByteArrayIO b = buffer;
+        b.write(data);
+        b.write(data);
+        b.read(read);
+        return b.read(read);
+    }
+
+    @Benchmark
+    public int indexOf() {
+        return header.indexOf(END_LINE);
+    }
+}
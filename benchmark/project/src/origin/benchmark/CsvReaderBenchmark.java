@@ -0,0 +1,57 @@
+package origin.benchmark;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import origin.util.csv.CsvReader;
+
+/**
+ * CsvReaderベンチマーク. ヘッダ付きの100行のCSVの読み込みを計測します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CsvReaderBenchmark {
+
+    /** 行数. **/
+    private static final int ROWS = 100;
+
+    private String csv;
+
+    @Setup
+    public void setup() {
+        StringBuilder buf = new StringBuilder(
+                "id,name,mail,comment,createDate\n");
+        for (int i = 0; i < ROWS; i++) {
+            buf.append(i).append(",origin-").append(i).append(",user")
+                    .append(i).append("@example.com,\"hello, \"\"origin\"\"\",")
+                    .append("2017/12/19 10:00:00\n");
+        }
+        csv = buf.toString();
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) throws Exception {
+        CsvReader r = new CsvReader(new StringReader(csv));
+        try {
+            Map<String,Object> row;
+            while (r.hasNext()) {
+                row = r.next();
+                bh.consume(row.get("name"));
+                bh.consume(row.get("comment"));
+            }
+        } finally {
+            r.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package origin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import origin.db.core.DbUtils;
+
+/**
+ * DbUtilsベンチマーク. Java用の名前からDB用の名前への変換を計測します.
+ * 検索結果の行毎、カラム毎に呼び出されるので、一般的なカラム名で計測します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DbUtilsBenchmark {
+
+    /** カラム名. **/
+    private static final String[] NAMES = new String[] { "id", "userName",
+            "mailAddress", "createDate", "updateDate", "lastLoginTimeStamp" };
+
+    @Benchmark
+    public void convertJavaNameByDBName(Blackhole bh) {
+        String[] n = NAMES;
+        for (int i = 0; i < n.length; i++) {
+            bh.consume(DbUtils.convertJavaNameByDBName(n[i]));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package origin.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import origin.net.http.HttpAnalysis;
+import origin.net.http.HttpHeader;
+import origin.util.ByteArrayIO;
+
+/**
+ * HttpAnalysisベンチマーク. HttpHeaderの生成と、GET/POSTパラメータの解析を計測します.
+ * paramsAnalysisManyは、String.hashCode()が全て同じ値となる1000個のキーを解析します.
+ * パラメータはアクセス時にURLデコードするので、paramsAnalysisUrl、paramsAnalysisForm
+ * は1つの要素を取得し、paramsAnalysisFormAllは全ての要素を取得します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpAnalysisBenchmark {
+
+    /** 一般的なAPIリクエスト. **/
+    private static final String REQUEST = "GET /api/user/list?id=100&name=origin HTTP/1.1\r\n"
+            + "Host: localhost:3333\r\n"
+            + "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:109.0) Gecko/20100101 Firefox/115.0\r\n"
+            + "Accept: application/json\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Cookie: session=0123456789abcdef0123456789abcdef; theme=dark\r\n"
+            + "Connection: keep-alive\r\n" + "\r\n";
+
+    /** URLのパラメータ. **/
+    private static final String URL_PARAMS = "/api/user/list?id=100&name=origin&sort=name&order=asc&offset=0&limit=50";
+
+    /** URLエンコードされたフォームのパラメータ. **/
+    private static final String FORM_PARAMS = "name=%E3%82%AA%E3%83%AA%E3%82%B8%E3%83%B3&mail=origin%40example.com"
+            + "&comment=Hello+World%21+%E3%81%93%E3%82%93%E3%81%AB%E3%81%A1%E3%81%AF&age=20&agree=true";
+
+    /** 最大パラメータ数. **/
+    private static final int MAX_PARAMS = 1000;
+
+    private byte[] request;
+    private ByteArrayIO buffer;
+    private byte[] urlParams;
+    private int urlOffset;
+    private byte[] formParams;
+    private byte[] manyParams;
+
+    @Setup
+    public void setup() throws Exception {
+        request = REQUEST.getBytes("UTF8");
+        buffer = new ByteArrayIO();
+        urlParams = URL_PARAMS.getBytes("UTF8");
+        urlOffset = URL_PARAMS.indexOf("?") + 1;
+        formParams = FORM_PARAMS.getBytes("UTF8");
+
+        // [Aa]と[BB]はhashCodeが同じなので、組み合わせたキーも全て同じ値になる.
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < MAX_PARAMS; i++) {
+            if (i != 0) {
+                buf.append("&");
+            }
+            for (int j = 0; j < 10; j++) {
+                buf.append((i & (1 << j)) == 0 ? "Aa" : "BB");
+            }
+            buf.append("=").append(i);
+        }
+        manyParams = buf.toString().getBytes("UTF8");
+    }
+
+    @Benchmark
+    public void httpHeader(Blackhole bh) throws Exception {
+        ByteArrayIO buf = buffer;
+        buf.clear();
+        buf.write(request);
+        HttpHeader h = HttpAnalysis.getHeader(buf);
+        bh.consume(h.getMethod());
+        bh.consume(h.getUrl());
+        bh.consume(h.getHeader("Connection"));
+        bh.consume(h.getHeader("Accept-Encoding"));
+    }
+
+    @Benchmark
+    public Object paramsAnalysisUrl() throws Exception {
+        return HttpAnalysis.paramsAnalysis(urlParams, urlOffset,
+                urlParams.length - urlOffset, MAX_PARAMS).get("name");
+    }
+
+    @Benchmark
+    public Object paramsAnalysisForm() throws Exception {
+        return HttpAnalysis.paramsAnalysis(formParams, 0, formParams.length,
+                MAX_PARAMS).get("name");
+    }
+
+    @Benchmark
+    public void paramsAnalysisFormAll(Blackhole bh) throws Exception {
+        Map<String, String> m = HttpAnalysis.paramsAnalysis(formParams, 0,
+                formParams.length, MAX_PARAMS);
+        for (Map.Entry<String, String> e : m.entrySet()) {
+            bh.consume(e.getValue());
+        }
+    }
+
+    @Benchmark
+    public Object paramsAnalysisMany() throws Exception {
+        return HttpAnalysis.paramsAnalysis(manyParams, 0, manyParams.length,
+                MAX_PARAMS).get("AaAaAaAaAaAaAaAaAaAa");
+    }
+}
@@ -0,0 +1,104 @@
+package origin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import origin.net.http.HttpAnalysis;
+import origin.net.http.HttpParser;
+import origin.net.http.HttpRequest;
+import origin.util.ByteArrayIO;
+
+/**
+ * Httpヘッダ解析ベンチマーク. 従来のHttpHeader(LegacyHttpHeader)と、
+ * HttpParserによる解析を比較します.
+ *
+ * fragments は、1リクエストを何回の受信に分割して処理するかを表します.
+ * 従来方式は受信毎に先頭から終端を検索し、HttpParserは前回の続きから解析します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpHeaderBenchmark {
+
+    /** ブラウザからの一般的なリクエスト. **/
+    private static final String REQUEST = "GET /api/user/list?id=100&name=origin HTTP/1.1\r\n"
+            + "Host: localhost:3333\r\n"
+            + "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:109.0) Gecko/20100101 Firefox/115.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8\r\n"
+            + "Accept-Language: ja,en-US;q=0.7,en;q=0.3\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Referer: http://localhost:3333/index.html\r\n"
+            + "Cookie: session=0123456789abcdef0123456789abcdef; theme=dark\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "Sec-Fetch-Dest: document\r\n"
+            + "Sec-Fetch-Mode: navigate\r\n"
+            + "Sec-Fetch-Site: same-origin\r\n"
+            + "Connection: keep-alive\r\n" + "\r\n";
+
+    @Param({ "1", "8" })
+    public int fragments;
+
+    private byte[][] chunks;
+    private ByteArrayIO buffer;
+    private HttpParser parser;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] b = REQUEST.getBytes("UTF8");
+        int len = b.length;
+        int one = (len + fragments - 1) / fragments;
+        chunks = new byte[fragments][];
+        for (int i = 0, p = 0; i < fragments; i++, p += one) {
+            int n = Math.min(one, len - p);
+            chunks[i] = new byte[n];
+            System.arraycopy(b, p, chunks[i], 0, n);
+        }
+        buffer = new ByteArrayIO();
+        parser = new HttpParser();
+    }
+
+    @Benchmark
+    public void legacyHttpHeader(Blackhole bh) throws Exception {
+        ByteArrayIO buf = buffer;
+        buf.clear();
+        int endPoint = -1;
+        int len = chunks.length;
+        for (int i = 0; i < len; i++) {
+            buf.write(chunks[i]);
+            endPoint = HttpAnalysis.endPoint(buf);
+        }
+        LegacyHttpHeader h = new LegacyHttpHeader(buf, endPoint);
+        bh.consume(h.getMethod());
+        bh.consume(h.getUrl());
+        bh.consume(h.getHeader("Connection"));
+        bh.consume(h.getHeader("Accept-Encoding"));
+        bh.consume(h.getHeader("Content-Length"));
+    }
+
+    @Benchmark
+    public void httpParser(Blackhole bh) throws Exception {
+        ByteArrayIO buf = buffer;
+        HttpParser p = parser;
+        buf.clear();
+        int len = chunks.length;
+        for (int i = 0; i < len; i++) {
+            buf.write(chunks[i]);
+            p.parse(buf);
+        }
+        HttpRequest h = p.getRequest();
+        bh.consume(h.getMethod());
+        bh.consume(h.getUrl());
+        bh.consume(h.getHeader("Connection"));
+        bh.consume(h.getHeader("Accept-Encoding"));
+        bh.consume(h.getHeader("Content-Length"));
+    }
+}
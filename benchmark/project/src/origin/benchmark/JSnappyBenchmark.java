@@ -0,0 +1,56 @@
+package origin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import origin.util.jsnappy.JSnappy;
+import origin.util.jsnappy.JSnappyBuffer;
+
+/**
+ * JSnappyベンチマーク. JSON形式のテキストの圧縮と解凍を計測します.
+ *
+ * length は圧縮前のサイズを表します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JSnappyBenchmark {
+
+    @Param({ "1024", "65536" })
+    public int length;
+
+    private byte[] data;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder buf = new StringBuilder("[");
+        for (int i = 0; buf.length() < length; i++) {
+            buf.append("{\"id\":").append(i).append(",\"name\":\"origin-")
+                    .append(i * 7919 % 1000).append("\",\"active\":")
+                    .append((i & 1) == 0).append("},");
+        }
+        byte[] b = buf.toString().getBytes("UTF8");
+        data = new byte[length];
+        System.arraycopy(b, 0, data, 0, length);
+        compressed = JSnappy.compress(data).toByteArray();
+    }
+
+    @Benchmark
+    public JSnappyBuffer compress() throws Exception {
+        return JSnappy.compress(data);
+    }
+
+    @Benchmark
+    public JSnappyBuffer decompress() throws Exception {
+        return JSnappy.decompress(compressed);
+    }
+}
@@ -0,0 +1,104 @@
+package origin.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import origin.script.Json;
+import origin.script.JsonReader;
+import origin.script.JsonWriter;
+
+/**
+ * Jsonベンチマーク. スクリプトの戻り値に相当する、一覧形式のデータの
+ * 変換と解析を計測します.
+ * encodeBytesは従来のレスポンス送信と同じくJson.encodeの結果をUTF8に変換し、
+ * writerはJsonWriterでUTF8のバイナリに直接変換します.
+ * readerはPOSTのBodyと同じくUTF8のバイナリから、lazyは2階層目以降を
+ * 遅延解析で解析します.
+ *
+ * rows は一覧の件数を表します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+
+    @Param({ "1", "100" })
+    public int rows;
+
+    private Map<String,Object> value;
+    private String json;
+    private byte[] bytes;
+    private JsonWriter writer;
+    private JsonReader reader;
+    private JsonReader lazy;
+
+    @Setup
+    public void setup() throws Exception {
+        List<Object> list = new ArrayList<Object>();
+        for (int i = 0; i < rows; i++) {
+            Map<String,Object> row = new LinkedHashMap<String,Object>();
+            row.put("id", i);
+            row.put("name", "origin-" + i);
+            row.put("mail", "user" + i + "@example.com");
+            row.put("comment", "こんにちは \"origin\"\n");
+            row.put("score", i * 1.5d);
+            row.put("active", (i & 1) == 0);
+            row.put("group", null);
+            list.add(row);
+        }
+        value = new LinkedHashMap<String,Object>();
+        value.put("result", true);
+        value.put("status", 200);
+        value.put("list", list);
+        json = Json.encode(value);
+        bytes = json.getBytes("UTF8");
+        writer = new JsonWriter(8192);
+        reader = new JsonReader();
+        lazy = new JsonReader(true);
+    }
+
+    @Benchmark
+    public String encode() throws Exception {
+        return Json.encode(value);
+    }
+
+    @Benchmark
+    public byte[] encodeBytes() throws Exception {
+        return Json.encode(value).getBytes("UTF8");
+    }
+
+    @Benchmark
+    public long writer() throws Exception {
+        writer.encode(value);
+        long ret = writer.getLength();
+        writer.release();
+        return ret;
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return Json.decode(json);
+    }
+
+    @Benchmark
+    public Object reader() throws Exception {
+        return reader.read(bytes, 0, bytes.length);
+    }
+
+    @Benchmark
+    public Object lazy() throws Exception {
+        return lazy.read(bytes, 0, bytes.length);
+    }
+}
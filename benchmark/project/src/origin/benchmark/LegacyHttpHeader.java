@@ -0,0 +1,152 @@
+package origin.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import origin.net.http.HttpAnalysis;
+import origin.util.ByteArrayIO;
+import origin.util.ConvertMap;
+import origin.util.Utils;
+
+/**
+ * 比較用の従来のHttpヘッダ情報. ヘッダ全体を文字列に変換して、
+ * [key + ": "]のindexOfでヘッダ要素を検索します.
+ */
+public class LegacyHttpHeader implements ConvertMap {
+    protected static final String HTTP_11 = "HTTP/1.1";
+
+    protected String method;
+    protected String url;
+    protected String version;
+
+    protected byte[] headers;
+    protected String headersString;
+
+    protected LegacyHttpHeader() {
+    }
+
+    public LegacyHttpHeader(ByteArrayIO buffer, int endPoint) throws IOException {
+        int firstPoint = buffer.indexOf(HttpAnalysis.ONE_LINE);
+        byte[] b = new byte[firstPoint];
+        buffer.read(b);
+        buffer.skip(HttpAnalysis.ONE_LINE.length);
+
+        String v = new String(b, "UTF8");
+        b = null;
+        analysisFirst(v);
+        v = null;
+
+        int len = endPoint + HttpAnalysis.END_LINE.length
+                - (firstPoint + HttpAnalysis.ONE_LINE.length);
+        b = new byte[len];
+        buffer.read(b);
+
+        this.headers = b;
+        this.headersString = null;
+    }
+
+    protected final void analysisFirst(String v) throws IOException {
+        String[] list = v.split(" ");
+        if (list.length != 3) {
+            throw new IOException("受信データはHTTPリクエストではありません:" + v);
+        }
+        this.method = list[0];
+        this.url = list[1];
+        this.version = list[2];
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * KeepAliveの要求かチェック.
+     * HTTP/1.1の場合は[Connection: close]以外、HTTP/1.0の場合は
+     * [Connection: keep-alive]の場合にKeepAliveとなります.
+     *
+     * @return boolean [true]の場合、KeepAliveが要求されています.
+     * @exception IOException
+     *                IO例外.
+     */
+    public boolean isKeepAlive() throws IOException {
+        String conn = getHeader("Connection");
+        if (HTTP_11.equals(version)) {
+            return conn == null || Utils.indexOfEng(conn, "close") == -1;
+        }
+        return conn != null && Utils.indexOfEng(conn, "keep-alive") != -1;
+    }
+
+    protected final void convertString() throws IOException {
+        if (headers != null) {
+            headersString = new String(headers, "UTF8");
+            headers = null;
+        }
+    }
+
+    public String getHeader(String key) throws IOException {
+        convertString();
+
+        int p = headersString.indexOf(key + ": ");
+        if (p == -1) {
+            return null;
+        }
+        int end = headersString.indexOf("\r\n", p);
+        if (end == -1) {
+            return null;
+        }
+        return headersString.substring(p + key.length() + 2, end);
+    }
+
+    public List<String> getHeaders() throws IOException {
+        convertString();
+
+        int p;
+        int b = 0;
+        List<String> ret = new ArrayList<String>();
+        while ((p = headersString.indexOf(": ", b)) != -1) {
+            ret.add(headersString.substring(b, p));
+            b = p + 2;
+            p = headersString.indexOf("\r\n", b);
+            if (p == -1) {
+                break;
+            }
+            b = p + 2;
+        }
+        return ret;
+    }
+
+    /**
+     * 取得.
+     * 
+     * @param key
+     *            対象のキーを設定します.
+     * @return Object キーに対する要素情報が返却されます.
+     */
+    @Override
+    public Object get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        if ("url".equals(key)) {
+            return getUrl();
+        } else if ("method".equals(key)) {
+            return getMethod();
+        } else if ("version".equals(key)) {
+            return getVersion();
+        }
+        try {
+            return getHeader(key.toString());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
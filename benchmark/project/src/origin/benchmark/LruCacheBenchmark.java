@@ -0,0 +1,67 @@
+package origin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import origin.util.LruCache;
+
+/**
+ * LruCacheベンチマーク. キャッシュに存在するキーの取得(ヒット)と、
+ * 存在しないキーの追加(追い出しを伴う)を計測します.
+ *
+ * size はキャッシュの最大数を表します.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LruCacheBenchmark {
+
+    @Param({ "64", "4096" })
+    public int size;
+
+    private LruCache<String,Object> cache;
+    private String[] hits;
+    private String[] misses;
+    private int hit = 0;
+    private int miss = 0;
+
+    @Setup
+    public void setup() {
+        cache = new LruCache<String,Object>(size);
+        hits = new String[size];
+        misses = new String[size * 4];
+        for (int i = 0; i < size; i++) {
+            hits[i] = "./application/path/script" + i + ".js";
+            cache.put(hits[i], hits[i]);
+        }
+        for (int i = 0; i < misses.length; i++) {
+            misses[i] = "./application/path/other" + i + ".js";
+        }
+    }
+
+    @Benchmark
+    public Object getHit() {
+        String k = hits[hit];
+        if (++hit == hits.length) {
+            hit = 0;
+        }
+        return cache.get(k);
+    }
+
+    @Benchmark
+    public Object putMiss() {
+        String k = misses[miss];
+        if (++miss == misses.length) {
+            miss = 0;
+        }
+        return cache.put(k, k);
+    }
+}
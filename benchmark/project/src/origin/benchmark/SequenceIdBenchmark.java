@@ -0,0 +1,36 @@
+package origin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import origin.util.sequence.Time16SequenceId;
+
+/**
+ * Time16SequenceIdベンチマーク. UUID文字列の発行を計測します.
+ * 複数スレッドで同じオブジェクトから発行するので、-t オプションで
+ * スレッド数を指定すると、競合時の性能も計測できます.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SequenceIdBenchmark {
+
+    private Time16SequenceId sequence;
+
+    @Setup
+    public void setup() {
+        sequence = new Time16SequenceId(1);
+    }
+
+    @Benchmark
+    public String getUUID() {
+        return sequence.getUUID();
+    }
+}
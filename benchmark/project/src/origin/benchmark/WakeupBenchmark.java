@@ -0,0 +1,138 @@
+package origin.benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import origin.net.BaseNio;
+import origin.net.NioCall;
+import origin.net.NioElement;
+import origin.net.NioMetrics;
+import origin.net.NioUtil;
+
+/**
+ * レスポンス送信時のwakeupベンチマーク. ワーカースレッドからレスポンスを送信する
+ * 1往復を、直接送信(directWrite=true)と、従来のリアクター経由の送信で比較します.
+ *
+ * requests は計測中のリクエスト数、wakeups はセレクタのwakeup回数、interestOps は
+ * SelectionKeyの監視対象の変更回数(epoll_ctl等のシステムコール)の合計を表します.
+ * リクエスト毎の回数は、それぞれを requests で割った値になります.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WakeupBenchmark {
+
+    /** レスポンス. **/
+    private static final byte[] RESPONSE = new byte[256];
+
+    @Param({ "true", "false" })
+    public boolean directWrite;
+
+    private BaseNio nio;
+    private ExecutorService worker;
+    private SocketChannel client;
+    private ByteBuffer request;
+    private ByteBuffer response;
+
+    /** 計測中の合計回数. **/
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long requests;
+        public long wakeups;
+        public long interestOps;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        worker = Executors.newSingleThreadExecutor();
+        ServerSocketChannel server = NioUtil.createServerSocketChannel(65536,
+                "127.0.0.1", 0, 50);
+        int port = server.socket().getLocalPort();
+        nio = new BaseNio(8192, 65536, 65536, false, true, 1, 30000, 0,
+                directWrite, server, new Call(worker));
+        nio.startThread();
+        client = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+        client.socket().setTcpNoDelay(true);
+        request = ByteBuffer.wrap(new byte[] { 1 });
+        response = ByteBuffer.allocate(RESPONSE.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        nio.stopThread();
+        worker.shutdown();
+    }
+
+    @Benchmark
+    public void roundTrip(Counters c) throws Exception {
+        NioMetrics m = nio.getMetrics();
+        long w = m.getWakeups();
+        long o = m.getInterestOps();
+
+        request.clear();
+        client.write(request);
+        response.clear();
+        while (response.hasRemaining()) {
+            if (client.read(response) < 0) {
+                throw new IOException("closed");
+            }
+        }
+        c.requests++;
+        c.wakeups += m.getWakeups() - w;
+        c.interestOps += m.getInterestOps() - o;
+    }
+
+    /** 受信データ毎に、ワーカースレッドからレスポンスを送信する. **/
+    private static final class Call extends NioCall {
+        private final ExecutorService worker;
+
+        Call(ExecutorService worker) {
+            this.worker = worker;
+        }
+
+        public NioElement createElement() {
+            return new NioElement() {
+            };
+        }
+
+        public boolean send(NioElement em) throws IOException {
+            em.interestOps(SelectionKey.OP_READ);
+            return true;
+        }
+
+        public boolean receive(final NioElement em, ByteBuffer buf)
+                throws IOException {
+            worker.execute(new Runnable() {
+                public void run() {
+                    try {
+                        em.getSendData().set(RESPONSE);
+                    } catch (IOException e) {
+                        em.clear();
+                    }
+                }
+            });
+            return true;
+        }
+    }
+}
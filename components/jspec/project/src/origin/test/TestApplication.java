@@ -228,7 +228,9 @@ public class TestApplication implements OriginComponent {
             b.put(Def.SCRIPT_REQUEST, req);
             b.put(Def.SCRIPT_RESPONSE, res);
             try {
-                ret = (String) ExecuteScript.execute(path, b);
+                // 文字列以外の戻り値はJSON変換する.
+                Object o = ExecuteScript.execute(path, b);
+                ret = o instanceof String ? (String) o : Json.encode(o);
             } catch (HttpRedirectException redirect) {
                 ret = redirectResponse(redirect);
             } catch (HttpException httpException) {
@@ -0,0 +1,231 @@
+package origin.load;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 負荷実行のコネクション. 送信中のリクエストと、レスポンスの解析状態を保持します.
+ *
+ * レスポンスは、ヘッダのContent-Length、chunked形式、切断までのBodyに対応し、
+ * Bodyの内容は読み飛ばします.
+ */
+final class LoadConnection {
+
+    /** コネクションの状態. **/
+    static final int IDLE = 0;
+    static final int CONNECTING = 1;
+    static final int WRITING = 2;
+    static final int READING = 3;
+
+    /** レスポンスの解析状態. **/
+    private static final int PARSE_HEAD = 0;
+    private static final int PARSE_LENGTH = 1;
+    private static final int PARSE_CHUNK_SIZE = 2;
+    private static final int PARSE_CHUNK_DATA = 3;
+    private static final int PARSE_CHUNK_END = 4;
+    private static final int PARSE_TRAILER = 5;
+    private static final int PARSE_EOF = 6;
+
+    SocketChannel channel = null;
+    SelectionKey key = null;
+    int state = IDLE;
+
+    /** 次の送信予定時間、今回の送信予定時間、実際の送信時間(ナノ秒). **/
+    long next = 0L;
+    long intended = 0L;
+    long sendTime = 0L;
+
+    /** 送信データ. **/
+    ByteBuffer out = null;
+
+    /** レスポンスのステータス、送信後に切断されるか. **/
+    int status = 0;
+    boolean close = false;
+
+    private int parse = PARSE_HEAD;
+    private byte[] line = new byte[512];
+    private int lineLength = 0;
+    private long remaining = 0L;
+
+    /**
+     * 送信を開始.
+     *
+     * @param request
+     *            送信するリクエストを設定します.
+     */
+    void begin(byte[] request) {
+        out = ByteBuffer.wrap(request);
+        status = 0;
+        close = false;
+        parse = PARSE_HEAD;
+        lineLength = 0;
+        remaining = 0L;
+    }
+
+    /**
+     * 受信データを解析.
+     *
+     * @param in
+     *            受信データを設定します.
+     * @return boolean [true]の場合、レスポンスの受信が完了しました.
+     * @exception IOException
+     *                レスポンスが不正な場合.
+     */
+    boolean parse(ByteBuffer in) throws IOException {
+        byte b;
+        int n;
+        while (in.hasRemaining()) {
+            switch (parse) {
+            case PARSE_HEAD:
+                append(b = in.get());
+                if (b == '\n' && lineLength >= 4
+                        && line[lineLength - 2] == '\r'
+                        && line[lineLength - 3] == '\n') {
+                    if (head()) {
+                        return true;
+                    }
+                }
+                break;
+            case PARSE_LENGTH:
+            case PARSE_CHUNK_DATA:
+                n = (int) Math.min(remaining, in.remaining());
+                in.position(in.position() + n);
+                if ((remaining -= n) == 0L) {
+                    if (parse == PARSE_LENGTH) {
+                        return true;
+                    }
+                    parse = PARSE_CHUNK_END;
+                }
+                break;
+            case PARSE_EOF:
+                in.position(in.limit());
+                break;
+            default:
+                if ((b = in.get()) != '\n') {
+                    append(b);
+                    break;
+                }
+                if (chunk()) {
+                    return true;
+                }
+                lineLength = 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 切断された場合の処理.
+     *
+     * @return boolean [true]の場合、切断までのBodyの受信が完了しました.
+     */
+    boolean eof() {
+        return parse == PARSE_EOF;
+    }
+
+    /** 解析中の行に追加. **/
+    private final void append(byte b) {
+        if (lineLength == line.length) {
+            byte[] n = new byte[lineLength << 1];
+            System.arraycopy(line, 0, n, 0, lineLength);
+            line = n;
+        }
+        line[lineLength++] = b;
+    }
+
+    /** ヘッダを解析. **/
+    private final boolean head() throws IOException {
+        String h = new String(line, 0, lineLength, "ISO-8859-1");
+        lineLength = 0;
+        if (!h.startsWith("HTTP/") || h.length() < 12) {
+            throw new IOException("不正なレスポンスです");
+        }
+        try {
+            status = Integer.parseInt(h.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new IOException("不正なステータスです");
+        }
+        long length = -1L;
+        boolean chunked = false;
+        int p = h.indexOf("\r\n") + 2;
+        int e;
+        String n;
+        while ((e = h.indexOf("\r\n", p)) > p) {
+            int c = h.indexOf(':', p);
+            if (c != -1 && c < e) {
+                n = h.substring(p, c).trim().toLowerCase();
+                String v = h.substring(c + 1, e).trim().toLowerCase();
+                if ("content-length".equals(n)) {
+                    length = Long.parseLong(v);
+                } else if ("transfer-encoding".equals(n)) {
+                    chunked = v.indexOf("chunked") != -1;
+                } else if ("connection".equals(n)) {
+                    close = v.indexOf("close") != -1;
+                }
+            }
+            p = e + 2;
+        }
+
+        // Bodyなし.
+        if (status / 100 == 1 || status == 204 || status == 304) {
+            return true;
+        } else if (chunked) {
+            parse = PARSE_CHUNK_SIZE;
+        } else if (length >= 0L) {
+            if (length == 0L) {
+                return true;
+            }
+            remaining = length;
+            parse = PARSE_LENGTH;
+        } else {
+            close = true;
+            parse = PARSE_EOF;
+        }
+        return false;
+    }
+
+    /** chunked形式の行を解析. **/
+    private final boolean chunk() throws IOException {
+        if (parse == PARSE_CHUNK_END) {
+            parse = PARSE_CHUNK_SIZE;
+            return false;
+        } else if (parse == PARSE_TRAILER) {
+            return lineLength == 0 || (lineLength == 1 && line[0] == '\r');
+        }
+        long size = 0L;
+        int v;
+        for (int i = 0; i < lineLength; i++) {
+            if ((v = Character.digit(line[i], 16)) == -1) {
+                break;
+            }
+            size = (size << 4) | v;
+        }
+        if (size == 0L) {
+            parse = PARSE_TRAILER;
+        } else {
+            remaining = size;
+            parse = PARSE_CHUNK_DATA;
+        }
+        return false;
+    }
+
+    /**
+     * コネクションをクローズ.
+     */
+    void close() {
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (Exception e) {
+            }
+            channel = null;
+        }
+        state = IDLE;
+    }
+}
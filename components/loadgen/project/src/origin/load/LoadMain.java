@@ -0,0 +1,100 @@
+package origin.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import origin.script.Json;
+
+/**
+ * 負荷実行メイン.
+ *
+ * NIOで複数のコネクションから、originサーバーにリクエストを送信して、
+ * スループットとレイテンシを計測します. ネットワークのない環境でも、
+ * ループバックのoriginサーバーに対して、ビルド毎の性能を比較できます.
+ */
+public class LoadMain {
+
+    public static final void main(String[] args) throws Exception {
+        LoadOption option;
+        try {
+            option = LoadOption.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOption.usage());
+            System.exit(1);
+            return;
+        }
+        int status = new LoadMain().execute(option);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * 負荷実行.
+     *
+     * @param option
+     *            負荷実行オプションを設定します.
+     * @return int 終了コードが返却されます.
+     * @exception Exception
+     *                例外.
+     */
+    int execute(LoadOption option) throws Exception {
+        String host = option.host + ":" + option.port;
+        LoadScenario scenario = option.file == null ? LoadScenario.create(
+                host, option.path, option.keepAlive) : LoadScenario.load(
+                option.file, host, option.keepAlive);
+        if (!option.json) {
+            System.out.println("origin load: " + option);
+        }
+
+        // コネクションをワーカー毎に分割.
+        int len = option.threads;
+        LoadWorker[] w = new LoadWorker[len];
+        long startTime = System.nanoTime();
+        int base = 0;
+        int n;
+        for (int i = 0; i < len; i++) {
+            n = option.connections / len + (i < option.connections % len ? 1 : 0);
+            w[i] = new LoadWorker(i, option, scenario, base, n, startTime);
+            base += n;
+        }
+        for (int i = 0; i < len; i++) {
+            w[i].start();
+        }
+
+        // 終了待ち.
+        LoadResult result = new LoadResult();
+        for (int i = 0; i < len; i++) {
+            w[i].join();
+            if (w[i].getError() != null) {
+                System.err.println("error: " + w[i].getError());
+                return 1;
+            }
+            result.add(w[i].getResult());
+        }
+
+        // 結果を出力.
+        long time = option.duration * 1000000000L;
+        if (option.json) {
+            Map<String,Object> out = new LinkedHashMap<String,Object>();
+            out.put("host", option.host);
+            out.put("port", option.port);
+            out.put("connections", option.connections);
+            out.put("threads", option.threads);
+            out.put("mode", option.rate > 0 ? "open" : "closed");
+            out.put("rate", option.rate);
+            out.put("keepAlive", option.keepAlive);
+            out.put("duration", option.duration);
+            out.put("scenario", scenario.size());
+            out.put("result", result.toMap(time));
+            System.out.println(Json.encode(out));
+        } else {
+            System.out.print(result.toText(time));
+            if (option.rate <= 0 && option.expectedInterval <= 0L) {
+                System.out.println("(クローズドループで -e の指定がないため、corrected は補正していません)");
+            }
+        }
+        return result.requests == 0L ? 2 : 0;
+    }
+}
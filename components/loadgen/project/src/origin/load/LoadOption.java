@@ -0,0 +1,149 @@
+package origin.load;
+
+/**
+ * 負荷実行オプション.
+ */
+final class LoadOption {
+
+    /** 接続先. **/
+    String host = "127.0.0.1";
+    int port = 3333;
+
+    /** 単一URLで実行する場合のパス. **/
+    String path = "/";
+
+    /** シナリオファイル. **/
+    String file = null;
+
+    /** コネクション数、ワーカースレッド数. **/
+    int connections = 10;
+    int threads = 1;
+
+    /** ウォームアップ時間、計測時間(秒). **/
+    int warmup = 0;
+    int duration = 10;
+
+    /** 送信レート(リクエスト/秒). 0の場合はクローズドループ. **/
+    int rate = 0;
+
+    /** KeepAlive. **/
+    boolean keepAlive = true;
+
+    /** クローズドループでの補正に利用する送信間隔(ミリ秒). 0の場合は補正なし. **/
+    long expectedInterval = 0L;
+
+    /** レスポンスのタイムアウト(秒). **/
+    int timeout = 30;
+
+    /** 結果をJSONで出力. **/
+    boolean json = false;
+
+    /**
+     * 起動引数を解析.
+     *
+     * @param args
+     *            起動引数を設定します.
+     * @return LoadOption 負荷実行オプションが返却されます.
+     * @exception IllegalArgumentException
+     *                起動引数が不正な場合.
+     */
+    static final LoadOption parse(String[] args) {
+        LoadOption ret = new LoadOption();
+        int len = args == null ? 0 : args.length;
+        String n;
+        for (int i = 0; i < len; i++) {
+            n = args[i];
+            if ("-j".equals(n)) {
+                ret.json = true;
+                continue;
+            }
+            if (i + 1 >= len) {
+                throw new IllegalArgumentException("値が指定されていません:" + n);
+            }
+            String v = args[++i];
+            if ("-h".equals(n)) {
+                ret.host = v;
+            } else if ("-p".equals(n)) {
+                ret.port = number(n, v, 1);
+            } else if ("-u".equals(n)) {
+                ret.path = v.startsWith("/") ? v : "/" + v;
+            } else if ("-f".equals(n)) {
+                ret.file = v;
+            } else if ("-c".equals(n)) {
+                ret.connections = number(n, v, 1);
+            } else if ("-t".equals(n)) {
+                ret.threads = number(n, v, 1);
+            } else if ("-w".equals(n)) {
+                ret.warmup = number(n, v, 0);
+            } else if ("-d".equals(n)) {
+                ret.duration = number(n, v, 1);
+            } else if ("-r".equals(n)) {
+                ret.rate = number(n, v, 0);
+            } else if ("-k".equals(n)) {
+                ret.keepAlive = !"false".equalsIgnoreCase(v);
+            } else if ("-e".equals(n)) {
+                ret.expectedInterval = number(n, v, 0);
+            } else if ("-T".equals(n)) {
+                ret.timeout = number(n, v, 1);
+            } else {
+                throw new IllegalArgumentException("不明なオプションです:" + n);
+            }
+        }
+        if (ret.threads > ret.connections) {
+            ret.threads = ret.connections;
+        }
+        if (ret.rate > 1000000) {
+            throw new IllegalArgumentException("-r は1000000以下で指定してください");
+        }
+        return ret;
+    }
+
+    /** 数値を取得. **/
+    private static final int number(String name, String value, int min) {
+        int ret;
+        try {
+            ret = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " の値が不正です:" + value);
+        }
+        if (ret < min) {
+            throw new IllegalArgumentException(name + " は" + min
+                    + "以上で指定してください");
+        }
+        return ret;
+    }
+
+    /**
+     * 利用方法を取得.
+     *
+     * @return String 利用方法が返却されます.
+     */
+    static final String usage() {
+        return "usage: oload [options]\n"
+                + "  -h host      接続先ホスト(127.0.0.1)\n"
+                + "  -p port      接続先ポート(3333)\n"
+                + "  -u path      リクエストするパス(/)\n"
+                + "  -f file      シナリオファイル(比率 メソッド パス [Body])\n"
+                + "  -c num       コネクション数(10)\n"
+                + "  -t num       ワーカースレッド数(1)\n"
+                + "  -w sec       ウォームアップ時間(0)\n"
+                + "  -d sec       計測時間(10)\n"
+                + "  -r num       送信レート(リクエスト/秒). 0の場合はクローズドループ(0)\n"
+                + "  -k bool      KeepAlive(true)\n"
+                + "  -e ms        クローズドループで補正に利用する送信間隔(0:補正なし)\n"
+                + "  -T sec       レスポンスのタイムアウト(30)\n"
+                + "  -j           結果をJSONで出力\n";
+    }
+
+    /**
+     * 実行条件を文字列で取得.
+     */
+    public String toString() {
+        return "http://" + host + ":" + port
+                + (file == null ? path : " file:" + file) + " connections:"
+                + connections + " threads:" + threads + " mode:"
+                + (rate > 0 ? "open(" + rate + "/s)" : "closed")
+                + " keepAlive:" + keepAlive + " warmup:" + warmup + "s"
+                + " duration:" + duration + "s";
+    }
+}
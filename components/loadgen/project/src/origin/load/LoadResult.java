@@ -0,0 +1,176 @@
+package origin.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import origin.util.LatencyHistogram;
+
+/**
+ * 負荷実行結果. ワーカー毎に記録して、終了後にマージします.
+ *
+ * latencyは予定した送信時間からのレイテンシで、Coordinated Omission
+ * (サーバーの停止中に送信が遅れて、遅いリクエストが記録されない問題)を
+ * 補正した値です. serviceは実際の送信時間からのレイテンシ(補正なし)です.
+ * 値はマイクロ秒単位です.
+ */
+final class LoadResult {
+    final LatencyHistogram latency = new LatencyHistogram();
+    final LatencyHistogram service = new LatencyHistogram();
+
+    /** ステータス別(1xx - 5xx)のレスポンス数. **/
+    final long[] status = new long[6];
+
+    long requests = 0L;
+    long errors = 0L;
+    long timeouts = 0L;
+    long connects = 0L;
+    long bytes = 0L;
+
+    /**
+     * レスポンスを記録.
+     *
+     * @param code
+     *            ステータスコードを設定します.
+     * @param latency
+     *            予定した送信時間からのレイテンシ(ナノ秒)を設定します.
+     * @param service
+     *            実際の送信時間からのレイテンシ(ナノ秒)を設定します.
+     * @param interval
+     *            クローズドループで補正する場合の送信間隔(ナノ秒)を設定します.
+     *            0の場合は補正しません.
+     */
+    void record(int code, long latency, long service, long interval) {
+        requests++;
+        int n = code / 100;
+        if (n > 0 && n < status.length) {
+            status[n]++;
+        }
+        this.service.record(service / 1000L);
+        this.latency.record(latency / 1000L);
+
+        // クローズドループの場合は、間隔を超えたレイテンシの間に
+        // 送信されるはずだったリクエストを補完する.
+        if (interval > 0L) {
+            for (long v = latency - interval; v >= interval; v -= interval) {
+                this.latency.record(v / 1000L);
+            }
+        }
+    }
+
+    /**
+     * 他の結果を加算.
+     *
+     * @param r
+     *            加算する結果を設定します.
+     */
+    void add(LoadResult r) {
+        latency.add(r.latency);
+        service.add(r.service);
+        for (int i = 0; i < status.length; i++) {
+            status[i] += r.status[i];
+        }
+        requests += r.requests;
+        errors += r.errors;
+        timeouts += r.timeouts;
+        connects += r.connects;
+        bytes += r.bytes;
+    }
+
+    /**
+     * 結果をテキストで出力.
+     *
+     * @param time
+     *            計測時間(ナノ秒)を設定します.
+     * @return String 結果が返却されます.
+     */
+    String toText(long time) {
+        double sec = time / 1000000000d;
+        StringBuilder buf = new StringBuilder();
+        buf.append("requests:   ").append(requests).append(" (2xx:")
+                .append(status[2]).append(" 3xx:").append(status[3])
+                .append(" 4xx:").append(status[4]).append(" 5xx:")
+                .append(status[5]).append(")\n");
+        buf.append("errors:     ").append(errors).append(" (timeout:")
+                .append(timeouts).append(")\n");
+        buf.append("connects:   ").append(connects).append("\n");
+        buf.append("throughput: ").append(format(requests / sec))
+                .append(" req/s, ").append(format(bytes / sec / 1048576d))
+                .append(" MB/s\n");
+        buf.append("latency(us)  corrected     service\n");
+        line(buf, "mean", Math.round(latency.getMean()),
+                Math.round(service.getMean()));
+        line(buf, "p50", latency.getValueAtPercentile(50d),
+                service.getValueAtPercentile(50d));
+        line(buf, "p90", latency.getValueAtPercentile(90d),
+                service.getValueAtPercentile(90d));
+        line(buf, "p99", latency.getValueAtPercentile(99d),
+                service.getValueAtPercentile(99d));
+        line(buf, "p99.9", latency.getValueAtPercentile(99.9d),
+                service.getValueAtPercentile(99.9d));
+        line(buf, "p99.99", latency.getValueAtPercentile(99.99d),
+                service.getValueAtPercentile(99.99d));
+        line(buf, "max", latency.getMax(), service.getMax());
+        return buf.toString();
+    }
+
+    /** レイテンシの行を出力. **/
+    private static final void line(StringBuilder buf, String name, long a,
+            long b) {
+        buf.append("  ").append(pad(name, 9)).append(pad(String.valueOf(a), 14))
+                .append(b).append("\n");
+    }
+
+    /** 右側を空白で埋める. **/
+    private static final String pad(String s, int len) {
+        StringBuilder buf = new StringBuilder(s);
+        while (buf.length() < len) {
+            buf.append(" ");
+        }
+        return buf.toString();
+    }
+
+    /** 小数点2桁で出力. **/
+    private static final String format(double v) {
+        return String.valueOf(Math.round(v * 100d) / 100d);
+    }
+
+    /**
+     * JSON変換用のMapに変換.
+     *
+     * @param time
+     *            計測時間(ナノ秒)を設定します.
+     * @return Map<String,Object> 結果が返却されます.
+     */
+    Map<String,Object> toMap(long time) {
+        double sec = time / 1000000000d;
+        Map<String,Object> ret = new LinkedHashMap<String,Object>();
+        ret.put("requests", requests);
+        Map<String,Object> s = new LinkedHashMap<String,Object>();
+        for (int i = 1; i < status.length; i++) {
+            s.put(i + "xx", status[i]);
+        }
+        ret.put("status", s);
+        ret.put("errors", errors);
+        ret.put("timeouts", timeouts);
+        ret.put("connects", connects);
+        ret.put("throughput", Math.round(requests / sec * 100d) / 100d);
+        ret.put("bytesPerSec", Math.round(bytes / sec));
+        ret.put("latency", toMap(latency));
+        ret.put("service", toMap(service));
+        return ret;
+    }
+
+    /** ヒストグラムをMapに変換. **/
+    private static final Map<String,Object> toMap(LatencyHistogram h) {
+        Map<String,Object> ret = new LinkedHashMap<String,Object>();
+        ret.put("count", h.getCount());
+        ret.put("mean", Math.round(h.getMean() * 10d) / 10d);
+        ret.put("p50", h.getValueAtPercentile(50d));
+        ret.put("p90", h.getValueAtPercentile(90d));
+        ret.put("p99", h.getValueAtPercentile(99d));
+        ret.put("p999", h.getValueAtPercentile(99.9d));
+        ret.put("p9999", h.getValueAtPercentile(99.99d));
+        ret.put("max", h.getMax());
+        return ret;
+    }
+}
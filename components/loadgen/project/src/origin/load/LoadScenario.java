@@ -0,0 +1,195 @@
+package origin.load;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 負荷シナリオ. 送信するリクエストと、その比率を管理します.
+ *
+ * シナリオファイルは1行に1リクエストを、以下の形式で記述します.
+ * [#]から始まる行と空行は無視されます.
+ *
+ * <pre>
+ * # 比率 メソッド パス [Body]
+ * 10 GET /index?id=1
+ * 2  POST /form name=origin&amp;age=10
+ * 1  POST /api {"id": 1}
+ * </pre>
+ *
+ * POSTのBodyは、[{]または[[]から始まる場合はapplication/json、
+ * それ以外はapplication/x-www-form-urlencodedで送信します.
+ * リクエストは事前にバイナリ化して、負荷実行中は生成しません.
+ */
+final class LoadScenario {
+    private final String[] names;
+    private final byte[][] requests;
+    private final int[] weights;
+    private final int total;
+
+    private LoadScenario(List<String> n, List<byte[]> r, List<Integer> w) {
+        int len = r.size();
+        names = n.toArray(new String[len]);
+        requests = r.toArray(new byte[len][]);
+        weights = new int[len];
+        int t = 0;
+        for (int i = 0; i < len; i++) {
+            t += w.get(i);
+            weights[i] = t;
+        }
+        total = t;
+    }
+
+    /**
+     * 単一のURLでシナリオを生成.
+     *
+     * @param host
+     *            Hostヘッダを設定します.
+     * @param path
+     *            パスを設定します.
+     * @param keepAlive
+     *            [true]の場合、KeepAliveで送信します.
+     * @return LoadScenario シナリオが返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    static final LoadScenario create(String host, String path,
+            boolean keepAlive) throws IOException {
+        List<String> n = new ArrayList<String>();
+        List<byte[]> r = new ArrayList<byte[]>();
+        List<Integer> w = new ArrayList<Integer>();
+        n.add("GET " + path);
+        r.add(request(host, "GET", path, null, keepAlive));
+        w.add(1);
+        return new LoadScenario(n, r, w);
+    }
+
+    /**
+     * シナリオファイルを読み込む.
+     *
+     * @param file
+     *            シナリオファイル名を設定します.
+     * @param host
+     *            Hostヘッダを設定します.
+     * @param keepAlive
+     *            [true]の場合、KeepAliveで送信します.
+     * @return LoadScenario シナリオが返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    static final LoadScenario load(String file, String host, boolean keepAlive)
+            throws IOException {
+        List<String> n = new ArrayList<String>();
+        List<byte[]> r = new ArrayList<byte[]>();
+        List<Integer> w = new ArrayList<Integer>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF8"));
+        try {
+            String line;
+            int no = 0;
+            while ((line = in.readLine()) != null) {
+                no++;
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] t = line.split("\\s+", 4);
+                if (t.length < 3) {
+                    throw new IOException(file + "(" + no + "): 形式が不正です:"
+                            + line);
+                }
+                int weight;
+                try {
+                    weight = Integer.parseInt(t[0]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + "(" + no + "): 比率が不正です:"
+                            + t[0]);
+                }
+                if (weight <= 0) {
+                    continue;
+                }
+                String method = t[1].toUpperCase();
+                String body = t.length == 4 ? t[3] : null;
+                n.add(method + " " + t[2]);
+                r.add(request(host, method, t[2], body, keepAlive));
+                w.add(weight);
+            }
+        } finally {
+            in.close();
+        }
+        if (r.isEmpty()) {
+            throw new IOException(file + ": リクエストが定義されていません");
+        }
+        return new LoadScenario(n, r, w);
+    }
+
+    /** リクエストバイナリを生成. **/
+    private static final byte[] request(String host, String method,
+            String path, String body, boolean keepAlive) throws IOException {
+        StringBuilder buf = new StringBuilder(method).append(" ").append(path)
+                .append(" HTTP/1.1\r\n").append("Host: ").append(host)
+                .append("\r\n").append("User-Agent: origin-load\r\n")
+                .append("Connection: ")
+                .append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        byte[] b = null;
+        if (body != null) {
+            b = body.getBytes("UTF8");
+            buf.append("Content-Type: ")
+                    .append(body.startsWith("{") || body.startsWith("[") ? "application/json"
+                            : "application/x-www-form-urlencoded")
+                    .append("\r\n");
+        }
+        if (b != null || "POST".equals(method)) {
+            buf.append("Content-Length: ").append(b == null ? 0 : b.length)
+                    .append("\r\n");
+        }
+        byte[] h = buf.append("\r\n").toString().getBytes("UTF8");
+        if (b == null) {
+            return h;
+        }
+        byte[] ret = new byte[h.length + b.length];
+        System.arraycopy(h, 0, ret, 0, h.length);
+        System.arraycopy(b, 0, ret, h.length, b.length);
+        return ret;
+    }
+
+    /**
+     * 比率に従ってリクエストを選択.
+     *
+     * @param random
+     *            0以上、比率の合計未満の値を設定します.
+     * @return int リクエスト番号が返却されます.
+     */
+    int select(int random) {
+        int len = weights.length;
+        for (int i = 0; i < len; i++) {
+            if (random < weights[i]) {
+                return i;
+            }
+        }
+        return len - 1;
+    }
+
+    /** 比率の合計を取得. **/
+    int getTotalWeight() {
+        return total;
+    }
+
+    /** リクエスト数を取得. **/
+    int size() {
+        return requests.length;
+    }
+
+    /** リクエストバイナリを取得. **/
+    byte[] getRequest(int no) {
+        return requests[no];
+    }
+
+    /** リクエスト名を取得. **/
+    String getName(int no) {
+        return names[no];
+    }
+}
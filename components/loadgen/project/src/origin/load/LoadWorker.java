@@ -0,0 +1,248 @@
+package origin.load;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * 負荷実行ワーカー. 1つのSelectorで、割り当てられたコネクションを処理します.
+ *
+ * オープンループ(送信レート指定)の場合は、各コネクションの送信予定時間を
+ * 固定間隔で決め、レイテンシは送信予定時間から計測します. 前のレスポンスが
+ * 遅れて送信予定時間を過ぎた場合も、その遅れがレイテンシに含まれます.
+ * クローズドループの場合は、レスポンスの受信後すぐに次のリクエストを送信します.
+ */
+final class LoadWorker extends Thread {
+
+    /** 接続エラー時の再接続待ち. **/
+    private static final long RETRY_WAIT = 10000000L;
+
+    /** 受信バッファ長. **/
+    private static final int BUFFER_LENGTH = 65536;
+
+    private final LoadOption option;
+    private final LoadScenario scenario;
+    private final InetSocketAddress address;
+    private final LoadConnection[] connections;
+    private final long interval;
+    private final long measureTime;
+    private final long endTime;
+    private final Random random;
+    private final LoadResult result = new LoadResult();
+    private Selector selector;
+    private Throwable error = null;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param no
+     *            ワーカー番号を設定します.
+     * @param option
+     *            負荷実行オプションを設定します.
+     * @param scenario
+     *            負荷シナリオを設定します.
+     * @param base
+     *            全体での最初のコネクション番号を設定します.
+     * @param length
+     *            このワーカーのコネクション数を設定します.
+     * @param startTime
+     *            開始時間(ナノ秒)を設定します.
+     */
+    LoadWorker(int no, LoadOption option, LoadScenario scenario, int base,
+            int length, long startTime) {
+        super("origin-load-" + no);
+        setDaemon(true);
+        this.option = option;
+        this.scenario = scenario;
+        this.address = new InetSocketAddress(option.host, option.port);
+        this.measureTime = startTime + option.warmup * 1000000000L;
+        this.endTime = measureTime + option.duration * 1000000000L;
+        this.random = new Random(startTime + no);
+
+        // オープンループの場合は、コネクション毎の送信間隔と
+        // 最初の送信予定時間をずらして、全体で指定レートにする.
+        long period = option.rate > 0 ? 1000000000L / option.rate : 0L;
+        this.interval = period * option.connections;
+        LoadConnection[] c = new LoadConnection[length];
+        for (int i = 0; i < length; i++) {
+            c[i] = new LoadConnection();
+            c[i].next = startTime + (base + i) * period;
+        }
+        this.connections = c;
+    }
+
+    /** 実行結果を取得. **/
+    LoadResult getResult() {
+        return result;
+    }
+
+    /** 実行中のエラーを取得. **/
+    Throwable getError() {
+        return error;
+    }
+
+    public void run() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+        try {
+            selector = Selector.open();
+            try {
+                execute(buf);
+            } finally {
+                for (int i = 0; i < connections.length; i++) {
+                    connections[i].close();
+                }
+                selector.close();
+            }
+        } catch (Throwable t) {
+            error = t;
+        }
+    }
+
+    /** 負荷実行. **/
+    private final void execute(ByteBuffer buf) throws IOException {
+        LoadConnection[] c = connections;
+        int len = c.length;
+        long timeout = option.timeout * 1000000000L;
+        long now;
+        long wake;
+        long ms;
+        while ((now = System.nanoTime()) < endTime) {
+
+            // 送信予定時間を過ぎたコネクションの送信と、タイムアウトの確認.
+            wake = endTime;
+            for (int i = 0; i < len; i++) {
+                if (c[i].state == LoadConnection.IDLE) {
+                    if (c[i].next <= now) {
+                        send(c[i], now);
+                    } else if (c[i].next < wake) {
+                        wake = c[i].next;
+                    }
+                } else if (now - c[i].sendTime >= timeout) {
+                    if (c[i].intended >= measureTime) {
+                        result.timeouts++;
+                    }
+                    error(c[i], now);
+                } else if (c[i].sendTime + timeout < wake) {
+                    wake = c[i].sendTime + timeout;
+                }
+            }
+            ms = (wake - System.nanoTime()) / 1000000L;
+            if (ms <= 0L ? selector.selectNow() == 0 : selector.select(ms) == 0) {
+                continue;
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey k = it.next();
+                it.remove();
+                LoadConnection lc = (LoadConnection) k.attachment();
+                if (!k.isValid() || lc.key != k) {
+                    continue;
+                }
+                try {
+                    if (k.isConnectable()) {
+                        lc.channel.finishConnect();
+                        write(lc);
+                    } else if (k.isWritable()) {
+                        write(lc);
+                    } else if (k.isReadable()) {
+                        read(lc, buf);
+                    }
+                } catch (IOException e) {
+                    error(lc, System.nanoTime());
+                }
+            }
+        }
+    }
+
+    /** リクエストを送信. **/
+    private final void send(LoadConnection c, long now) {
+        c.intended = interval > 0L ? c.next : now;
+        c.sendTime = now;
+        c.begin(scenario.getRequest(scenario.select(random.nextInt(scenario
+                .getTotalWeight()))));
+        try {
+            if (c.channel == null) {
+                SocketChannel ch = SocketChannel.open();
+                c.channel = ch;
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                if (c.intended >= measureTime) {
+                    result.connects++;
+                }
+                if (!ch.connect(address)) {
+                    c.state = LoadConnection.CONNECTING;
+                    c.key = ch.register(selector, SelectionKey.OP_CONNECT, c);
+                    return;
+                }
+                c.key = ch.register(selector, 0, c);
+            }
+            write(c);
+        } catch (IOException e) {
+            error(c, now);
+        }
+    }
+
+    /** 送信データを書き込む. **/
+    private final void write(LoadConnection c) throws IOException {
+        c.channel.write(c.out);
+        if (c.out.hasRemaining()) {
+            c.state = LoadConnection.WRITING;
+            c.key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            c.state = LoadConnection.READING;
+            c.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /** レスポンスを受信. **/
+    private final void read(LoadConnection c, ByteBuffer buf)
+            throws IOException {
+        buf.clear();
+        int n = c.channel.read(buf);
+        if (n < 0) {
+            if (!c.eof()) {
+                throw new IOException("切断されました");
+            }
+            complete(c);
+            return;
+        }
+        if (c.intended >= measureTime) {
+            result.bytes += n;
+        }
+        buf.flip();
+        if (c.parse(buf)) {
+            complete(c);
+        }
+    }
+
+    /** レスポンスの受信完了. **/
+    private final void complete(LoadConnection c) {
+        long now = System.nanoTime();
+        if (c.intended >= measureTime) {
+            result.record(c.status, now - c.intended, now - c.sendTime,
+                    interval > 0L ? 0L : option.expectedInterval * 1000000L);
+        }
+        if (!option.keepAlive || c.close) {
+            c.close();
+        } else {
+            c.state = LoadConnection.IDLE;
+            c.key.interestOps(0);
+        }
+        c.next = interval > 0L ? c.next + interval : now;
+    }
+
+    /** 送受信エラー. **/
+    private final void error(LoadConnection c, long now) {
+        if (c.intended >= measureTime) {
+            result.errors++;
+        }
+        c.close();
+        c.next = interval > 0L ? c.next + interval : now + RETRY_WAIT;
+    }
+}
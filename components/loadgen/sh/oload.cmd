@@ -0,0 +1,109 @@
+@rem *------------------------------------------------------------------------*
+@rem * origin load.
+@rem *------------------------------------------------------------------------*
+@set ARGS=%1 %2 %3 %4 %5 %6 %7 %8 %9
+@if "%OS%" == "Windows_NT" setlocal
+@echo off
+@cls
+
+@rem *------------------------------------------------------------------------*
+@rem * VFÑtH_Ɉړ.
+@rem *------------------------------------------------------------------------*
+@set SCRIPT=%~0
+@for /f "delims=\ tokens=*" %%z in ("%SCRIPT%") do (
+@set SCRIPT_CURRENT_DIR=%%~dpz )
+@cd %SCRIPT_CURRENT_DIR%
+
+@rem *------------------------------------------------------------------------*
+@rem * JDKCXg[.
+@rem *  ݒ肵Ȃꍇ͉w肵Ȃł.
+@rem *------------------------------------------------------------------------*
+@set SET_JAVA_HOME=
+
+@rem *------------------------------------------------------------------------*
+@rem * vWFNgfBNgݒ.
+@rem *------------------------------------------------------------------------*
+@set PROJ_DIR=.\
+
+@rem *------------------------------------------------------------------------*
+@rem * JavaIvV.
+@rem *------------------------------------------------------------------------*
+@set OPT=
+
+@rem *------------------------------------------------------------------------*
+@rem * NvOZbg.
+@rem *------------------------------------------------------------------------*
+@set EXEC_PACKAGE=origin.load.LoadMain
+
+@rem *------------------------------------------------------------------------*
+@rem * Jn̈.
+@rem * PʂMByte
+@rem *------------------------------------------------------------------------*
+@set STM=256
+
+@rem *------------------------------------------------------------------------*
+@rem * ő僁̈.
+@rem * PʂMByte
+@rem *------------------------------------------------------------------------*
+@set EXM=256
+
+
+
+@rem ##########################################################################
+@rem # ȉ͐ݒ肵Ȃł.
+@rem ##########################################################################
+@rem * baseFolder. *
+@set BASE_HOME=%ORIGIN_HOME%
+
+@rem *------------------------------------------------------------------------*
+@rem * ݒf.
+@rem *------------------------------------------------------------------------*
+@if not "%SET_JAVA_HOME%" == "" @set JAVA_HOME=%SET_JAVA_HOME%
+
+@rem *------------------------------------------------------------------------*
+@rem * Nob`fBNg.
+@rem *------------------------------------------------------------------------*
+@set BATCH_DIR=%BASE_HOME%\sh
+
+@rem *------------------------------------------------------------------------*
+@rem * `f[^i[fBNg.
+@rem *------------------------------------------------------------------------*
+@set CONF_DIR=%PROJ_DIR%\conf
+
+@rem *------------------------------------------------------------------------*
+@rem * JARi[fBNg.
+@rem *------------------------------------------------------------------------*
+@set LIB_DIR=%BASE_HOME%\lib
+
+@rem *------------------------------------------------------------------------*
+@rem * G[.
+@rem *------------------------------------------------------------------------*
+@if "%JAVA_HOME%" == "" goto errJAVA_HOME
+@if "%PROJ_DIR%" == "" goto errPROJ_DIR
+
+@rem *------------------------------------------------------------------------*
+@rem * execution java.
+@rem *------------------------------------------------------------------------*
+
+@call %BATCH_DIR%\core\parselib
+@set LIB_DIR=%PROJ_DIR%\jar
+@call %BATCH_DIR%\core\parselib
+@set CLASSPATH=.;%INST_LIB%;%CONF_DIR%
+
+@%JAVA_HOME%\bin\java -Xms%STM%m -Xmx%EXM%m %OPT% %EXEC_PACKAGE% %ARGS%
+goto end
+
+@rem *------------------------------------------------------------------------*
+@rem * G[.
+@rem *------------------------------------------------------------------------*
+
+:errJAVA_HOME
+@echo ϐ JAVA_HOME ݒ肳Ă܂.
+goto end
+
+:errPROJ_DIR
+@echo vWFNgfBNgsł.
+goto end
+
+:end
+@if "%OS%" == "Windows_NT" endlocal
@@ -14,6 +14,7 @@ import origin.script.Http;
 import origin.script.HttpInfo;
 import origin.script.OriginComponentManager;
 import origin.script.OriginRegisterService;
+import origin.script.ScriptWarmup;
 import origin.script.ShutdownHttp;
 import origin.util.sequence.Time16SequenceId;
 import origin.util.shutdown.ShutdownHook;
@@ -95,8 +96,24 @@ public final class Origin {
         HttpInfo.load(httpInfo, conf);
         http = new Http(httpInfo, dbFactory);
 
+        // スクリプトの事前コンパイル.
+        if (httpInfo.isPrecompile()) {
+            LOG.info(" precompile scripts.");
+            ScriptWarmup.precompile(http.getCompileManager(),
+                    httpInfo.getPrecompileThread());
+        }
+
         http.start();
 
+        // 記録されたリクエストでウォームアップ.
+        if (httpInfo.getWarmupCount() > 0) {
+            LOG.info(" warmup.");
+            ScriptWarmup.warmup(httpInfo, httpInfo.getWarmupFile(),
+                    httpInfo.getWarmupCount());
+        }
+        http.ready();
+        LOG.info(" ready origin.");
+
         // シャットダウンまで待つ処理を生成.
         int shutdownPort = conf.getInt("origin", "shutdownPort", 0);
 
@@ -61,10 +61,11 @@ public class OriginProject {
         if (windowsFlag) {
             // windows.
             cmdFiles = new String[] { "origin.cmd", "ocon.cmd", "osql.cmd",
-                    "otest.cmd" };
+                    "otest.cmd", "oload.cmd" };
         } else {
             // linux.
-            cmdFiles = new String[] { "origin", "ocon", "osql", "otest" };
+            cmdFiles = new String[] { "origin", "ocon", "osql", "otest",
+                    "oload" };
         }
 
         // フォルダ作成.
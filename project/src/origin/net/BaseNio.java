@@ -1,7 +1,5 @@
 package origin.net;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
@@ -11,17 +9,29 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * 基本Nio処理. accept,read,writeのnioイベントを１つのスレッドで処理します。
+ * 基本Nio処理. acceptのnioイベントをこのスレッドで処理し、受け付けたSocketChannelを
+ * 接続数が最も少ないNioReactorに渡して、read,writeのnioイベントを処理します.
+ * 同時接続数が最大値に達した場合は、接続数が減るまでacceptを停止します.
  */
 public class BaseNio extends Thread {
     private static final int SELECTOR_TIMEOUT = 1000;
+
+    /** accept停止中の、接続数の確認間隔. **/
+    private static final int PAUSE_CHECK = 50;
     private int byteBufferLength;
     private int socketSendBuffer;
     private int socketRecvBuffer;
     private boolean keepAlive;
     private boolean tcpNoDeley;
+    private int reactorLength;
+    private int writeTimeout;
+    private boolean directWrite;
     private ServerSocketChannel server;
     private NioCall call;
+    private NioMetrics metrics;
+
+    private NioReactor[] reactors = null;
+    private int reactorCounter = 0;
 
     private volatile boolean stopFlag = true;
     private volatile boolean exitFlag = false;
@@ -31,25 +41,42 @@ public class BaseNio extends Thread {
 
     /**
      * コンストラクタ.
-     * 
+     *
      * @param byteBufferLength
      * @param socketSendBuffer
      * @param socketRecvBuffer
      * @param keepAlive
      * @param tcpNoDeley
+     * @param reactorLength
+     *            リアクタースレッド数を設定します. [0]以下の場合はCPUコア数となります.
+     * @param writeTimeout
+     *            送信が進まない場合のタイムアウト値(ミリ秒)を設定します.
+     * @param maxConnections
+     *            最大同時接続数を設定します. [0]以下の場合は無制限です.
+     * @param directWrite
+     *            [true]の場合、リアクタースレッド以外からの送信は直接行います.
      * @param server
      * @param call
      */
     public BaseNio(int byteBufferLength, int socketSendBuffer,
             int socketRecvBuffer, boolean keepAlive, boolean tcpNoDeley,
+            int reactorLength, int writeTimeout, int maxConnections,
+            boolean directWrite,
             ServerSocketChannel server, NioCall call) {
+        if (reactorLength <= 0) {
+            reactorLength = Runtime.getRuntime().availableProcessors();
+        }
         this.byteBufferLength = byteBufferLength;
         this.socketSendBuffer = socketSendBuffer;
         this.socketRecvBuffer = socketRecvBuffer;
         this.keepAlive = keepAlive;
         this.tcpNoDeley = tcpNoDeley;
+        this.reactorLength = reactorLength;
+        this.writeTimeout = writeTimeout;
+        this.directWrite = directWrite;
         this.server = server;
         this.call = call;
+        this.metrics = new NioMetrics(maxConnections);
     }
 
     public void startThread() {
@@ -70,6 +97,15 @@ public class BaseNio extends Thread {
         return exitFlag;
     }
 
+    /**
+     * Nioメトリクスを取得.
+     *
+     * @return NioMetrics Nioメトリクスが返却されます.
+     */
+    public NioMetrics getMetrics() {
+        return metrics;
+    }
+
     public void run() {
         NioSelector selector = null;
         ThreadDeath d = null;
@@ -78,12 +114,14 @@ public class BaseNio extends Thread {
             // [call] 開始処理.
             if (call.startNio()) {
 
+                // リアクターの生成.
                 // Selectorの初期化.
                 // ServerSocketChannelをSelectorに登録.
                 try {
+                    startReactor();
                     selector = new NioSelector();
-                    selector.register(server, SelectionKey.OP_ACCEPT);
-                    d = executeThread(selector);
+                    d = executeThread(selector,
+                            selector.register(server, SelectionKey.OP_ACCEPT));
                 } catch (Exception e) {
                     LOG.debug("error", e);
                     call.error(e);
@@ -106,6 +144,9 @@ public class BaseNio extends Thread {
                 LOG.debug("error", e);
             }
 
+            // リアクター停止.
+            stopReactor();
+
             // [call] 終了処理.
             try {
                 call.endNio();
@@ -119,186 +160,156 @@ public class BaseNio extends Thread {
         }
     }
 
+    /** リアクター開始. **/
+    private final void startReactor() throws Exception {
+        NioReactor[] r = new NioReactor[reactorLength];
+        for (int i = 0; i < reactorLength; i++) {
+            r[i] = new NioReactor(i, byteBufferLength, writeTimeout,
+                    directWrite, call,
+                    metrics);
+        }
+        for (int i = 0; i < reactorLength; i++) {
+            r[i].startThread();
+        }
+        reactors = r;
+    }
+
+    /** リアクター停止. **/
+    private final void stopReactor() {
+        NioReactor[] r = reactors;
+        reactors = null;
+        if (r == null) {
+            return;
+        }
+        int len = r.length;
+        for (int i = 0; i < len; i++) {
+            r[i].stopThread();
+        }
+
+        // リアクター停止待ち.
+        boolean allEndFlag = false;
+        while (!allEndFlag) {
+            allEndFlag = true;
+            for (int i = 0; i < len; i++) {
+                if (!r[i].isExitThread()) {
+                    allEndFlag = false;
+                    break;
+                }
+            }
+            if (!allEndFlag) {
+                try {
+                    Thread.sleep(5);
+                } catch (Exception e) {
+                }
+            }
+        }
+    }
+
+    /** 接続数が最も少ないリアクターを取得. **/
+    private final NioReactor getReactor() {
+        final NioReactor[] r = reactors;
+        final int len = r.length;
+        final int no = reactorCounter;
+        if (++reactorCounter >= len) {
+            reactorCounter = 0;
+        }
+
+        // 同数の場合は、ラウンドロビンで割り当てる.
+        int n;
+        NioReactor ret = r[no];
+        int min = ret.getConnections();
+        for (int i = 1; i < len && min > 0; i++) {
+            if ((n = r[(no + i) % len].getConnections()) < min) {
+                ret = r[(no + i) % len];
+                min = n;
+            }
+        }
+        return ret;
+    }
+
     /** 処理スレッド. **/
-    private final ThreadDeath executeThread(final NioSelector selector) {
+    private final ThreadDeath executeThread(final NioSelector selector,
+            final SelectionKey serverKey) {
         final int OP_ACCEPT = SelectionKey.OP_ACCEPT;
-        final int OP_READ = SelectionKey.OP_READ;
-        final int OP_WRITE = SelectionKey.OP_WRITE;
         final int ssb = socketSendBuffer;
         final int srb = socketRecvBuffer;
         final boolean kpF = keepAlive;
         final boolean tnF = tcpNoDeley;
 
-        final ByteBuffer buf = ByteBuffer.allocateDirect(byteBufferLength);
         final ServerSocketChannel sc = server;
-        final NioCall cl = call;
+        final NioMetrics mt = metrics;
 
         ThreadDeath ret = null;
         boolean endFlag = false;
 
-        int ops;
         Iterator<SelectionKey> it;
         SelectionKey key = null;
         SocketChannel ch = null;
-        NioElement em = null;
-        SendLess sl = null;
 
         while (!endFlag && !stopFlag) {
             key = null;
-            em = null;
-            sl = null;
+            ch = null;
             try {
 
                 while (!endFlag && !stopFlag) {
                     key = null;
-                    em = null;
-                    sl = null;
+                    ch = null;
+
+                    // 最大同時接続数に達している場合は、acceptを停止.
+                    // 接続要求は、接続数が減るまでbacklogで待機します.
+                    if (mt.isFull()) {
+                        if (!mt.isAcceptPause()) {
+                            serverKey.interestOps(0);
+                            mt.acceptPause(true);
+                            LOG.warn("max connections(" + mt.getMaxConnections()
+                                    + ") reached. pause accept.");
+                        }
+                        selector.select(PAUSE_CHECK);
+                        continue;
+                    } else if (mt.isAcceptPause()) {
+                        serverKey.interestOps(OP_ACCEPT);
+                        mt.acceptPause(false);
+                        LOG.info("resume accept.");
+                    }
                     if (!selector.select(SELECTOR_TIMEOUT)) {
                         continue;
                     }
                     it = selector.iterator();
 
                     while (it.hasNext()) {
-                        key = null;
-                        em = null;
-                        sl = null;
-                        try {
-
-                            // 今回処理対象の内容を取得.
-                            key = it.next();
-                            it.remove();
-
-                            // 対象キーが存在しない場合は処理しない.
-                            if (key == null || !key.isValid()) {
-
-                                // 取得情報が無効な場合は、オブジェクトクローズ.
-                                if (key != null) {
-                                    NioUtil.destroyKey(key);
-                                }
-                                continue;
-                            }
 
-                            // オプション処理を取得.
-                            ops = key.readyOps();
-
-                            // accept(ServerSocketに接続)が検知された場合.
-                            if ((ops & OP_ACCEPT) == OP_ACCEPT) {
-
-                                // accept失敗.
-                                if ((ch = sc.accept()) == null) {
-                                    NioUtil.destroyKey(key);
-                                    continue;
-                                }
-
-                                // ソケット初期化.
-                                if (NioUtil.initSocket(ch, ssb, srb, kpF, tnF)) {
-
-                                    // 要素の登録.
-                                    em = cl.createElement();
-                                    em.registor(selector, ch, OP_READ);
-                                    ops = key.readyOps();
-
-                                    // [call] accept処理コール.
-                                    if (!cl.accept(em)) {
-                                        em.clear();
-                                        continue;
-                                    }
-                                } else {
-
-                                    // ソケット初期化に失敗.
-                                    NioUtil.destroyKey(key);
-                                    continue;
-                                }
-                            }
+                        // 今回処理対象の内容を取得.
+                        key = it.next();
+                        it.remove();
 
-                            // (Socket)読み込み処理および書き込み処理.
-                            if ((ops & OP_WRITE) == OP_WRITE
-                                    || (ops & OP_READ) == OP_READ) {
-
-                                // 必要情報の取得に失敗
-                                if ((em = (NioElement) key.attachment()) == null) {
-                                    if (key != null) {
-                                        NioUtil.destroyKey(key);
-                                    }
-                                    continue;
-                                }
-
-                                // ソケットチャネルを取得.
-                                ch = (SocketChannel) key.channel();
-
-                                // 書き込み可能処理.
-                                if ((ops & OP_WRITE) == OP_WRITE) {
-
-                                    // 送信前処理.
-                                    buf.clear();
-                                    sl = em.getSendLess();
-                                    sl.setting(buf);
-
-                                    // [call] 送信処理.
-                                    if (!cl.send(em, buf)) {
-                                        em.clear();
-                                        continue;
-                                    }
-
-                                    // 書き込み処理後.
-                                    buf.flip();
-                                    if (buf.remaining() > 0) {
-
-                                        // 書き込み対象のデータが存在する場合.
-                                        if (ch.write(buf) < 0) {
-
-                                            // 通信エラー.
-                                            em.clear();
-                                            continue;
-                                        }
-                                        // 送信あまりがある場合.
-                                        sl.evacuate(buf);
-                                    }
-                                }
-
-                                // 読み込み可能処理.
-                                if ((ops & OP_READ) == OP_READ) {
-
-                                    // 受信処理.
-                                    buf.clear();
-                                    if (ch.read(buf) < 0) {
-                                        
-                                        // 通信エラー.
-                                        em.clear();
-                                        continue;
-                                    }
-                                    buf.flip();
-
-                                    // [call] 受信処理.
-                                    if (!cl.receive(em, buf)) {
-                                        em.clear();
-                                        continue;
-                                    }
-                                }
-                            }
+                        // 対象キーが存在しない、acceptでない場合は処理しない.
+                        if (key == null || !key.isValid()
+                                || (key.readyOps() & OP_ACCEPT) != OP_ACCEPT) {
+                            continue;
+                        }
 
-                        } catch (IOException e) {
-                            LOG.debug("error", e);
-                            if (key != null) {
-                                NioUtil.destroyKey(key);
-                                key = null;
-                            }
-                            if (em != null) {
-                                em.clear();
-                                em = null;
+                        // accept(ServerSocketに接続)が検知された場合.
+                        // 最大同時接続数まで、接続待ちのSocketChannelを受け付ける.
+                        while (!mt.isFull() && (ch = sc.accept()) != null) {
+
+                            // ソケット初期化.
+                            if (NioUtil.initSocket(ch, ssb, srb, kpF, tnF)) {
+
+                                // リアクターに登録.
+                                mt.accept();
+                                getReactor().register(ch);
                             }
+                            ch = null;
                         }
                     }
                 }
             } catch (Throwable to) {
                 LOG.debug("error", to);
-                if (key != null) {
-                    NioUtil.destroyKey(key);
-                    key = null;
-                }
-                if (em != null) {
-                    em.clear();
-                    em = null;
+                if (ch != null) {
+                    try {
+                        ch.close();
+                    } catch (Exception e) {
+                    }
                 }
                 if (to instanceof InterruptedException) {
                     endFlag = true;
@@ -0,0 +1,89 @@
+package origin.net;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ファイル送信領域. FileChannel.transferToで、ファイルの指定範囲を
+ * 直接チャネルに送信します.
+ */
+public class FileRegion {
+    protected FileChannel channel;
+    protected long position;
+    protected long end;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param channel
+     *            送信対象のFileChannelを設定します.
+     * @param position
+     *            送信開始位置を設定します.
+     * @param length
+     *            送信データ長を設定します.
+     */
+    public FileRegion(FileChannel channel, long position, long length) {
+        this.channel = channel;
+        this.position = position;
+        this.end = position + length;
+    }
+
+    /**
+     * 送信処理. ソケットがブロックするか、全ての情報を送信するまで書き込みます.
+     *
+     * @param out
+     *            送信先のチャネルを設定します.
+     * @return long 送信されたデータ長が返却されます. [-1]の場合は送信エラーです.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public long transferTo(WritableByteChannel out) throws IOException {
+        long n;
+        long ret = 0L;
+        while (position < end) {
+            if ((n = channel.transferTo(position, end - position, out)) <= 0L) {
+
+                // ファイルが送信途中で切り詰められた場合.
+                if (channel.size() <= position) {
+                    return -1L;
+                }
+                break;
+            }
+            position += n;
+            ret += n;
+        }
+        return ret;
+    }
+
+    /**
+     * 送信対象のデータが残っているかチェック.
+     *
+     * @return boolean [true]の場合、送信対象のデータが残っています.
+     */
+    public boolean hasRemaining() {
+        return position < end;
+    }
+
+    /**
+     * 未送信のデータ長を取得.
+     *
+     * @return long 未送信のデータ長が返却されます.
+     */
+    public long remaining() {
+        return end - position;
+    }
+
+    /**
+     * 送信領域を解放. デフォルトではFileChannelをクローズします.
+     */
+    public void release() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (Exception e) {
+            }
+            channel = null;
+        }
+    }
+}
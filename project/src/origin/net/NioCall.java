@@ -52,17 +52,15 @@ public abstract class NioCall {
     }
 
     /**
-     * Send処理.
+     * Send処理. 送信データを全て送信した後に呼び出されます.
      * 
      * @param em
      *            対象のBaseNioElementオブジェクトが設定されます.
-     * @param buf
-     *            対象のByteBufferを設定します.
-     * @return boolean [true]の場合、正常に処理されました.
+     * @return boolean [true]の場合、正常に処理されました. [false]の場合、対象の要素はクローズされます.
      * @exception IOException
      *                IO例外.
      */
-    public boolean send(NioElement em, ByteBuffer buf) throws IOException {
+    public boolean send(NioElement em) throws IOException {
         return true;
     }
 
@@ -80,4 +78,17 @@ public abstract class NioCall {
     public boolean receive(NioElement em, ByteBuffer buf) throws IOException {
         return true;
     }
+
+    /**
+     * タイムアウト処理. 要素に設定されたタイムアウト時間を過ぎた場合に呼び出されます.
+     * 
+     * @param em
+     *            対象のBaseNioElementオブジェクトが設定されます.
+     * @param now
+     *            現在時間が設定されます.
+     * @return boolean [false]の場合、対象の要素はクローズされます.
+     */
+    public boolean timeout(NioElement em, long now) {
+        return false;
+    }
 }
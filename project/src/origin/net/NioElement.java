@@ -11,6 +11,25 @@ import origin.util.atomic.AtomicNumber32;
  * 基本Nio要素.
  */
 public abstract class NioElement {
+
+    /** タイムアウト種別: 次のリクエスト待ち. **/
+    public static final int TIMEOUT_IDLE = 0;
+
+    /** タイムアウト種別: ヘッダ受信. **/
+    public static final int TIMEOUT_HEADER = 1;
+
+    /** タイムアウト種別: Body受信. **/
+    public static final int TIMEOUT_READ = 2;
+
+    /** タイムアウト種別: 送信. **/
+    public static final int TIMEOUT_WRITE = 3;
+
+    /** タイムアウト種別数. **/
+    public static final int TIMEOUT_LENGTH = 4;
+
+    /** タイムアウトなし. **/
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
     protected volatile boolean connectionFlag = false;
     protected NioSelector selector;
     protected SelectionKey key;
@@ -19,21 +38,54 @@ public abstract class NioElement {
     protected ByteArrayIO buffer = new ByteArrayIO(512);
 
     protected SendData sendData = new SendData(this);
-    protected SendLess sendLess = new SendLess();
+
+    /** タイムアウト時間と種別. **/
+    protected volatile long deadline = NO_DEADLINE;
+    protected volatile int deadlineType = TIMEOUT_IDLE;
+
+    /** タイミングホイールのリンク(リアクタースレッドのみで利用). **/
+    NioElement wheelPrev = null;
+    NioElement wheelNext = null;
+    long wheelTick = -1L;
+
+    /** 所属するリアクターと、更新キューへの登録状態. **/
+    protected NioReactor reactor = null;
+    final AtomicNumber32 updateState = new AtomicNumber32(0);
+
+    /** 接続数カウンタ. **/
+    protected AtomicNumber32 connectionCounter = null;
+    protected final AtomicNumber32 closeState = new AtomicNumber32(0);
 
     public NioElement() {
     }
 
     /**
      * オブジェクトクリア.
+     * リアクタースレッド以外から呼び出された場合は、切断状態にして
+     * 更新キューに登録し、リアクタースレッドでクリアします.
+     * リアクターが受信処理中の要素を、他のスレッドから破棄しないためです.
      */
     public void clear() {
+        NioReactor r = reactor;
+        if (r != null && !r.isReactorThread() && !r.isStopThread()
+                && !r.isExitThread()) {
+            connectionFlag = false;
+            r.update(this, true);
+            return;
+        }
+        release();
+    }
+
+    /**
+     * 要素の解放. リアクタースレッド、またはリアクターの停止後に
+     * 呼び出されます.
+     */
+    protected void release() {
         connectionFlag = false;
-        selector = null;
-        if (sendLess != null) {
-            sendLess.clear();
-            sendLess = null;
+        if (closeState.put(1) == 0 && connectionCounter != null) {
+            connectionCounter.dec();
         }
+        selector = null;
         if (sendData != null) {
             sendData.clear();
             sendData = null;
@@ -80,6 +132,95 @@ public abstract class NioElement {
         return ret;
     }
 
+    /**
+     * 接続数カウンタを設定. 要素のクリア時にカウントダウンされます.
+     *
+     * @param counter
+     *            接続数カウンタを設定します.
+     */
+    public void setConnectionCounter(AtomicNumber32 counter) {
+        this.connectionCounter = counter;
+    }
+
+    /**
+     * 所属するリアクターを設定.
+     *
+     * @param reactor
+     *            リアクターを設定します.
+     */
+    public void setReactor(NioReactor reactor) {
+        this.reactor = reactor;
+    }
+
+    /**
+     * 現在のスレッドから直接送信するかチェック.
+     *
+     * @return boolean [true]の場合、リアクタースレッド以外から直接送信します.
+     */
+    public boolean isDirectWrite() {
+        NioReactor r = reactor;
+        return r != null && r.isDirectWrite() && !r.isReactorThread();
+    }
+
+    /**
+     * ソケットチャネルを取得.
+     *
+     * @return SocketChannel ソケットチャネルが返却されます. 切断済みの場合はnull.
+     */
+    public SocketChannel getChannel() {
+        SelectionKey k = key;
+        return k == null ? null : (SocketChannel) k.channel();
+    }
+
+    /**
+     * 他のスレッドで全ての送信が完了した場合の処理.
+     */
+    protected void sendComplete() {
+        NioReactor r = reactor;
+        if (r != null) {
+            r.complete(this);
+        }
+    }
+
+    /**
+     * タイムアウト時間を設定. 他のスレッドから設定した場合、
+     * 設定済みの時間より早い時間はすぐには反映されません.
+     *
+     * @param type
+     *            タイムアウト種別(TIMEOUT_xxx)を設定します.
+     * @param time
+     *            タイムアウト時間を設定します.
+     */
+    public void setDeadline(int type, long time) {
+        deadlineType = type;
+        deadline = time;
+    }
+
+    /**
+     * タイムアウトを解除.
+     */
+    public void clearDeadline() {
+        deadline = NO_DEADLINE;
+    }
+
+    /**
+     * タイムアウト時間を取得.
+     *
+     * @return long タイムアウト時間が返却されます. [NO_DEADLINE]の場合はタイムアウトしません.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * タイムアウト種別を取得.
+     *
+     * @return int タイムアウト種別(TIMEOUT_xxx)が返却されます.
+     */
+    public int getDeadlineType() {
+        return deadlineType;
+    }
+
     /**
      * SelectedKeyを取得.
      * 
@@ -107,15 +248,6 @@ public abstract class NioElement {
         return buffer;
     }
 
-    /**
-     * SendLessオブジェクトを取得.
-     * 
-     * @return SendLess オブジェクトが返却されます.
-     */
-    public SendLess getSendLess() {
-        return sendLess;
-    }
-
     /**
      * SendDataオブジェクトを取得.
      * 
@@ -134,9 +266,75 @@ public abstract class NioElement {
      *                I/O例外.
      */
     public void interestOps(int ops) throws IOException {
-        this.ops.set(ops);
-        key.interestOps(ops);
-        selector.wakeup();
+        NioReactor r = reactor;
+        if (r == null || !r.isDirectWrite()) {
+            this.ops.set(ops);
+            if (r != null) {
+                r.interestOps(key, ops);
+                r.wakeup();
+            } else {
+                key.interestOps(ops);
+                selector.wakeup();
+            }
+            return;
+        }
+
+        // 変更がない場合は処理しない.
+        if (this.ops.put(ops) == ops) {
+            return;
+        }
+
+        // 書き込み監視を追加する場合のみ、select待機中のリアクターを起こす.
+        update(r, (ops & SelectionKey.OP_WRITE) != 0);
+    }
+
+    /**
+     * 受信監視の変更. 送信監視はそのままで、OP_READのみを変更します.
+     * 他のスレッドがinterOpsを変更中でも、送信監視は失われません.
+     *
+     * @param read
+     *            [true]の場合は受信監視を再開、[false]の場合は停止します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void interestRead(boolean read) throws IOException {
+        int old = read ? ops.or(SelectionKey.OP_READ) : ops
+                .and(~SelectionKey.OP_READ);
+        if (((old & SelectionKey.OP_READ) != 0) == read) {
+            return;
+        }
+        NioReactor r = reactor;
+        if (r == null || !r.isDirectWrite()) {
+            SelectionKey k = key;
+            if (k == null) {
+                return;
+            } else if (r != null) {
+                r.interestOps(k, ops.get());
+                r.wakeup();
+            } else {
+                k.interestOps(ops.get());
+                selector.wakeup();
+            }
+            return;
+        }
+
+        // 受信を再開する場合は、select待機中のリアクターを起こす.
+        update(r, read);
+    }
+
+    /** interOpsの変更をリアクターに反映. **/
+    private final void update(NioReactor r, boolean wakeup)
+            throws IOException {
+        if (r.isReactorThread()) {
+            SelectionKey k = key;
+            if (k != null) {
+                r.interestOps(k, ops.get());
+            }
+            return;
+        }
+
+        // 他のスレッドからは、更新キュー経由でリアクタースレッドで反映.
+        r.update(this, wakeup);
     }
 
     /**
@@ -0,0 +1,166 @@
+package origin.net;
+
+import origin.util.atomic.AtomicNumber;
+import origin.util.atomic.AtomicNumber32;
+
+/**
+ * Nioメトリクス. 接続数と、タイムアウトで切断した接続数、
+ * セレクタのwakeup回数と書き込み監視の変更回数を保持します.
+ */
+public final class NioMetrics {
+    private final int maxConnections;
+    private final AtomicNumber32 connections = new AtomicNumber32(0);
+    private final AtomicNumber accepts = new AtomicNumber(0L);
+    private final AtomicNumber acceptPauses = new AtomicNumber(0L);
+    private final AtomicNumber[] timeouts;
+    private final AtomicNumber wakeups = new AtomicNumber(0L);
+    private final AtomicNumber interestOps = new AtomicNumber(0L);
+    private volatile boolean acceptPause = false;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param maxConnections
+     *            最大同時接続数を設定します. [0]以下の場合は無制限です.
+     */
+    public NioMetrics(int maxConnections) {
+        this.maxConnections = maxConnections;
+        AtomicNumber[] t = new AtomicNumber[NioElement.TIMEOUT_LENGTH];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = new AtomicNumber(0L);
+        }
+        this.timeouts = t;
+    }
+
+    /** 接続数のカウンタを取得. **/
+    protected AtomicNumber32 connectionCounter() {
+        return connections;
+    }
+
+    /** 接続受け付け. **/
+    protected void accept() {
+        connections.inc();
+        accepts.inc();
+    }
+
+    /** タイムアウトによる切断. **/
+    protected void timeout(int type) {
+        if (type >= 0 && type < timeouts.length) {
+            timeouts[type].inc();
+        }
+    }
+
+    /** セレクタのwakeup. **/
+    protected void wakeup() {
+        wakeups.inc();
+    }
+
+    /** SelectionKeyの監視対象の変更. **/
+    protected void interestOps() {
+        interestOps.inc();
+    }
+
+    /** 接続受け付けの停止状態を設定. **/
+    protected void acceptPause(boolean pause) {
+        if (pause) {
+            acceptPauses.inc();
+        }
+        acceptPause = pause;
+    }
+
+    /**
+     * 最大同時接続数に達しているかチェック.
+     *
+     * @return boolean [true]の場合、最大同時接続数に達しています.
+     */
+    public boolean isFull() {
+        return maxConnections > 0 && connections.get() >= maxConnections;
+    }
+
+    /**
+     * 最大同時接続数を取得.
+     *
+     * @return int 最大同時接続数が返却されます. [0]以下の場合は無制限です.
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * 現在の接続数を取得.
+     *
+     * @return int 現在の接続数が返却されます.
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * 受け付けた接続数の累計を取得.
+     *
+     * @return long 受け付けた接続数が返却されます.
+     */
+    public long getAccepts() {
+        return accepts.get();
+    }
+
+    /**
+     * 接続受け付けを停止した回数を取得.
+     *
+     * @return long 停止した回数が返却されます.
+     */
+    public long getAcceptPauses() {
+        return acceptPauses.get();
+    }
+
+    /**
+     * 接続受け付けを停止中かチェック.
+     *
+     * @return boolean [true]の場合、停止中です.
+     */
+    public boolean isAcceptPause() {
+        return acceptPause;
+    }
+
+    /**
+     * セレクタのwakeup回数を取得.
+     *
+     * @return long wakeup回数が返却されます.
+     */
+    public long getWakeups() {
+        return wakeups.get();
+    }
+
+    /**
+     * SelectionKeyの監視対象(interestOps)の変更回数を取得.
+     *
+     * @return long 変更回数が返却されます.
+     */
+    public long getInterestOps() {
+        return interestOps.get();
+    }
+
+    /**
+     * タイムアウトで切断した接続数を取得.
+     *
+     * @param type
+     *            タイムアウト種別(NioElement.TIMEOUT_xxx)を設定します.
+     * @return long 切断した接続数が返却されます.
+     */
+    public long getTimeouts(int type) {
+        return timeouts[type].get();
+    }
+
+    /**
+     * タイムアウトで切断した接続数の合計を取得.
+     *
+     * @return long 切断した接続数が返却されます.
+     */
+    public long getTimeouts() {
+        long ret = 0L;
+        for (int i = 0; i < timeouts.length; i++) {
+            ret += timeouts[i].get();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,457 @@
+package origin.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Nioリアクター. 受け付け済みのSocketChannelに対するread,writeのnioイベントを処理します.
+ * リアクター毎に、NioSelectorとDirectByteBuffer、タイムアウト管理用の
+ * タイミングホイールを保持します.
+ *
+ * directWriteが有効な場合、他のスレッドからの送信は、そのスレッドで直接
+ * ノンブロッキング送信を行い、送信しきれなかった場合のみリアクターに書き込みを
+ * 依頼します. 他のスレッドからのinterestOpsの変更と、タイムアウト時間の反映は
+ * 更新キューを経由して、リアクタースレッドでselect毎にまとめて行います.
+ */
+public class NioReactor extends Thread {
+    private static final int SELECTOR_TIMEOUT = 1000;
+
+    /** タイミングホイールの1スロットの時間と、スロット数. **/
+    private static final int WHEEL_TICK = 250;
+    private static final int WHEEL_LENGTH = 256;
+
+    private final int no;
+    private final int byteBufferLength;
+    private final int writeTimeout;
+    private final boolean directWrite;
+    private final NioSelector selector;
+    private final NioCall call;
+    private final NioMetrics metrics;
+
+    /** 登録待ちのSocketChannel. **/
+    private final Queue<SocketChannel> registerQueue = new ConcurrentLinkedQueue<SocketChannel>();
+
+    /** 他のスレッドからの更新待ちの要素. **/
+    private final Queue<NioElement> updateQueue = new ConcurrentLinkedQueue<NioElement>();
+
+    /** 現在の接続数(概算). **/
+    private volatile int connections = 0;
+
+    private volatile boolean stopFlag = true;
+    private volatile boolean exitFlag = false;
+
+    /** LOG. **/
+    private static final Log LOG = LogFactory.getLog(NioReactor.class);
+
+    /**
+     * コンストラクタ.
+     *
+     * @param no
+     *            リアクター番号を設定します.
+     * @param byteBufferLength
+     *            Nioバッファ長を設定します.
+     * @param writeTimeout
+     *            送信が進まない場合のタイムアウト値(ミリ秒)を設定します.
+     * @param directWrite
+     *            [true]の場合、他のスレッドからの送信は直接行います.
+     * @param call
+     *            Nioコールバックを設定します.
+     * @param metrics
+     *            Nioメトリクスを設定します.
+     * @exception Exception
+     *                例外.
+     */
+    public NioReactor(int no, int byteBufferLength, int writeTimeout,
+            boolean directWrite, NioCall call, NioMetrics metrics)
+            throws Exception {
+        this.no = no;
+        this.byteBufferLength = byteBufferLength;
+        this.writeTimeout = writeTimeout;
+        this.directWrite = directWrite;
+        this.call = call;
+        this.metrics = metrics;
+        this.selector = new NioSelector();
+    }
+
+    public void startThread() {
+        stopFlag = false;
+        setDaemon(true);
+        start();
+    }
+
+    public void stopThread() {
+        stopFlag = true;
+        wakeup();
+    }
+
+    public boolean isStopThread() {
+        return stopFlag;
+    }
+
+    public boolean isExitThread() {
+        return exitFlag;
+    }
+
+    /**
+     * リアクター番号を取得.
+     *
+     * @return int リアクター番号が返却されます.
+     */
+    public int getNo() {
+        return no;
+    }
+
+    /**
+     * 現在の接続数を取得.
+     *
+     * @return int 登録待ちを含む、現在の接続数(概算)が返却されます.
+     */
+    public int getConnections() {
+        return connections + registerQueue.size();
+    }
+
+    /**
+     * 受け付け済みのSocketChannelを登録. 実際のセレクタ登録は、リアクタースレッドで行います.
+     *
+     * @param channel
+     *            初期化済みのSocketChannelを設定します.
+     */
+    public void register(SocketChannel channel) {
+        registerQueue.offer(channel);
+        wakeup();
+    }
+
+    /**
+     * 他のスレッドからの送信を、直接行うかチェック.
+     *
+     * @return boolean [true]の場合、直接送信します.
+     */
+    public boolean isDirectWrite() {
+        return directWrite;
+    }
+
+    /**
+     * 現在のスレッドがリアクタースレッドかチェック.
+     *
+     * @return boolean [true]の場合、リアクタースレッドです.
+     */
+    public boolean isReactorThread() {
+        return Thread.currentThread() == this;
+    }
+
+    /** セレクタのwakeup. 前回のselect以降に呼び出し済みの場合は何もしない. **/
+    protected void wakeup() {
+        if (selector.wakeup()) {
+            metrics.wakeup();
+        }
+    }
+
+    /** SelectionKeyの監視対象を変更. **/
+    protected void interestOps(SelectionKey key, int ops) {
+        key.interestOps(ops);
+        metrics.interestOps();
+    }
+
+    /**
+     * 要素の更新を依頼. interestOpsとタイムアウト時間は、リアクタースレッドで
+     * 次のselectの前に反映されます.
+     *
+     * @param em
+     *            対象の要素を設定します.
+     * @param wakeup
+     *            [true]の場合、select待機中のリアクターを起こします.
+     */
+    protected void update(NioElement em, boolean wakeup) {
+        if (em.updateState.put(1) == 0) {
+            updateQueue.offer(em);
+        }
+        if (wakeup) {
+            wakeup();
+        }
+    }
+
+    /**
+     * 他のスレッドで全ての送信が完了した場合の処理.
+     *
+     * @param em
+     *            対象の要素を設定します.
+     */
+    protected void complete(NioElement em) {
+        try {
+            // [call] 送信処理.
+            if (!call.send(em)) {
+                em.clear();
+            }
+        } catch (Exception e) {
+            LOG.debug("error", e);
+            em.clear();
+        }
+
+        // 次のタイムアウト時間の反映は急がない.
+        update(em, false);
+    }
+
+    public void run() {
+        LOG.info("*** start origin nioReactor(" + no + ").");
+        ThreadDeath d = null;
+        try {
+            d = executeThread();
+        } finally {
+
+            // 登録待ちのSocketChannelをクローズ.
+            SocketChannel ch;
+            while ((ch = registerQueue.poll()) != null) {
+                close(ch);
+            }
+
+            // セレクタクローズ.
+            try {
+                selector.close();
+            } catch (Exception e) {
+            }
+            LOG.info("*** stop origin nioReactor(" + no + ").");
+            exitFlag = true;
+        }
+        if (d != null) {
+            throw d;
+        }
+    }
+
+    /** 登録前のSocketChannelをクローズ. **/
+    private final void close(SocketChannel ch) {
+        metrics.connectionCounter().dec();
+        try {
+            ch.close();
+        } catch (Exception e) {
+        }
+    }
+
+    /** 登録待ちのSocketChannelをセレクタに登録. **/
+    private final void registerChannels(TimingWheel wheel) {
+        SocketChannel ch;
+        NioElement em = null;
+        while ((ch = registerQueue.poll()) != null) {
+            try {
+                em = call.createElement();
+                em.setConnectionCounter(metrics.connectionCounter());
+                em.setReactor(this);
+                em.registor(selector, ch, SelectionKey.OP_READ);
+
+                // [call] accept処理コール.
+                if (!call.accept(em)) {
+                    em.clear();
+                } else {
+                    wheel.schedule(em);
+                }
+            } catch (Exception e) {
+                LOG.debug("error", e);
+                if (em != null) {
+                    em.clear();
+                } else {
+                    close(ch);
+                }
+            }
+            em = null;
+        }
+    }
+
+    /** 他のスレッドからの更新を反映. **/
+    private final void updateElements(TimingWheel wheel) {
+        NioElement em;
+        SelectionKey key;
+        int ops;
+        while ((em = updateQueue.poll()) != null) {
+            em.updateState.set(0);
+            try {
+
+                // 他のスレッドでクリアされた要素を解放.
+                if (!em.isConnection()) {
+                    em.clear();
+                } else if ((key = em.getKey()) != null
+                        && key.interestOps() != (ops = em.interestOps())) {
+                    interestOps(key, ops);
+                }
+            } catch (Exception e) {
+                LOG.debug("error", e);
+                em.clear();
+            }
+            wheel.schedule(em);
+        }
+    }
+
+    /** 処理スレッド. **/
+    private final ThreadDeath executeThread() {
+        final int OP_READ = SelectionKey.OP_READ;
+        final int OP_WRITE = SelectionKey.OP_WRITE;
+
+        final ByteBuffer buf = ByteBuffer.allocateDirect(byteBufferLength);
+        final NioCall cl = call;
+
+        ThreadDeath ret = null;
+        boolean endFlag = false;
+        long now = System.currentTimeMillis();
+        final TimingWheel wheel = new TimingWheel(WHEEL_TICK, WHEEL_LENGTH, now);
+
+        int ops;
+        Iterator<SelectionKey> it;
+        SelectionKey key = null;
+        SocketChannel ch = null;
+        NioElement em = null;
+        SendData sd = null;
+
+        while (!endFlag && !stopFlag) {
+            key = null;
+            em = null;
+            sd = null;
+            try {
+
+                while (!endFlag && !stopFlag) {
+                    key = null;
+                    em = null;
+                    sd = null;
+
+                    // 登録待ちのSocketChannelを登録.
+                    registerChannels(wheel);
+
+                    // 他のスレッドからの更新を反映.
+                    updateElements(wheel);
+
+                    // タイムアウトした要素を処理.
+                    now = System.currentTimeMillis();
+                    wheel.expire(now, cl, metrics);
+
+                    connections = selector.size();
+                    if (!selector.select(SELECTOR_TIMEOUT)) {
+                        continue;
+                    }
+                    now = System.currentTimeMillis();
+                    it = selector.iterator();
+
+                    while (it.hasNext()) {
+                        key = null;
+                        em = null;
+                        sd = null;
+                        try {
+
+                            // 今回処理対象の内容を取得.
+                            key = it.next();
+                            it.remove();
+
+                            // 対象キーが存在しない場合は処理しない.
+                            if (key == null || !key.isValid()) {
+
+                                // 取得情報が無効な場合は、オブジェクトクローズ.
+                                if (key != null) {
+                                    NioUtil.destroyKey(key);
+                                }
+                                continue;
+                            }
+
+                            // オプション処理を取得.
+                            ops = key.readyOps();
+
+                            // 必要情報の取得に失敗
+                            if ((em = (NioElement) key.attachment()) == null) {
+                                NioUtil.destroyKey(key);
+                                continue;
+                            }
+
+                            // ソケットチャネルを取得.
+                            ch = (SocketChannel) key.channel();
+
+                            // 書き込み可能処理.
+                            if ((ops & OP_WRITE) == OP_WRITE) {
+
+                                // ソケットがブロックするまで送信.
+                                sd = em.getSendData();
+                                if (sd.write(ch) < 0) {
+
+                                    // 通信エラー.
+                                    em.clear();
+                                    continue;
+                                }
+
+                                // 全ての送信が完了した場合.
+                                // [call] 送信処理.
+                                if (sd.takeEnd()) {
+                                    if (!cl.send(em)) {
+                                        em.clear();
+                                        continue;
+                                    }
+                                }
+                                // 送信データの追加待ちの場合.
+                                else if (sd.isEmpty()) {
+                                    em.clearDeadline();
+                                }
+                                // ソケットがブロックした場合.
+                                else {
+                                    em.setDeadline(NioElement.TIMEOUT_WRITE,
+                                            now + writeTimeout);
+                                }
+                            }
+
+                            // 読み込み可能処理.
+                            if ((ops & OP_READ) == OP_READ) {
+
+                                // 受信処理.
+                                buf.clear();
+                                if (ch.read(buf) < 0) {
+
+                                    // 通信エラー.
+                                    em.clear();
+                                    continue;
+                                }
+                                buf.flip();
+
+                                // [call] 受信処理.
+                                if (!cl.receive(em, buf)) {
+                                    em.clear();
+                                    continue;
+                                }
+                            }
+
+                            // タイムアウト時間をホイールに反映.
+                            wheel.schedule(em);
+
+                        } catch (IOException e) {
+                            LOG.debug("error", e);
+                            if (key != null) {
+                                NioUtil.destroyKey(key);
+                                key = null;
+                            }
+                            if (em != null) {
+                                em.clear();
+                                em = null;
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable to) {
+                LOG.debug("error", to);
+                if (key != null) {
+                    NioUtil.destroyKey(key);
+                    key = null;
+                }
+                if (em != null) {
+                    em.clear();
+                    em = null;
+                }
+                if (to instanceof InterruptedException) {
+                    endFlag = true;
+                } else if (to instanceof ThreadDeath) {
+                    endFlag = true;
+                    ret = (ThreadDeath) to;
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -128,8 +128,10 @@ public final class NioSelector {
 
     /**
      * 書き込み処理等のWakeup処理. この処理は[select]で待機中以外は、wakeupを呼び出しません.
+     *
+     * @return boolean [true]の場合、wakeupを呼び出しました.
      */
-    public final void wakeup() {
+    public final boolean wakeup() {
 
         // select呼び出し以降に、
         // wakeupが行われていない場合は
@@ -137,7 +139,9 @@ public final class NioSelector {
         if (!wakeupFlag) {
             wakeupFlag = true;
             selector.wakeup();
+            return true;
         }
+        return false;
     }
 
     /**
@@ -185,6 +189,15 @@ public final class NioSelector {
         return selector.keys().iterator();
     }
 
+    /**
+     * 登録されているSelectionKey数を取得.
+     * 
+     * @return int 登録されているSelectionKey数が返却されます.
+     */
+    public final int size() {
+        return selector.keys().size();
+    }
+
     /**
      * チャネル登録.
      * 
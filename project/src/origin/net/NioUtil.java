@@ -106,8 +106,8 @@ public final class NioUtil {
             try {
                 channel.close();
             } catch (Throwable ee) {
-                return false;
             }
+            return false;
         }
         return true;
     }
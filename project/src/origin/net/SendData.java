@@ -1,41 +1,389 @@
 package origin.net;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 
 /**
- * 送信データ.
+ * 送信データ. 送信対象のByteBufferをキューで保持し、GatheringByteChannelで
+ * まとめて送信します. 送信できなかったデータは、ByteBufferのポジションとして
+ * そのまま保持されます. ByteBufferの送信後に、FileRegionを送信することもできます.
+ *
+ * addで追加した場合は、endが呼び出されるまで送信途中の状態となり、
+ * キューが空になっても送信完了とはなりません.
+ *
+ * リアクタースレッド以外から追加した場合は、追加したスレッドで直接送信を行い、
+ * 送信しきれなかった場合のみ書き込み監視を設定します. 全て送信できた場合は、
+ * そのスレッドで送信完了の処理を行います.
  */
 public class SendData {
+    private static final int DEF_LENGTH = 4;
+    private static final int OP_READ = SelectionKey.OP_READ;
+    private static final int OP_READ_WRITE = SelectionKey.OP_READ
+            | SelectionKey.OP_WRITE;
+
     protected NioElement element = null;
 
-    protected int sendDataPosition = 0;
-    protected byte[] sendData = null;
+    protected ByteBuffer[] queue = new ByteBuffer[DEF_LENGTH];
+    protected int head = 0;
+    protected int tail = 0;
+    protected FileRegion file = null;
+
+    /** 全ての送信データが追加済みかのフラグ. **/
+    protected boolean endFlag = true;
+
+    /** 送信完了を通知済みかのフラグ. **/
+    protected boolean doneFlag = true;
+
+    /** 送信待ちのスレッド数. **/
+    protected int waitCount = 0;
+
+    /** 送信開始時間(ナノ秒). **/
+    protected long startTime = 0L;
 
     public SendData(NioElement em) {
         element = em;
     }
 
-    public void clear() {
-        sendData = null;
-        sendDataPosition = 0;
+    /**
+     * 送信データをクリア.
+     */
+    public synchronized void clear() {
+        for (int i = head; i < tail; i++) {
+            queue[i] = null;
+        }
+        head = 0;
+        tail = 0;
+        endFlag = true;
+        if (file != null) {
+            file.release();
+            file = null;
+        }
+        if (waitCount > 0) {
+            notifyAll();
+        }
     }
 
+    /**
+     * 送信データをセット. 前回の送信データはクリアされます.
+     *
+     * @param sendData
+     *            送信対象のバイナリを設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
     public void set(byte[] sendData) throws IOException {
-        this.sendData = sendData;
-        this.sendDataPosition = 0;
-        element.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        set(ByteBuffer.wrap(sendData));
+    }
+
+    /**
+     * 送信データをセット. 前回の送信データはクリアされます.
+     *
+     * @param segments
+     *            送信対象のByteBuffer群を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void set(ByteBuffer... segments) throws IOException {
+        synchronized (this) {
+            clear();
+            append(segments);
+            start();
+        }
+        flush(false);
+    }
+
+    /**
+     * 送信データをセット. 前回の送信データはクリアされます.
+     * ByteBuffer群を送信した後に、ファイル領域を送信します.
+     *
+     * @param region
+     *            送信対象のファイル領域を設定します.
+     * @param segments
+     *            ファイル領域の前に送信するByteBuffer群を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void set(FileRegion region, ByteBuffer... segments)
+            throws IOException {
+        synchronized (this) {
+            clear();
+            append(segments);
+            file = region;
+            start();
+        }
+        flush(false);
+    }
+
+    /**
+     * 送信データを追加. endが呼び出されるまで、送信途中の状態となります.
+     * ファイル領域の送信中は追加できません.
+     *
+     * @param segments
+     *            送信対象のByteBuffer群を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void add(ByteBuffer... segments) throws IOException {
+        synchronized (this) {
+            check();
+            append(segments);
+            endFlag = false;
+            start();
+        }
+        flush(true);
+    }
+
+    /**
+     * 最後の送信データを追加. キューの送信が終わった時点で送信完了となります.
+     *
+     * @param segments
+     *            送信対象のByteBuffer群を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void end(ByteBuffer... segments) throws IOException {
+        synchronized (this) {
+            check();
+            append(segments);
+            endFlag = true;
+            start();
+        }
+        flush(true);
+    }
+
+    /** 送信開始. 送信完了の通知後に、最初に追加された時間を保持する. **/
+    private final void start() {
+        if (doneFlag) {
+            doneFlag = false;
+            startTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * 送信開始時間を取得.
+     *
+     * @return long 送信完了の通知後に、最初に送信データが追加された時間(ナノ秒)が
+     *         返却されます.
+     */
+    public synchronized long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * 追加したデータの送信. リアクタースレッドからの場合は書き込み監視を設定し、
+     * それ以外のスレッドからは直接送信します.
+     *
+     * @param error
+     *            [true]の場合、切断されている場合に例外を返却します.
+     */
+    private final void flush(boolean error) throws IOException {
+        NioElement em = element;
+        if (!em.isDirectWrite()) {
+            em.interestOps(OP_READ_WRITE);
+            return;
+        }
+        SocketChannel ch = em.getChannel();
+        boolean end;
+        boolean empty;
+        try {
+            synchronized (this) {
+                if (ch == null || write(ch) < 0) {
+                    throw new IOException("接続は切断されています");
+                }
+                end = takeEnd();
+                empty = isEmpty();
+            }
+        } catch (IOException e) {
+            em.clear();
+            if (error) {
+                throw e;
+            }
+            return;
+        }
+
+        // 全て送信できた場合は送信完了、残りがある場合は書き込み監視.
+        if (end) {
+            em.sendComplete();
+        } else if (!empty) {
+            em.interestOps(OP_READ_WRITE);
+        }
+    }
+
+    /** 追加可能かチェック. **/
+    private final void check() throws IOException {
+        if (!element.isConnection()) {
+            throw new IOException("接続は切断されています");
+        } else if (file != null) {
+            throw new IOException("ファイル領域の送信中は、送信データを追加できません");
+        }
+    }
+
+    /** キューに追加. **/
+    private final void append(ByteBuffer[] segments) {
+        int len = segments.length;
+        if (tail + len > queue.length) {
+
+            // 送信済みの領域を詰める.
+            int use = tail - head;
+            ByteBuffer[] q = queue;
+            if (use + len > q.length) {
+                q = new ByteBuffer[(use + len) << 1];
+            }
+            System.arraycopy(queue, head, q, 0, use);
+            if (q == queue) {
+                for (int i = use; i < tail; i++) {
+                    q[i] = null;
+                }
+            }
+            queue = q;
+            head = 0;
+            tail = use;
+        }
+        for (int i = 0; i < len; i++) {
+            if (segments[i] != null && segments[i].hasRemaining()) {
+                queue[tail++] = segments[i];
+            }
+        }
+    }
+
+    /**
+     * 送信処理. ソケットがブロックするか、全ての情報を送信するまで書き込みます.
+     * 送信途中の状態でキューが空になった場合は、書き込み監視を解除します.
+     *
+     * @param channel
+     *            送信先のチャネルを設定します.
+     * @return long 送信されたデータ長が返却されます. [-1]の場合は通信エラーです.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public synchronized long write(GatheringByteChannel channel)
+            throws IOException {
+        long n;
+        long ret = 0L;
+        while (head < tail) {
+            if ((n = channel.write(queue, head, tail - head)) < 0) {
+                return -1L;
+            }
+            ret += n;
+
+            // 送信済みのByteBufferをキューから除外.
+            while (head < tail && !queue[head].hasRemaining()) {
+                queue[head++] = null;
+            }
+
+            // ソケットがブロックした場合.
+            if (n == 0L) {
+                break;
+            }
+        }
+        if (head == tail) {
+            head = 0;
+            tail = 0;
+
+            // ファイル領域の送信.
+            if (file != null) {
+                if ((n = file.transferTo(channel)) < 0) {
+                    return -1L;
+                }
+                ret += n;
+                if (!file.hasRemaining()) {
+                    file.release();
+                    file = null;
+                }
+            }
+
+            // 送信途中で、送信対象のデータが無くなった場合.
+            if (file == null && !endFlag) {
+                element.interestOps(OP_READ);
+            }
+        }
+        if (waitCount > 0) {
+            notifyAll();
+        }
+        return ret;
+    }
+
+    /**
+     * 未送信のデータ長が指定サイズ以下になるまで待機.
+     *
+     * @param max
+     *            未送信のデータ長の上限を設定します.
+     * @param timeout
+     *            タイムアウト値(ミリ秒)を設定します.
+     * @exception IOException
+     *                タイムアウト、または切断された場合.
+     */
+    public synchronized void await(long max, int timeout) throws IOException {
+        long end = System.currentTimeMillis() + timeout;
+        long w;
+        waitCount++;
+        try {
+            while (remaining() > max) {
+                if (!element.isConnection()) {
+                    throw new IOException("接続は切断されています");
+                } else if ((w = end - System.currentTimeMillis()) <= 0L) {
+                    throw new IOException("送信タイムアウトです");
+                }
+                try {
+                    wait(w);
+                } catch (InterruptedException e) {
+                    throw new IOException("送信待機中に割り込まれました");
+                }
+            }
+        } finally {
+            waitCount--;
+        }
+    }
+
+    /**
+     * 送信対象のデータが存在しないかチェック.
+     *
+     * @return boolean [true]の場合、送信対象のデータは存在しません.
+     */
+    public synchronized boolean isEmpty() {
+        return head == tail && file == null;
     }
 
-    public void setPosition(int pos) {
-        sendDataPosition = pos;
+    /**
+     * 送信完了を取得. 送信完了の状態で、まだ取得されていない場合のみ[true]を返却します.
+     * 送信完了の処理が、リアクタースレッドと直接送信したスレッドで重複しないように
+     * 利用します.
+     *
+     * @return boolean [true]の場合、送信完了です.
+     */
+    public synchronized boolean takeEnd() {
+        if (!doneFlag && head == tail && file == null && endFlag) {
+            doneFlag = true;
+            return true;
+        }
+        return false;
     }
 
-    public byte[] get() {
-        return sendData;
+    /**
+     * 送信完了かチェック.
+     *
+     * @return boolean [true]の場合、全ての送信データが追加済みで、送信が完了しています.
+     */
+    public synchronized boolean isEnd() {
+        return head == tail && file == null && endFlag;
     }
 
-    public int getPosition() {
-        return sendDataPosition;
+    /**
+     * 未送信のデータ長を取得.
+     *
+     * @return long 未送信のデータ長が返却されます.
+     */
+    public synchronized long remaining() {
+        long ret = 0L;
+        for (int i = head; i < tail; i++) {
+            ret += queue[i].remaining();
+        }
+        if (file != null) {
+            ret += file.remaining();
+        }
+        return ret;
     }
 }
@@ -0,0 +1,153 @@
+package origin.net;
+
+/**
+ * タイミングホイール. 通信要素のタイムアウトを、時間をスロットにハッシュした
+ * リングで管理します. 登録、変更、削除は要素内のリンクを付け替えるだけのO(1)で、
+ * 期限切れのチェックは経過したスロットのみを対象とします.
+ *
+ * 要素のタイムアウト時間(deadline)は他のスレッドから変更されますが、
+ * ホイールの操作はリアクタースレッドのみで行います. 期限を延長した場合は
+ * 登録済みのスロットの処理時に再登録されるため、ホイールの操作は不要です.
+ */
+final class TimingWheel {
+    private final int tick;
+    private final int mask;
+    private final NioElement[] slots;
+    private long current;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param tick
+     *            1スロットの時間(ミリ秒)を設定します.
+     * @param length
+     *            スロット数を設定します. 2のn乗に切り上げられます.
+     * @param now
+     *            現在時間を設定します.
+     */
+    TimingWheel(int tick, int length, long now) {
+        int n = 1;
+        while (n < length) {
+            n <<= 1;
+        }
+        this.tick = tick;
+        this.mask = n - 1;
+        this.slots = new NioElement[n];
+        this.current = now / tick;
+    }
+
+    /**
+     * 要素のタイムアウト時間をホイールに反映.
+     * 登録済みの時間より早くなった場合のみ、登録し直します.
+     *
+     * @param em
+     *            対象の要素を設定します.
+     */
+    void schedule(NioElement em) {
+        long d = em.deadline;
+        if (d == NioElement.NO_DEADLINE || !em.isConnection()) {
+            if (em.wheelTick != -1L) {
+                unlink(em);
+            }
+            return;
+        }
+        long t = d / tick + 1L;
+        if (em.wheelTick != -1L) {
+            if (t >= em.wheelTick) {
+                return;
+            }
+            unlink(em);
+        }
+        link(em, t);
+    }
+
+    /**
+     * 期限切れの要素を処理.
+     *
+     * @param now
+     *            現在時間を設定します.
+     * @param call
+     *            タイムアウト時のコールバックを設定します.
+     * @param metrics
+     *            メトリクスを設定します.
+     */
+    void expire(long now, NioCall call, NioMetrics metrics) {
+        long target = now / tick;
+        if (target - current > slots.length) {
+            current = target - slots.length;
+        }
+        NioElement em, next;
+        long d;
+        while (current < target) {
+            current++;
+            em = slots[(int) (current & mask)];
+            while (em != null) {
+                next = em.wheelNext;
+
+                // 次の周回以降の要素.
+                if (em.wheelTick > current) {
+                    em = next;
+                    continue;
+                }
+                unlink(em);
+                d = em.deadline;
+                if (em.isConnection() && d != NioElement.NO_DEADLINE) {
+                    if (d > now) {
+
+                        // 延長されている場合は再登録.
+                        link(em, d / tick + 1L);
+                    } else {
+                        timeout(em, now, call, metrics);
+                    }
+                }
+                em = next;
+            }
+        }
+    }
+
+    /** タイムアウト処理. **/
+    private static final void timeout(NioElement em, long now, NioCall call,
+            NioMetrics metrics) {
+        metrics.timeout(em.deadlineType);
+        try {
+            if (call.timeout(em, now)) {
+                return;
+            }
+        } catch (Exception e) {
+        }
+        em.clear();
+    }
+
+    /** スロットに追加. **/
+    private final void link(NioElement em, long t) {
+        if (t <= current) {
+            t = current + 1L;
+        }
+        int no = (int) (t & mask);
+        NioElement head = slots[no];
+        em.wheelTick = t;
+        em.wheelPrev = null;
+        em.wheelNext = head;
+        if (head != null) {
+            head.wheelPrev = em;
+        }
+        slots[no] = em;
+    }
+
+    /** スロットから除外. **/
+    private final void unlink(NioElement em) {
+        NioElement p = em.wheelPrev;
+        NioElement n = em.wheelNext;
+        if (p != null) {
+            p.wheelNext = n;
+        } else {
+            slots[(int) (em.wheelTick & mask)] = n;
+        }
+        if (n != null) {
+            n.wheelPrev = p;
+        }
+        em.wheelPrev = null;
+        em.wheelNext = null;
+        em.wheelTick = -1L;
+    }
+}
@@ -0,0 +1,132 @@
+package origin.net.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import origin.net.SendData;
+
+/**
+ * Chunked送信用OutputStream. 書き込まれたデータをチャンクサイズ毎に
+ * [Transfer-Encoding: chunked]の形式でSendDataに追加します.
+ * 未送信のデータが上限を超える場合は、送信されるまで待機します.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] CRLF = new byte[] { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = new byte[] { '0', '\r', '\n',
+            '\r', '\n' };
+
+    private final SendData sendData;
+    private final boolean chunked;
+    private final long maxPending;
+    private final int timeout;
+
+    private byte[] buf;
+    private int length = 0;
+    private boolean closeFlag = false;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param sendData
+     *            送信先のSendDataを設定します.
+     * @param chunked
+     *            [false]の場合、チャンク形式にせずにそのまま送信します.
+     * @param chunkSize
+     *            チャンクサイズを設定します.
+     * @param maxPending
+     *            未送信データ長の上限を設定します.
+     * @param timeout
+     *            送信待機のタイムアウト値(ミリ秒)を設定します.
+     */
+    public ChunkedOutputStream(SendData sendData, boolean chunked,
+            int chunkSize, long maxPending, int timeout) {
+        this.sendData = sendData;
+        this.chunked = chunked;
+        this.buf = new byte[chunkSize];
+        this.maxPending = maxPending;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == buf.length) {
+            sendChunk();
+        }
+        buf[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int n;
+        while (len > 0) {
+            if (length == buf.length) {
+                sendChunk();
+            }
+            n = Math.min(len, buf.length - length);
+            System.arraycopy(b, off, buf, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * 書き込み済みのデータをチャンクとして送信.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            sendChunk();
+        }
+    }
+
+    /**
+     * 残りのデータと、終端チャンクを送信.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closeFlag) {
+            return;
+        }
+        closeFlag = true;
+        ByteBuffer[] last = chunk();
+        if (chunked) {
+            sendData.end(last[0], last[1], last[2], ByteBuffer.wrap(LAST_CHUNK));
+        } else {
+            sendData.end(last);
+        }
+        buf = null;
+    }
+
+    /** チャンク送信. **/
+    private final void sendChunk() throws IOException {
+        if (closeFlag) {
+            throw new IOException("既にクローズされています");
+        }
+
+        // 未送信のデータが上限を超える場合は待機.
+        sendData.await(maxPending, timeout);
+        sendData.add(chunk());
+    }
+
+    /** 現在のデータをチャンクに変換. **/
+    private final ByteBuffer[] chunk() throws IOException {
+        int len = length;
+        length = 0;
+        if (len == 0) {
+            return new ByteBuffer[] { null, null, null };
+        }
+
+        // 送信中のデータは送信完了まで参照されるのでコピーする.
+        byte[] b = new byte[len];
+        System.arraycopy(buf, 0, b, 0, len);
+        if (!chunked) {
+            return new ByteBuffer[] { ByteBuffer.wrap(b) };
+        }
+        return new ByteBuffer[] {
+                ByteBuffer.wrap((Integer.toHexString(len) + "\r\n")
+                        .getBytes("UTF8")), ByteBuffer.wrap(b),
+                ByteBuffer.wrap(CRLF) };
+    }
+}
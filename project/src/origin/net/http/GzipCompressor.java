@@ -0,0 +1,391 @@
+package origin.net.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * GZIP圧縮処理. Deflaterを使い回すため、スレッド毎に生成して利用します.
+ * 文字列はUTF8変換しながら圧縮して、送信用のByteBuffer群として返却します.
+ */
+public final class GzipCompressor {
+
+    /** GZIPヘッダ. **/
+    private static final byte[] HEADER = new byte[] { 0x1f, (byte) 0x8b,
+            Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    /** GZIPフッタ長. **/
+    private static final int TRAILER_LENGTH = 8;
+
+    /** UTF8変換単位の文字数(変換後は最大3倍のバイト数). **/
+    private static final int CHAR_LENGTH = 1024;
+    private static final int ENCODE_LENGTH = CHAR_LENGTH * 3;
+
+    /** 最小出力バッファ長. **/
+    private static final int MIN_BUFFER_LENGTH = 64;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final CharsetEncoder encoder;
+    private final char[] chars = new char[CHAR_LENGTH];
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(ENCODE_LENGTH);
+    private final int bufferLength;
+    private final int minLength;
+    private final String[] contentTypes;
+
+    /** 出力情報. **/
+    private ByteBuffer[] out = null;
+    private int outLength = 0;
+    private byte[] current = null;
+    private int position = 0;
+    private long length = 0L;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param level
+     *            圧縮レベルを設定します.
+     * @param minLength
+     *            圧縮対象とする最小Body長を設定します.
+     * @param contentTypes
+     *            圧縮対象のContent-Type(前方一致)を設定します.
+     * @param bufferLength
+     *            出力バッファ長を設定します.
+     */
+    public GzipCompressor(int level, int minLength, String[] contentTypes,
+            int bufferLength) {
+        this.deflater = new Deflater(level, true);
+        this.encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.minLength = minLength;
+        this.bufferLength = bufferLength;
+        int len = contentTypes == null ? 0 : contentTypes.length;
+        this.contentTypes = new String[len];
+        for (int i = 0; i < len; i++) {
+            this.contentTypes[i] = contentTypes[i].trim().toLowerCase();
+        }
+    }
+
+    /**
+     * オブジェクト破棄.
+     */
+    public void destroy() {
+        deflater.end();
+    }
+
+    /**
+     * 圧縮対象かチェック.
+     *
+     * @param contentType
+     *            対象のContent-Typeを設定します.
+     * @param len
+     *            対象のBody長を設定します.
+     * @return boolean [true]の場合、圧縮対象です.
+     */
+    public boolean isCompress(String contentType, long len) {
+        if (len < minLength) {
+            return false;
+        }
+        return isCompress(contentType);
+    }
+
+    /**
+     * 圧縮対象のContent-Typeかチェック.
+     *
+     * @param contentType
+     *            対象のContent-Typeを設定します.
+     * @return boolean [true]の場合、圧縮対象です.
+     */
+    public boolean isCompress(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String[] list = contentTypes;
+        int len = list.length;
+        for (int i = 0; i < len; i++) {
+            if (contentType.regionMatches(true, 0, list[i], 0,
+                    list[i].length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 文字列をUTF8変換しながらGZIP圧縮.
+     *
+     * @param body
+     *            対象の文字列を設定します.
+     * @return ByteBuffer[] 圧縮結果が返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public ByteBuffer[] compress(String body) throws IOException {
+        deflater.reset();
+        crc.reset();
+        encoder.reset();
+        out = new ByteBuffer[4];
+        outLength = 0;
+        length = 0L;
+        current = new byte[Math.min(bufferLength,
+                Math.max(MIN_BUFFER_LENGTH, (body.length() >> 1) + 32))];
+        position = 0;
+        put(HEADER, 0, HEADER.length);
+
+        // 一定文字数毎にUTF8変換しながら圧縮.
+        // サロゲートペアは分割しない.
+        char[] cb = chars;
+        ByteBuffer eb = encodeBuffer;
+        CharBuffer in;
+        CoderResult cr;
+        long inLength = 0L;
+        int len = body.length();
+        int off = 0;
+        int end;
+        boolean last;
+        while (off < len) {
+            end = Math.min(len, off + CHAR_LENGTH);
+            if (end < len && Character.isHighSurrogate(body.charAt(end - 1))) {
+                end--;
+            }
+            last = end == len;
+            body.getChars(off, end, cb, 0);
+            in = CharBuffer.wrap(cb, 0, end - off);
+            do {
+                eb.clear();
+                cr = encoder.encode(in, eb, last);
+                if (last && cr.isUnderflow()) {
+                    encoder.flush(eb);
+                }
+                eb.flip();
+                inLength += deflate(eb.array(), 0, eb.limit());
+            } while (cr.isOverflow());
+            off = end;
+        }
+        return finish(inLength);
+    }
+
+    /**
+     * UTF8変換済みのバイナリをGZIP圧縮.
+     *
+     * @param body
+     *            対象のByteBuffer群を設定します. ポジションは変更しません.
+     * @param bodyLength
+     *            対象のデータ長を設定します.
+     * @return ByteBuffer[] 圧縮結果が返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public ByteBuffer[] compress(ByteBuffer[] body, long bodyLength)
+            throws IOException {
+        deflater.reset();
+        crc.reset();
+        out = new ByteBuffer[4];
+        outLength = 0;
+        length = 0L;
+        current = new byte[(int) Math.min(bufferLength,
+                Math.max(MIN_BUFFER_LENGTH, (bodyLength >> 2) + 32))];
+        position = 0;
+        put(HEADER, 0, HEADER.length);
+        long inLength = 0L;
+        ByteBuffer b;
+        int len = body.length;
+        for (int i = 0; i < len; i++) {
+            b = body[i];
+            inLength += deflate(b.array(), b.arrayOffset() + b.position(),
+                    b.remaining());
+        }
+        return finish(inLength);
+    }
+
+    /**
+     * 前回圧縮したデータ長を取得.
+     *
+     * @return long 圧縮後のデータ長が返却されます.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * ストリーミング用のGZIP圧縮OutputStreamを取得. 取得したOutputStreamが
+     * クローズされるまで、このオブジェクトの他の圧縮処理は利用できません.
+     *
+     * @param o
+     *            出力先のOutputStreamを設定します.
+     * @return OutputStream GZIP圧縮OutputStreamが返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public OutputStream stream(OutputStream o) throws IOException {
+        deflater.reset();
+        crc.reset();
+        o.write(HEADER);
+        return new GzipStream(o);
+    }
+
+    /** 圧縮を終了して、圧縮結果を取得. **/
+    private final ByteBuffer[] finish(long inLength) {
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(Deflater.NO_FLUSH);
+        }
+        byte[] t = trailer(crc.getValue(), inLength);
+        put(t, 0, t.length);
+
+        // 最後のバッファを出力.
+        if (position > 0) {
+            push(ByteBuffer.wrap(current, 0, position));
+        }
+        current = null;
+        ByteBuffer[] ret = new ByteBuffer[outLength];
+        System.arraycopy(out, 0, ret, 0, outLength);
+        out = null;
+        return ret;
+    }
+
+    /** 圧縮. **/
+    private final int deflate(byte[] b, int off, int len) {
+        if (len > 0) {
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain(Deflater.NO_FLUSH);
+            }
+        }
+        return len;
+    }
+
+    /** 圧縮結果を出力バッファに取得. **/
+    private final void drain(int flush) {
+        if (position == current.length) {
+            next();
+        }
+        position += deflater.deflate(current, position, current.length
+                - position, flush);
+    }
+
+    /** GZIPフッタを生成. **/
+    private static final byte[] trailer(long crcValue, long inLength) {
+        byte[] b = new byte[TRAILER_LENGTH];
+        int c = (int) crcValue;
+        int n = (int) inLength;
+        b[0] = (byte) c;
+        b[1] = (byte) (c >> 8);
+        b[2] = (byte) (c >> 16);
+        b[3] = (byte) (c >> 24);
+        b[4] = (byte) n;
+        b[5] = (byte) (n >> 8);
+        b[6] = (byte) (n >> 16);
+        b[7] = (byte) (n >> 24);
+        return b;
+    }
+
+    /** 出力バッファに書き込み. **/
+    private final void put(byte[] b, int off, int len) {
+        int n;
+        while (len > 0) {
+            if (position == current.length) {
+                next();
+            }
+            n = Math.min(len, current.length - position);
+            System.arraycopy(b, off, current, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** 出力バッファを確定して、次のバッファを生成. **/
+    private final void next() {
+        push(ByteBuffer.wrap(current, 0, position));
+        current = new byte[bufferLength];
+        position = 0;
+    }
+
+    /** 出力結果に追加. **/
+    private final void push(ByteBuffer buf) {
+        if (outLength == out.length) {
+            ByteBuffer[] n = new ByteBuffer[outLength << 1];
+            System.arraycopy(out, 0, n, 0, outLength);
+            out = n;
+        }
+        out[outLength++] = buf;
+        length += buf.remaining();
+    }
+
+    /** ストリーミング用GZIP圧縮OutputStream. **/
+    private final class GzipStream extends OutputStream {
+        private final OutputStream o;
+        private final byte[] buf = new byte[bufferLength];
+        private long inLength = 0L;
+        private boolean closeFlag = false;
+
+        GzipStream(OutputStream o) {
+            this.o = o;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closeFlag) {
+                throw new IOException("既にクローズされています");
+            } else if (len <= 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            inLength += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                output(Deflater.NO_FLUSH);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closeFlag) {
+                return;
+            }
+            int n;
+            do {
+                n = output(Deflater.SYNC_FLUSH);
+            } while (n == buf.length);
+            o.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closeFlag) {
+                return;
+            }
+            closeFlag = true;
+            deflater.finish();
+            while (!deflater.finished()) {
+                output(Deflater.NO_FLUSH);
+            }
+            o.write(trailer(crc.getValue(), inLength));
+            o.close();
+        }
+
+        /** 圧縮結果を出力. **/
+        private final int output(int flush) throws IOException {
+            int n = deflater.deflate(buf, 0, buf.length, flush);
+            if (n > 0) {
+                o.write(buf, 0, n);
+            }
+            return n;
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package origin.net.http;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
-import origin.util.ArrayMap;
 import origin.util.ByteArrayIO;
-import origin.util.Utils;
 
 /**
  * Httpリクエスト解析.
@@ -18,7 +17,8 @@ public final class HttpAnalysis {
     public static final byte[] END_LINE = "\r\n\r\n".getBytes();
 
     /**
-     * Httpヘッダの終端が存在するかチェック.
+     * Httpヘッダの終端が存在するかチェック. 受信途中のリクエストを繰り返し
+     * 解析する場合は、HttpParserを利用してください.
      * 
      * @param buffer
      */
@@ -30,94 +30,162 @@ public final class HttpAnalysis {
      * HttpHeaderオブジェクトの生成.
      * 
      * @param buffer
-     * @param endPoint
      * @return HttpHeader
      * @exception IOException
      */
-    public static final HttpHeader getHeader(ByteArrayIO buffer, int endPoint)
+    public static final HttpHeader getHeader(ByteArrayIO buffer)
             throws IOException {
-        return new HttpHeader(buffer, endPoint);
+        return new HttpHeader(buffer);
     }
 
     /**
      * HttpRequestオブジェクトの生成.
      * 
      * @param buffer
-     * @param endPoint
      * @return HttpRequest
      * @exception IOException
      */
-    public static final HttpRequest getRequest(ByteArrayIO buffer, int endPoint)
+    public static final HttpRequest getRequest(ByteArrayIO buffer)
             throws IOException {
-        return new HttpRequest(buffer, endPoint);
+        return new HttpRequest(buffer);
     }
 
     /**
-     * パラメータ変換処理. POSTのデータおよび、GETのデータを解析します.
+     * GETパラメータ変換処理. URLのクエリを、ヘッダのバイナリから解析します.
      * 
-     * @param body
-     *            対象のBody情報を設定します.
-     * @param cset
-     *            対象のキャラクタセットを設定します.
-     * @param pos
-     *            対象のポジションを設定します.
-     * @return Map<String,String> 変換結果を返却します.
+     * @param header
+     *            対象のHttpヘッダを設定します.
+     * @param max
+     *            最大パラメータ数を設定します. 0以下の場合は無制限です.
+     * @return Map<String,String> 変換結果を返却します. パラメータ数が
+     *         最大値を超える場合は[null]が返却されます.
      * @exception IOException
      *                IO例外.
      */
-    public static final Map<String, String> paramsAnalysis(String body, int pos)
-            throws IOException {
-        return paramsAnalysis(body, "UTF8", pos);
+    public static final Map<String, String> paramsAnalysis(HttpHeader header,
+            int max) throws IOException {
+        byte[] b = header.headers;
+        int off = header.urlStart;
+        int end = header.urlEnd;
+        if (b == null) {
+            b = header.url.getBytes("UTF8");
+            off = 0;
+            end = b.length;
+        }
+        for (; off < end; off++) {
+            if (b[off] == '?') {
+                return HttpParams.create(b, off + 1, end, max);
+            }
+        }
+        return HttpParams.create(b, end, end, max);
     }
 
     /**
      * パラメータ変換処理. POSTのデータおよび、GETのデータを解析します.
      * 
-     * @param body
-     *            対象のBody情報を設定します.
-     * @param cset
-     *            対象のキャラクタセットを設定します.
-     * @param pos
+     * 解析時はパラメータ毎の位置のみを取得して、キーと要素は最初に
+     * アクセスされた時点でURLデコードします. また、最大パラメータ数を
+     * 超える場合は解析を中断します.
+     * 
+     * @param b
+     *            対象のバイナリを設定します.
+     * @param off
      *            対象のポジションを設定します.
-     * @return ListMap 変換結果を返却します.
-     * @exception IOException
-     *                IO例外.
+     * @param len
+     *            対象の長さを設定します.
+     * @param max
+     *            最大パラメータ数を設定します. 0以下の場合は無制限です.
+     * @return Map<String,String> 変換結果を返却します. パラメータ数が
+     *         最大値を超える場合は[null]が返却されます.
+     */
+    public static final Map<String, String> paramsAnalysis(byte[] b, int off,
+            int len, int max) {
+        return HttpParams.create(b, off, off + len, max);
+    }
+
+    /**
+     * URLデコード. UTF8のバイナリから直接文字列に変換します.
+     * [%]と[+]が存在しない場合は、そのまま文字列に変換します.
+     * [%]の後ろが16進数2桁でない場合は、[%]のまま変換します.
+     * 
+     * @param b
+     *            対象のバイナリを設定します.
+     * @param off
+     *            対象の開始位置を設定します.
+     * @param end
+     *            対象の終端位置を設定します.
+     * @return String 変換された文字列が返却されます.
      */
-    public static final Map<String, String> paramsAnalysis(String body,
-            String cset, int pos) throws IOException {
-        // パラメータバイナリを解析.
-        int p, n;
-        String k;
-        int b = pos;
-        Map<String, String> ret = new ArrayMap();
-        while (true) {
-            n = body.indexOf("&", b);
-            if (n == -1) {
-                k = body.substring(b);
-                if ((p = k.indexOf("=")) == -1) {
-                    break;
-                }
-                if (k.indexOf("%") != -1) {
-                    ret.put(Utils.urlDecode(k.substring(0, p), cset),
-                            Utils.urlDecode(k.substring(p + 1), cset));
-                } else {
-                    ret.put(k.substring(0, p), k.substring(p + 1));
-                }
+    public static final String urlDecode(byte[] b, int off, int end) {
+        return decode(b, off, end, true);
+    }
+
+    /**
+     * URLのパスをデコード. [%]のみを変換し、[+]はそのまま変換します.
+     * [%]の後ろが16進数2桁でない場合は、[%]のまま変換します.
+     * 
+     * @param b
+     *            対象のバイナリを設定します.
+     * @param off
+     *            対象の開始位置を設定します.
+     * @param end
+     *            対象の終端位置を設定します.
+     * @return String 変換された文字列が返却されます.
+     */
+    public static final String pathDecode(byte[] b, int off, int end) {
+        return decode(b, off, end, false);
+    }
+
+    /** デコード処理. plusが[true]の場合は、[+]を空白に変換. **/
+    @SuppressWarnings("deprecation")
+    private static final String decode(byte[] b, int off, int end,
+            boolean plus) {
+        int len = end - off;
+        if (len <= 0) {
+            return "";
+        }
+        int i;
+        byte c;
+        boolean ascii = true;
+        for (i = off; i < end; i++) {
+            if ((c = b[i]) == '%' || (plus && c == '+')) {
                 break;
+            } else if (c < 0) {
+                ascii = false;
             }
-            k = body.substring(b, n);
-            if ((p = k.indexOf("=")) == -1) {
-                b = n + 1;
-                continue;
-            }
-            if (k.indexOf("%") != -1) {
-                ret.put(Utils.urlDecode(k.substring(0, p), cset),
-                        Utils.urlDecode(k.substring(p + 1), cset));
+        }
+        if (i == end) {
+            // ASCIIのみの場合は、文字コード変換を行わない.
+            return ascii ? new String(b, 0, off, len)
+                    : new String(b, off, len, StandardCharsets.UTF_8);
+        }
+        byte[] o = new byte[len];
+        int j = i - off;
+        System.arraycopy(b, off, o, 0, j);
+        int h, l;
+        for (; i < end; i++) {
+            if ((c = b[i]) == '+' && plus) {
+                o[j++] = ' ';
+            } else if (c == '%' && i + 2 < end
+                    && (h = hex(b[i + 1])) != -1 && (l = hex(b[i + 2])) != -1) {
+                o[j++] = (byte) ((h << 4) | l);
+                i += 2;
             } else {
-                ret.put(k.substring(0, p), k.substring(p + 1));
+                o[j++] = c;
             }
-            b = n + 1;
         }
-        return ret;
+        return new String(o, 0, j, StandardCharsets.UTF_8);
+    }
+
+    /** 16進数の文字を数値に変換. 16進数でない場合は-1. **/
+    private static final int hex(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
     }
 }
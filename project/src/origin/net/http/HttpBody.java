@@ -0,0 +1,665 @@
+package origin.net.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import origin.net.NioElement;
+import origin.util.ByteArrayIO;
+
+/**
+ * HttpリクエストのBody. 受信バッファからContent-Length、またはchunked形式の
+ * Bodyを逐次取り出し、InputStreamとして読み込めるようにします.
+ * 受信したBody長が指定サイズを超える場合は、一時ファイルに退避して
+ * ヒープ上に保持しません.
+ *
+ * 受信(receive)はNIOスレッドから、読み込み(read)はワーカースレッドから
+ * 呼び出されます. 一時ファイルの作成と書き込みは、NIOスレッドを止めない
+ * ように、受信データを退避待ちのバッファに移して、一時ファイル書き込み用の
+ * スレッドで行います. 退避待ちのバッファが上限を超えた場合は、書き込みが
+ * 追いつくまで受信を一時停止します.
+ */
+public final class HttpBody extends InputStream implements Iterable<byte[]> {
+
+    /** 一時ファイル名. **/
+    private static final String TEMP_PREFIX = "origin";
+    private static final String TEMP_SUFFIX = ".body";
+
+    /** 作業バッファ長. **/
+    private static final int BUFFER_LENGTH = 8192;
+
+    /** 退避待ちバッファの上限. 超えた場合は受信を一時停止. **/
+    private static final int PENDING_LENGTH = 0x100000;
+
+    /** 一時ファイル書き込み用スレッド. **/
+    private static final Executor SPOOL = Executors
+            .newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "origin-spool");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /** 解析状態. **/
+    private static final int STATE_SIZE = 0;
+    private static final int STATE_EXTENSION = 1;
+    private static final int STATE_DATA = 2;
+    private static final int STATE_DATA_END = 3;
+    private static final int STATE_TRAILER = 4;
+    private static final int STATE_END = 5;
+
+    private final boolean chunked;
+    private final long contentLength;
+    private final long maxLength;
+    private final int spoolSize;
+    private final int timeout;
+
+    /** 解析状態. **/
+    private int state;
+    private long remaining;
+    private int sizeLength = 0;
+    private int lineLength = 0;
+    private byte[] work = null;
+
+    /** 受信済みのBody長. **/
+    private long length = 0L;
+
+    /** メモリ上のBody. **/
+    private final ByteArrayIO memory = new ByteArrayIO();
+
+    /** 一時ファイル. **/
+    private FileChannel file = null;
+    private long readPosition = 0L;
+    private long writePosition = 0L;
+
+    /** 一時ファイルへの退避待ち. **/
+    private boolean spool = false;
+    private boolean writing = false;
+    private ByteArrayIO pending = null;
+    private IOException spoolError = null;
+
+    /** 受信を一時停止する要素. **/
+    private NioElement element = null;
+    private boolean suspend = false;
+
+    private boolean overflow = false;
+    private boolean closeFlag = false;
+
+    /**
+     * コンストラクタ. 受信済みのBodyを設定します.
+     *
+     * @param body
+     *            Bodyを設定します.
+     */
+    public HttpBody(byte[] body) {
+        this.chunked = false;
+        this.contentLength = body == null ? 0L : body.length;
+        this.maxLength = Long.MAX_VALUE;
+        this.spoolSize = Integer.MAX_VALUE;
+        this.timeout = 0;
+        this.state = STATE_END;
+        if (body != null) {
+            try {
+                memory.write(body, 0, body.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            length = body.length;
+        }
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param contentLength
+     *            Content-Lengthを設定します. [-1]の場合は、chunked形式です.
+     * @param maxLength
+     *            最大Body長を設定します.
+     * @param spoolSize
+     *            一時ファイルに退避するBody長を設定します.
+     * @param timeout
+     *            読み込み待機のタイムアウト値(ミリ秒)を設定します.
+     */
+    public HttpBody(long contentLength, long maxLength, int spoolSize,
+            int timeout) {
+        this.chunked = contentLength < 0L;
+        this.contentLength = contentLength;
+        this.maxLength = maxLength;
+        this.spoolSize = spoolSize;
+        this.timeout = timeout;
+        if (chunked) {
+            state = STATE_SIZE;
+        } else if (contentLength == 0L) {
+            state = STATE_END;
+        } else {
+            state = STATE_DATA;
+            remaining = contentLength;
+        }
+    }
+
+    /**
+     * 受信を一時停止する要素を設定.
+     * 設定しない場合は、退避待ちのバッファが上限を超えても受信を続けます.
+     *
+     * @param em
+     *            Bodyを受信する要素を設定します.
+     */
+    public synchronized void setElement(NioElement em) {
+        this.element = em;
+    }
+
+    /**
+     * 受信処理. 受信バッファからBodyの範囲のみを取り出します.
+     * Bodyの後に続くデータは、受信バッファに残ります.
+     *
+     * @param in
+     *            受信バッファを設定します.
+     * @return boolean [true]の場合、Bodyの受信が完了しました.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public synchronized boolean receive(ByteArrayIO in) throws IOException {
+        if (overflow) {
+
+            // 最大長を超えた場合は、以降の受信データを破棄.
+            in.skip(in.size());
+            return false;
+        }
+        if (work == null) {
+            work = new byte[BUFFER_LENGTH];
+        }
+        byte[] b = work;
+        int n, p, len;
+        while (state != STATE_END && (len = in.size()) > 0) {
+            if (state == STATE_DATA) {
+                n = in.read(b, 0, (int) Math.min(remaining,
+                        Math.min(len, b.length)));
+                if (n <= 0) {
+                    break;
+                }
+                store(b, n);
+                if ((remaining -= n) == 0L) {
+                    state = chunked ? STATE_DATA_END : STATE_END;
+                }
+                if (overflow) {
+                    in.skip(in.size());
+                    break;
+                }
+                continue;
+            }
+
+            // chunkの制御行は、1バイト単位で解析.
+            n = in.peek(b, 0, Math.min(len, b.length));
+            for (p = 0; p < n && state != STATE_DATA && state != STATE_END; p++) {
+                control(b[p]);
+            }
+            in.skip(p);
+        }
+        if (state == STATE_END) {
+            work = null;
+            notifyAll();
+            return true;
+        }
+        return false;
+    }
+
+    /** chunkの制御行を解析. **/
+    private final void control(byte c) throws IOException {
+        switch (state) {
+        case STATE_SIZE:
+            if (c == '\n') {
+                if (sizeLength == 0) {
+                    throw new IOException("chunkサイズが不正です");
+                }
+                sizeLength = 0;
+                if (remaining == 0L) {
+                    state = STATE_TRAILER;
+                    lineLength = 0;
+                } else {
+                    state = STATE_DATA;
+                }
+            } else if (c == ';') {
+                state = STATE_EXTENSION;
+            } else if (c != '\r' && c != ' ' && c != '\t') {
+                int v = hex(c);
+                if (v == -1 || ++sizeLength > 15) {
+                    throw new IOException("chunkサイズが不正です");
+                }
+                remaining = (remaining << 4) | v;
+            }
+            break;
+        case STATE_EXTENSION:
+            if (c == '\n') {
+                state = STATE_SIZE;
+                control(c);
+            }
+            break;
+        case STATE_DATA_END:
+            if (c == '\n') {
+                state = STATE_SIZE;
+                remaining = 0L;
+            } else if (c != '\r') {
+                throw new IOException("chunkの終端が不正です");
+            }
+            break;
+        case STATE_TRAILER:
+            if (c == '\n') {
+                if (lineLength == 0) {
+                    state = STATE_END;
+                }
+                lineLength = 0;
+            } else if (c != '\r') {
+                lineLength++;
+            }
+            break;
+        }
+    }
+
+    /** 16進数変換. **/
+    private static final int hex(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /** 受信データを保存. **/
+    private final void store(byte[] b, int len) throws IOException {
+        if ((length += len) > maxLength) {
+            overflow = true;
+            release();
+            notifyAll();
+            return;
+        }
+
+        // クローズ済みの場合は、受信データを破棄.
+        if (closeFlag) {
+            return;
+        }
+
+        // 指定サイズを超える場合は、一時ファイルに退避.
+        // NIOスレッドでは退避待ちのバッファに移すだけで、書き込みは別スレッド.
+        if (!spool && length > spoolSize) {
+            spool = true;
+            pending = new ByteArrayIO();
+        }
+        if (spool) {
+            pending.write(b, 0, len);
+
+            // 書き込みが追いつかない場合は、受信を一時停止.
+            if (!suspend && element != null && pending.size() >= PENDING_LENGTH) {
+                suspend = true;
+                element.interestRead(false);
+            }
+            if (!writing) {
+                writing = true;
+                SPOOL.execute(new Runnable() {
+                    public void run() {
+                        spool();
+                    }
+                });
+            }
+        } else {
+            memory.write(b, 0, len);
+        }
+        notifyAll();
+    }
+
+    /** 退避待ちのデータを一時ファイルに書き込む. **/
+    private final void spool() {
+        ByteArrayIO out = null;
+        FileChannel f;
+        long pos;
+        byte[] b = new byte[BUFFER_LENGTH];
+        int n;
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closeFlag || overflow || pending.size() == 0) {
+                        writing = false;
+                        resume();
+                        notifyAll();
+                        return;
+                    }
+
+                    // 書き込み中も受信できるように、退避待ちのバッファを入れ替える.
+                    ByteArrayIO t = pending;
+                    pending = out == null ? new ByteArrayIO() : out;
+                    out = t;
+                    f = file;
+                    pos = writePosition;
+                }
+                if (f == null) {
+                    Path path = Files.createTempFile(TEMP_PREFIX, TEMP_SUFFIX);
+                    f = FileChannel.open(path, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                    synchronized (this) {
+                        if (closeFlag || overflow) {
+                            f.close();
+                            writing = false;
+                            resume();
+                            notifyAll();
+                            return;
+                        }
+                        file = f;
+                    }
+                }
+                while ((n = out.read(b, 0, b.length)) > 0) {
+                    ByteBuffer buf = ByteBuffer.wrap(b, 0, n);
+                    while (buf.hasRemaining()) {
+                        pos += f.write(buf, pos);
+                    }
+                }
+                out.clear();
+                synchronized (this) {
+                    writePosition = pos;
+                    if (pending.size() < PENDING_LENGTH) {
+                        resume();
+                    }
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+
+                // クローズ済みの場合は、一時ファイルのクローズによる例外.
+                if (!closeFlag && !overflow) {
+                    spoolError = e;
+                }
+                writing = false;
+                resume();
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 1バイト読み込み.
+     *
+     * @return int 読み込まれたデータが返却されます. [-1]の場合は終端です.
+     * @exception IOException
+     *                I/O例外.
+     */
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n;
+        while ((n = read(b, 0, 1)) == 0) {
+        }
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * 読み込み. 受信途中の場合は、受信されるまで待機します.
+     *
+     * @param b
+     *            読み込み先のバイナリを設定します.
+     * @param off
+     *            読み込み先のオフセット値を設定します.
+     * @param len
+     *            読み込むデータ長を設定します.
+     * @return int 読み込まれたデータ長が返却されます. [-1]の場合は終端です.
+     * @exception IOException
+     *                I/O例外.
+     */
+    @Override
+    public synchronized int read(byte[] b, int off, int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        long end = System.currentTimeMillis() + timeout;
+        long w;
+        while (true) {
+            if (overflow) {
+                throw new IOException("Body長が最大値を超えています");
+            } else if (closeFlag) {
+                throw new IOException("Bodyは既にクローズされています");
+            } else if (spoolError != null) {
+                throw new IOException("Bodyの一時ファイルへの書き込みに失敗しました",
+                        spoolError);
+            } else if (memory.size() > 0) {
+                return memory.read(b, off, len);
+            } else if (file != null && readPosition < writePosition) {
+                int n = file.read(ByteBuffer.wrap(b, off,
+                        (int) Math.min(len, writePosition - readPosition)),
+                        readPosition);
+                readPosition += n;
+                return n;
+            } else if (state == STATE_END && !writing) {
+                return -1;
+            } else if ((w = end - System.currentTimeMillis()) <= 0L) {
+                throw new IOException("Bodyの受信タイムアウトです");
+            }
+            try {
+                wait(w);
+            } catch (InterruptedException e) {
+                throw new IOException("Bodyの受信待機中に割り込まれました");
+            }
+        }
+    }
+
+    /**
+     * 読み込み可能なデータ長を取得.
+     *
+     * @return int 待機せずに読み込めるデータ長が返却されます.
+     */
+    @Override
+    public synchronized int available() {
+        if (closeFlag || overflow) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, memory.size()
+                + (writePosition - readPosition));
+    }
+
+    /**
+     * 残りのBodyを全て読み込み、文字列で取得.
+     *
+     * @return String 文字列が返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public String readString() throws IOException {
+        return new String(readBytes(), "UTF8");
+    }
+
+    /**
+     * Bodyの終端までを読み込む.
+     * Content-Lengthが分かっている場合は、その長さのバイナリに直接読み込みます.
+     * ただし、受信前に確保するのは一時ファイルに退避するBody長までで、
+     * それを超える分は受信に合わせて拡張します.
+     *
+     * @return byte[] Bodyが返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public byte[] readBytes() throws IOException {
+        return readBytes(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Bodyの終端までを、指定長を上限に読み込む.
+     *
+     * @param max
+     *            読み込む最大長を設定します.
+     * @return byte[] Bodyが返却されます. Body長が最大長を超える場合は[null]が
+     *         返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public byte[] readBytes(int max) throws IOException {
+        int n;
+        if (!chunked && contentLength > max) {
+            return null;
+        } else if (!chunked && contentLength <= maxLength
+                && contentLength < Integer.MAX_VALUE) {
+            int len = (int) contentLength;
+            byte[] ret = new byte[Math.min(len, Math.max(spoolSize,
+                    BUFFER_LENGTH))];
+            int off = 0;
+            while (off < len) {
+                if (off == ret.length) {
+                    byte[] t = new byte[(int) Math.min(len,
+                            (long) ret.length << 1)];
+                    System.arraycopy(ret, 0, t, 0, off);
+                    ret = t;
+                }
+                if ((n = read(ret, off, ret.length - off)) == -1) {
+                    break;
+                }
+                off += n;
+            }
+            if (off == ret.length) {
+                return ret;
+            }
+            byte[] b = new byte[off];
+            System.arraycopy(ret, 0, b, 0, off);
+            return b;
+        }
+        ByteArrayIO out = new ByteArrayIO();
+        byte[] b = new byte[BUFFER_LENGTH];
+        long len = 0L;
+        while ((n = read(b, 0, b.length)) != -1) {
+            if ((len += n) > max) {
+                return null;
+            }
+            out.write(b, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 受信したBodyを破棄. 以降の受信データはBodyの終端まで読み捨てます.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closeFlag) {
+            closeFlag = true;
+            release();
+            notifyAll();
+        }
+    }
+
+    /** 一時停止中の受信を再開. **/
+    private final void resume() {
+        if (suspend) {
+            suspend = false;
+            try {
+                element.interestRead(true);
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    /** 保持データを破棄. 以降の受信データは読み捨てるので、受信を再開. **/
+    private final void release() {
+        memory.clear();
+        if (pending != null) {
+            pending.clear();
+        }
+        resume();
+        if (file != null) {
+            try {
+                file.close();
+            } catch (Exception e) {
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Bodyの受信が完了しているかチェック.
+     *
+     * @return boolean [true]の場合、受信は完了しています.
+     */
+    public synchronized boolean isEnd() {
+        return state == STATE_END;
+    }
+
+    /**
+     * Body長が最大値を超えたかチェック.
+     *
+     * @return boolean [true]の場合、最大値を超えています.
+     */
+    public synchronized boolean isOverflow() {
+        return overflow;
+    }
+
+    /**
+     * chunked形式かチェック.
+     *
+     * @return boolean [true]の場合、chunked形式です.
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * 受信済みのBody長を取得.
+     *
+     * @return long 受信済みのBody長が返却されます.
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * Bodyを一定サイズ毎に取得するIteratorを取得.
+     *
+     * @return Iterator<byte[]> Iteratorが返却されます.
+     */
+    @Override
+    public Iterator<byte[]> iterator() {
+        return new Iterator<byte[]>() {
+            private byte[] next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        byte[] b = new byte[BUFFER_LENGTH];
+                        int n = read(b, 0, b.length);
+                        if (n == -1) {
+                            return false;
+                        } else if (n < b.length) {
+                            byte[] c = new byte[n];
+                            System.arraycopy(b, 0, c, 0, n);
+                            b = c;
+                        }
+                        next = b;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public byte[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] ret = next;
+                next = null;
+                return ret;
+            }
+        };
+    }
+}
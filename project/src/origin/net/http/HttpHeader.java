@@ -6,49 +6,170 @@ import java.util.List;
 
 import origin.util.ByteArrayIO;
 import origin.util.ConvertMap;
+import origin.util.Utils;
 
 /**
  * Httpヘッダ情報. 基本HTTPヘッダ情報のみを保持します. (bodyデータは非保持).
+ * ヘッダはバイナリと位置情報で保持し、取得されたヘッダのみ文字列に変換します.
  */
 public class HttpHeader implements ConvertMap {
+    protected static final String HTTP_11 = "HTTP/1.1";
+    protected static final String HTTP_10 = "HTTP/1.0";
+
+    /** よく利用されるメソッド名. **/
+    private static final String[] METHODS = new String[] { "GET", "POST",
+            "OPTIONS", "HEAD", "PUT", "DELETE" };
+
     protected String method;
     protected String url;
     protected String version;
 
+    /** ヘッダバイナリ. **/
     protected byte[] headers;
-    protected String headersString;
+
+    /** ヘッダバイナリのURL位置. **/
+    protected int urlStart;
+    protected int urlEnd;
+
+    /** ヘッダ位置情報(名前開始,名前終了,要素開始,要素終了). **/
+    protected int[] index;
+    protected int headerLength;
+
+    /** 文字列変換済みのヘッダ要素. **/
+    protected String[] values;
 
     protected HttpHeader() {
     }
 
-    public HttpHeader(ByteArrayIO buffer, int endPoint) throws IOException {
-        int firstPoint = buffer.indexOf(HttpAnalysis.ONE_LINE);
-        byte[] b = new byte[firstPoint];
-        buffer.read(b);
-        buffer.skip(HttpAnalysis.ONE_LINE.length);
+    /**
+     * コンストラクタ.
+     * 受信バッファの先頭から、ヘッダの終端までを解析します.
+     *
+     * @param buffer
+     *            受信バッファを設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public HttpHeader(ByteArrayIO buffer) throws IOException {
+        HttpParser parser = new HttpParser();
+        if (!parser.parse(buffer)) {
+            throw new IOException("Httpヘッダの終端が存在しません");
+        }
+        parser.getRequest().copyTo(this);
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param b
+     *            ヘッダバイナリを設定します.
+     * @param methodStart
+     *            メソッドの開始位置を設定します.
+     * @param methodEnd
+     *            メソッドの終端位置を設定します.
+     * @param urlStart
+     *            URLの開始位置を設定します.
+     * @param urlEnd
+     *            URLの終端位置を設定します.
+     * @param versionStart
+     *            バージョンの開始位置を設定します.
+     * @param versionEnd
+     *            バージョンの終端位置を設定します.
+     * @param index
+     *            ヘッダ位置情報を設定します.
+     * @param headerLength
+     *            ヘッダ数を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    protected HttpHeader(byte[] b, int methodStart, int methodEnd,
+            int urlStart, int urlEnd, int versionStart, int versionEnd,
+            int[] index, int headerLength) throws IOException {
+        this.method = method(b, methodStart, methodEnd);
+        this.url = new String(b, urlStart, urlEnd - urlStart, "UTF8");
+        this.urlStart = urlStart;
+        this.urlEnd = urlEnd;
+        this.version = version(b, versionStart, versionEnd);
+        this.headers = b;
+        this.index = index;
+        this.headerLength = headerLength;
+        this.values = null;
+    }
 
-        String v = new String(b, "UTF8");
-        b = null;
-        analysisFirst(v);
-        v = null;
+    /** 内容をコピー. **/
+    protected final void copyTo(HttpHeader h) {
+        h.method = method;
+        h.url = url;
+        h.urlStart = urlStart;
+        h.urlEnd = urlEnd;
+        h.version = version;
+        h.headers = headers;
+        h.index = index;
+        h.headerLength = headerLength;
+        h.values = values;
+    }
 
-        int len = endPoint + HttpAnalysis.END_LINE.length
-                - (firstPoint + HttpAnalysis.ONE_LINE.length);
-        b = new byte[len];
-        buffer.read(b);
+    /** メソッド名を取得. **/
+    private static final String method(byte[] b, int start, int end)
+            throws IOException {
+        String m;
+        int n = METHODS.length;
+        for (int i = 0; i < n; i++) {
+            if (eq(b, start, end, m = METHODS[i])) {
+                return m;
+            }
+        }
+        return new String(b, start, end - start, "UTF8");
+    }
 
-        this.headers = b;
-        this.headersString = null;
+    /** バージョンを取得. **/
+    private static final String version(byte[] b, int start, int end)
+            throws IOException {
+        if (eq(b, start, end, HTTP_11)) {
+            return HTTP_11;
+        } else if (eq(b, start, end, HTTP_10)) {
+            return HTTP_10;
+        }
+        return new String(b, start, end - start, "UTF8");
     }
 
-    protected final void analysisFirst(String v) throws IOException {
-        String[] list = v.split(" ");
-        if (list.length != 3) {
-            throw new IOException("受信データはHTTPリクエストではありません:" + v);
+    /** バイナリと文字列の一致チェック. **/
+    private static final boolean eq(byte[] b, int start, int end, String s) {
+        int len = s.length();
+        if (end - start != len) {
+            return false;
         }
-        this.method = list[0];
-        this.url = list[1];
-        this.version = list[2];
+        for (int i = 0; i < len; i++) {
+            if (b[start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 大文字小文字を区別しない、バイナリと文字列の一致チェック. **/
+    private static final boolean eqEng(byte[] b, int start, int end, String s) {
+        int len = s.length();
+        if (end - start != len) {
+            return false;
+        }
+        int c, d;
+        for (int i = 0; i < len; i++) {
+            c = b[start + i];
+            d = s.charAt(i);
+            if (c != d) {
+                if (c >= 'A' && c <= 'Z') {
+                    c += 32;
+                }
+                if (d >= 'A' && d <= 'Z') {
+                    d += 32;
+                }
+                if (c != d) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     public String getMethod() {
@@ -63,48 +184,66 @@ public class HttpHeader implements ConvertMap {
         return version;
     }
 
-    protected final void convertString() throws IOException {
-        if (headers != null) {
-            headersString = new String(headers, "UTF8");
-            headers = null;
+    /**
+     * KeepAliveの要求かチェック.
+     * HTTP/1.1の場合は[Connection: close]以外、HTTP/1.0の場合は
+     * [Connection: keep-alive]の場合にKeepAliveとなります.
+     *
+     * @return boolean [true]の場合、KeepAliveが要求されています.
+     * @exception IOException
+     *                IO例外.
+     */
+    public boolean isKeepAlive() throws IOException {
+        String conn = getHeader("Connection");
+        if (HTTP_11.equals(version)) {
+            return conn == null || Utils.indexOfEng(conn, "close") == -1;
         }
+        return conn != null && Utils.indexOfEng(conn, "keep-alive") != -1;
     }
 
+    /**
+     * ヘッダ要素を取得. ヘッダ名は大文字小文字を区別しません.
+     *
+     * @param key
+     *            対象のヘッダ名を設定します.
+     * @return String ヘッダ要素が返却されます. [null]の場合は存在しません.
+     * @exception IOException
+     *                I/O例外.
+     */
     public String getHeader(String key) throws IOException {
-        convertString();
-
-        int p = headersString.indexOf(key + ": ");
-        if (p == -1) {
-            return null;
-        }
-        int end = headersString.indexOf("\r\n", p);
-        if (end == -1) {
-            return null;
+        final int[] idx = index;
+        final int len = headerLength;
+        int p;
+        for (int i = 0; i < len; i++) {
+            p = i << 2;
+            if (eqEng(headers, idx[p], idx[p + 1], key)) {
+                if (values == null) {
+                    values = new String[len];
+                } else if (values[i] != null) {
+                    return values[i];
+                }
+                return (values[i] = new String(headers, idx[p + 2],
+                        idx[p + 3] - idx[p + 2], "UTF8"));
+            }
         }
-        return headersString.substring(p + key.length() + 2, end);
+        return null;
     }
 
     public List<String> getHeaders() throws IOException {
-        convertString();
-
+        final int[] idx = index;
+        final int len = headerLength;
         int p;
-        int b = 0;
-        List<String> ret = new ArrayList<String>();
-        while ((p = headersString.indexOf(": ", b)) != -1) {
-            ret.add(headersString.substring(b, p));
-            b = p + 2;
-            p = headersString.indexOf("\r\n", b);
-            if (p == -1) {
-                break;
-            }
-            b = p + 2;
+        List<String> ret = new ArrayList<String>(len);
+        for (int i = 0; i < len; i++) {
+            p = i << 2;
+            ret.add(new String(headers, idx[p], idx[p + 1] - idx[p], "UTF8"));
         }
         return ret;
     }
 
     /**
      * 取得.
-     * 
+     *
      * @param key
      *            対象のキーを設定します.
      * @return Object キーに対する要素情報が返却されます.
@@ -0,0 +1,190 @@
+package origin.net.http;
+
+import java.util.Map;
+import java.util.Set;
+
+import origin.util.HashListMap;
+
+/**
+ * リクエストパラメータ.
+ *
+ * URLのクエリ、またはフォーム形式のBodyのバイナリと、パラメータ毎の
+ * 位置情報だけを保持して、文字列への変換は行いません. キーは最初に
+ * アクセスされた時点でまとめて、要素はキー毎に最初に取得された時点で
+ * URLデコードします. スクリプトが一部のパラメータしか参照しない場合は、
+ * 参照しない要素の文字列は作成されません.
+ *
+ * 同じキーが複数存在する場合は、最初のキーの位置に最後の要素が設定されます.
+ */
+public class HttpParams extends HashListMap {
+    private static final int DEF_LENGTH = 8;
+
+    private final byte[] binary;
+    private final int[] position;
+    private final int length;
+    private int[] pairs = null;
+    private boolean indexed = false;
+
+    private HttpParams(byte[] binary, int[] position, int length) {
+        super(length);
+        this.binary = binary;
+        this.position = position;
+        this.length = length;
+        if (length == 0) {
+            indexed = true;
+        }
+    }
+
+    /**
+     * パラメータの位置を解析.
+     *
+     * @param b
+     *            対象のバイナリを設定します.
+     * @param off
+     *            パラメータの開始位置を設定します.
+     * @param end
+     *            パラメータの終端位置を設定します.
+     * @param max
+     *            最大パラメータ数を設定します. 0以下の場合は無制限です.
+     * @return HttpParams パラメータが返却されます. パラメータ数が最大値を
+     *         超える場合は[null]が返却されます.
+     */
+    static final HttpParams create(byte[] b, int off, int end, int max) {
+        if (max <= 0) {
+            max = Integer.MAX_VALUE;
+        }
+        // [キー開始,キー終端,要素開始,要素終端]を、パラメータ毎に保持.
+        int[] pos = new int[DEF_LENGTH << 2];
+        int len = 0;
+        int eq = -1;
+        int p, n;
+        for (int i = off; i <= end; i++) {
+            if (i == end || b[i] == '&') {
+
+                // [=]が存在しないパラメータは対象外.
+                if (eq != -1) {
+                    if (len == max) {
+                        return null;
+                    }
+                    if ((n = len << 2) == pos.length) {
+                        int[] t = new int[n << 1];
+                        System.arraycopy(pos, 0, t, 0, n);
+                        pos = t;
+                    }
+                    pos[n] = off;
+                    pos[n + 1] = eq;
+                    pos[n + 2] = eq + 1;
+                    pos[n + 3] = i;
+                    len++;
+                }
+                off = i + 1;
+                eq = -1;
+            } else if (eq == -1 && b[i] == '=') {
+                eq = i;
+            }
+        }
+        return new HttpParams(b, pos, len);
+    }
+
+    /** 全てのキーをデコードして登録. **/
+    private final void index() {
+        if (indexed) {
+            return;
+        }
+        indexed = true;
+        int[] pos = position;
+        int[] pr = new int[length];
+        int n;
+        for (int i = 0; i < length; i++) {
+            n = i << 2;
+            pr[putLazy(HttpAnalysis.urlDecode(binary, pos[n], pos[n + 1]))] = i;
+        }
+        pairs = pr;
+    }
+
+    @Override
+    protected String value(int no) {
+        String ret = super.value(no);
+        if (ret == null) {
+            int n = pairs[no] << 2;
+            ret = HttpAnalysis.urlDecode(binary, position[n + 2],
+                    position[n + 3]);
+            setLazy(no, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    protected void removed(int no) {
+        int[] pr = pairs;
+        if (pr != null && no < pr.length - 1) {
+            System.arraycopy(pr, no + 1, pr, no, pr.length - no - 1);
+        }
+    }
+
+    @Override
+    public String put(String key, String value) {
+        index();
+        return super.put(key, value);
+    }
+
+    @Override
+    public String get(Object key) {
+        index();
+        return super.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        index();
+        return super.containsKey(key);
+    }
+
+    @Override
+    public String remove(Object key) {
+        index();
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        indexed = true;
+        super.clear();
+    }
+
+    @Override
+    public int size() {
+        index();
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        index();
+        return super.isEmpty();
+    }
+
+    @Override
+    public String getKey(int no) {
+        index();
+        return super.getKey(no);
+    }
+
+    @Override
+    public String getValue(int no) {
+        index();
+        return super.getValue(no);
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        index();
+        return super.entrySet();
+    }
+
+    @Override
+    public String toString() {
+        index();
+        return super.toString();
+    }
+}
@@ -0,0 +1,256 @@
+package origin.net.http;
+
+import java.io.IOException;
+
+import origin.util.ByteArrayIO;
+
+/**
+ * Httpリクエストヘッダ解析. 受信バッファから、前回の解析位置の続きを
+ * バイト単位で解析して、リクエストラインとヘッダの位置情報を作成します.
+ * 解析済みのデータは受信バッファから取り除かれ、Body部分は受信バッファに残ります.
+ */
+public final class HttpParser {
+
+    /** 最大ヘッダ長. **/
+    public static final int MAX_HEADER_LENGTH = 0x10000;
+
+    /** デフォルトバッファ長. **/
+    private static final int DEF_LENGTH = 512;
+
+    /** デフォルトヘッダ数. **/
+    private static final int DEF_HEADER_LENGTH = 16;
+
+    private static final byte CR = (byte) '\r';
+    private static final byte LF = (byte) '\n';
+    private static final byte SP = (byte) ' ';
+    private static final byte HT = (byte) '\t';
+    private static final byte COLON = (byte) ':';
+
+    /** ヘッダバイナリ. **/
+    private byte[] buf = null;
+    private int length = 0;
+
+    /** 現在の行の開始位置. **/
+    private int lineStart = 0;
+
+    /** リクエストライン位置情報. **/
+    private boolean requestLine = false;
+    private int methodStart;
+    private int methodEnd;
+    private int urlStart;
+    private int urlEnd;
+    private int versionStart;
+    private int versionEnd;
+
+    /** ヘッダ位置情報(名前開始,名前終了,要素開始,要素終了). **/
+    private int[] index = null;
+    private int headerLength = 0;
+
+    /** 解析完了フラグ. **/
+    private boolean endFlag = false;
+
+    /**
+     * 解析処理. 前回の解析位置から、ヘッダの終端まで解析します.
+     *
+     * @param in
+     *            受信バッファを設定します.
+     * @return boolean [true]の場合、ヘッダの解析が完了しました.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public boolean parse(ByteArrayIO in) throws IOException {
+        if (endFlag) {
+            return true;
+        }
+        int n, off, p, len;
+        byte[] b;
+        while ((len = in.size()) > 0) {
+
+            // 受信バッファの内容を、ヘッダバイナリにコピー.
+            if (buf == null) {
+                buf = new byte[DEF_LENGTH];
+            } else if (length == buf.length) {
+                if (length >= MAX_HEADER_LENGTH) {
+                    throw new IOException("Httpヘッダ長が大きすぎます");
+                }
+                b = new byte[length << 1];
+                System.arraycopy(buf, 0, b, 0, length);
+                buf = b;
+            }
+            n = in.peek(buf, length, Math.min(len, buf.length - length));
+            if (n <= 0) {
+                break;
+            }
+
+            // 今回コピーした範囲の改行を検索.
+            b = buf;
+            off = length;
+            len = off + n;
+            for (p = off; p < len; p++) {
+                if (b[p] == LF) {
+                    line(lineStart, p);
+                    lineStart = p + 1;
+                    if (endFlag) {
+                        p++;
+                        break;
+                    }
+                }
+            }
+
+            // 解析済みの内容を受信バッファから除外.
+            in.skip(p - off);
+            length = p;
+            if (endFlag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** １行解析. **/
+    private final void line(int start, int end) throws IOException {
+        if (end > start && buf[end - 1] == CR) {
+            end--;
+        }
+
+        // 空行.
+        if (start == end) {
+
+            // リクエストライン前の空行は無視する.
+            if (requestLine) {
+                endFlag = true;
+            }
+            return;
+        }
+
+        // リクエストライン.
+        if (!requestLine) {
+            requestLine(start, end);
+            return;
+        }
+
+        // 継続行の場合は、前のヘッダ要素に連結する.
+        byte[] b = buf;
+        if (b[start] == SP || b[start] == HT) {
+            if (headerLength == 0) {
+                throw new IOException("Httpヘッダが不正です");
+            }
+            int last = (headerLength - 1) << 2;
+            for (int i = index[last + 3]; i < start; i++) {
+                b[i] = SP;
+            }
+            index[last + 3] = trimEnd(start, end);
+            return;
+        }
+
+        // ヘッダ名.
+        int colon = -1;
+        for (int i = start; i < end; i++) {
+            if (b[i] == COLON) {
+                colon = i;
+                break;
+            }
+        }
+        if (colon <= start) {
+            throw new IOException("Httpヘッダが不正です");
+        }
+
+        // ヘッダ要素.
+        int vs = colon + 1;
+        while (vs < end && (b[vs] == SP || b[vs] == HT)) {
+            vs++;
+        }
+        if (index == null) {
+            index = new int[DEF_HEADER_LENGTH << 2];
+        } else if ((headerLength << 2) == index.length) {
+            int[] n = new int[index.length << 1];
+            System.arraycopy(index, 0, n, 0, index.length);
+            index = n;
+        }
+        int p = headerLength << 2;
+        index[p] = start;
+        index[p + 1] = trimEnd(start, colon);
+        index[p + 2] = vs;
+        index[p + 3] = trimEnd(vs, end);
+        headerLength++;
+    }
+
+    /** リクエストライン解析. **/
+    private final void requestLine(int start, int end) throws IOException {
+        byte[] b = buf;
+        int s1 = -1;
+        int s2 = -1;
+        for (int i = start; i < end; i++) {
+            if (b[i] == SP) {
+                if (s1 == -1) {
+                    s1 = i;
+                } else if (s2 == -1) {
+                    s2 = i;
+                } else {
+                    s2 = -1;
+                    break;
+                }
+            }
+        }
+        if (s1 <= start || s2 <= s1 + 1 || s2 + 1 >= end) {
+            throw new IOException("受信データはHTTPリクエストではありません:"
+                    + new String(b, start, end - start, "UTF8"));
+        }
+        methodStart = start;
+        methodEnd = s1;
+        urlStart = s1 + 1;
+        urlEnd = s2;
+        versionStart = s2 + 1;
+        versionEnd = end;
+        requestLine = true;
+    }
+
+    /** 後方の空白を除外した終端位置を取得. **/
+    private final int trimEnd(int start, int end) {
+        byte[] b = buf;
+        while (end > start && (b[end - 1] == SP || b[end - 1] == HT)) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 解析完了かチェック.
+     *
+     * @return boolean [true]の場合、ヘッダの解析が完了しています.
+     */
+    public boolean isEnd() {
+        return endFlag;
+    }
+
+    /**
+     * 解析結果のHttpRequestを取得. ヘッダバイナリと位置情報はHttpRequestに
+     * 引き渡され、このオブジェクトは次のリクエストの解析用にリセットされます.
+     *
+     * @return HttpRequest HttpRequestが返却されます. [null]の場合は解析途中です.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public HttpRequest getRequest() throws IOException {
+        if (!endFlag) {
+            return null;
+        }
+        HttpRequest ret = new HttpRequest(buf, methodStart, methodEnd,
+                urlStart, urlEnd, versionStart, versionEnd, index, headerLength);
+        buf = null;
+        index = null;
+        reset();
+        return ret;
+    }
+
+    /**
+     * リセット.
+     */
+    public void reset() {
+        length = 0;
+        lineStart = 0;
+        requestLine = false;
+        headerLength = 0;
+        endFlag = false;
+    }
+}
@@ -3,20 +3,29 @@ package origin.net.http;
 import java.io.IOException;
 
 import origin.util.ByteArrayIO;
+import origin.util.Utils;
 
 /**
  * HttpRequest.
  */
 public class HttpRequest extends HttpHeader {
     protected byte[] body = null;
+    protected HttpBody inputStream = null;
     protected Integer contentLength = null;
 
     protected HttpRequest() {
         super();
     }
 
-    public HttpRequest(ByteArrayIO buffer, int endPoint) throws IOException {
-        super(buffer, endPoint);
+    public HttpRequest(ByteArrayIO buffer) throws IOException {
+        super(buffer);
+    }
+
+    protected HttpRequest(byte[] b, int methodStart, int methodEnd,
+            int urlStart, int urlEnd, int versionStart, int versionEnd,
+            int[] index, int headerLength) throws IOException {
+        super(b, methodStart, methodEnd, urlStart, urlEnd, versionStart,
+                versionEnd, index, headerLength);
     }
 
     public void setBody(byte[] body) {
@@ -27,6 +36,41 @@ public class HttpRequest extends HttpHeader {
         return body;
     }
 
+    /**
+     * Bodyの逐次受信用InputStreamを設定.
+     *
+     * @param in
+     *            対象のHttpBodyを設定します.
+     */
+    public void setInputStream(HttpBody in) {
+        this.inputStream = in;
+    }
+
+    /**
+     * BodyのInputStreamを取得. Bodyを受信途中の場合は、読み込み時に
+     * 受信されるまで待機します.
+     *
+     * @return HttpBody BodyのInputStreamが返却されます.
+     */
+    public HttpBody getInputStream() {
+        if (inputStream == null) {
+            inputStream = new HttpBody(body);
+        }
+        return inputStream;
+    }
+
+    /**
+     * chunked形式のBodyかチェック.
+     *
+     * @return boolean [true]の場合、chunked形式です.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public boolean isChunked() throws IOException {
+        String ret = this.getHeader("Transfer-Encoding");
+        return ret != null && Utils.indexOfEng(ret, "chunked") != -1;
+    }
+
     public int getContentLength() throws IOException {
         if (contentLength != null) {
             return contentLength;
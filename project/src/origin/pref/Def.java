@@ -23,7 +23,11 @@ public final class Def {
 
     public static final int NOT_GZIP_BODY_LENGTH = 128;
 
-    public static final int MAX_CONTENT_LENGTH = 1 * 0x100000;
+    /** デフォルトの最大Body長. **/
+    public static final int MAX_CONTENT_LENGTH = 32 * 0x100000;
+
+    /** デフォルトのパラメータとして読み込むBodyの最大長. **/
+    public static final int MAX_PARAMS_LENGTH = 0x100000;
 
     public static final String PROJECT_ENV_NAME = "ORIGIN_HOME";
 
@@ -31,6 +35,7 @@ public final class Def {
     public static final String NASHORN_CACHE_DIR = "./.cache";
 
     public static final String SCRIPT_PARAMS = "params";
+    public static final String SCRIPT_PATH_PARAMS = "pathParams";
     public static final String SCRIPT_REQUEST = "request";
     public static final String SCRIPT_RESPONSE = "response";
     public static final String SHARE_MEMORY = "share";
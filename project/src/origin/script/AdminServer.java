@@ -0,0 +1,194 @@
+package origin.script;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import origin.net.NioElement;
+import origin.net.NioMetrics;
+import origin.util.Utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 管理用サーバー.
+ *
+ * アプリケーション用のポートとは別のポートで、GET /metrics に対して
+ * リクエスト処理のレイテンシ、接続数、ワーカースレッド、コンパイルキャッシュの
+ * 状態をJSONで返却します. 時間はマイクロ秒単位です.
+ * GET /ready は、起動時の事前コンパイルとウォームアップの完了後に200を返却し、
+ * それまでは503を返却します.
+ * 1スレッドで処理するので、アプリケーションの処理には影響しません.
+ */
+public final class AdminServer {
+    private static final Log LOG = LogFactory.getLog(AdminServer.class);
+
+    /** メトリクスのパス. **/
+    private static final String METRICS_PATH = "/metrics";
+
+    /** 受付可能チェックのパス. **/
+    private static final String READY_PATH = "/ready";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param address
+     *            バインドアドレスを設定します.
+     * @param port
+     *            バインドポートを設定します.
+     * @param http
+     *            Http処理を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public AdminServer(String address, int port, final Http http)
+            throws IOException {
+        InetSocketAddress addr = Utils.useString(address) ? new InetSocketAddress(
+                address, port) : new InetSocketAddress(port);
+        server = HttpServer.create(addr, 0);
+        server.createContext(METRICS_PATH, new HttpHandler() {
+            public void handle(HttpExchange ex) throws IOException {
+                try {
+                    if (!"GET".equals(ex.getRequestMethod())) {
+                        send(ex, 405, "{\"result\": false}");
+                    } else if (!METRICS_PATH.equals(ex.getRequestURI()
+                            .getPath())) {
+                        send(ex, 404, "{\"result\": false}");
+                    } else {
+                        send(ex, 200, Json.encode(metrics(http)));
+                    }
+                } catch (Exception e) {
+                    LOG.warn("error", e);
+                    send(ex, 500, "{\"result\": false}");
+                } finally {
+                    ex.close();
+                }
+            }
+        });
+        server.createContext(READY_PATH, new HttpHandler() {
+            public void handle(HttpExchange ex) throws IOException {
+                try {
+                    if (!"GET".equals(ex.getRequestMethod())) {
+                        send(ex, 405, "{\"result\": false}");
+                    } else if (!READY_PATH.equals(ex.getRequestURI()
+                            .getPath())) {
+                        send(ex, 404, "{\"result\": false}");
+                    } else if (http.isReady()) {
+                        send(ex, 200, "{\"result\": true}");
+                    } else {
+                        send(ex, 503, "{\"result\": false}");
+                    }
+                } catch (Exception e) {
+                    LOG.warn("error", e);
+                    send(ex, 500, "{\"result\": false}");
+                } finally {
+                    ex.close();
+                }
+            }
+        });
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "origin-admin");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        server.setExecutor(executor);
+    }
+
+    /**
+     * 開始.
+     */
+    public void start() {
+        server.start();
+        LOG.info("*** start origin admin(" + server.getAddress() + ").");
+    }
+
+    /**
+     * 停止.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        LOG.info("*** stop origin admin.");
+    }
+
+    /** レスポンス送信. **/
+    private static final void send(HttpExchange ex, int status, String body)
+            throws IOException {
+        byte[] b = body.getBytes("UTF8");
+        ex.getResponseHeaders().set("Content-Type",
+                "application/json; charset=UTF-8");
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        ex.sendResponseHeaders(status, b.length);
+        OutputStream out = ex.getResponseBody();
+        out.write(b);
+        out.flush();
+    }
+
+    /** メトリクス情報を生成. **/
+    private static final Map<String,Object> metrics(Http http) {
+        Map<String,Object> ret = new LinkedHashMap<String,Object>();
+
+        // 接続情報.
+        NioMetrics n = http.getMetrics();
+        Map<String,Object> m = new LinkedHashMap<String,Object>();
+        m.put("connections", n.getConnections());
+        m.put("maxConnections", n.getMaxConnections());
+        m.put("accepts", n.getAccepts());
+        m.put("acceptPauses", n.getAcceptPauses());
+        m.put("wakeups", n.getWakeups());
+        m.put("interestOps", n.getInterestOps());
+        m.put("idleTimeouts", n.getTimeouts(NioElement.TIMEOUT_IDLE));
+        m.put("headerTimeouts", n.getTimeouts(NioElement.TIMEOUT_HEADER));
+        m.put("readTimeouts", n.getTimeouts(NioElement.TIMEOUT_READ));
+        m.put("writeTimeouts", n.getTimeouts(NioElement.TIMEOUT_WRITE));
+        ret.put("nio", m);
+
+        // ワーカースレッド情報.
+        WorkerDispatcher d = http.getDispatcher();
+        if (d != null) {
+            m = new LinkedHashMap<String,Object>();
+            m.put("mode", d.getMode());
+            m.put("workers", d.getWorkerLength());
+            m.put("active", d.getActiveCount());
+            m.put("queueSize", d.getQueueSize());
+            m.put("dispatchCount", d.getDispatchCount());
+            m.put("shedCount", d.getShedCount());
+            ret.put("worker", m);
+        }
+
+        // コンパイルキャッシュ.
+        CompileManager c = http.getCompileManager();
+        m = new LinkedHashMap<String,Object>();
+        m.put("size", c.getSize());
+        m.put("maxSize", c.getMaxSize());
+        m.put("hits", c.getHitCount());
+        m.put("misses", c.getMissCount());
+        m.put("waits", c.getWaitCount());
+        m.put("compiles", c.getCompileCount());
+        m.put("errors", c.getErrorCount());
+        m.put("totalCompileTime", c.getTotalCompileTime() / 1000L);
+        m.put("maxCompileTime", c.getMaxCompileTime() / 1000L);
+        m.put("evicts", c.getEvictCount());
+        m.put("expires", c.getExpireCount());
+        ret.put("compile", m);
+
+        // レイテンシ.
+        ret.put("latency", http.getRequestMetrics().toMap());
+        return ret;
+    }
+}
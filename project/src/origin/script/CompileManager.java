@@ -1,42 +1,401 @@
 package origin.script;
 
 import java.util.Iterator;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import origin.pref.Def;
+import origin.pref.Mode;
 import origin.util.Utils;
+import origin.util.atomic.AtomicNumber;
+import origin.util.atomic.AtomicNumber32;
 
 /**
  * コンパイルマネージャ.
+ *
+ * コンパイル結果は、clasCacheSizeを上限にキャッシュします. 上限を超えた場合と、
+ * compileCacheTimeoutの間アクセスがない場合は、登録順の待ち行列の先頭から
+ * 破棄します. 先頭の要素が登録後にアクセスされている場合は、破棄せずに
+ * 末尾に移動します(CLOCK方式の近似LRU).
+ * 同じスクリプトへの同時のコンパイル要求は1スレッドのみがコンパイルし、
+ * 他のスレッドはその結果を待ちます.
  */
 public class CompileManager extends Thread {
-    private Map<String, CompileElement> manager = new ConcurrentHashMap<String, CompileElement>();
+    private static final Log LOG = LogFactory.getLog(CompileManager.class);
+    private static final int TIMEOUT = 200;
+
+    /** require用モジュールのキャッシュキーの接頭辞. **/
+    private static final String MODULE_KEY = "module:";
+
+    private final ConcurrentHashMap<String, CompileTask> manager = new ConcurrentHashMap<String, CompileTask>();
+    private final Queue<Timing> timing = new ConcurrentLinkedQueue<Timing>();
+    private final AtomicNumber32 timingSize = new AtomicNumber32(0);
+    private final int maxSize;
     private int compileCacheTimeout;
+    private ScriptFileIndex index = null;
     private volatile boolean stopFlag = true;
 
+    /** 統計情報. **/
+    private final AtomicNumber hitCount = new AtomicNumber(0L);
+    private final AtomicNumber missCount = new AtomicNumber(0L);
+    private final AtomicNumber waitCount = new AtomicNumber(0L);
+    private final AtomicNumber compileCount = new AtomicNumber(0L);
+    private final AtomicNumber errorCount = new AtomicNumber(0L);
+    private final AtomicNumber totalCompileTime = new AtomicNumber(0L);
+    private final AtomicNumber maxCompileTime = new AtomicNumber(0L);
+    private final AtomicNumber evictCount = new AtomicNumber(0L);
+    private final AtomicNumber expireCount = new AtomicNumber(0L);
+
+    /** コンパイル処理. 完了後はキャッシュ要素として保持. **/
+    private static final class CompileTask extends FutureTask<CompileElement> {
+        CompileTask(final CompileManager man, final String path,
+                final boolean module) {
+            super(new Callable<CompileElement>() {
+                public CompileElement call() throws Exception {
+                    return module ? ExecuteScript.compileModule(man, path)
+                            : ExecuteScript.compile(man, path);
+                }
+            });
+        }
+
+        /** コンパイル結果を取得. 失敗している場合は[null]. **/
+        CompileElement element() {
+            try {
+                return get();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    /** 破棄判定用の待ち行列要素. **/
+    private static final class Timing {
+        final String key;
+        final CompileTask task;
+        long time;
+
+        Timing(String key, CompileTask task, long time) {
+            this.key = key;
+            this.task = task;
+            this.time = time;
+        }
+    }
+
     public CompileManager(int compileCacheTimeout) {
+        this(compileCacheTimeout, ScriptFileIndex.MODE_STAT);
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param compileCacheTimeout
+     *            コンパイルキャッシュタイムアウトを設定します.
+     *            [0]以下の場合は、時間では破棄しません.
+     * @param checkMode
+     *            スクリプトファイルのチェックモードを設定します.
+     */
+    public CompileManager(int compileCacheTimeout, String checkMode) {
         this.compileCacheTimeout = compileCacheTimeout;
+        this.maxSize = Math.max(1, Mode.CLASS_CACHE_SIZE);
+
+        // アプリケーションフォルダのファイル情報は、インデックスで管理.
+        // インデックスが作成できない場合は、アクセス毎にファイル情報を取得する.
+        if (!ScriptFileIndex.MODE_STAT.equals(checkMode)) {
+            try {
+                index = new ScriptFileIndex(Def.SCRPIT_DIR,
+                        ScriptFileIndex.MODE_PRODUCTION.equals(checkMode), this);
+            } catch (Exception e) {
+                LOG.warn("script file index error:" + e.getMessage());
+            }
+        }
         startThread();
     }
 
     /**
      * コンパイル要素を取得.
-     * 
+     *
      * @param path
      *            対象のパスを設定します.
      * @return CompileElement コンパイル要素が返却されます.
      * @throws Exception
      */
     public CompileElement get(String path) throws Exception {
-        CompileElement ret = manager.get(path);
-        if (ret == null || Utils.getFileTime(path) != ret.getFileTime()) {
-            ret = ExecuteScript.compile(this, path);
-            ret.update();
-            manager.put(path, ret);
+        return get(path, path, false);
+    }
+
+    /**
+     * require用モジュールのコンパイル要素を取得.
+     *
+     * @param path
+     *            対象のパスを設定します.
+     * @return CompileElement コンパイル要素が返却されます.
+     * @throws Exception
+     */
+    public CompileElement getModule(String path) throws Exception {
+        return get(MODULE_KEY + path, path, true);
+    }
+
+    // コンパイル要素を取得.
+    private final CompileElement get(String key, String path, boolean module)
+            throws Exception {
+        CompileTask t;
+        CompileTask n;
+        CompileElement ret;
+        while (true) {
+            t = manager.get(key);
+            if (t != null) {
+
+                // 他のスレッドがコンパイル中の場合は、完了を待つ.
+                if (!t.isDone()) {
+                    waitCount.inc();
+                    return await(t);
+                }
+                ret = t.element();
+                if (ret != null && !isModified(path, ret)) {
+                    hitCount.inc();
+                    ret.update();
+                    return ret;
+                }
+            }
+
+            // 登録できたスレッドのみコンパイルする.
+            n = new CompileTask(this, path, module);
+            if (t == null ? manager.putIfAbsent(key, n) == null : manager
+                    .replace(key, t, n)) {
+                break;
+            }
+        }
+        missCount.inc();
+        long time = System.nanoTime();
+        n.run();
+        time = System.nanoTime() - time;
+        compileCount.inc();
+        totalCompileTime.add(time);
+        if (time > maxCompileTime.get()) {
+            maxCompileTime.set(time);
+        }
+        ret = n.element();
+        if (ret == null) {
+            errorCount.inc();
+            manager.remove(key, n);
+            return await(n);
+        }
+        ret.update();
+        timingSize.inc();
+        timing.offer(new Timing(key, n, ret.updateTime()));
+
+        // 上限を超えた場合は破棄.
+        if (manager.size() > maxSize) {
+            evict(System.currentTimeMillis(), true);
         }
         return ret;
     }
 
+    // コンパイル完了を待って、結果を取得.
+    private static final CompileElement await(CompileTask t) throws Exception {
+        try {
+            return t.get();
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof Exception) {
+                throw (Exception) c;
+            } else if (c instanceof Error) {
+                throw (Error) c;
+            }
+            throw e;
+        }
+    }
+
+    // ファイルが更新されているかチェック.
+    // [production]モードの場合は、インデックス対象のファイルはチェックしない.
+    private final boolean isModified(String path, CompileElement e)
+            throws Exception {
+        if (index != null && index.contains(path)) {
+            return !index.isProduction()
+                    && index.getFileTime(path) != e.getFileTime();
+        }
+        return Utils.getFileTime(path) != e.getFileTime();
+    }
+
+    /**
+     * 待ち行列の先頭から破棄.
+     *
+     * @param now
+     *            現在時間(ミリ秒)を設定します.
+     * @param full
+     *            [true]の場合は、上限を超えた分を破棄します.
+     *            [false]の場合は、タイムアウトした要素を破棄します.
+     */
+    private final void evict(long now, boolean full) {
+        Timing t;
+        CompileElement e;
+        long u;
+
+        // 上限を超えた場合は全ての要素を末尾に移動しても破棄できるように2周、
+        // タイムアウトの場合は1周で終了.
+        int len = full ? timingSize.get() << 1 : timingSize.get();
+        while (len-- > 0 && (!full || manager.size() > maxSize)) {
+            if ((t = timing.peek()) == null) {
+                return;
+            }
+
+            // 既に破棄、または再コンパイルされている要素.
+            if (manager.get(t.key) != t.task
+                    || (e = t.task.element()) == null) {
+                if (timing.remove(t)) {
+                    timingSize.dec();
+                }
+                continue;
+            }
+            u = e.updateTime();
+
+            // 登録後にアクセスがある場合は、末尾に移動.
+            if (u > t.time && (full || u + compileCacheTimeout >= now)) {
+                if (timing.remove(t)) {
+                    t.time = u;
+                    timing.offer(t);
+                }
+                continue;
+            }
+
+            // タイムアウトしていない場合は、後続の要素もタイムアウトしていない.
+            if (!full && u + compileCacheTimeout >= now) {
+                return;
+            }
+            if (timing.remove(t)) {
+                timingSize.dec();
+                if (manager.remove(t.key, t.task)) {
+                    if (full) {
+                        evictCount.inc();
+                    } else {
+                        expireCount.inc();
+                    }
+                }
+            }
+        }
+    }
+
+    // 破棄済みの待ち行列要素を削除.
+    private final void compact() {
+        Timing t;
+        Iterator<Timing> it = timing.iterator();
+        while (it.hasNext()) {
+            t = it.next();
+            if (manager.get(t.key) != t.task) {
+                it.remove();
+                timingSize.dec();
+            }
+        }
+    }
+
+    /**
+     * ファイルの存在チェック.
+     *
+     * @param path
+     *            対象のパスを設定します.
+     * @return boolean [true]の場合、ファイルは存在します.
+     */
+    public boolean isFile(String path) {
+        if (index != null && index.contains(path)) {
+            return index.isFile(path);
+        }
+        return Utils.isFile(path);
+    }
+
+    /**
+     * ファイルの更新時間を取得.
+     *
+     * @param path
+     *            対象のパスを設定します.
+     * @return long 更新時間が返却されます. 存在しない場合は[-1]が返却されます.
+     * @throws Exception
+     */
+    public long getFileTime(String path) throws Exception {
+        if (index != null && index.contains(path)) {
+            return index.getFileTime(path);
+        }
+        return Utils.getFileTime(path);
+    }
+
+    /**
+     * ルートテーブルを取得.
+     *
+     * @return RouteTable ルートテーブルが返却されます.
+     *         ファイルインデックスを利用しない[stat]モードの場合は[null].
+     */
+    public RouteTable getRoutes() {
+        return index == null ? null : index.getRoutes();
+    }
+
+    /**
+     * コンパイル結果を破棄.
+     *
+     * @param path
+     *            対象のパスを設定します.
+     */
+    public void remove(String path) {
+        manager.remove(path);
+        manager.remove(MODULE_KEY + path);
+    }
+
+    /** キャッシュ数を取得. **/
+    public int getSize() {
+        return manager.size();
+    }
+
+    /** キャッシュ上限数を取得. **/
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /** 他のスレッドのコンパイル完了を待った数を取得. **/
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public long getCompileCount() {
+        return compileCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /** コンパイル時間の合計(ナノ秒)を取得. **/
+    public long getTotalCompileTime() {
+        return totalCompileTime.get();
+    }
+
+    /** 最大コンパイル時間(ナノ秒)を取得. **/
+    public long getMaxCompileTime() {
+        return maxCompileTime.get();
+    }
+
+    /** 上限を超えて破棄した数を取得. **/
+    public long getEvictCount() {
+        return evictCount.get();
+    }
+
+    /** タイムアウトで破棄した数を取得. **/
+    public long getExpireCount() {
+        return expireCount.get();
+    }
+
     public void startThread() {
         stopFlag = false;
         setDaemon(true);
@@ -45,6 +404,9 @@ public class CompileManager extends Thread {
 
     public void stopThread() {
         stopFlag = true;
+        if (index != null) {
+            index.stopThread();
+        }
     }
 
     public void run() {
@@ -53,25 +415,15 @@ public class CompileManager extends Thread {
 
         while (!endFlag && !stopFlag) {
             try {
-                if (manager.size() == 0) {
-                    Thread.sleep(500);
-                    continue;
+                Thread.sleep(TIMEOUT);
+                if (compileCacheTimeout > 0) {
+                    evict(System.currentTimeMillis(), false);
                 }
-                Map.Entry<String, CompileElement> e;
-                Iterator<Map.Entry<String, CompileElement>> it = manager
-                        .entrySet().iterator();
-                while (it.hasNext()) {
-                    e = it.next();
-                    try {
-                        if (e.getValue().updateTime() + compileCacheTimeout < System
-                                .currentTimeMillis()) {
-                            it.remove();
-                        }
-                    } catch (Throwable t) {
-                    }
-                    Thread.sleep(10);
+
+                // 再コンパイル等で、破棄済みの要素が溜まった場合.
+                if (timingSize.get() > (manager.size() << 1) + 16) {
+                    compact();
                 }
-                Thread.sleep(200);
             } catch (ThreadDeath td) {
                 ret = td;
                 endFlag = true;
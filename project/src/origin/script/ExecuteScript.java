@@ -78,10 +78,35 @@ public class ExecuteScript {
      */
     public static final CompileElement compile(CompileManager man, String file)
             throws Exception {
+        return compile(man, file, false);
+    }
+
+    /**
+     * 対象JSを、require用モジュールとしてコンパイル.
+     * 
+     * 実行結果は、exportsとcacheを持つmoduleオブジェクトです.
+     * 
+     * @param man
+     * @param file
+     * @return CompileElement
+     * @throws Exception
+     */
+    public static final CompileElement compileModule(CompileManager man,
+            String file) throws Exception {
+        return compile(man, file, true);
+    }
+
+    // コンパイル処理.
+    private static final CompileElement compile(CompileManager man,
+            String file, boolean module) throws Exception {
         Compilable compilable = (Compilable) engine;
-        String js = loadScript(file);
+
+        // 読み込み中の更新を検出できるように、更新時間は読み込み前に取得.
+        long time = man != null ? man.getFileTime(file) : Utils
+                .getFileTime(file);
+        String js = module ? loadModule(file) : loadScript(file);
         CompiledScript c = compilable.compile(js);
-        return new CompileElement(c, man, file, Utils.getFileTime(file));
+        return new CompileElement(c, man, file, time);
     }
 
     /**
@@ -106,6 +131,7 @@ public class ExecuteScript {
 
     /**
      * コンパイルせずに、直接実行.
+     * 文字列以外の戻り値はJSON変換しないので、必要に応じてJson.encodeで変換します.
      * 
      * @param file
      * @param b
@@ -139,56 +165,57 @@ public class ExecuteScript {
         return engine.eval(script, context);
     }
 
+    /**
+     * 再利用するスコープで、コンパイル結果を実行.
+     * 
+     * @param c
+     * @param s
+     * @return Object
+     * @throws Exception
+     */
+    public static final Object execute(CompileElement c, ScriptScope s)
+            throws Exception {
+        s.getBindings().put(ScriptEngine.FILENAME, c.getFileName());
+        s.bind();
+        return c.getCompile().eval(s.getContext());
+    }
+
     // bindingsにコンポーネント関連をセット.
     private static final void setBindings(ScriptContext ctx, Bindings b,
             CompileManager man) {
-        OriginComponent c = new ConsoleComponent(b);
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
-
-        c = JsonComponent.getInstance();
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
-
-        c = new HttpComponent(b);
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
-
-        c = new RequireFunction(ctx, engine, man);
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
-
-        c = SleepFunction.getInstance();
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
-
-        c = ConfigFunction.getInstance();
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
-
-        c = LockComponent.getInstance();
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
+        setBindings(ctx, b, newComponents(ctx, b, man, false), null);
+    }
 
-        c = ReadWriteLockComponent.getInstance();
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
-        }
+    // 標準コンポーネントを生成.
+    static final OriginComponent[] newComponents(ScriptContext ctx,
+            Bindings b, CompileManager man, boolean moduleCache) {
+        return new OriginComponent[] { new ConsoleComponent(b),
+                JsonComponent.getInstance(), new HttpComponent(b),
+                new RequireFunction(ctx, engine, man, moduleCache),
+                SleepFunction.getInstance(), ConfigFunction.getInstance(),
+                LockComponent.getInstance(),
+                ReadWriteLockComponent.getInstance(),
+                SynchronizedFunction.getInstance() };
+    }
 
-        c = SynchronizedFunction.getInstance();
-        if (!b.containsKey(c.getComponentName())) {
-            b.put(c.getComponentName(), c);
+    // bindingsに標準コンポーネントとプラグインコンポーネントをセット.
+    // 再利用するコンポーネントは、リセットして再設定する.
+    static final void setBindings(ScriptContext ctx, Bindings b,
+            OriginComponent[] components, OriginComponent[] plugins) {
+        OriginComponent c;
+        int len = components.length;
+        for (int i = 0; i < len; i++) {
+            c = components[i];
+            if (!b.containsKey(c.getComponentName())) {
+                if (c instanceof ReuseComponent) {
+                    ((ReuseComponent) c).reset(ctx, b);
+                }
+                b.put(c.getComponentName(), c);
+            }
         }
 
         // プラグインコンポーネントの展開.
-        OriginComponentManager.getInstance().setBindings(ctx, b);
+        OriginComponentManager.getInstance().setBindings(ctx, b, plugins);
     }
 
     // 起動時実行スクリプト.
@@ -203,9 +230,24 @@ public class ExecuteScript {
             .append("\n})(global);\n")
             .append("if(typeof(ret) == 'string') {\n")
             .append("  response['Content-Type'] = 'text/html; charset=UTF-8';\n")
-            .append("  return ret;\n")
             .append( "}\n")
-            .append("return Json.encode(ret);\n")
+            .append("return ret;\n")
+            .append("})();").toString();
+    }
+
+    // モジュールファイル取得.
+    // 戻り値が存在する場合はexportsとし、thisはglobalとする.
+    protected static final String loadModule(String file) throws Exception {
+        String ret = Utils.getFileString(file, "UTF8");
+        return new StringBuilder().append(BASE_SCRPIT).append("(function(){")
+            .append("var module = {exports: {}, cache: true};\n")
+            .append("var ret = (function(global, module, exports){\n\"use strict\";\n")
+            .append(ret)
+            .append("\n}).call(global, global, module, module.exports);\n")
+            .append("if(ret !== undefined) {\n")
+            .append("  module.exports = ret;\n")
+            .append("}\n")
+            .append("return module;\n")
             .append("})();").toString();
     }
 }
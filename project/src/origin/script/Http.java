@@ -4,6 +4,7 @@ import java.nio.channels.ServerSocketChannel;
 
 import origin.db.core.DbFactory;
 import origin.net.BaseNio;
+import origin.net.NioMetrics;
 import origin.net.NioUtil;
 
 /**
@@ -18,6 +19,15 @@ public final class Http {
     /** Nio処理. **/
     private BaseNio nio = null;
 
+    /** Httpコール処理. **/
+    private HttpCall call = null;
+
+    /** 管理用サーバー. **/
+    private AdminServer admin = null;
+
+    /** 事前コンパイルとウォームアップが完了している場合は[true]. **/
+    private volatile boolean ready = false;
+
     /**
      * コンストラクタ.
      * 
@@ -32,18 +42,37 @@ public final class Http {
                 info.getLocalPort(), info.getBacklog());
 
         // nio処理を生成.
+        this.call = new HttpCall(info, dbFactory,
+                new CompileManager(info.getCompileCacheTimeout(),
+                        info.getScriptCheckMode()));
         this.nio = new BaseNio(info.getByteBufferLength(),
                 info.getSocketSendBuffer(), info.getSocketReceiveBuffer(),
-                KEEP_ALIVE, TCP_NO_DELAY, ch, new HttpCall(dbFactory,
-                        new CompileManager(info.getCompileCacheTimeout()),
-                        info.getWorkerThread()));
+                KEEP_ALIVE, TCP_NO_DELAY, info.getReactorThread(),
+                info.getResponseSendTimeout(), info.getMaxConnections(),
+                info.isDirectWrite(), ch,
+                call);
+
+        // 管理用サーバーとJMX.
+        if (info.getAdminPort() > 0) {
+            this.admin = new AdminServer(info.getAdminAddress(),
+                    info.getAdminPort(), this);
+        }
+        if (info.isJmx()) {
+            call.getRequestMetrics().registerMBeans();
+        }
     }
 
     public void start() {
         nio.startThread();
+        if (admin != null) {
+            admin.start();
+        }
     }
 
     public void stop() {
+        if (admin != null) {
+            admin.stop();
+        }
         nio.stopThread();
     }
 
@@ -54,4 +83,36 @@ public final class Http {
     public boolean isExit() {
         return nio.isExitThread();
     }
+
+    /**
+     * 受付可能に設定.
+     */
+    public void ready() {
+        ready = true;
+    }
+
+    /**
+     * 受付可能かチェック.
+     * 
+     * @return boolean [true]の場合、事前コンパイルとウォームアップが完了しています.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public CompileManager getCompileManager() {
+        return call.getCompileManager();
+    }
+
+    public NioMetrics getMetrics() {
+        return nio.getMetrics();
+    }
+
+    public WorkerDispatcher getDispatcher() {
+        return call.getDispatcher();
+    }
+
+    public RequestMetrics getRequestMetrics() {
+        return call.getRequestMetrics();
+    }
 }
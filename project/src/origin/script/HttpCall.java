@@ -2,6 +2,7 @@ package origin.script;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -11,8 +12,7 @@ import org.apache.commons.logging.LogFactory;
 import origin.db.core.DbFactory;
 import origin.net.NioCall;
 import origin.net.NioElement;
-import origin.net.SendData;
-import origin.util.atomic.AtomicNumber32;
+import origin.net.http.HttpBody;
 
 /**
  * Httpコール処理.
@@ -21,26 +21,47 @@ public final class HttpCall extends NioCall {
     private static final Log LOG = LogFactory.getLog(HttpCall.class);
     private DbFactory dbFactory;
     private CompileManager compileManager;
-    private int workerLength = -1;
+    private int keepAliveRequests;
+    private int keepAliveTimeout;
+    private int headerTimeout;
+    private int readTimeout;
+    private StaticFileCache staticFiles;
+    private HttpInfo info;
     private Map<String,Object> memory = new ConcurrentHashMap<String,Object>();
-    private final AtomicNumber32 counter = new AtomicNumber32(0);
-    private ScriptWorkerThread[] worker = null;
+    private WorkerDispatcher dispatcher = null;
+    private RequestMetrics metrics = new RequestMetrics();
+    private RequestMetrics.Recorder recorder = metrics.shared();
 
     /**
      * コンストラクタ.
      * 
+     * @param info
+     *            Http設定を設定します.
      * @param dbFactory
      *            DBファクトリオブジェクトを設定します.
      * @param compileManage
      *            コンパイルマネージャを設定します.
-     * @param wprkerLength
-     *            ワーカースレッド長を設定します.
      */
-    public HttpCall(DbFactory dbFactory, CompileManager compileManager,
-            int workerLength) {
+    public HttpCall(HttpInfo info, DbFactory dbFactory,
+            CompileManager compileManager) {
         this.dbFactory = dbFactory;
         this.compileManager = compileManager;
-        this.workerLength = workerLength;
+        this.info = info;
+        this.keepAliveRequests = info.getKeepAliveRequests();
+        this.keepAliveTimeout = info.getKeepAliveTimeout();
+        this.headerTimeout = info.getHeaderTimeout();
+        this.readTimeout = info.getRequestReadTimeout();
+        this.staticFiles = new StaticFileCache(info.getStaticFileCacheSize(),
+                info.getStaticFileCheckInterval(), info.getMimeType());
+    }
+
+    /**
+     * コンパイルマネージャを取得.
+     * 
+     * @return CompileManager コンパイルマネージャが返却されます.
+     */
+    public CompileManager getCompileManager() {
+        return compileManager;
     }
 
     /**
@@ -61,12 +82,10 @@ public final class HttpCall extends NioCall {
         LOG.info(" start Http nio");
 
         // ワーカースレッドを生成.
-        ScriptWorkerThread[] w = new ScriptWorkerThread[workerLength];
-        for (int i = 0; i < workerLength; i++) {
-            w[i] = new ScriptWorkerThread(dbFactory, compileManager, memory, i);
-            w[i].startThread();
-        }
-        worker = w;
+        WorkerDispatcher d = new WorkerDispatcher(dbFactory, compileManager,
+                memory, staticFiles, info, metrics);
+        d.startThread();
+        dispatcher = d;
         return true;
     }
 
@@ -76,30 +95,8 @@ public final class HttpCall extends NioCall {
     public void endNio() {
         LOG.info(" stop Http nio");
 
-        // ワーカースレッドを破棄.
-        ScriptWorkerThread[] w = worker;
-        worker = null;
-        for (int i = 0; i < workerLength; i++) {
-            w[i].stopThread();
-        }
-
-        // ワーカースレッド停止待ち.
-        boolean allEndFlag = false;
-        while (!allEndFlag) {
-            allEndFlag = true;
-            for (int i = 0; i < workerLength; i++) {
-                if (!w[i].isEndThread()) {
-                    allEndFlag = false;
-                    break;
-                }
-            }
-            if (!allEndFlag) {
-                try {
-                    Thread.sleep(5);
-                } catch (Exception e) {
-                }
-            }
-        }
+        // ワーカースレッドを破棄して、停止待ち.
+        dispatcher.stopThread();
 
         // DBファクトリを破棄.
         dbFactory.destroy();
@@ -128,54 +125,35 @@ public final class HttpCall extends NioCall {
      */
     public boolean accept(NioElement em) throws IOException {
         LOG.debug(" accept Http nio");
+        HttpElement rem = (HttpElement) em;
+        rem.acceptTime = rem.requestTime = System.nanoTime();
 
+        // ヘッダ受信完了までのタイムアウトを設定.
+        em.setDeadline(NioElement.TIMEOUT_HEADER, System.currentTimeMillis()
+                + headerTimeout);
         return true;
     }
 
     /**
-     * Send処理.
+     * Send処理. 送信データを全て送信した後に呼び出されます.
      * 
      * @param em
      *            対象のBaseNioElementオブジェクトが設定されます.
-     * @param buf
-     *            対象のByteBufferを設定します.
      * @return boolean [true]の場合、正常に処理されました.
      * @exception IOException
      *                IO例外.
      */
-    public boolean send(NioElement em, ByteBuffer buf) throws IOException {
+    public boolean send(NioElement em) throws IOException {
         LOG.debug(" send Http nio");
 
+        // KeepAliveの場合は、次のリクエストを待つ.
+        // それ以外は通信切断処理.
         HttpElement rem = (HttpElement) em;
-
-        // 送信データを取得.
-        SendData sendData = rem.getSendData();
-        byte[] b = sendData.get();
-
-        // 送信対象のデータが存在しない場合.
-        if (b == null) {
-
-            // データが存在しない場合.
-            if (buf.position() == 0) {
-
-                // 通信切断処理.
-                return false;
-            }
-            return true;
-        }
-
-        // 送信処理.
-        int p = sendData.getPosition();
-        int n = b.length - p;
-        int len = buf.limit() - buf.position();
-        if (len > n) {
-            buf.put(b, p, n);
-            sendData.clear();
-        } else {
-            buf.put(b, p, len);
-            sendData.setPosition(p + len);
-        }
-        return true;
+        long now = System.nanoTime();
+        recorder.record(RequestMetrics.WRITE, rem.path, now
+                - rem.getSendData().getStartTime());
+        recorder.record(RequestMetrics.TOTAL, rem.path, now - rem.requestTime);
+        return rem.isKeepAlive() && nextRequest(rem);
     }
 
     /**
@@ -195,15 +173,108 @@ public final class HttpCall extends NioCall {
         HttpElement rem = (HttpElement) em;
 
         // 受信バッファに今回分の情報をセット.
-        rem.getBuffer().write(buf);
+        synchronized (rem) {
+            rem.getBuffer().write(buf);
 
-        int no = rem.getWorkerNo();
-        if (no == -1) {
-            no = counter.inc() % workerLength;
-            counter.set(no);
+            // 接続後の最初の受信.
+            if (rem.acceptTime != 0L) {
+                recorder.record(RequestMetrics.ACCEPT, System.nanoTime()
+                        - rem.acceptTime);
+                rem.acceptTime = 0L;
+            }
+
+            // スクリプト実行中に、Bodyを逐次受信している場合.
+            // Body以降のデータは、送信完了後に次のリクエストとして処理する.
+            HttpBody body = rem.getBody();
+            if (body != null && !body.isEnd()) {
+                body.receive(rem.getBuffer());
+                if (body.isEnd()) {
+                    rem.clearDeadline();
+                } else {
+                    rem.setDeadline(NioElement.TIMEOUT_READ,
+                            System.currentTimeMillis() + readTimeout);
+                }
+                return true;
+            }
+
+            // KeepAliveで次のリクエストを待機中の場合は、ヘッダ受信待ちに移行.
+            // Body受信中の場合は、受信の度にタイムアウトを延長.
+            if (rem.getDeadline() != NioElement.NO_DEADLINE) {
+                int type = rem.getDeadlineType();
+                if (type == NioElement.TIMEOUT_IDLE) {
+                    rem.requestTime = System.nanoTime();
+                    rem.setDeadline(NioElement.TIMEOUT_HEADER,
+                            System.currentTimeMillis() + headerTimeout);
+                } else if (type == NioElement.TIMEOUT_READ) {
+                    rem.setDeadline(NioElement.TIMEOUT_READ,
+                            System.currentTimeMillis() + readTimeout);
+                }
+            }
+        }
+        register(rem);
+        return true;
+    }
+
+    /**
+     * タイムアウト処理.
+     * 
+     * @param em
+     *            対象のBaseNioElementオブジェクトが設定されます.
+     * @param now
+     *            現在時間が設定されます.
+     * @return boolean [false]の場合、対象の要素はクローズされます.
+     */
+    public boolean timeout(NioElement em, long now) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(" timeout Http nio:" + em.getDeadlineType());
+        }
+        return false;
+    }
+
+    /** KeepAlive: 送信完了後に、次のリクエストを受け付ける. **/
+    private final boolean nextRequest(HttpElement em) throws IOException {
+        boolean pipeline;
+        synchronized (em) {
+            em.reset();
+
+            // パイプライン化された次のリクエストが受信済みの場合は
+            // ヘッダ受信待ち、それ以外は次のリクエストの待機.
+            long now = System.currentTimeMillis();
+            if (pipeline = !em.getBuffer().isEmpty()) {
+                em.requestTime = System.nanoTime();
+                em.setDeadline(NioElement.TIMEOUT_HEADER, now + headerTimeout);
+            } else {
+                em.setDeadline(NioElement.TIMEOUT_IDLE, now + keepAliveTimeout);
+            }
+        }
+        em.interestOps(SelectionKey.OP_READ);
+        if (pipeline) {
+            register(em);
         }
-        worker[no].register(rem);
         return true;
     }
 
+    /**
+     * ワーカースレッド振り分け処理を取得.
+     *
+     * @return WorkerDispatcher ワーカースレッド振り分け処理が返却されます.
+     */
+    public WorkerDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * リクエスト処理のレイテンシを取得.
+     *
+     * @return RequestMetrics リクエスト処理のレイテンシが返却されます.
+     */
+    public RequestMetrics getRequestMetrics() {
+        return metrics;
+    }
+
+    /** ワーカースレッドに要素を登録. **/
+    private final void register(HttpElement em) throws IOException {
+        dispatcher.register(em);
+    }
+
 }
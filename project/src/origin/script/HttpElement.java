@@ -1,27 +1,75 @@
 package origin.script;
 
 import origin.net.NioElement;
+import origin.net.http.HttpBody;
+import origin.net.http.HttpParser;
 import origin.net.http.HttpRequest;
+import origin.util.atomic.AtomicNumber32;
 
 /**
  * Http要素.
  */
 public final class HttpElement extends NioElement {
     protected HttpRequest request = null;
+    protected HttpParser parser = new HttpParser();
+    protected HttpBody body = null;
     protected int workerNo = -1;
     protected boolean endReceive = false;
     protected boolean endSend = false;
 
-    public void clear() {
-        super.clear();
+    protected boolean keepAlive = false;
+    protected int requestCount = 0;
+
+    /** ワーカースレッドの待ち行列に登録済みか. **/
+    protected final AtomicNumber32 queued = new AtomicNumber32(0);
+
+    /** ワーカースレッドに振り分けた時間(ナノ秒). **/
+    protected long dispatchTime = 0L;
+
+    /** 接続時間、リクエスト開始時間(ナノ秒). **/
+    protected long acceptTime = 0L;
+    protected long requestTime = 0L;
+
+    /** 待ち行列での待ち時間(ナノ秒). **/
+    protected long queueTime = 0L;
+
+    /** 実行したスクリプトのパス. **/
+    protected String path = null;
+
+    /** タスク実行中か、実行中に再実行が要求されたか(thisで同期). **/
+    protected boolean running = false;
+    protected boolean rerun = false;
+
+    @Override
+    protected void release() {
+        super.release();
         request = null;
+        if (body != null) {
+            body.close();
+            body = null;
+        }
     }
 
     /**
-     * 受信バッファを破棄.
+     * KeepAlive用に、次のリクエストを受け付ける状態にリセット.
+     * 受信バッファは、パイプライン化された次のリクエストが
+     * 存在する可能性があるので、破棄しません.
      */
-    public void destroyBuffer() {
-        super.buffer = null;
+    public void reset() {
+        request = null;
+        if (body != null) {
+            body.close();
+            body = null;
+        }
+        endReceive = false;
+        endSend = false;
+        keepAlive = false;
+        workerNo = -1;
+        path = null;
+        queueTime = 0L;
+        if (sendData != null) {
+            sendData.clear();
+        }
     }
 
     public void setRequest(HttpRequest request) {
@@ -32,6 +80,18 @@ public final class HttpElement extends NioElement {
         return request;
     }
 
+    public HttpParser getParser() {
+        return parser;
+    }
+
+    public void setBody(HttpBody body) {
+        this.body = body;
+    }
+
+    public HttpBody getBody() {
+        return body;
+    }
+
     public void setWorkerNo(int n) {
         workerNo = n;
     }
@@ -55,4 +115,21 @@ public final class HttpElement extends NioElement {
     public boolean isEndSend() {
         return endSend;
     }
+
+    public void setKeepAlive(boolean f) {
+        keepAlive = f;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * このコネクションで処理したリクエスト数をカウントアップ.
+     *
+     * @return int カウントアップ後のリクエスト数が返却されます.
+     */
+    public int incRequestCount() {
+        return ++requestCount;
+    }
 }
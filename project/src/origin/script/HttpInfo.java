@@ -1,7 +1,13 @@
 package origin.script;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import origin.conf.Config;
+import origin.net.http.MimeType;
+import origin.pref.Def;
 import origin.pref.Env;
+import origin.util.Utils;
 
 /**
  * Httpサーバ設定.
@@ -29,8 +35,107 @@ public class HttpInfo {
     /** ワーカースレッド数. **/
     private int workerThread = 5;
 
-    /** コンパイルキャッシュタイムアウト. **/
-    private int compileCacheTimeout = 30000;
+    /** Nioリアクタースレッド数. [0]以下の場合はCPUコア数. **/
+    private int reactorThread = 0;
+
+    /** コンパイルキャッシュタイムアウト. [0]以下の場合は時間では破棄しない. **/
+    private int compileCacheTimeout = 0;
+
+    /** スクリプトファイルのチェックモード(stat or watch or production). **/
+    private String scriptCheckMode = ScriptFileIndex.MODE_WATCH;
+
+    /** requireしたモジュールのキャッシュ. **/
+    private boolean requireCache = true;
+
+    /** 起動時のスクリプト事前コンパイル. **/
+    private boolean precompile = true;
+
+    /** 事前コンパイルの並列数. [0]以下の場合はCPUコア数. **/
+    private int precompileThread = 0;
+
+    /** ウォームアップファイル. **/
+    private String warmupFile = "./conf/warmup.conf";
+
+    /** ウォームアップでの各リクエストの送信回数. [0]以下の場合は無効. **/
+    private int warmupCount = 0;
+
+    /** KeepAlive時の１コネクションでの最大リクエスト数. **/
+    private int keepAliveRequests = 100;
+
+    /** KeepAlive時の次のリクエストまでの待機タイムアウト. **/
+    private int keepAliveTimeout = 15000;
+
+    /** ワーカーモード(thread or virtual). **/
+    private String workerMode = WorkerDispatcher.MODE_THREAD;
+
+    /** ワーカーモードが[virtual]の場合の最大同時実行数. **/
+    private int maxConcurrentScripts = 256;
+
+    /** ワーカースレッド毎の待ち行列の上限. **/
+    private int workerQueueSize = 1024;
+
+    /** ワーカースレッドの待ち行列での待機タイムアウト. **/
+    private int workerQueueTimeout = 5000;
+
+    /** 接続またはリクエスト開始から、ヘッダ受信完了までのタイムアウト. **/
+    private int headerTimeout = 10000;
+
+    /** 最大同時接続数. **/
+    private int maxConnections = 10000;
+
+    /** ワーカースレッドから直接送信するか. **/
+    private boolean directWrite = true;
+
+    /** 管理用(メトリクス)のバインドアドレスとポート. ポートが0以下の場合は無効. **/
+    private String adminAddress = "127.0.0.1";
+    private int adminPort = 3334;
+
+    /** JMXにMBeanを登録するか. **/
+    private boolean jmx = true;
+
+    /** 静的ファイルのオープン済みファイルキャッシュ数. **/
+    private int staticFileCacheSize = 256;
+
+    /** 静的ファイルのファイル情報再チェック間隔. **/
+    private int staticFileCheckInterval = 1000;
+
+    /** 最大Body長. **/
+    private long maxContentLength = Def.MAX_CONTENT_LENGTH;
+
+    /** パラメータとして読み込むBodyの最大長. **/
+    private int maxParamsLength = Def.MAX_PARAMS_LENGTH;
+
+    /** Bodyを一時ファイルに退避するサイズ. **/
+    private int requestSpoolSize = 65536;
+
+    /** Bodyの受信待機タイムアウト. **/
+    private int requestReadTimeout = 30000;
+
+    /** JSON形式のBodyの遅延解析. **/
+    private boolean jsonLazyDecode = false;
+
+    /** 最大パラメータ数. **/
+    private int maxParams = 1000;
+
+    /** GZIP圧縮レベル. **/
+    private int gzipLevel = 6;
+
+    /** GZIP圧縮対象の最小Body長. **/
+    private int gzipMinLength = Def.NOT_GZIP_BODY_LENGTH;
+
+    /** GZIP圧縮対象のContent-Type(前方一致). **/
+    private String[] gzipContentTypes = new String[] { "text/",
+            "application/json", "application/javascript",
+            "application/xml", "image/svg+xml" };
+
+    /** ストリーミングレスポンスのチャンクサイズ. **/
+    private int responseChunkSize = 8192;
+
+    /** ストリーミングレスポンスの送信待機タイムアウト. **/
+    private int responseSendTimeout = 30000;
+
+    /** MimeType. **/
+    private MimeType mimeType = new MimeType();
 
     public int getBacklog() {
         return backlog;
@@ -88,6 +193,14 @@ public class HttpInfo {
         this.workerThread = workerThread;
     }
 
+    public int getReactorThread() {
+        return reactorThread;
+    }
+
+    public void setReactorThread(int reactorThread) {
+        this.reactorThread = reactorThread;
+    }
+
     public int getCompileCacheTimeout() {
         return compileCacheTimeout;
     }
@@ -96,9 +209,265 @@ public class HttpInfo {
         this.compileCacheTimeout = compileCacheTimeout;
     }
 
+    public String getScriptCheckMode() {
+        return scriptCheckMode;
+    }
+
+    public void setScriptCheckMode(String scriptCheckMode) {
+        this.scriptCheckMode = scriptCheckMode;
+    }
+
+    public boolean isRequireCache() {
+        return requireCache;
+    }
+
+    public void setRequireCache(boolean requireCache) {
+        this.requireCache = requireCache;
+    }
+
+    public boolean isPrecompile() {
+        return precompile;
+    }
+
+    public void setPrecompile(boolean precompile) {
+        this.precompile = precompile;
+    }
+
+    public int getPrecompileThread() {
+        return precompileThread;
+    }
+
+    public void setPrecompileThread(int precompileThread) {
+        this.precompileThread = precompileThread;
+    }
+
+    public String getWarmupFile() {
+        return warmupFile;
+    }
+
+    public void setWarmupFile(String warmupFile) {
+        this.warmupFile = warmupFile;
+    }
+
+    public int getWarmupCount() {
+        return warmupCount;
+    }
+
+    public void setWarmupCount(int warmupCount) {
+        this.warmupCount = warmupCount;
+    }
+
+    public int getKeepAliveRequests() {
+        return keepAliveRequests;
+    }
+
+    public void setKeepAliveRequests(int keepAliveRequests) {
+        this.keepAliveRequests = keepAliveRequests;
+    }
+
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public String getWorkerMode() {
+        return workerMode;
+    }
+
+    public void setWorkerMode(String workerMode) {
+        this.workerMode = workerMode;
+    }
+
+    public int getMaxConcurrentScripts() {
+        return maxConcurrentScripts;
+    }
+
+    public void setMaxConcurrentScripts(int maxConcurrentScripts) {
+        this.maxConcurrentScripts = maxConcurrentScripts;
+    }
+
+    public int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    public int getWorkerQueueTimeout() {
+        return workerQueueTimeout;
+    }
+
+    public void setWorkerQueueTimeout(int workerQueueTimeout) {
+        this.workerQueueTimeout = workerQueueTimeout;
+    }
+
+    public int getHeaderTimeout() {
+        return headerTimeout;
+    }
+
+    public void setHeaderTimeout(int headerTimeout) {
+        this.headerTimeout = headerTimeout;
+    }
+
+    public boolean isDirectWrite() {
+        return directWrite;
+    }
+
+    public void setDirectWrite(boolean directWrite) {
+        this.directWrite = directWrite;
+    }
+
+    public String getAdminAddress() {
+        return adminAddress;
+    }
+
+    public void setAdminAddress(String adminAddress) {
+        this.adminAddress = adminAddress;
+    }
+
+    public int getAdminPort() {
+        return adminPort;
+    }
+
+    public void setAdminPort(int adminPort) {
+        this.adminPort = adminPort;
+    }
+
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
     // セクション名.
     private static final String SECTION = "http";
 
+    public int getStaticFileCacheSize() {
+        return staticFileCacheSize;
+    }
+
+    public void setStaticFileCacheSize(int staticFileCacheSize) {
+        this.staticFileCacheSize = staticFileCacheSize;
+    }
+
+    public int getStaticFileCheckInterval() {
+        return staticFileCheckInterval;
+    }
+
+    public void setStaticFileCheckInterval(int staticFileCheckInterval) {
+        this.staticFileCheckInterval = staticFileCheckInterval;
+    }
+
+    public long getMaxContentLength() {
+        return maxContentLength;
+    }
+
+    public void setMaxContentLength(long maxContentLength) {
+        this.maxContentLength = maxContentLength;
+    }
+
+    public int getMaxParamsLength() {
+        return maxParamsLength;
+    }
+
+    public void setMaxParamsLength(int maxParamsLength) {
+        this.maxParamsLength = maxParamsLength;
+    }
+
+    public int getRequestSpoolSize() {
+        return requestSpoolSize;
+    }
+
+    public void setRequestSpoolSize(int requestSpoolSize) {
+        this.requestSpoolSize = requestSpoolSize;
+    }
+
+    public int getRequestReadTimeout() {
+        return requestReadTimeout;
+    }
+
+    public void setRequestReadTimeout(int requestReadTimeout) {
+        this.requestReadTimeout = requestReadTimeout;
+    }
+
+    public boolean isJsonLazyDecode() {
+        return jsonLazyDecode;
+    }
+
+    public void setJsonLazyDecode(boolean jsonLazyDecode) {
+        this.jsonLazyDecode = jsonLazyDecode;
+    }
+
+    public int getMaxParams() {
+        return maxParams;
+    }
+
+    public void setMaxParams(int maxParams) {
+        this.maxParams = maxParams;
+    }
+
+    public int getGzipLevel() {
+        return gzipLevel;
+    }
+
+    public void setGzipLevel(int gzipLevel) {
+        this.gzipLevel = gzipLevel;
+    }
+
+    public int getGzipMinLength() {
+        return gzipMinLength;
+    }
+
+    public void setGzipMinLength(int gzipMinLength) {
+        this.gzipMinLength = gzipMinLength;
+    }
+
+    public String[] getGzipContentTypes() {
+        return gzipContentTypes;
+    }
+
+    public void setGzipContentTypes(String[] gzipContentTypes) {
+        this.gzipContentTypes = gzipContentTypes;
+    }
+
+    public int getResponseChunkSize() {
+        return responseChunkSize;
+    }
+
+    public void setResponseChunkSize(int responseChunkSize) {
+        this.responseChunkSize = responseChunkSize;
+    }
+
+    public int getResponseSendTimeout() {
+        return responseSendTimeout;
+    }
+
+    public void setResponseSendTimeout(int responseSendTimeout) {
+        this.responseSendTimeout = responseSendTimeout;
+    }
+
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(MimeType mimeType) {
+        this.mimeType = mimeType;
+    }
+
     /**
      * Http設定データを取得.
      * 
@@ -159,9 +528,180 @@ public class HttpInfo {
             info.setWorkerThread((Integer) o);
         }
 
+        o = conf.getInt(section, "reactorThread", 0);
+        if (o != null) {
+            info.setReactorThread((Integer) o);
+        }
+
         o = conf.getInt(section, "compileCacheTimeout", 0);
         if (o != null) {
             info.setCompileCacheTimeout((Integer) o);
         }
+
+        o = conf.get(section, "scriptCheckMode", 0);
+        if (o != null) {
+            info.setScriptCheckMode(((String) o).trim().toLowerCase());
+        }
+
+        o = conf.getBoolean(section, "requireCache", 0);
+        if (o != null) {
+            info.setRequireCache((Boolean) o);
+        }
+
+        o = conf.getBoolean(section, "precompile", 0);
+        if (o != null) {
+            info.setPrecompile((Boolean) o);
+        }
+
+        o = conf.getInt(section, "precompileThread", 0);
+        if (o != null) {
+            info.setPrecompileThread((Integer) o);
+        }
+
+        o = conf.get(section, "warmupFile", 0);
+        if (o != null) {
+            info.setWarmupFile(((String) o).trim());
+        }
+
+        o = conf.getInt(section, "warmupCount", 0);
+        if (o != null) {
+            info.setWarmupCount((Integer) o);
+        }
+
+        o = conf.getInt(section, "keepAliveRequests", 0);
+        if (o != null) {
+            info.setKeepAliveRequests((Integer) o);
+        }
+
+        o = conf.getInt(section, "keepAliveTimeout", 0);
+        if (o != null) {
+            info.setKeepAliveTimeout((Integer) o);
+        }
+
+        o = conf.get(section, "workerMode", 0);
+        if (o != null) {
+            info.setWorkerMode(((String) o).trim().toLowerCase());
+        }
+
+        o = conf.getInt(section, "maxConcurrentScripts", 0);
+        if (o != null) {
+            info.setMaxConcurrentScripts((Integer) o);
+        }
+
+        o = conf.getInt(section, "workerQueueSize", 0);
+        if (o != null) {
+            info.setWorkerQueueSize((Integer) o);
+        }
+
+        o = conf.getInt(section, "workerQueueTimeout", 0);
+        if (o != null) {
+            info.setWorkerQueueTimeout((Integer) o);
+        }
+
+        o = conf.getInt(section, "headerTimeout", 0);
+        if (o != null) {
+            info.setHeaderTimeout((Integer) o);
+        }
+
+        o = conf.getInt(section, "maxConnections", 0);
+        if (o != null) {
+            info.setMaxConnections((Integer) o);
+        }
+
+        o = conf.getBoolean(section, "directWrite", 0);
+        if (o != null) {
+            info.setDirectWrite((Boolean) o);
+        }
+
+        o = conf.get(section, "adminAddress", 0);
+        if (o != null) {
+            info.setAdminAddress((String) o);
+        }
+
+        o = conf.getInt(section, "adminPort", 0);
+        if (o != null) {
+            info.setAdminPort((Integer) o);
+        }
+
+        o = conf.getBoolean(section, "jmx", 0);
+        if (o != null) {
+            info.setJmx((Boolean) o);
+        }
+
+        o = conf.getInt(section, "staticFileCacheSize", 0);
+        if (o != null) {
+            info.setStaticFileCacheSize((Integer) o);
+        }
+
+        o = conf.getInt(section, "staticFileCheckInterval", 0);
+        if (o != null) {
+            info.setStaticFileCheckInterval((Integer) o);
+        }
+
+        o = conf.getLong(section, "maxContentLength", 0);
+        if (o != null) {
+            info.setMaxContentLength((Long) o);
+        }
+
+        o = conf.getInt(section, "maxParamsLength", 0);
+        if (o != null) {
+            info.setMaxParamsLength((Integer) o);
+        }
+
+        o = conf.getInt(section, "requestSpoolSize", 0);
+        if (o != null) {
+            info.setRequestSpoolSize((Integer) o);
+        }
+
+        o = conf.getInt(section, "requestReadTimeout", 0);
+        if (o != null) {
+            info.setRequestReadTimeout((Integer) o);
+        }
+
+        o = conf.getBoolean(section, "jsonLazyDecode", 0);
+        if (o != null) {
+            info.setJsonLazyDecode((Boolean) o);
+        }
+
+        o = conf.getInt(section, "maxParams", 0);
+        if (o != null) {
+            info.setMaxParams((Integer) o);
+        }
+
+        o = conf.getInt(section, "gzipLevel", 0);
+        if (o != null) {
+            info.setGzipLevel((Integer) o);
+        }
+
+        o = conf.getInt(section, "gzipMinLength", 0);
+        if (o != null) {
+            info.setGzipMinLength((Integer) o);
+        }
+
+        int len = conf.size(section, "gzipContentType");
+        if (len > 0) {
+            List<String> types = new ArrayList<String>();
+            String n;
+            for (int i = 0; i < len; i++) {
+                n = conf.get(section, "gzipContentType", i);
+                if (Utils.useString(n)) {
+                    types.add(n.trim());
+                }
+            }
+            info.setGzipContentTypes(types.toArray(new String[types.size()]));
+        }
+
+        o = conf.getInt(section, "responseChunkSize", 0);
+        if (o != null) {
+            info.setResponseChunkSize((Integer) o);
+        }
+
+        o = conf.getInt(section, "responseSendTimeout", 0);
+        if (o != null) {
+            info.setResponseSendTimeout((Integer) o);
+        }
+
+        // 拡張MimeTypeを読み込む.
+        info.setMimeType(MimeType.createMime(conf));
     }
 }
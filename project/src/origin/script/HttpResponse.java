@@ -1,11 +1,11 @@
 package origin.script;
 
+import java.io.IOException;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import origin.util.BlankMap;
-import origin.util.ListMap;
+import origin.util.HashListMap;
 import origin.util.Utils;
 
 /**
@@ -14,8 +14,9 @@ import origin.util.Utils;
 public class HttpResponse implements BlankMap {
     private static final String DEFAULT_CONTENT_TYPE = "application/json; charset=UTF-8";
     protected int status = 200;
-    protected ListMap header = new ListMap();
+    protected HashListMap header = new HashListMap();
     protected String ContentType = DEFAULT_CONTENT_TYPE;
+    protected ResponseWriter writer = null;
 
     public void clear() {
         header.clear();
@@ -72,22 +73,65 @@ public class HttpResponse implements BlankMap {
         return header.remove(k.toString());
     }
 
+    /**
+     * ストリーミング送信. 最初の呼び出しでステータスとヘッダが送信され、
+     * それ以降はヘッダの変更とスクリプトの戻り値は反映されません.
+     * 
+     * @param value
+     *            送信対象の内容を設定します. 文字列以外はJSON変換されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void write(Object value) throws IOException {
+        if (writer == null) {
+            throw new IOException("ストリーミング送信は利用できません");
+        }
+        if (value == null) {
+            writer.write("");
+        } else if (value instanceof String) {
+            writer.write((String) value);
+        } else {
+            writer.write(Json.encode(value));
+        }
+    }
+
+    /**
+     * ストリーミング送信で、書き込み済みの内容を送信.
+     * 
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void flush() throws IOException {
+        if (writer == null) {
+            throw new IOException("ストリーミング送信は利用できません");
+        }
+        writer.flush();
+    }
+
+    /**
+     * ストリーミング送信が開始されているかチェック.
+     * 
+     * @return boolean [true]の場合、ストリーミング送信中です.
+     */
+    public boolean isCommitted() {
+        return writer != null && writer.isCommitted();
+    }
+
     protected static final String headers(HttpResponse h) {
         if (h == null) {
             return "";
         }
-        List<String[]> raw = h.header.rawData();
-        if (raw.size() == 0) {
+        HashListMap header = h.header;
+        int len = header.size();
+        if (len == 0) {
             return new StringBuilder("Content-Type: ")
                 .append(h.ContentType).append("\r\n")
                 .toString();
         }
         StringBuilder buf = new StringBuilder();
-        int len = raw.size();
-        String[] kv = null;
         for (int i = 0; i < len; i++) {
-            kv = raw.get(i);
-            buf.append(kv[0]).append(": ").append(kv[1]).append("\r\n");
+            buf.append(header.getKey(i)).append(": ")
+                    .append(header.getValue(i)).append("\r\n");
         }
         buf.append("Content-Type: ").append(h.ContentType).append("\r\n");
         return buf.toString();
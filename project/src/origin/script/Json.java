@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import origin.db.core.DbResult;
 
 /**
  * Json変換処理.
@@ -25,6 +26,7 @@ public final class Json {
 
     private static final int TYPE_ARRAY = 0;
     private static final int TYPE_MAP = 1;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
 
     /**
      * JSON変換.
@@ -36,9 +38,14 @@ public final class Json {
      *                例外.
      */
     public static final String encode(Object target) throws IOException {
-        StringBuilder buf = new StringBuilder();
-        _encode(buf, target, target);
-        return buf.toString();
+        long t = System.nanoTime();
+        try {
+            StringBuilder buf = new StringBuilder();
+            _encode(buf, target, target);
+            return buf.toString();
+        } finally {
+            RequestMetrics.addJsonTime(System.nanoTime() - t);
+        }
     }
 
     /**
@@ -54,7 +61,37 @@ public final class Json {
         if (json == null) {
             return null;
         }
+        byte[] b = json.getBytes("UTF8");
+        return decode(new JsonReader(), b, 0, b.length);
+    }
 
+    /**
+     * UTF8のJSONバイナリから、オブジェクト変換.
+     * JsonReaderで解析できない形式の場合は、従来の解析処理で変換します.
+     * 
+     * @param reader
+     *            利用するJsonReaderを設定します.
+     * @param b
+     *            対象のバイナリを設定します.
+     * @param off
+     *            開始位置を設定します.
+     * @param len
+     *            データ長を設定します.
+     * @return Object 変換されたJSON情報が返されます.
+     * @exception IOException
+     *                例外.
+     */
+    public static final Object decode(JsonReader reader, byte[] b, int off,
+            int len) throws IOException {
+        try {
+            return reader.read(b, off, len);
+        } catch (IOException e) {
+            return decodeToken(new String(b, off, len, "UTF8"));
+        }
+    }
+
+    /** Token化して変換. **/
+    private static final Object decodeToken(String json) throws IOException {
         List<Object> list;
         int[] n = new int[1];
         while (true) {
@@ -105,7 +142,7 @@ public final class Json {
                 else if ("Date".equals(so.getClassName())) {
                     buf.append("\"")
                             .append(dateToString(new java.util.Date(
-                                    ((Double) so.callMember("getTime"))
+                                    ((Number) so.callMember("getTime"))
                                             .longValue()))).append("\"");
                     return;
                 }
@@ -113,24 +150,33 @@ public final class Json {
             encodeJsonMap(buf, base, (Map) target);
         } else if (target instanceof List) {
             encodeJsonList(buf, base, (List) target);
+        } else if (target instanceof Double || target instanceof Float) {
+            double d = ((Number) target).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                buf.append("null");
+            } else {
+                buf.append(target);
+            }
         } else if (target instanceof Long || target instanceof Short
-                || target instanceof Integer || target instanceof Float
-                || target instanceof Double || target instanceof BigInteger
+                || target instanceof Integer || target instanceof Byte
+                || target instanceof BigInteger
                 || target instanceof BigDecimal) {
             buf.append(target);
         } else if (target instanceof Character || target instanceof String) {
-            buf.append("\"").append(target).append("\"");
+            string(buf, target.toString());
         } else if (target instanceof byte[]) {
             buf.append("null");
         } else if (target instanceof char[]) {
-            buf.append("\"").append(new String((char[]) target)).append("\"");
+            string(buf, new String((char[]) target));
         } else if (target instanceof java.util.Date) {
             buf.append("\"").append(dateToString((java.util.Date) target))
                     .append("\"");
         } else if (target instanceof Boolean) {
             buf.append(target);
-        } else if (target == null) {
+        } else if (target == null || ScriptObjectMirror.isUndefined(target)) {
             buf.append("null");
+        } else if (target instanceof DbResult) {
+            encodeJsonResult(buf, (DbResult) target);
         } else if (target.getClass().isArray()) {
             if (Array.getLength(target) == 0) {
                 buf.append("[]");
@@ -138,8 +184,43 @@ public final class Json {
                 encodeJsonArray(buf, base, target);
             }
         } else {
-            buf.append("\"").append(target.toString()).append("\"");
+            string(buf, target.toString());
+        }
+    }
+
+    /** [encodeJSON]文字列をエスケープして追加. **/
+    private static final void string(StringBuilder buf, String s) {
+        byte[] esc = JsonWriter.ESCAPE;
+        int len = s.length();
+        int e;
+        char c;
+        buf.append("\"");
+        for (int i = 0; i < len; i++) {
+            c = s.charAt(i);
+            if (c >= 0x80 || (e = esc[c]) == 0) {
+                buf.append(c);
+            } else if (e == 'u') {
+                buf.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 15]);
+            } else {
+                buf.append('\\').append((char) e);
+            }
         }
+        buf.append("\"");
+    }
+
+    /** [encodeJSON]DB検索結果コンバート. 残りの行を全て読み込みます. **/
+    private static final void encodeJsonResult(StringBuilder buf,
+            DbResult result) throws IOException {
+        boolean flg = false;
+        buf.append("[");
+        while (result.hasNext()) {
+            if (flg) {
+                buf.append(",");
+            }
+            flg = true;
+            encodeJsonMap(buf, result, result.next());
+        }
+        buf.append("]");
     }
 
     /** [encodeJSON]jsonMapコンバート. **/
@@ -150,7 +231,7 @@ public final class Json {
         Iterator it = mp.keySet().iterator();
         buf.append("{");
         while (it.hasNext()) {
-            String key = (String) it.next();
+            Object key = it.next();
             Object value = mp.get(key);
             if (base == value) {
                 continue;
@@ -159,7 +240,8 @@ public final class Json {
                 buf.append(",");
             }
             flg = true;
-            buf.append("\"").append(key).append("\":");
+            string(buf, String.valueOf(key));
+            buf.append(":");
             _encode(buf, base, value);
         }
         buf.append("}");
@@ -193,7 +275,7 @@ public final class Json {
         buf.append("[");
         int len = list.size();
         for (int i = 0; i < len; i++) {
-            Object value = list.get("" + i);
+            Object value = list.getSlot(i);
             if (base == value) {
                 continue;
             }
@@ -469,12 +551,12 @@ public final class Json {
     }
 
     /** 日付を文字変換. **/
-    private static final String dateToString(Date d) {
+    static final String dateToString(Date d) {
         return _getISO8601().format(d);
     }
 
     /** 文字を日付変換. **/
-    private static final Date stringToDate(String s) throws IOException {
+    static final Date stringToDate(String s) throws IOException {
         try {
             return _getISO8601().parse(s);
         } catch (Exception e) {
@@ -0,0 +1,672 @@
+package origin.script;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSONバイナリ解析処理.
+ *
+ * UTF8のJSONバイナリを、トークン化せずに再帰下降で直接解析します.
+ * オブジェクトのキー名は、同じバイト列の場合に同じ文字列を再利用し、
+ * 数値は文字列を経由せずに変換します.
+ *
+ * lazyを有効にした場合は、2階層目以降のオブジェクトと配列は範囲の確認のみを
+ * 行い、最初にアクセスされた時点で解析します. この場合、内部の不正な
+ * JSONはアクセス時の例外になります.
+ *
+ * 解析結果は、Json.decodeと同じくMapはLinkedHashMap、配列はArrayList、
+ * 整数はLong、小数はDouble、ISO8601形式の文字列はDateになります.
+ * スレッド毎に生成して利用します.
+ */
+public final class JsonReader {
+
+    /** キー名キャッシュ数(2のべき乗). **/
+    private static final int KEY_CACHE = 512;
+
+    /** キー名キャッシュ対象の最大バイト長. **/
+    private static final int KEY_LENGTH = 32;
+
+    /** 整数で保持できる最大桁数. **/
+    private static final int LONG_DIGITS = 18;
+
+    /** 誤差なしで計算できる10のべき乗. **/
+    private static final double[] POW10 = new double[23];
+    static {
+        double d = 1.0d;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = d;
+            d *= 10.0d;
+        }
+    }
+
+    private final boolean lazy;
+
+    /** キー名キャッシュ. **/
+    private byte[][] keyBytes = null;
+    private String[] keys = null;
+
+    /** 文字列変換用バッファ. **/
+    private char[] chars = new char[64];
+
+    /** 解析中の情報. **/
+    private byte[] src;
+    private int pos;
+    private int end;
+
+    public JsonReader() {
+        this(false);
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param lazy
+     *            [true]の場合、2階層目以降は最初のアクセス時に解析します.
+     */
+    public JsonReader(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * JSON解析.
+     *
+     * @param b
+     *            対象のバイナリを設定します.
+     * @param off
+     *            開始位置を設定します.
+     * @param len
+     *            データ長を設定します.
+     * @return Object 解析結果が返却されます.
+     * @exception IOException
+     *                JSON形式が不正な場合.
+     */
+    public Object read(byte[] b, int off, int len) throws IOException {
+        src = b;
+        pos = off;
+        end = off + len;
+        try {
+            // UTF8のBOMは無視.
+            if (len >= 3 && b[off] == (byte) 0xef && b[off + 1] == (byte) 0xbb
+                    && b[off + 2] == (byte) 0xbf) {
+                pos += 3;
+            }
+            Object ret = value(0);
+            if (skipSpace() != -1) {
+                throw error("不正な文字が存在します");
+            }
+            return ret;
+        } finally {
+            src = null;
+        }
+    }
+
+    /** 1つの要素を解析. **/
+    private final Object value(int depth) throws IOException {
+        int c = skipSpace();
+        switch (c) {
+        case '{':
+            if (lazy && depth > 0) {
+                return new LazyMap(src, pos, skip());
+            }
+            pos++;
+            return object(depth);
+        case '[':
+            if (lazy && depth > 0) {
+                return new LazyList(src, pos, skip());
+            }
+            pos++;
+            return array(depth);
+        case '"':
+        case '\'':
+            pos++;
+            return string(c, true);
+        case 't':
+            literal("true");
+            return Boolean.TRUE;
+        case 'f':
+            literal("false");
+            return Boolean.FALSE;
+        case 'n':
+            literal("null");
+            return null;
+        case -1:
+            throw error("JSONが存在しません");
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return number();
+            }
+            throw error("不正な文字です");
+        }
+    }
+
+    /** オブジェクトを解析. **/
+    private final Map<String, Object> object(int depth) throws IOException {
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        int c = skipSpace();
+        if (c == '}') {
+            pos++;
+            return ret;
+        }
+        String key;
+        while (true) {
+            if (c != '"' && c != '\'') {
+                throw error("キー名が不正です");
+            }
+            pos++;
+            key = key(c);
+            if (skipSpace() != ':') {
+                throw error("[:]が存在しません");
+            }
+            pos++;
+            ret.put(key, value(depth + 1));
+            c = skipSpace();
+            pos++;
+            if (c == '}') {
+                return ret;
+            } else if (c != ',') {
+                throw error("[,]または[}]が存在しません");
+            }
+            c = skipSpace();
+        }
+    }
+
+    /** 配列を解析. **/
+    private final List<Object> array(int depth) throws IOException {
+        List<Object> ret = new ArrayList<Object>();
+        int c = skipSpace();
+        if (c == ']') {
+            pos++;
+            return ret;
+        }
+        while (true) {
+            ret.add(value(depth + 1));
+            c = skipSpace();
+            pos++;
+            if (c == ']') {
+                return ret;
+            } else if (c != ',') {
+                throw error("[,]または[]]が存在しません");
+            }
+        }
+    }
+
+    /** 空白を読み飛ばして、次の文字を取得. **/
+    private final int skipSpace() {
+        byte[] b = src;
+        int p = pos;
+        int e = end;
+        int c;
+        while (p < e) {
+            c = b[p];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                pos = p;
+                return c & 0xff;
+            }
+            p++;
+        }
+        pos = p;
+        return -1;
+    }
+
+    /** 固定文字を確認. **/
+    private final void literal(String s) throws IOException {
+        int len = s.length();
+        if (pos + len > end) {
+            throw error("不正な文字です");
+        }
+        for (int i = 0; i < len; i++) {
+            if (src[pos + i] != s.charAt(i)) {
+                throw error("不正な文字です");
+            }
+        }
+        pos += len;
+    }
+
+    /** キー名を解析. エスケープのない短いキー名はキャッシュを利用. **/
+    private final String key(int quote) throws IOException {
+        byte[] b = src;
+        int start = pos;
+        int p = start;
+        int e = end;
+        int h = 0;
+        int c;
+        while (p < e) {
+            c = b[p];
+            if (c == quote) {
+                break;
+            } else if (c == '\\' || p - start >= KEY_LENGTH) {
+                return (String) string(quote, false);
+            }
+            h = 31 * h + c;
+            p++;
+        }
+        if (p >= e) {
+            throw error("文字列が終了していません");
+        }
+        int len = p - start;
+        if (keys == null) {
+            keys = new String[KEY_CACHE];
+            keyBytes = new byte[KEY_CACHE][];
+        }
+        int n = (h ^ (h >>> 16)) & (KEY_CACHE - 1);
+        byte[] k = keyBytes[n];
+        if (k != null && k.length == len) {
+            int i = 0;
+            while (i < len && k[i] == b[start + i]) {
+                i++;
+            }
+            if (i == len) {
+                pos = p + 1;
+                return keys[n];
+            }
+        }
+        String ret = (String) string(quote, false);
+        k = new byte[len];
+        System.arraycopy(b, start, k, 0, len);
+        keyBytes[n] = k;
+        keys[n] = ret;
+        return ret;
+    }
+
+    /** 文字列を解析. **/
+    private final Object string(int quote, boolean date) throws IOException {
+        byte[] b = src;
+        int p = pos;
+        int e = end;
+        char[] buf = chars;
+        int n = 0;
+        int c;
+        int c2;
+        int c3;
+        while (true) {
+            if (p >= e) {
+                throw error("文字列が終了していません");
+            }
+            c = b[p++];
+            if (c == quote) {
+                break;
+            }
+            if (n + 2 > buf.length) {
+                buf = grow(buf, n + 2);
+            }
+            if (c >= 0) {
+                if (c != '\\') {
+                    buf[n++] = (char) c;
+                    continue;
+                }
+                if (p >= e) {
+                    throw error("文字列が終了していません");
+                }
+                switch (c = b[p++]) {
+                case 'n':
+                    buf[n++] = '\n';
+                    break;
+                case 'r':
+                    buf[n++] = '\r';
+                    break;
+                case 't':
+                    buf[n++] = '\t';
+                    break;
+                case 'b':
+                    buf[n++] = '\b';
+                    break;
+                case 'f':
+                    buf[n++] = '\f';
+                    break;
+                case 'u':
+                    if (p + 4 > e) {
+                        throw error("エスケープが不正です");
+                    }
+                    buf[n++] = (char) ((hex(b[p]) << 12) | (hex(b[p + 1]) << 8)
+                            | (hex(b[p + 2]) << 4) | hex(b[p + 3]));
+                    p += 4;
+                    break;
+                default:
+                    buf[n++] = (char) c;
+                    break;
+                }
+                continue;
+            }
+
+            // UTF8の複数バイト文字.
+            c &= 0xff;
+            if (c < 0xe0) {
+                if (p >= e) {
+                    throw error("UTF8が不正です");
+                }
+                buf[n++] = (char) (((c & 0x1f) << 6) | (b[p++] & 0x3f));
+            } else if (c < 0xf0) {
+                if (p + 1 >= e) {
+                    throw error("UTF8が不正です");
+                }
+                c2 = b[p++];
+                c3 = b[p++];
+                buf[n++] = (char) (((c & 0x0f) << 12) | ((c2 & 0x3f) << 6)
+                        | (c3 & 0x3f));
+            } else {
+                if (p + 2 >= e) {
+                    throw error("UTF8が不正です");
+                }
+                c = ((c & 0x07) << 18) | ((b[p] & 0x3f) << 12)
+                        | ((b[p + 1] & 0x3f) << 6) | (b[p + 2] & 0x3f);
+                p += 3;
+                buf[n++] = Character.highSurrogate(c);
+                buf[n++] = Character.lowSurrogate(c);
+            }
+        }
+        pos = p;
+        chars = buf;
+
+        // ISO8601の日付フォーマットかチェック.
+        if (date && n > 10 && buf[0] >= '0' && buf[0] <= '9'
+                && isISO8601(buf, n)) {
+            return Json.stringToDate(new String(buf, 0, n));
+        }
+        return new String(buf, 0, n);
+    }
+
+    /** 文字変換用バッファを拡張. **/
+    private static final char[] grow(char[] buf, int len) {
+        char[] ret = new char[Math.max(len, buf.length << 1)];
+        System.arraycopy(buf, 0, ret, 0, buf.length);
+        return ret;
+    }
+
+    /** 16進数を変換. **/
+    private final int hex(int c) throws IOException {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        throw error("エスケープが不正です");
+    }
+
+    /** 数値を解析. 文字列を経由せずに変換. **/
+    private final Object number() throws IOException {
+        byte[] b = src;
+        int start = pos;
+        int p = start;
+        int e = end;
+        boolean minus = false;
+        if (b[p] == '-') {
+            minus = true;
+            p++;
+        }
+        long m = 0L;
+        int digits = 0;
+        int exp = 0;
+        int c;
+
+        // 整数部.
+        int s = p;
+        while (p < e && (c = b[p]) >= '0' && c <= '9') {
+            if (digits < LONG_DIGITS) {
+                if (m != 0L || c != '0') {
+                    m = m * 10L + (c - '0');
+                    digits++;
+                }
+            } else {
+                exp++;
+            }
+            p++;
+        }
+        if (p == s) {
+            throw error("数値が不正です");
+        }
+        boolean decimal = false;
+
+        // 小数部.
+        if (p < e && b[p] == '.') {
+            decimal = true;
+            s = ++p;
+            while (p < e && (c = b[p]) >= '0' && c <= '9') {
+                if (digits < LONG_DIGITS) {
+                    if (m != 0L || c != '0') {
+                        m = m * 10L + (c - '0');
+                        digits++;
+                    }
+                    exp--;
+                }
+                p++;
+            }
+            if (p == s) {
+                throw error("数値が不正です");
+            }
+        }
+
+        // 指数部.
+        if (p < e && ((c = b[p]) == 'e' || c == 'E')) {
+            decimal = true;
+            boolean em = false;
+            int ev = 0;
+            if (++p < e && ((c = b[p]) == '+' || c == '-')) {
+                em = c == '-';
+                p++;
+            }
+            s = p;
+            while (p < e && (c = b[p]) >= '0' && c <= '9') {
+                if (ev < 10000) {
+                    ev = ev * 10 + (c - '0');
+                }
+                p++;
+            }
+            if (p == s) {
+                throw error("数値が不正です");
+            }
+            exp += em ? -ev : ev;
+        }
+        pos = p;
+
+        // 整数の場合.
+        if (!decimal && exp == 0) {
+            return minus ? -m : m;
+        }
+
+        // 誤差なしで計算できる範囲の場合.
+        if (digits <= 15 && exp >= -22 && exp <= 22) {
+            double d = (double) m;
+            d = exp < 0 ? d / POW10[-exp] : d * POW10[exp];
+            return minus ? -d : d;
+        }
+        return Double.parseDouble(new String(b, start, p - start, "ISO8859_1"));
+    }
+
+    /**
+     * オブジェクト、または配列の終端まで読み飛ばす.
+     *
+     * @return int 終端の次の位置が返却されます.
+     */
+    private final int skip() throws IOException {
+        byte[] b = src;
+        int p = pos;
+        int e = end;
+        int nest = 0;
+        int quote = -1;
+        int c;
+        while (p < e) {
+            c = b[p++];
+            if (quote != -1) {
+                if (c == '\\') {
+                    p++;
+                } else if (c == quote) {
+                    quote = -1;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{' || c == '[') {
+                nest++;
+            } else if ((c == '}' || c == ']') && --nest == 0) {
+                pos = p;
+                return p;
+            }
+        }
+        throw error("オブジェクトが終了していません");
+    }
+
+    /** 指定文字が日付フォーマットの可能性かチェック. **/
+    private static final boolean isISO8601(char[] s, int len) {
+        int code = 0;
+        char c;
+        for (int i = 0; i < len; i++) {
+            c = s[i];
+            switch (code) {
+            case 0:
+            case 1:
+                if (c == '-') {
+                    code++;
+                } else if (!(c >= '0' && c <= '9')) {
+                    return false;
+                }
+                break;
+            case 2:
+                if (c == 'T') {
+                    code++;
+                } else if (!(c >= '0' && c <= '9')) {
+                    return false;
+                }
+                break;
+            case 3:
+            case 4:
+                if (c == ':') {
+                    code++;
+                } else if (!(c >= '0' && c <= '9')) {
+                    return false;
+                }
+                break;
+            case 5:
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 解析エラー. **/
+    private final IOException error(String message) {
+        return new IOException("JSON解析に失敗(" + message + "):No:" + pos);
+    }
+
+    /** 範囲のみ保持して、最初のアクセス時に解析するオブジェクト. **/
+    private static final class LazyMap extends AbstractMap<String, Object> {
+        private byte[] src;
+        private final int off;
+        private final int len;
+        private Map<String, Object> map = null;
+
+        LazyMap(byte[] src, int start, int end) {
+            this.src = src;
+            this.off = start;
+            this.len = end - start;
+        }
+
+        @SuppressWarnings("unchecked")
+        private final Map<String, Object> map() {
+            if (map == null) {
+                try {
+                    map = (Map<String, Object>) new JsonReader(true).read(src,
+                            off, len);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e.getMessage(), e);
+                }
+                src = null;
+            }
+            return map;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return map().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map().containsKey(key);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return map().put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return map().remove(key);
+        }
+
+        @Override
+        public int size() {
+            return map().size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return map().entrySet();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return map().keySet();
+        }
+    }
+
+    /** 範囲のみ保持して、最初のアクセス時に解析する配列. **/
+    private static final class LazyList extends AbstractList<Object> {
+        private byte[] src;
+        private final int off;
+        private final int len;
+        private List<Object> list = null;
+
+        LazyList(byte[] src, int start, int end) {
+            this.src = src;
+            this.off = start;
+            this.len = end - start;
+        }
+
+        @SuppressWarnings("unchecked")
+        private final List<Object> list() {
+            if (list == null) {
+                try {
+                    list = (List<Object>) new JsonReader(true).read(src, off,
+                            len);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e.getMessage(), e);
+                }
+                src = null;
+            }
+            return list;
+        }
+
+        @Override
+        public Object get(int index) {
+            return list().get(index);
+        }
+
+        @Override
+        public Object set(int index, Object value) {
+            return list().set(index, value);
+        }
+
+        @Override
+        public void add(int index, Object value) {
+            list().add(index, value);
+        }
+
+        @Override
+        public Object remove(int index) {
+            return list().remove(index);
+        }
+
+        @Override
+        public int size() {
+            return list().size();
+        }
+    }
+}
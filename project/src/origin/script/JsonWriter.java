@@ -0,0 +1,487 @@
+package origin.script;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import jdk.nashorn.api.scripting.ScriptObjectMirror;
+import origin.db.core.DbMeta;
+import origin.db.core.DbResult;
+import origin.db.core.DbRow;
+
+/**
+ * JSONバイナリ変換処理.
+ *
+ * オブジェクトをJSONに変換しながら、UTF8のバイナリとして固定長のバッファに
+ * 直接書き込み、送信用のByteBuffer群として返却します. 文字列を経由しないので、
+ * Json.encodeの結果をUTF8に変換してコピーする処理が不要になります.
+ *
+ * 利用したバッファは、release()で次回の変換に再利用します. 送信が終わる前に
+ * 再利用しないように、release()は送信完了を確認してから呼び出します.
+ * 呼び出さなかった場合は、次回の変換では新しいバッファを利用します.
+ * スレッド毎に生成して利用します.
+ */
+@SuppressWarnings("rawtypes")
+public final class JsonWriter {
+
+    /** 最小バッファ長. **/
+    private static final int MIN_BUFFER_LENGTH = 64;
+
+    /** 再利用するバッファの最大数. **/
+    private static final int MAX_POOL = 32;
+
+    /** 1文字の最大書き込みバイト数([\u0000]形式). **/
+    private static final int CHAR_MAX = 6;
+
+    /** ASCII文字のエスケープテーブル. [0]はエスケープなし、[u]は16進表記. **/
+    static final byte[] ESCAPE = new byte[128];
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            ESCAPE[i] = 'u';
+        }
+        ESCAPE['"'] = '"';
+        ESCAPE['\\'] = '\\';
+        ESCAPE['\n'] = 'n';
+        ESCAPE['\r'] = 'r';
+        ESCAPE['\t'] = 't';
+        ESCAPE['\b'] = 'b';
+        ESCAPE['\f'] = 'f';
+    }
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE)
+            .getBytes();
+
+    private final int bufferLength;
+    private final byte[] number = new byte[20];
+
+    /** 再利用バッファ. **/
+    private final byte[][] pool = new byte[MAX_POOL][];
+    private int poolLength = 0;
+
+    /** 出力情報. **/
+    private ByteBuffer[] out = new ByteBuffer[4];
+    private byte[][] used = new byte[4][];
+    private int outLength = 0;
+    private byte[] current = null;
+    private int position = 0;
+    private long length = 0L;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param bufferLength
+     *            出力バッファ長を設定します.
+     */
+    public JsonWriter(int bufferLength) {
+        this.bufferLength = Math.max(MIN_BUFFER_LENGTH, bufferLength);
+    }
+
+    /**
+     * JSON変換.
+     *
+     * @param target
+     *            対象のオブジェクトを設定します.
+     * @return ByteBuffer[] UTF8のJSONバイナリが返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public ByteBuffer[] encode(Object target) throws IOException {
+        // 前回のバッファが返却されていない場合は、送信側に任せる.
+        for (int i = 0; i < outLength; i++) {
+            out[i] = null;
+            used[i] = null;
+        }
+        outLength = 0;
+        length = 0L;
+        current = take();
+        position = 0;
+        try {
+            value(target, target);
+        } catch (IOException e) {
+            release();
+            throw e;
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+        push();
+        current = null;
+        ByteBuffer[] ret = new ByteBuffer[outLength];
+        System.arraycopy(out, 0, ret, 0, outLength);
+        return ret;
+    }
+
+    /**
+     * 前回変換したデータ長を取得.
+     *
+     * @return long 変換後のデータ長が返却されます.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * 前回の変換で利用したバッファを、次回の変換で再利用.
+     * 返却したByteBuffer群は利用できなくなります.
+     */
+    public void release() {
+        byte[] b;
+        for (int i = 0; i < outLength; i++) {
+            b = used[i];
+            if (poolLength < MAX_POOL && b.length == bufferLength) {
+                pool[poolLength++] = b;
+            }
+            out[i] = null;
+            used[i] = null;
+        }
+        outLength = 0;
+        if (current != null) {
+            if (poolLength < MAX_POOL) {
+                pool[poolLength++] = current;
+            }
+            current = null;
+        }
+    }
+
+    /** バッファを取得. **/
+    private final byte[] take() {
+        if (poolLength > 0) {
+            byte[] ret = pool[--poolLength];
+            pool[poolLength] = null;
+            return ret;
+        }
+        return new byte[bufferLength];
+    }
+
+    /** 書き込み中のバッファを出力. **/
+    private final void push() {
+        if (position == 0) {
+            return;
+        }
+        if (outLength == out.length) {
+            ByteBuffer[] o = new ByteBuffer[outLength << 1];
+            System.arraycopy(out, 0, o, 0, outLength);
+            out = o;
+            byte[][] u = new byte[outLength << 1][];
+            System.arraycopy(used, 0, u, 0, outLength);
+            used = u;
+        }
+        out[outLength] = ByteBuffer.wrap(current, 0, position);
+        used[outLength++] = current;
+        length += position;
+    }
+
+    /** 指定バイト数の書き込み領域を確保. **/
+    private final void ensure(int len) {
+        if (position + len > current.length) {
+            push();
+            current = take();
+            position = 0;
+        }
+    }
+
+    /** 1バイト書き込み. **/
+    private final void put(int b) {
+        if (position == current.length) {
+            ensure(1);
+        }
+        current[position++] = (byte) b;
+    }
+
+    /** バイナリ書き込み. **/
+    private final void put(byte[] b) {
+        int len = b.length;
+        ensure(len);
+        System.arraycopy(b, 0, current, position, len);
+        position += len;
+    }
+
+    /** 1つの要素を変換. **/
+    private final void value(Object base, Object target) throws IOException {
+        if (target instanceof String) {
+            string((String) target);
+        } else if (target instanceof Map) {
+            if (target instanceof ScriptObjectMirror) {
+                ScriptObjectMirror so = (ScriptObjectMirror) target;
+
+                // Listの場合.
+                if (so.isArray()) {
+                    mirrorList(base, so);
+                    return;
+                }
+                // Native日付の場合.
+                else if ("Date".equals(so.getClassName())) {
+                    date(new Date(((Number) so.callMember("getTime"))
+                            .longValue()));
+                    return;
+                }
+            } else if (target instanceof DbRow) {
+                row((DbRow) target);
+                return;
+            }
+            map(base, (Map) target);
+        } else if (target instanceof Integer || target instanceof Long
+                || target instanceof Short || target instanceof Byte) {
+            number(((Number) target).longValue());
+        } else if (target instanceof Double || target instanceof Float) {
+            double d = ((Number) target).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                put(NULL);
+            } else {
+                ascii(target.toString());
+            }
+        } else if (target instanceof Boolean) {
+            put(((Boolean) target) ? TRUE : FALSE);
+        } else if (target == null || target instanceof byte[]
+                || ScriptObjectMirror.isUndefined(target)) {
+            put(NULL);
+        } else if (target instanceof List) {
+            list(base, (List) target);
+        } else if (target instanceof BigInteger
+                || target instanceof BigDecimal) {
+            ascii(target.toString());
+        } else if (target instanceof Character) {
+            string(target.toString());
+        } else if (target instanceof char[]) {
+            string(new String((char[]) target));
+        } else if (target instanceof Date) {
+            date((Date) target);
+        } else if (target instanceof DbResult) {
+            result((DbResult) target);
+        } else if (target.getClass().isArray()) {
+            array(base, target);
+        } else {
+            string(target.toString());
+        }
+    }
+
+    /** Map変換. **/
+    private final void map(Object base, Map map) throws IOException {
+        boolean flg = false;
+        Object key;
+        Object value;
+        Iterator it = map.keySet().iterator();
+        put('{');
+        while (it.hasNext()) {
+            key = it.next();
+            value = map.get(key);
+            if (base == value) {
+                continue;
+            }
+            if (flg) {
+                put(',');
+            }
+            flg = true;
+            string(key instanceof String ? (String) key : String
+                    .valueOf(key));
+            put(':');
+            value(base, value);
+        }
+        put('}');
+    }
+
+    /** List変換. **/
+    private final void list(Object base, List list) throws IOException {
+        boolean flg = false;
+        Object value;
+        int len = list.size();
+        put('[');
+        for (int i = 0; i < len; i++) {
+            value = list.get(i);
+            if (base == value) {
+                continue;
+            }
+            if (flg) {
+                put(',');
+            }
+            flg = true;
+            value(base, value);
+        }
+        put(']');
+    }
+
+    /** javascript配列変換. **/
+    private final void mirrorList(Object base, ScriptObjectMirror list)
+            throws IOException {
+        boolean flg = false;
+        Object value;
+        int len = list.size();
+        put('[');
+        for (int i = 0; i < len; i++) {
+            value = list.getSlot(i);
+            if (base == value) {
+                continue;
+            }
+            if (flg) {
+                put(',');
+            }
+            flg = true;
+            value(base, value);
+        }
+        put(']');
+    }
+
+    /** 配列変換. **/
+    private final void array(Object base, Object list) throws IOException {
+        boolean flg = false;
+        Object value;
+        int len = Array.getLength(list);
+        put('[');
+        for (int i = 0; i < len; i++) {
+            value = Array.get(list, i);
+            if (base == value) {
+                continue;
+            }
+            if (flg) {
+                put(',');
+            }
+            flg = true;
+            value(base, value);
+        }
+        put(']');
+    }
+
+    /** DB検索結果変換. 残りの行を全て読み込みます. **/
+    private final void result(DbResult result) throws IOException {
+        boolean flg = false;
+        put('[');
+        while (result.hasNext()) {
+            if (flg) {
+                put(',');
+            }
+            flg = true;
+            row(result.next());
+        }
+        put(']');
+    }
+
+    /** DB行変換. カラム名と値はメタ情報の順番で取得. **/
+    private final void row(DbRow row) throws IOException {
+        DbMeta meta = row.getMeta();
+        int len = meta.size();
+        put('{');
+        for (int i = 0; i < len; i++) {
+            if (i != 0) {
+                put(',');
+            }
+            string(meta.getName(i));
+            put(':');
+            value(row, row.get(i));
+        }
+        put('}');
+    }
+
+    /** 日付変換. **/
+    private final void date(Date d) {
+        put('"');
+        ascii(Json.dateToString(d));
+        put('"');
+    }
+
+    /** 整数変換. 文字列を経由せずに書き込む. **/
+    private final void number(long v) {
+        if (v == Long.MIN_VALUE) {
+            put(MIN_LONG);
+            return;
+        }
+        byte[] b = number;
+        int p = b.length;
+        boolean minus = v < 0L;
+        if (minus) {
+            v = -v;
+        }
+        do {
+            b[--p] = (byte) ('0' + (int) (v % 10L));
+            v /= 10L;
+        } while (v != 0L);
+        if (minus) {
+            b[--p] = '-';
+        }
+        int len = b.length - p;
+        ensure(len);
+        System.arraycopy(b, p, current, position, len);
+        position += len;
+    }
+
+    /** ASCII文字列を書き込み. **/
+    private final void ascii(String s) {
+        int len = s.length();
+        int off = 0;
+        int n;
+        while (off < len) {
+            if (position == current.length) {
+                ensure(1);
+            }
+            n = Math.min(len - off, current.length - position);
+            for (int i = 0; i < n; i++) {
+                current[position++] = (byte) s.charAt(off++);
+            }
+        }
+    }
+
+    /** 文字列をエスケープしながらUTF8で書き込み. **/
+    private final void string(String s) {
+        int len = s.length();
+        put('"');
+        byte[] b = current;
+        int p = position;
+        int limit = b.length - CHAR_MAX;
+        int c;
+        int e;
+        for (int i = 0; i < len; i++) {
+            if (p > limit) {
+                position = p;
+                ensure(CHAR_MAX);
+                b = current;
+                p = position;
+                limit = b.length - CHAR_MAX;
+            }
+            c = s.charAt(i);
+            if (c < 0x80) {
+                if ((e = ESCAPE[c]) == 0) {
+                    b[p++] = (byte) c;
+                } else if (e == 'u') {
+                    b[p++] = '\\';
+                    b[p++] = 'u';
+                    b[p++] = '0';
+                    b[p++] = '0';
+                    b[p++] = HEX[c >> 4];
+                    b[p++] = HEX[c & 15];
+                } else {
+                    b[p++] = '\\';
+                    b[p++] = (byte) e;
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xc0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c < Character.MIN_SURROGATE
+                    || c > Character.MAX_SURROGATE) {
+                b[p++] = (byte) (0xe0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c <= Character.MAX_HIGH_SURROGATE && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, s.charAt(++i));
+                b[p++] = (byte) (0xf0 | (c >> 18));
+                b[p++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+
+                // 対になっていないサロゲートは置き換える.
+                b[p++] = '?';
+            }
+        }
+        position = p;
+        put('"');
+    }
+}
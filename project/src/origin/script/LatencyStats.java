@@ -0,0 +1,64 @@
+package origin.script;
+
+import origin.util.LatencyHistogram;
+
+/**
+ * レイテンシ統計情報. フェーズ毎、またはパス毎のフェーズのMBeanです.
+ * 取得の度に、ワーカースレッド毎の記録をマージします.
+ */
+public final class LatencyStats implements LatencyStatsMBean {
+    private final RequestMetrics metrics;
+    private final String path;
+    private final int phase;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param metrics
+     *            リクエスト処理のレイテンシを設定します.
+     * @param path
+     *            スクリプトのパスを設定します. nullの場合は全体となります.
+     * @param phase
+     *            フェーズを設定します.
+     */
+    public LatencyStats(RequestMetrics metrics, String path, int phase) {
+        this.metrics = metrics;
+        this.path = path;
+        this.phase = phase;
+    }
+
+    /** ヒストグラムを取得. **/
+    private final LatencyHistogram get() {
+        LatencyHistogram ret = path == null ? metrics.get(phase) : metrics
+                .get(path, phase);
+        return ret == null ? new LatencyHistogram() : ret;
+    }
+
+    public long getCount() {
+        return get().getCount();
+    }
+
+    public double getMean() {
+        return get().getMean();
+    }
+
+    public long getMax() {
+        return get().getMax();
+    }
+
+    public long getP50() {
+        return get().getValueAtPercentile(50d);
+    }
+
+    public long getP90() {
+        return get().getValueAtPercentile(90d);
+    }
+
+    public long getP99() {
+        return get().getValueAtPercentile(99d);
+    }
+
+    public long getP999() {
+        return get().getValueAtPercentile(99.9d);
+    }
+}
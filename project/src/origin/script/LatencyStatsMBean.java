@@ -0,0 +1,29 @@
+package origin.script;
+
+/**
+ * レイテンシ統計情報のMBean.
+ * 値はマイクロ秒単位です.
+ */
+public interface LatencyStatsMBean {
+
+    /** 記録数を取得. **/
+    public long getCount();
+
+    /** 平均値を取得. **/
+    public double getMean();
+
+    /** 最大値を取得. **/
+    public long getMax();
+
+    /** 50パーセンタイル値を取得. **/
+    public long getP50();
+
+    /** 90パーセンタイル値を取得. **/
+    public long getP90();
+
+    /** 99パーセンタイル値を取得. **/
+    public long getP99();
+
+    /** 99.9パーセンタイル値を取得. **/
+    public long getP999();
+}
@@ -1,6 +1,8 @@
 package origin.script;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ServiceLoader;
@@ -9,7 +11,6 @@ import javax.script.Bindings;
 import javax.script.ScriptContext;
 
 import origin.pref.Mode;
-import origin.util.atomic.AtomicObject;
 
 import origin.script.OriginComponent;
 
@@ -42,11 +43,18 @@ public class OriginComponentManager {
 
         // シングルトンオブジェクトの場合は、対象オブジェクトが格納される.
         public OriginComponent singleton;
-        
-        // コンストラクタオブジェクト格納情報.
-        public final AtomicObject<Constructor> constructor = new AtomicObject<Constructor>(null);
+
+        // オブジェクト生成用のファクトリ(ScriptContext, Bindings)Object.
+        public MethodHandle factory;
+
+        // 再利用可能なコンポーネントの場合は[true].
+        public boolean reuse;
     }
 
+    /** ファクトリの型. **/
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(
+            Object.class, ScriptContext.class, Bindings.class);
+
     /**
      * オブジェクトの取得.
      * 
@@ -136,25 +144,87 @@ public class OriginComponentManager {
         o.useScriptContext = component.useScriptContext();
         o.useBindings = component.useBindings();
         o.singleton = (component.singleton() ? component : null);
+        o.reuse = (component instanceof ReuseComponent);
+        if (o.singleton == null) {
+            try {
+                o.factory = factory(o.clazz, o.useScriptContext, o.useBindings);
+            } catch (Exception e) {
+                return false;
+            }
+        }
         newComponents.add(o);
         return true;
     }
 
+    /**
+     * オブジェクト生成用のファクトリを生成.
+     * 
+     * 必要なコンストラクタを、引数(ScriptContext, Bindings)のMethodHandleに
+     * 揃えて、リクエスト毎のリフレクションでの生成を行わないようにします.
+     */
+    private static final MethodHandle factory(Class clazz,
+            boolean useScriptContext, boolean useBindings) throws Exception {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle ret;
+        if (useScriptContext) {
+            if (useBindings) {
+                ret = lookup.findConstructor(clazz, MethodType.methodType(
+                        void.class, ScriptContext.class, Bindings.class));
+            } else {
+                ret = lookup.findConstructor(clazz, MethodType.methodType(
+                        void.class, ScriptContext.class));
+                ret = MethodHandles.dropArguments(ret, 1, Bindings.class);
+            }
+        } else if (useBindings) {
+            ret = lookup.findConstructor(clazz,
+                    MethodType.methodType(void.class, Bindings.class));
+            ret = MethodHandles.dropArguments(ret, 0, ScriptContext.class);
+        } else {
+            ret = lookup.findConstructor(clazz,
+                    MethodType.methodType(void.class));
+            ret = MethodHandles.dropArguments(ret, 0, ScriptContext.class,
+                    Bindings.class);
+        }
+        return ret.asType(FACTORY_TYPE);
+    }
+
     // オブジェクト生成.
-    private static final Object newInstance(Constructor c, Object... params) {
+    private static final OriginComponent newInstance(ComponentElement o,
+            ScriptContext context, Bindings bindings) {
         try {
-            if (params == null || params.length == 0) {
-                return c.newInstance();
-            } else if (params.length == 1) {
-                return c.newInstance(params[0]);
-            } else if (params.length == 2) {
-                return c.newInstance(params[1], params[2]);
-            }
-        } catch (Exception e) {
+            return (OriginComponent) (Object) o.factory.invokeExact(context,
+                    bindings);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
         }
         return null;
     }
 
+    /**
+     * 再利用可能なコンポーネントを生成.
+     * 
+     * @param context
+     *            対象のScriptContextを設定します.
+     * @param bindings
+     *            対象のBindingsを設定します.
+     * @return OriginComponent[] 登録順に、再利用可能なコンポーネントが返却されます.
+     *         再利用できないものは[null]が設定されます.
+     */
+    public OriginComponent[] newReuseComponents(ScriptContext context,
+            Bindings bindings) {
+        int len = newComponents == null ? 0 : newComponents.size();
+        OriginComponent[] ret = new OriginComponent[len];
+        ComponentElement o;
+        for (int i = 0; i < len; i++) {
+            o = newComponents.get(i);
+            if (o != null && o.singleton == null && o.reuse) {
+                ret[i] = newInstance(o, context, bindings);
+            }
+        }
+        return ret;
+    }
+
     /**
      * Bindingsに情報をセット.
      * 
@@ -164,77 +234,49 @@ public class OriginComponentManager {
      *            対象のBindingsを設定します.
      */
     public void setBindings(ScriptContext context, Bindings bindings) {
+        setBindings(context, bindings, null);
+    }
+
+    /**
+     * Bindingsに情報をセット.
+     * 
+     * @param context
+     *            対象のScriptContextを設定します.
+     * @param bindings
+     *            対象のBindingsを設定します.
+     * @param reuse
+     *            newReuseComponentsで生成した、再利用するコンポーネントを設定します.
+     *            [null]の場合は、シングルトン以外は全て生成します.
+     */
+    public void setBindings(ScriptContext context, Bindings bindings,
+            OriginComponent[] reuse) {
         if (newComponents == null) {
             return;
         }
-        Constructor cc;
         OriginComponent c;
         int len = newComponents.size();
+        int reuseLength = reuse == null ? 0 : reuse.length;
         ComponentElement o;
         for (int i = 0; i < len; i++) {
-            try {
-                if ((o = newComponents.get(i)) == null) {
-                    continue;
-                }
-                // 既に登録されている場合は登録しない.
-                if (bindings.containsKey(o.componentName)) {
-                    continue;
-                }
-                // シングルトンの場合は、そのままセット.
-                if (o.singleton != null) {
-                    bindings.put(o.componentName, o.singleton);
-                    
-                // オブジェクトの作成が必要な場合.
-                // ScriptContextが必要な場合.
-                } else if (o.useScriptContext) {
-                    
-                    // Bindingsオブジェクトが必要な場合.
-                    if (o.useBindings) {
-                        cc = o.constructor.get();
-                        if(cc == null) {
-                            cc = o.clazz.getConstructor(ScriptContext.class, Bindings.class);
-                            o.constructor.put(cc);
-                        }
-                        c = (OriginComponent) newInstance(cc, context, bindings);
-                        if (c != null) {
-                           bindings.put(c.getComponentName(), c);
-                        }
-                    // ScriptContextのみが必要な場合.
-                    } else {
-                        cc = o.constructor.get();
-                        if(cc == null) {
-                            cc = o.clazz.getConstructor(ScriptContext.class);
-                            o.constructor.put(cc);
-                        }
-                        c = (OriginComponent) newInstance(cc, context);
-                        if (c != null) {
-                            bindings.put(c.getComponentName(), c);
-                        }
-                    }
-                // Bindingsのみが必要な場合.
-                } else if (o.useBindings) {
-                    cc = o.constructor.get();
-                    if(cc == null) {
-                        cc = o.clazz.getConstructor(Bindings.class);
-                        o.constructor.put(cc);
-                    }
-                    c = (OriginComponent) newInstance(cc, bindings);
-                    if (c != null) {
-                        bindings.put(c.getComponentName(), c);
-                    }
-                // 何も必要でない場合.
-                } else {
-                    cc = o.constructor.get();
-                    if(cc == null) {
-                        cc = o.clazz.getConstructor();
-                        o.constructor.put(cc);
-                    }
-                    c = (OriginComponent) newInstance(cc);
-                    if (c != null) {
-                        bindings.put(c.getComponentName(), c);
-                    }
-                }
-            } catch(Exception e) {
+            if ((o = newComponents.get(i)) == null) {
+                continue;
+            }
+            // 既に登録されている場合は登録しない.
+            if (bindings.containsKey(o.componentName)) {
+                continue;
+            }
+            // シングルトンの場合は、そのままセット.
+            if (o.singleton != null) {
+                bindings.put(o.componentName, o.singleton);
+
+            // 再利用するオブジェクトが存在する場合は、リセットしてセット.
+            } else if (i < reuseLength && (c = reuse[i]) != null) {
+                ((ReuseComponent) c).reset(context, bindings);
+                bindings.put(c.getComponentName(), c);
+
+            // オブジェクトの作成が必要な場合.
+            } else if ((c = newInstance(o, context, bindings)) != null) {
+                bindings.put(c.getComponentName(), c);
             }
         }
     }
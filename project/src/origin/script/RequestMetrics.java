@@ -0,0 +1,341 @@
+package origin.script;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import origin.util.LatencyHistogram;
+
+/**
+ * リクエスト処理のフェーズ別レイテンシ.
+ *
+ * ワーカースレッド毎の記録先(Recorder)に記録して、読み込み時にマージします.
+ * スクリプトを実行したリクエストは、スクリプトのパス毎にも記録します.
+ * 値はマイクロ秒単位です.
+ */
+public final class RequestMetrics {
+    private static final Log LOG = LogFactory.getLog(RequestMetrics.class);
+
+    /** 接続から最初の受信まで. **/
+    public static final int ACCEPT = 0;
+
+    /** リクエスト開始からヘッダ受信完了まで(待ち行列での待機を除く). **/
+    public static final int HEADER = 1;
+
+    /** ワーカースレッドの待ち行列での待機. **/
+    public static final int QUEUE = 2;
+
+    /** コンパイル済みスクリプトの取得. **/
+    public static final int COMPILE = 3;
+
+    /** スクリプト実行(JSON変換を除く). **/
+    public static final int EXECUTE = 4;
+
+    /** JSON変換. **/
+    public static final int JSON = 5;
+
+    /** GZIP圧縮. **/
+    public static final int GZIP = 6;
+
+    /** 送信開始から送信完了まで. **/
+    public static final int WRITE = 7;
+
+    /** リクエスト開始から送信完了まで. **/
+    public static final int TOTAL = 8;
+
+    /** フェーズ数. **/
+    public static final int LENGTH = 9;
+
+    /** フェーズ名. **/
+    public static final String[] NAMES = new String[] { "accept", "header",
+            "queue", "compile", "execute", "json", "gzip", "write", "total" };
+
+    /** パス毎に記録する最大数. **/
+    private static final int MAX_PATHS = 1024;
+
+    /** JMXのドメイン. **/
+    private static final String JMX_DOMAIN = "origin";
+
+    /** JSON変換時間(スレッド毎の累計). **/
+    private static final ThreadLocal<long[]> JSON_TIME = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<Recorder>();
+    private final Recorder shared;
+    private final Map<String,LatencyHistogram[]> paths = new ConcurrentHashMap<String,LatencyHistogram[]>();
+    private volatile MBeanServer mbeanServer = null;
+
+    /**
+     * コンストラクタ.
+     */
+    public RequestMetrics() {
+        shared = newRecorder();
+    }
+
+    /**
+     * 記録先. ワーカースレッド毎に生成します.
+     */
+    public final class Recorder {
+        private final LatencyHistogram[] phases;
+
+        private Recorder() {
+            LatencyHistogram[] p = new LatencyHistogram[LENGTH];
+            for (int i = 0; i < LENGTH; i++) {
+                p[i] = new LatencyHistogram();
+            }
+            phases = p;
+        }
+
+        /**
+         * 経過時間を記録.
+         *
+         * @param phase
+         *            フェーズを設定します.
+         * @param nanos
+         *            経過時間(ナノ秒)を設定します.
+         */
+        public void record(int phase, long nanos) {
+            phases[phase].record(nanos / 1000L);
+        }
+
+        /**
+         * 経過時間を、全体とパス毎に記録.
+         *
+         * @param phase
+         *            フェーズを設定します.
+         * @param path
+         *            スクリプトのパスを設定します. nullの場合は全体のみ記録します.
+         * @param nanos
+         *            経過時間(ナノ秒)を設定します.
+         */
+        public void record(int phase, String path, long nanos) {
+            long v = nanos / 1000L;
+            phases[phase].record(v);
+            if (path != null) {
+                LatencyHistogram[] p = path(path);
+                if (p != null) {
+                    p[phase].record(v);
+                }
+            }
+        }
+
+        /**
+         * 経過時間をパス毎にのみ記録.
+         *
+         * @param phase
+         *            フェーズを設定します.
+         * @param path
+         *            スクリプトのパスを設定します.
+         * @param nanos
+         *            経過時間(ナノ秒)を設定します.
+         */
+        public void recordPath(int phase, String path, long nanos) {
+            LatencyHistogram[] p;
+            if (path != null && (p = path(path)) != null) {
+                p[phase].record(nanos / 1000L);
+            }
+        }
+    }
+
+    /**
+     * 新しい記録先を生成.
+     *
+     * @return Recorder 記録先が返却されます.
+     */
+    public Recorder newRecorder() {
+        Recorder ret = new Recorder();
+        recorders.add(ret);
+        return ret;
+    }
+
+    /**
+     * 特定のワーカースレッドに属さない処理(nioスレッド等)の記録先を取得.
+     *
+     * @return Recorder 記録先が返却されます.
+     */
+    public Recorder shared() {
+        return shared;
+    }
+
+    /** パス毎のヒストグラムを取得. **/
+    private final LatencyHistogram[] path(String path) {
+        LatencyHistogram[] ret = paths.get(path);
+        if (ret == null) {
+            if (paths.size() >= MAX_PATHS) {
+                return null;
+            }
+            LatencyHistogram[] n = new LatencyHistogram[LENGTH];
+            for (int i = 0; i < LENGTH; i++) {
+                n[i] = new LatencyHistogram();
+            }
+            synchronized (paths) {
+                if ((ret = paths.get(path)) == null) {
+                    paths.put(path, n);
+                    ret = n;
+                    registerMBean(path, n);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * 全体のヒストグラムを取得. ワーカースレッド毎の記録をマージします.
+     *
+     * @param phase
+     *            フェーズを設定します.
+     * @return LatencyHistogram マージされたヒストグラムが返却されます.
+     */
+    public LatencyHistogram get(int phase) {
+        LatencyHistogram ret = new LatencyHistogram();
+        Iterator<Recorder> it = recorders.iterator();
+        while (it.hasNext()) {
+            ret.add(it.next().phases[phase]);
+        }
+        return ret;
+    }
+
+    /**
+     * パス毎のヒストグラムを取得.
+     *
+     * @param path
+     *            スクリプトのパスを設定します.
+     * @param phase
+     *            フェーズを設定します.
+     * @return LatencyHistogram ヒストグラムが返却されます. 記録がない場合はnull.
+     */
+    public LatencyHistogram get(String path, int phase) {
+        LatencyHistogram[] p = paths.get(path);
+        return p == null ? null : p[phase];
+    }
+
+    /**
+     * 記録済みのパス一覧を取得.
+     *
+     * @return Set<String> パス一覧が返却されます.
+     */
+    public Set<String> getPaths() {
+        return new TreeSet<String>(paths.keySet());
+    }
+
+    /**
+     * JSON変換用のMapに変換.
+     *
+     * @return Map<String,Object> 全体とパス毎の統計情報が返却されます.
+     */
+    public Map<String,Object> toMap() {
+        Map<String,Object> phases = new LinkedHashMap<String,Object>();
+        for (int i = 0; i < LENGTH; i++) {
+            phases.put(NAMES[i], toMap(get(i)));
+        }
+        Map<String,Object> p = new LinkedHashMap<String,Object>();
+        LatencyHistogram[] h;
+        Map<String,Object> m;
+        for (String path : getPaths()) {
+            h = paths.get(path);
+            m = new LinkedHashMap<String,Object>();
+            for (int i = 0; i < LENGTH; i++) {
+                if (h[i].getCount() != 0L) {
+                    m.put(NAMES[i], toMap(h[i]));
+                }
+            }
+            p.put(path, m);
+        }
+        Map<String,Object> ret = new LinkedHashMap<String,Object>();
+        ret.put("unit", "us");
+        ret.put("phases", phases);
+        ret.put("paths", p);
+        return ret;
+    }
+
+    /** ヒストグラムをMapに変換. **/
+    private static final Map<String,Object> toMap(LatencyHistogram h) {
+        Map<String,Object> ret = new LinkedHashMap<String,Object>();
+        ret.put("count", h.getCount());
+        ret.put("mean", Math.round(h.getMean() * 10d) / 10d);
+        ret.put("p50", h.getValueAtPercentile(50d));
+        ret.put("p90", h.getValueAtPercentile(90d));
+        ret.put("p99", h.getValueAtPercentile(99d));
+        ret.put("p999", h.getValueAtPercentile(99.9d));
+        ret.put("max", h.getMax());
+        return ret;
+    }
+
+    /**
+     * JMXに登録. フェーズ毎と、以降に記録されるパス毎のMBeanを登録します.
+     */
+    public void registerMBeans() {
+        MBeanServer s = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 0; i < LENGTH; i++) {
+            register(s, "type=Latency,phase=" + NAMES[i], new LatencyStats(
+                    this, null, i));
+        }
+        synchronized (paths) {
+            mbeanServer = s;
+            for (Map.Entry<String,LatencyHistogram[]> e : paths.entrySet()) {
+                registerMBean(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** パス毎のMBeanを登録. **/
+    private final void registerMBean(String path, LatencyHistogram[] h) {
+        MBeanServer s = mbeanServer;
+        if (s == null) {
+            return;
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            register(s, "type=Latency,path=" + ObjectName.quote(path)
+                    + ",phase=" + NAMES[i], new LatencyStats(this, path, i));
+        }
+    }
+
+    /** MBeanを登録. **/
+    private static final void register(MBeanServer s, String name, Object o) {
+        try {
+            ObjectName n = new ObjectName(JMX_DOMAIN + ":" + name);
+            if (!s.isRegistered(n)) {
+                s.registerMBean(o, n);
+            }
+        } catch (Exception e) {
+            LOG.warn("MBeanの登録に失敗しました:" + name, e);
+        }
+    }
+
+    /**
+     * JSON変換時間を加算. 実行中のスレッドの累計に加算されます.
+     *
+     * @param nanos
+     *            JSON変換時間(ナノ秒)を設定します.
+     */
+    public static final void addJsonTime(long nanos) {
+        JSON_TIME.get()[0] += nanos;
+    }
+
+    /**
+     * 実行中のスレッドのJSON変換時間の累計を取得してクリア.
+     *
+     * @return long JSON変換時間(ナノ秒)が返却されます.
+     */
+    public static final long takeJsonTime() {
+        long[] t = JSON_TIME.get();
+        long ret = t[0];
+        t[0] = 0L;
+        return ret;
+    }
+}
@@ -0,0 +1,149 @@
+package origin.script;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import origin.net.http.ChunkedOutputStream;
+import origin.net.http.GzipCompressor;
+
+/**
+ * スクリプトからのストリーミングレスポンス送信.
+ * 最初の書き込みでレスポンスヘッダを送信し、以降は[Transfer-Encoding: chunked]で
+ * 送信します. GZIPが許可されている場合は、書き込まれたデータを逐次圧縮します.
+ * HTTP/1.0の場合は、チャンク形式にせずに送信して、送信後に接続を切断します.
+ */
+final class ResponseWriter {
+
+    /** 未送信データ長の上限(チャンクサイズの倍数). **/
+    private static final int MAX_PENDING_CHUNK = 4;
+
+    private final HttpElement em;
+    private final HttpResponse res;
+    private final GzipCompressor compressor;
+    private final boolean chunked;
+    private final int chunkSize;
+    private final int timeout;
+
+    private OutputStream out = null;
+    private boolean closeFlag = false;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param em
+     *            対象のHttp要素を設定します.
+     * @param res
+     *            対象のHttpレスポンスを設定します.
+     * @param compressor
+     *            GZIP圧縮する場合は、ワーカースレッドのGzipCompressorを設定します.
+     * @param chunked
+     *            [true]の場合、チャンク形式で送信します.
+     * @param chunkSize
+     *            チャンクサイズを設定します.
+     * @param timeout
+     *            送信待機のタイムアウト値(ミリ秒)を設定します.
+     */
+    ResponseWriter(HttpElement em, HttpResponse res, GzipCompressor compressor,
+            boolean chunked, int chunkSize, int timeout) {
+        this.em = em;
+        this.res = res;
+        this.compressor = compressor;
+        this.chunked = chunked;
+        this.chunkSize = chunkSize;
+        this.timeout = timeout;
+    }
+
+    /**
+     * レスポンスヘッダが送信済みかチェック.
+     *
+     * @return boolean [true]の場合、送信済みです.
+     */
+    boolean isCommitted() {
+        return out != null;
+    }
+
+    /** レスポンスヘッダ送信. **/
+    private final OutputStream commit() throws IOException {
+        if (closeFlag) {
+            throw new IOException("レスポンスは既に送信済みです");
+        } else if (out != null) {
+            return out;
+        }
+        if (chunked) {
+            res.setHeader("Transfer-Encoding", "chunked");
+        } else {
+            em.setKeepAlive(false);
+        }
+        ScriptWorkerThread.closeIfReceiving(em);
+        boolean gzip = compressor != null
+                && compressor.isCompress(res.ContentType);
+        if (gzip) {
+            res.setHeader("Content-Encoding", "gzip");
+        }
+        em.getSendData().add(
+                ScriptWorkerThread.streamHeader(res.getStatus(), res,
+                        em.isKeepAlive()));
+        OutputStream o = new ChunkedOutputStream(em.getSendData(), chunked,
+                chunkSize, (long) chunkSize * MAX_PENDING_CHUNK, timeout);
+        if (gzip) {
+            o = compressor.stream(o);
+        }
+        out = o;
+        return o;
+    }
+
+    /**
+     * データ送信.
+     *
+     * @param value
+     *            送信対象の文字列を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    void write(String value) throws IOException {
+        OutputStream o = commit();
+        if (value.length() > 0) {
+            o.write(value.getBytes("UTF8"));
+        }
+    }
+
+    /**
+     * 書き込み済みのデータを送信.
+     *
+     * @exception IOException
+     *                I/O例外.
+     */
+    void flush() throws IOException {
+        commit().flush();
+    }
+
+    /**
+     * 送信終了. 残りのデータと終端を送信します.
+     *
+     * @exception IOException
+     *                I/O例外.
+     */
+    void close() throws IOException {
+        if (closeFlag) {
+            return;
+        }
+        OutputStream o = commit();
+        closeFlag = true;
+        o.close();
+    }
+
+    /**
+     * 送信中断. 終端を送信せずに、送信済みのデータ送信後に接続を切断します.
+     */
+    void abort() {
+        if (closeFlag) {
+            return;
+        }
+        closeFlag = true;
+        em.setKeepAlive(false);
+        try {
+            em.getSendData().end();
+        } catch (Exception e) {
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package origin.script;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+
+/**
+ * 再利用可能なOriginコンポーネント.
+ *
+ * ScriptScopeで実行する場合、このインターフェイスを実装したコンポーネントは
+ * リクエスト毎に生成せずにワーカー単位で再利用し、実行前にreset()で
+ * ScriptContextとBindingsを再設定します.
+ */
+public interface ReuseComponent {
+
+    /**
+     * 実行前のリセット処理.
+     *
+     * @param context
+     *            対象のScriptContextを設定します.
+     * @param bindings
+     *            対象のBindingsを設定します.
+     */
+    public void reset(ScriptContext context, Bindings bindings);
+}
@@ -0,0 +1,335 @@
+package origin.script;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import origin.net.http.HttpAnalysis;
+
+/**
+ * ルートテーブル.
+ *
+ * アプリケーションフォルダ配下のスクリプトファイル一覧から、URLのパスを
+ * セグメント単位のトライ木に変換して保持します. 1回の検索でスクリプト、
+ * フィルタ、パス変数を取得するので、リクエスト毎のファイル確認は行いません.
+ *
+ * ファイル名、またはフォルダ名を[{名前}]とした場合は、その階層の任意の
+ * セグメントに一致し、一致した値をパス変数として取得できます.
+ * 例えば[./application/users/{id}.js]は、[/users/100]に一致して、
+ * パス変数[id]に[100]が設定されます. 同じ階層に一致する名前が存在する場合は、
+ * パス変数よりも名前が一致するものを優先します.
+ * パス変数の値は[%]のみをデコードし、デコード後の値が[.]または[..]の
+ * 場合は一致しません.
+ *
+ * 作成後の内容は変更しません. ファイルの追加や削除は、作成し直して反映します.
+ */
+public final class RouteTable {
+    private static final String JS_PLUS = ".js";
+    private static final String FILTER_NAME = "@filter.js";
+
+    /** トライ木の要素. **/
+    private static final class Node {
+        Map<String, Node> children = null;
+        Node param = null;
+        String paramName = null;
+        Route route = null;
+        String filter = null;
+
+        /** 子要素を取得. 存在しない場合は作成. **/
+        Node child(String name) {
+            Node ret;
+            if (isParam(name)) {
+                String n = name.substring(1, name.length() - 1);
+                // 同じ階層のパス変数は、最初に登録された名前を利用.
+                if (param == null) {
+                    param = new Node();
+                    paramName = n;
+                }
+                return param;
+            }
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            } else if ((ret = children.get(name)) != null) {
+                return ret;
+            }
+            ret = new Node();
+            children.put(name, ret);
+            return ret;
+        }
+    }
+
+    /** ルート情報. **/
+    public static final class Route {
+        private final String pattern;
+        private final String script;
+        private String filter;
+        private final String[] names;
+
+        Route(String pattern, String script, String[] names) {
+            this.pattern = pattern;
+            this.script = script;
+            this.names = names;
+        }
+
+        /**
+         * ルートのパターンを取得.
+         *
+         * @return String [/users/{id}]のようなパターンが返却されます.
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * スクリプトファイル名を取得.
+         *
+         * @return String スクリプトファイル名が返却されます.
+         */
+        public String getScript() {
+            return script;
+        }
+
+        /**
+         * フィルタファイル名を取得.
+         *
+         * @return String フィルタファイル名が返却されます. 存在しない場合は[null].
+         */
+        public String getFilter() {
+            return filter;
+        }
+
+        /**
+         * パス変数が存在するかチェック.
+         *
+         * @return boolean [true]の場合、パス変数が存在します.
+         */
+        public boolean isParams() {
+            return names.length != 0;
+        }
+    }
+
+    /** 検索結果. **/
+    public static final class Match {
+        private final Route route;
+        private final String[] values;
+
+        Match(Route route, String[] values) {
+            this.route = route;
+            this.values = values;
+        }
+
+        /**
+         * ルート情報を取得.
+         *
+         * @return Route ルート情報が返却されます.
+         */
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * パス変数を取得.
+         *
+         * @return Map<String,String> パス変数が返却されます.
+         */
+        public Map<String, String> getParams() {
+            String[] names = route.names;
+            int len = names.length;
+            Map<String, String> ret = new HashMap<String, String>(len << 1);
+            for (int i = 0; i < len; i++) {
+                ret.put(names[i], values[i]);
+            }
+            return ret;
+        }
+    }
+
+    private final Node root = new Node();
+    private final String prefix;
+    private int size = 0;
+
+    private RouteTable(String dir, Iterator<String> files) {
+        prefix = dir + "/";
+        while (files.hasNext()) {
+            add(files.next());
+        }
+    }
+
+    /** ファイルを登録. **/
+    private final void add(String file) {
+        if (!file.startsWith(prefix)) {
+            return;
+        }
+        String[] list = file.substring(prefix.length()).split("/", -1);
+        int last = list.length - 1;
+        String n = list[last];
+        boolean filter = FILTER_NAME.equals(n);
+        if (!filter && (!n.endsWith(JS_PLUS) || n.length() == JS_PLUS.length()
+                || n.startsWith("@"))) {
+            return;
+        }
+        if (!filter) {
+            list[last] = n.substring(0, n.length() - JS_PLUS.length());
+        }
+
+        // フォルダ、ファイル名にパス変数以外の[{}]や、隠しファイルが
+        // 含まれる場合は対象外.
+        int count = 0;
+        for (int i = 0; i < list.length; i++) {
+            n = list[i];
+            if (n.isEmpty() || n.startsWith(".")) {
+                return;
+            }
+            if (isParam(n)) {
+                count++;
+            } else if (n.indexOf("{") != -1 || n.indexOf("}") != -1) {
+                return;
+            }
+        }
+        int len = filter ? last : list.length;
+        Node node = root;
+        StringBuilder pattern = new StringBuilder();
+        String[] names = new String[filter ? 0 : count];
+        count = 0;
+        for (int i = 0; i < len; i++) {
+            n = list[i];
+            node = node.child(n);
+            if (isParam(n) && !filter) {
+                names[count++] = n.substring(1, n.length() - 1);
+            }
+            pattern.append("/").append(n);
+        }
+        if (filter) {
+            node.filter = file;
+            return;
+        }
+        if (node.route == null) {
+            size++;
+        }
+        node.route = new Route(pattern.toString(), file, names);
+    }
+
+    /** パス変数の名前かチェック. **/
+    private static final boolean isParam(String name) {
+        return name.length() > 2 && name.charAt(0) == '{'
+                && name.charAt(name.length() - 1) == '}';
+    }
+
+    /**
+     * フィルタを設定.
+     * ルートの登録後に、スクリプトと同じフォルダのフィルタを設定します.
+     */
+    private final RouteTable link() {
+        link(root, null);
+        return this;
+    }
+
+    private static final void link(Node node, Node parent) {
+        if (node.route != null && parent != null) {
+            node.route.filter = parent.filter;
+        }
+        if (node.children != null) {
+            for (Node n : node.children.values()) {
+                link(n, node);
+            }
+        }
+        if (node.param != null) {
+            link(node.param, node);
+        }
+    }
+
+    /**
+     * ルートテーブルを作成.
+     *
+     * @param dir
+     *            アプリケーションフォルダを設定します.
+     * @param files
+     *            [dir/]から始まるファイル名一覧を設定します.
+     * @return RouteTable ルートテーブルが返却されます.
+     */
+    public static final RouteTable create(String dir, Iterator<String> files) {
+        return new RouteTable(dir, files).link();
+    }
+
+    /**
+     * ルートを検索.
+     *
+     * @param path
+     *            [/]から始まるURLのパスを設定します.
+     * @return Match 検索結果が返却されます. 一致しない場合は[null].
+     */
+    public Match get(String path) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        String[] values = new String[8];
+        Node n = find(root, path, 1, values, 0);
+        if (n == null) {
+            return null;
+        }
+
+        // パス変数をデコード. [.]と[..]は上位ディレクトリの参照になるので一致しない.
+        int len = n.route.names.length;
+        String v;
+        byte[] b;
+        for (int i = 0; i < len; i++) {
+            v = values[i];
+            if (v.indexOf('%') != -1) {
+                b = v.getBytes(StandardCharsets.UTF_8);
+                values[i] = v = HttpAnalysis.pathDecode(b, 0, b.length);
+            }
+            if (".".equals(v) || "..".equals(v)) {
+                return null;
+            }
+        }
+        return new Match(n.route, values);
+    }
+
+    // 名前が一致するものを優先して、見つからない場合はパス変数で検索.
+    private static final Node find(Node node, String path, int off,
+            String[] values, int depth) {
+        int end = path.indexOf('/', off);
+        boolean last = end == -1;
+        if (last) {
+            end = path.length();
+        }
+        if (end == off) {
+            return null;
+        }
+        Node c;
+        Node ret;
+        if (node.children != null
+                && (c = node.children.get(path.substring(off, end))) != null) {
+            if (last) {
+                if (c.route != null) {
+                    return c;
+                }
+            } else if ((ret = find(c, path, end + 1, values, depth)) != null) {
+                return ret;
+            }
+        }
+        if ((c = node.param) == null || depth >= values.length) {
+            return null;
+        }
+        if (last) {
+            if (c.route == null) {
+                return null;
+            }
+            values[depth] = path.substring(off, end);
+            return c;
+        }
+        if ((ret = find(c, path, end + 1, values, depth + 1)) != null) {
+            values[depth] = path.substring(off, end);
+        }
+        return ret;
+    }
+
+    /**
+     * 登録ルート数を取得.
+     *
+     * @return int 登録ルート数が返却されます.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,331 @@
+package origin.script;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * スクリプトファイルインデックス.
+ *
+ * アプリケーションフォルダ配下のファイルの存在と更新時間をメモリ上に保持して、
+ * リクエスト毎のファイル情報取得を省略します.
+ * [watch]モードの場合は、WatchServiceでファイルの変更を監視してインデックスを
+ * 更新し、変更されたファイルのコンパイル結果を破棄します.
+ * [production]モードの場合は、起動時に作成したインデックスを更新しません.
+ * また、インデックスからルートテーブルを作成し、ファイルの追加や削除が
+ * あった場合は作成し直します.
+ */
+public final class ScriptFileIndex extends Thread {
+    private static final Log LOG = LogFactory.getLog(ScriptFileIndex.class);
+    private static final int TIMEOUT = 1000;
+
+    /** ファイルチェックモード. **/
+    public static final String MODE_STAT = "stat";
+    public static final String MODE_WATCH = "watch";
+    public static final String MODE_PRODUCTION = "production";
+
+    private final String dir;
+    private final String prefix;
+    private final Path root;
+    private final boolean production;
+    private final CompileManager manager;
+    private final Map<String, Long> files = new ConcurrentHashMap<String, Long>();
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<WatchKey, Path>();
+    private volatile RouteTable routes = null;
+    private boolean changed = false;
+    private WatchService watcher = null;
+    private volatile boolean stopFlag = true;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param dir
+     *            対象のフォルダを設定します.
+     * @param production
+     *            [true]の場合、起動後のファイル変更を監視しません.
+     * @param manager
+     *            変更時にコンパイル結果を破棄するコンパイルマネージャを設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public ScriptFileIndex(String dir, boolean production,
+            CompileManager manager) throws IOException {
+        this.dir = dir;
+        this.prefix = dir + "/";
+        this.root = Paths.get(dir);
+        this.production = production;
+        this.manager = manager;
+        if (!Files.isDirectory(root)) {
+            throw new IOException("フォルダが存在しません:" + dir);
+        }
+        if (!production) {
+            watcher = FileSystems.getDefault().newWatchService();
+        }
+        scan(root);
+        routes();
+        if (!production) {
+            stopFlag = false;
+            setName("origin-watch");
+            setDaemon(true);
+            start();
+        }
+        LOG.info("*** script file index(" + (production ? MODE_PRODUCTION
+                : MODE_WATCH) + ") " + dir + " files:" + files.size());
+    }
+
+    /**
+     * インデックスの対象パスかチェック.
+     *
+     * @param path
+     *            対象のパスを設定します.
+     * @return boolean [true]の場合、インデックスで判別できます.
+     */
+    public boolean contains(String path) {
+        return path.startsWith(prefix) && path.indexOf("/.", dir.length()) == -1
+                && path.indexOf("//", dir.length()) == -1;
+    }
+
+    /**
+     * ファイルの存在チェック.
+     *
+     * @param path
+     *            対象のパスを設定します.
+     * @return boolean [true]の場合、ファイルは存在します.
+     */
+    public boolean isFile(String path) {
+        return files.containsKey(path);
+    }
+
+    /**
+     * ファイルの更新時間を取得.
+     *
+     * @param path
+     *            対象のパスを設定します.
+     * @return long 更新時間が返却されます. 存在しない場合は[-1]が返却されます.
+     */
+    public long getFileTime(String path) {
+        Long ret = files.get(path);
+        return ret == null ? -1L : ret;
+    }
+
+    /**
+     * ルートテーブルを取得.
+     *
+     * @return RouteTable ルートテーブルが返却されます.
+     */
+    public RouteTable getRoutes() {
+        return routes;
+    }
+
+    /**
+     * [production]モードかチェック.
+     *
+     * @return boolean [true]の場合、起動後のファイル変更を監視しません.
+     */
+    public boolean isProduction() {
+        return production;
+    }
+
+    /**
+     * インデックス数を取得.
+     *
+     * @return int インデックス数が返却されます.
+     */
+    public int size() {
+        return files.size();
+    }
+
+    public void stopThread() {
+        stopFlag = true;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (Exception e) {
+            }
+        }
+    }
+
+    public void run() {
+        ThreadDeath ret = null;
+        boolean endFlag = false;
+        WatchKey k;
+        while (!endFlag && !stopFlag) {
+            try {
+                if ((k = watcher.poll(TIMEOUT, TimeUnit.MILLISECONDS)) == null) {
+                    continue;
+                }
+                event(k);
+            } catch (ThreadDeath td) {
+                ret = td;
+                endFlag = true;
+            } catch (InterruptedException ie) {
+                endFlag = true;
+            } catch (ClosedWatchServiceException ce) {
+                endFlag = true;
+            } catch (Throwable t) {
+                LOG.warn("error", t);
+            }
+        }
+        if (ret != null) {
+            throw ret;
+        }
+    }
+
+    /** 変更イベント処理. **/
+    private final void event(WatchKey k) throws IOException {
+        Path d = keys.get(k);
+        if (d == null) {
+            k.cancel();
+            return;
+        }
+        Path p;
+        String name;
+        WatchEvent.Kind<?> kind;
+        for (WatchEvent<?> e : k.pollEvents()) {
+            kind = e.kind();
+
+            // イベントが失われた場合は、全体を再作成.
+            if (kind == OVERFLOW) {
+                rescan();
+                continue;
+            }
+            p = d.resolve((Path) e.context());
+            name = name(p);
+            if (kind == ENTRY_DELETE) {
+                remove(name);
+            } else if (Files.isDirectory(p)) {
+                if (kind == ENTRY_CREATE) {
+                    scan(p);
+                }
+            } else if (Files.isRegularFile(p)) {
+                put(name, Files.getLastModifiedTime(p).toMillis());
+            } else {
+                remove(name);
+            }
+        }
+        if (!k.reset()) {
+            keys.remove(k);
+        }
+
+        // ファイルの追加、削除があった場合は、ルートテーブルを作成し直す.
+        if (changed) {
+            routes();
+        }
+    }
+
+    /** ルートテーブルを作成. **/
+    private final void routes() {
+        changed = false;
+        routes = RouteTable.create(dir, files.keySet().iterator());
+    }
+
+    /** 対象フォルダ配下を登録. **/
+    private final void scan(Path start) throws IOException {
+        Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path d,
+                            BasicFileAttributes attrs) throws IOException {
+                        if (watcher != null) {
+                            keys.put(d.register(watcher, ENTRY_CREATE,
+                                    ENTRY_DELETE, ENTRY_MODIFY), d);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path f,
+                            BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            put(name(f), attrs.lastModifiedTime().toMillis());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path f,
+                            IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+    }
+
+    /** インデックスを再作成. **/
+    private final void rescan() throws IOException {
+        Iterator<WatchKey> it = keys.keySet().iterator();
+        while (it.hasNext()) {
+            it.next().cancel();
+            it.remove();
+        }
+        Iterator<String> n = files.keySet().iterator();
+        while (n.hasNext()) {
+            manager.remove(n.next());
+            n.remove();
+        }
+        changed = true;
+        scan(root);
+    }
+
+    /** ファイルを登録して、コンパイル結果を破棄. **/
+    private final void put(String name, long time) {
+        if (files.put(name, time) == null) {
+            changed = true;
+        }
+        manager.remove(name);
+    }
+
+    /** ファイル、またはフォルダ配下を削除して、コンパイル結果を破棄. **/
+    private final void remove(String name) {
+        if (files.remove(name) != null) {
+            changed = true;
+            manager.remove(name);
+            return;
+        }
+        String n;
+        String d = name + "/";
+        Iterator<String> it = files.keySet().iterator();
+        while (it.hasNext()) {
+            if ((n = it.next()).startsWith(d)) {
+                changed = true;
+                it.remove();
+                manager.remove(n);
+            }
+        }
+    }
+
+    /** インデックス上のパス名を取得. **/
+    private final String name(Path p) {
+        String r = root.relativize(p).toString();
+        if (r.isEmpty()) {
+            return dir;
+        }
+        if (File.separatorChar != '/') {
+            r = r.replace(File.separatorChar, '/');
+        }
+        return prefix + r;
+    }
+}
@@ -0,0 +1,108 @@
+package origin.script;
+
+import javax.script.ScriptContext;
+import javax.script.SimpleScriptContext;
+
+import origin.db.CreateBaseDao;
+import origin.db.core.DbFactory;
+
+/**
+ * スクリプト実行スコープ.
+ *
+ * ワーカー単位で生成して、ScriptContext、Bindings、コンポーネントを
+ * リクエスト間で再利用します. リクエストの終了時にreset()でBindingsを
+ * クリアし、次の実行時にコンポーネントを再設定します.
+ * javascriptのglobalはリクエスト毎に作成し、モジュールキャッシュが
+ * 有効な場合は、require済みのモジュールをモジュール専用のglobal上で
+ * 再利用します.
+ * スクリプトの戻り値をJSON変換するJsonWriterと、JSON形式のBodyを解析する
+ * JsonReaderも、スコープ単位で保持します.
+ * 同時に複数のスレッドから利用することはできません.
+ */
+public final class ScriptScope {
+    private final OriginBindings bindings;
+    private final SimpleScriptContext context;
+    private final OriginComponent[] components;
+    private final OriginComponent[] plugins;
+    private final JsonWriter json;
+    private final JsonReader reader;
+    private boolean bind = false;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param dbFactory
+     *            DbFactoryを設定します.
+     * @param createBaseDao
+     *            createBaseDaoを設定します.
+     * @param man
+     *            コンパイルマネージャを設定します.
+     * @param info
+     *            Http情報を設定します.
+     */
+    public ScriptScope(DbFactory dbFactory, CreateBaseDao createBaseDao,
+            CompileManager man, HttpInfo info) {
+        this.json = new JsonWriter(info.getResponseChunkSize());
+        this.reader = new JsonReader(info.isJsonLazyDecode());
+        bindings = new OriginBindings(dbFactory, createBaseDao);
+        context = new SimpleScriptContext();
+        context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        components = ExecuteScript.newComponents(context, bindings, man,
+                info.isRequireCache());
+        plugins = OriginComponentManager.getInstance().newReuseComponents(
+                context, bindings);
+    }
+
+    /**
+     * Bindingsを取得.
+     *
+     * @return OriginBindings Bindingsが返却されます.
+     */
+    public OriginBindings getBindings() {
+        return bindings;
+    }
+
+    /**
+     * ScriptContextを取得.
+     *
+     * @return ScriptContext ScriptContextが返却されます.
+     */
+    public ScriptContext getContext() {
+        return context;
+    }
+
+    /**
+     * JsonWriterを取得.
+     *
+     * @return JsonWriter JsonWriterが返却されます.
+     */
+    public JsonWriter getJsonWriter() {
+        return json;
+    }
+
+    /**
+     * JsonReaderを取得.
+     *
+     * @return JsonReader JsonReaderが返却されます.
+     */
+    public JsonReader getJsonReader() {
+        return reader;
+    }
+
+    /** コンポーネントをBindingsに設定(リセット後の最初の実行時のみ). **/
+    void bind() {
+        if (!bind) {
+            bind = true;
+            ExecuteScript.setBindings(context, bindings, components, plugins);
+        }
+    }
+
+    /**
+     * リクエスト終了時のリセット処理.
+     * Bindingsの内容(javascriptのglobalを含む)をクリアして、DBをクローズします.
+     */
+    public void reset() {
+        bind = false;
+        bindings.clear();
+    }
+}
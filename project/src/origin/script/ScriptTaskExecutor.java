@@ -0,0 +1,353 @@
+package origin.script;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import origin.db.core.DbFactory;
+import origin.net.http.GzipCompressor;
+import origin.util.atomic.AtomicNumber;
+import origin.util.atomic.AtomicNumber32;
+
+/**
+ * タスク実行によるスクリプト処理.
+ *
+ * 固定数のワーカースレッドの代わりに、リクエスト毎のタスクを仮想スレッドで実行します.
+ * 仮想スレッドが利用できない環境では、必要に応じてスレッドを増やすプールで実行します.
+ * 同時実行数はスレッド数ではなくセマフォで制限し、制限に達した場合は待ち行列で
+ * 待機して、実行中のタスクが続けて処理します.
+ */
+final class ScriptTaskExecutor {
+    private static final Log LOG = LogFactory.getLog(ScriptTaskExecutor.class);
+
+    /** 停止待ちタイムアウト. **/
+    private static final long STOP_TIMEOUT = 30000L;
+
+    /** プールのスレッド破棄時間. **/
+    private static final long KEEP_ALIVE_TIME = 60000L;
+
+    private final DbFactory dbFactory;
+    private final CompileManager compileManager;
+    private final Map<String,Object> shareMemory;
+    private final StaticFileCache staticFiles;
+    private final HttpInfo info;
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore semaphore;
+    private final int maxConcurrent;
+    private final int queueSize;
+    private final long queueTimeout;
+
+    private final Queue<HttpElement> pending = new ConcurrentLinkedQueue<HttpElement>();
+    private final AtomicNumber32 pendingSize = new AtomicNumber32(0);
+    private final Queue<GzipCompressor> compressors = new ConcurrentLinkedQueue<GzipCompressor>();
+    private final RequestMetrics metrics;
+    private final Queue<RequestMetrics.Recorder> recorders = new ConcurrentLinkedQueue<RequestMetrics.Recorder>();
+    private final Queue<ScriptScope> scopes = new ConcurrentLinkedQueue<ScriptScope>();
+
+    private final AtomicNumber waitCount = new AtomicNumber(0L);
+    private final AtomicNumber totalWaitTime = new AtomicNumber(0L);
+    private final AtomicNumber maxWaitTime = new AtomicNumber(0L);
+    private final AtomicNumber shedCount = new AtomicNumber(0L);
+
+    /**
+     * コンストラクタ.
+     *
+     * @param dbFactory
+     *            DBファクトリオブジェクトを設定します.
+     * @param compileManager
+     *            コンパイルマネージャを設定します.
+     * @param memory
+     *            共有メモリを設定します.
+     * @param staticFiles
+     *            静的ファイルキャッシュを設定します.
+     * @param info
+     *            Http設定を設定します.
+     * @param metrics
+     *            リクエスト処理のレイテンシを設定します.
+     */
+    ScriptTaskExecutor(DbFactory dbFactory, CompileManager compileManager,
+            Map<String,Object> memory, StaticFileCache staticFiles,
+            HttpInfo info, RequestMetrics metrics) {
+        this.dbFactory = dbFactory;
+        this.compileManager = compileManager;
+        this.shareMemory = memory;
+        this.staticFiles = staticFiles;
+        this.info = info;
+        this.metrics = metrics;
+        this.maxConcurrent = Math.max(1, info.getMaxConcurrentScripts());
+        this.semaphore = new Semaphore(maxConcurrent);
+        this.queueSize = info.getWorkerQueueSize();
+        this.queueTimeout = info.getWorkerQueueTimeout() * 1000000L;
+
+        ExecutorService e = virtualExecutor();
+        this.virtual = e != null;
+        if (e == null) {
+            e = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_TIME,
+                    TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicNumber32 no = new AtomicNumber32(0);
+
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "origin-script-"
+                                    + no.inc());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        this.executor = e;
+        LOG.info("*** start origin script executor(" + (virtual ? "virtual"
+                : "pool") + ", max:" + maxConcurrent + ").");
+    }
+
+    /** 仮想スレッドのExecutorServiceを取得. 利用できない場合はnull. **/
+    private static final ExecutorService virtualExecutor() {
+        try {
+            Method m = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 仮想スレッドで実行しているかチェック.
+     *
+     * @return boolean [true]の場合、仮想スレッドで実行しています.
+     */
+    boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * 停止して、実行中のタスクの終了を待機.
+     */
+    void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+        }
+        GzipCompressor c;
+        while ((c = compressors.poll()) != null) {
+            c.destroy();
+        }
+        LOG.info("*** stop origin script executor.");
+    }
+
+    /**
+     * 要素の処理を登録.
+     *
+     * @param em
+     *            対象の要素を設定します.
+     * @return boolean [false]の場合、待ち行列が上限に達しています.
+     */
+    boolean register(HttpElement em) {
+
+        // 同じ要素のタスクは同時に実行しない.
+        // 実行中の場合は、終了後に再実行する.
+        synchronized (em) {
+            if (em.running) {
+                em.rerun = true;
+                return true;
+            }
+            em.running = true;
+        }
+        if (semaphore.tryAcquire()) {
+            submit(em);
+            return true;
+        }
+
+        // 同時実行数に達している場合は、待ち行列で待機.
+        if (queueSize > 0 && pendingSize.get() >= queueSize) {
+            synchronized (em) {
+                em.running = false;
+                em.rerun = false;
+            }
+            return false;
+        }
+        em.dispatchTime = System.nanoTime();
+        pendingSize.inc();
+        pending.offer(em);
+
+        // 待ち行列に追加する間に、全てのタスクが終了している場合.
+        if (semaphore.tryAcquire()) {
+            submit(null);
+        }
+        return true;
+    }
+
+    /** タスクを実行. **/
+    private final void submit(final HttpElement em) {
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    execute(em);
+                }
+            });
+        } catch (RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    /** タスク処理. 終了後は待ち行列の要素を続けて処理する. **/
+    private final void execute(HttpElement em) {
+        GzipCompressor compressor = compressors.poll();
+        if (compressor == null) {
+            compressor = new GzipCompressor(info.getGzipLevel(),
+                    info.getGzipMinLength(), info.getGzipContentTypes(),
+                    info.getResponseChunkSize());
+        }
+
+        // 記録先と実行スコープは、同時実行数分を生成して再利用する.
+        RequestMetrics.Recorder recorder = recorders.poll();
+        if (recorder == null) {
+            recorder = metrics.newRecorder();
+        }
+        ScriptScope scope = scopes.poll();
+        if (scope == null) {
+            scope = new ScriptScope(dbFactory,
+                    ScriptWorkerThread.CREATE_BASE_DAO, compileManager, info);
+        }
+        try {
+            while (true) {
+                if (em == null && (em = next()) == null) {
+                    semaphore.release();
+
+                    // 解放する間に、待ち行列に追加されている場合.
+                    if (pending.isEmpty() || !semaphore.tryAcquire()) {
+                        break;
+                    }
+                    continue;
+                }
+                executeElement(em, compressor, recorder, scope);
+                em = null;
+            }
+        } finally {
+            compressors.offer(compressor);
+            recorders.offer(recorder);
+            scopes.offer(scope);
+        }
+    }
+
+    /** 待ち行列から次の要素を取得. **/
+    private final HttpElement next() {
+        HttpElement em = pending.poll();
+        if (em != null) {
+            pendingSize.dec();
+        }
+        return em;
+    }
+
+    /** 要素を処理. **/
+    private final void executeElement(HttpElement em,
+            GzipCompressor compressor, RequestMetrics.Recorder recorder,
+            ScriptScope scope) {
+        try {
+            if (em.dispatchTime != 0L && dispatch(em, recorder)) {
+                return;
+            }
+            while (true) {
+                ScriptWorkerThread.executeRequest(scope, em,
+                        compileManager, shareMemory, staticFiles, info,
+                        compressor, recorder);
+                synchronized (em) {
+                    if (!em.rerun) {
+                        em.running = false;
+                        return;
+                    }
+                    em.rerun = false;
+                }
+            }
+        } catch (Throwable t) {
+            LOG.debug("error", t);
+            synchronized (em) {
+                em.running = false;
+                em.rerun = false;
+            }
+            em.clear();
+            if (t instanceof ThreadDeath) {
+                throw (ThreadDeath) t;
+            }
+        }
+    }
+
+    /**
+     * 待ち行列での待ち時間を計測.
+     *
+     * @return boolean [true]の場合、待ち時間が上限を超えたので503を返却しました.
+     */
+    private final boolean dispatch(HttpElement em,
+            RequestMetrics.Recorder recorder) throws IOException {
+        long t = System.nanoTime() - em.dispatchTime;
+        em.dispatchTime = 0L;
+        em.queueTime = t;
+        recorder.record(RequestMetrics.QUEUE, t);
+        waitCount.inc();
+        totalWaitTime.add(t);
+        if (t > maxWaitTime.get()) {
+            maxWaitTime.set(t);
+        }
+
+        // 受信途中のリクエストのみ対象.
+        if (queueTimeout > 0L && t > queueTimeout && !em.isEndReceive()
+                && !em.isEndSend()) {
+            WorkerDispatcher.shed(em);
+            shedCount.inc();
+            synchronized (em) {
+                em.running = false;
+                em.rerun = false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** 最大同時実行数を取得. **/
+    int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /** 実行中のタスク数を取得. **/
+    int getActiveCount() {
+        return maxConcurrent - semaphore.availablePermits();
+    }
+
+    int getQueueSize() {
+        return pendingSize.get();
+    }
+
+    long getWaitCount() {
+        return waitCount.get();
+    }
+
+    /** 待ち時間の合計(ナノ秒)を取得. **/
+    long getTotalWaitTime() {
+        return totalWaitTime.get();
+    }
+
+    /** 最大待ち時間(ナノ秒)を取得. **/
+    long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    long getShedCount() {
+        return shedCount.get();
+    }
+}
@@ -0,0 +1,293 @@
+package origin.script;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import origin.pref.Def;
+import origin.util.Utils;
+
+/**
+ * 起動時のスクリプト事前コンパイルとウォームアップ.
+ *
+ * アプリケーションフォルダ配下のスクリプトと@filter.jsを、ForkJoinPoolで
+ * 並列にコンパイルします. また、ウォームアップファイルに記録されたリクエストを
+ * ループバックで送信して、JITコンパイルを済ませてから受付可能にします.
+ */
+public final class ScriptWarmup {
+    private static final Log LOG = LogFactory.getLog(ScriptWarmup.class);
+    private static final String JS_PLUS = ".js";
+    private static final String FILTER_NAME = "@filter.js";
+    private static final int TIMEOUT = 30000;
+
+    private ScriptWarmup() {
+    }
+
+    /**
+     * スクリプトを並列で事前コンパイル.
+     *
+     * @param man
+     *            コンパイルマネージャを設定します.
+     * @param parallelism
+     *            並列数を設定します. [0]以下の場合はCPUコア数です.
+     * @return int コンパイルに成功したファイル数が返却されます.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public static final int precompile(CompileManager man, int parallelism)
+            throws IOException {
+        long time = System.nanoTime();
+        List<String> files = scripts(Def.SCRPIT_DIR);
+        if (files.isEmpty()) {
+            return 0;
+        }
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism,
+                files.size()));
+        CompileTask task = new CompileTask(man, files, 0, files.size());
+        try {
+            pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+        int ret = task.count;
+        LOG.info(" precompile " + ret + "/" + files.size() + " files "
+                + ((System.nanoTime() - time) / 1000000L) + "ms.");
+        return ret;
+    }
+
+    /** 事前コンパイル対象のスクリプト一覧を取得. **/
+    private static final List<String> scripts(final String dir)
+            throws IOException {
+        final List<String> ret = new ArrayList<String>();
+        final Path root = Paths.get(dir);
+        if (!Files.isDirectory(root)) {
+            return ret;
+        }
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path f,
+                            BasicFileAttributes attrs) {
+                        String n = f.getFileName().toString();
+                        if (attrs.isRegularFile() && n.endsWith(JS_PLUS)
+                                && (!n.startsWith("@") || FILTER_NAME.equals(n))) {
+                            ret.add(dir + "/" + root.relativize(f).toString()
+                                    .replace('\\', '/'));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path f,
+                            IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        return ret;
+    }
+
+    /** 事前コンパイル処理. 1ファイル単位まで分割して実行. **/
+    private static final class CompileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final CompileManager man;
+        private final List<String> files;
+        private final int start;
+        private final int end;
+        int count = 0;
+
+        CompileTask(CompileManager man, List<String> files, int start, int end) {
+            this.man = man;
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > 1) {
+                int mid = (start + end) >>> 1;
+                CompileTask a = new CompileTask(man, files, start, mid);
+                CompileTask b = new CompileTask(man, files, mid, end);
+                invokeAll(a, b);
+                count = a.count + b.count;
+                return;
+            }
+            String file = files.get(start);
+            long t = System.nanoTime();
+            try {
+                man.get(file);
+                count = 1;
+                LOG.info("  precompile " + file + " "
+                        + ((System.nanoTime() - t) / 1000000L) + "ms");
+            } catch (Throwable e) {
+                LOG.warn("  precompile error " + file + " "
+                        + ((System.nanoTime() - t) / 1000000L) + "ms: "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * ウォームアップファイルのリクエストを送信.
+     *
+     * ウォームアップファイルは、1行毎に[メソッド パス [Body]]を記述します.
+     * [#]で始まる行はコメントです.
+     *
+     * @param info
+     *            Http情報を設定します.
+     * @param file
+     *            ウォームアップファイルを設定します.
+     * @param count
+     *            各リクエストの送信回数を設定します.
+     * @exception Exception
+     *                例外.
+     */
+    public static final void warmup(HttpInfo info, String file, int count)
+            throws Exception {
+        if (count <= 0 || !Utils.isFile(file)) {
+            return;
+        }
+        List<String[]> list = requests(Utils.getFileString(file, "UTF8"));
+        if (list.isEmpty()) {
+            return;
+        }
+        String host = info.getLocalAddress();
+        if (!Utils.useString(host) || "0.0.0.0".equals(host)) {
+            host = "127.0.0.1";
+        }
+        InetSocketAddress addr = new InetSocketAddress(host,
+                info.getLocalPort());
+        long time = System.nanoTime();
+        int len = list.size();
+        String[] r;
+        for (int i = 0; i < len; i++) {
+            r = list.get(i);
+            long total = 0L;
+            long max = 0L;
+            int errors = 0;
+            long t;
+            for (int j = 0; j < count; j++) {
+                t = System.nanoTime();
+                try {
+                    if (send(addr, r) >= 500) {
+                        errors++;
+                    }
+                } catch (IOException e) {
+                    errors++;
+                }
+                t = System.nanoTime() - t;
+                total += t;
+                if (t > max) {
+                    max = t;
+                }
+            }
+            LOG.info("  warmup " + r[0] + " " + r[1] + " count:" + count
+                    + " avg:" + (total / count / 1000L) + "us max:"
+                    + (max / 1000L) + "us errors:" + errors);
+        }
+        LOG.info(" warmup " + len + " requests "
+                + ((System.nanoTime() - time) / 1000000L) + "ms.");
+    }
+
+    /** ウォームアップファイルを解析. **/
+    private static final List<String[]> requests(String src)
+            throws IOException {
+        List<String[]> ret = new ArrayList<String[]>();
+        BufferedReader r = new BufferedReader(new StringReader(src));
+        String n;
+        while ((n = r.readLine()) != null) {
+            n = n.trim();
+            if (n.isEmpty() || n.startsWith("#")) {
+                continue;
+            }
+            String[] v = n.split("\\s+", 3);
+            if (v.length < 2) {
+                LOG.warn("  warmup illegal line:" + n);
+                continue;
+            }
+            v[0] = v[0].toUpperCase();
+            if (!v[1].startsWith("/")) {
+                v[1] = "/" + v[1];
+            }
+            ret.add(v);
+        }
+        return ret;
+    }
+
+    /** 1リクエストを送信して、ステータスを取得. **/
+    private static final int send(InetSocketAddress addr, String[] r)
+            throws IOException {
+        byte[] body = r.length > 2 ? r[2].getBytes("UTF8") : null;
+        StringBuilder buf = new StringBuilder();
+        buf.append(r[0]).append(" ").append(r[1]).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(addr.getHostString()).append(":")
+                .append(addr.getPort()).append("\r\n")
+                .append("Connection: close\r\n");
+        if (body != null) {
+            buf.append("Content-Type: application/x-www-form-urlencoded\r\n")
+                    .append("Content-Length: ").append(body.length)
+                    .append("\r\n");
+        }
+        buf.append("\r\n");
+        Socket s = new Socket();
+        try {
+            s.setSoTimeout(TIMEOUT);
+            s.connect(addr, TIMEOUT);
+            OutputStream out = s.getOutputStream();
+            out.write(buf.toString().getBytes("UTF8"));
+            if (body != null) {
+                out.write(body);
+            }
+            out.flush();
+
+            // 切断まで読み込んで、ステータスを取得.
+            InputStream in = s.getInputStream();
+            byte[] b = new byte[8192];
+            int status = -1;
+            int p = 0;
+            int n;
+            while ((n = in.read(b, p, b.length - p)) != -1) {
+                if (status == -1 && (p += n) >= 12) {
+                    status = status(b);
+                }
+                if (status != -1) {
+                    p = 0;
+                }
+            }
+            return status;
+        } finally {
+            s.close();
+        }
+    }
+
+    /** ステータスを取得. **/
+    private static final int status(byte[] b) {
+        if (b[9] < '0' || b[9] > '9' || b[10] < '0' || b[10] > '9'
+                || b[11] < '0' || b[11] > '9') {
+            return 0;
+        }
+        return (b[9] - '0') * 100 + (b[10] - '0') * 10 + (b[11] - '0');
+    }
+}
@@ -1,12 +1,11 @@
 package origin.script;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -14,13 +13,20 @@ import org.apache.commons.logging.LogFactory;
 import origin.db.CreateBaseDao;
 import origin.db.DbCreateBaseDao;
 import origin.db.core.DbFactory;
+import origin.net.NioElement;
 import origin.net.PermissionAccessHeader;
+import origin.net.SendData;
 import origin.net.http.HttpAnalysis;
+import origin.net.http.HttpBody;
+import origin.net.http.GzipCompressor;
+import origin.net.http.HttpParser;
 import origin.net.http.HttpRequest;
 import origin.net.http.HttpStatus;
+import origin.net.http.MimeType;
 import origin.pref.Def;
 import origin.util.ByteArrayIO;
 import origin.util.Utils;
+import origin.util.atomic.AtomicNumber32;
 import origin.util.atomic.Wait;
 
 /**
@@ -32,33 +38,87 @@ public class ScriptWorkerThread extends Thread {
     private static final String JS_PLUS = ".js";
     private static final String FILTER_NAME = "@filter.js";
 
-    private static final CreateBaseDao CREATE_BASE_DAO = new DbCreateBaseDao();
+    static final CreateBaseDao CREATE_BASE_DAO = new DbCreateBaseDao();
 
     private int no;
     private Queue<HttpElement> queue = null;
+    private final AtomicNumber32 queueSize = new AtomicNumber32(0);
     private Wait wait = null;
+    private WorkerDispatcher dispatcher;
+    private long queueTimeout;
     private DbFactory dbFactory;
     private CompileManager compileManager;
     private Map<String,Object> shareMemory = null;
+    private StaticFileCache staticFiles;
+    private HttpInfo info;
+    private GzipCompressor compressor;
+    private RequestMetrics.Recorder recorder;
+    private ScriptScope scope;
 
     private volatile boolean stopFlag = true;
     private volatile boolean endThreadFlag = false;
+    private volatile boolean busy = false;
 
-    public ScriptWorkerThread(DbFactory f, CompileManager c, Map<String,Object> memory, int n) {
+    /** 待ち時間、503返却数(このスレッドのみで更新). **/
+    private volatile long waitCount = 0L;
+    private volatile long totalWaitTime = 0L;
+    private volatile long maxWaitTime = 0L;
+    private volatile long shedCount = 0L;
+
+    public ScriptWorkerThread(DbFactory f, CompileManager c, Map<String,Object> memory,
+            StaticFileCache s, HttpInfo info, RequestMetrics m,
+            WorkerDispatcher d, int n) {
         dbFactory = f;
         compileManager = c;
         no = n;
         shareMemory = memory;
+        staticFiles = s;
+        this.info = info;
+        this.dispatcher = d;
+        this.queueTimeout = info.getWorkerQueueTimeout() * 1000000L;
+        this.compressor = new GzipCompressor(info.getGzipLevel(),
+                info.getGzipMinLength(), info.getGzipContentTypes(),
+                info.getResponseChunkSize());
+        this.recorder = m.newRecorder();
         queue = new ConcurrentLinkedQueue<HttpElement>();
         wait = new Wait();
     }
 
     public void register(HttpElement em) throws IOException {
         em.setWorkerNo(no);
+        queueSize.inc();
         queue.offer(em);
         wait.signal();
     }
 
+    /** 待ち行列数を取得. **/
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /** 処理中を含めた待ち行列数を取得. **/
+    public int getLoad() {
+        return busy ? queueSize.get() + 1 : queueSize.get();
+    }
+
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    /** 待ち時間の合計(ナノ秒)を取得. **/
+    public long getTotalWaitTime() {
+        return totalWaitTime;
+    }
+
+    /** 最大待ち時間(ナノ秒)を取得. **/
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public long getShedCount() {
+        return shedCount;
+    }
+
     public void startThread() {
         stopFlag = false;
         setDaemon(true);
@@ -80,7 +140,11 @@ public class ScriptWorkerThread extends Thread {
     public void run() {
         LOG.info("*** start origin workerThread(" + no + ").");
 
+        // ScriptContextとBindingsは、このスレッドで再利用する.
+        scope = new ScriptScope(dbFactory, CREATE_BASE_DAO, compileManager,
+                info);
         ThreadDeath td = execute();
+        compressor.destroy();
 
         LOG.info("*** stop origin workerThread(" + no + ").");
         endThreadFlag = true;
@@ -100,12 +164,24 @@ public class ScriptWorkerThread extends Thread {
                         wait.await(TIMEOUT);
                         continue;
                     }
-                    if (executionRequest(em)) {
-                        executeScript(dbFactory, em, compileManager, shareMemory);
+                    busy = true;
+                    queueSize.dec();
+                    em.queued.set(0);
+
+                    // 待ち時間が上限を超えた場合は503を返却.
+                    if (em.dispatchTime != 0L && dispatch(em)) {
+                        em = null;
+                        busy = false;
+                        continue;
                     }
+                    executeRequest(scope, em, compileManager,
+                            shareMemory, staticFiles, info, compressor,
+                            recorder);
                     em = null;
+                    busy = false;
                 }
             } catch (Throwable to) {
+                busy = false;
                 if (em != null) {
                     em.clear();
                 }
@@ -121,8 +197,53 @@ public class ScriptWorkerThread extends Thread {
         return ret;
     }
 
+    /**
+     * 振り分けからの待ち時間を計測.
+     *
+     * @return boolean [true]の場合、待ち時間が上限を超えたので503を返却しました.
+     */
+    private final boolean dispatch(HttpElement em) throws IOException {
+        long t = System.nanoTime() - em.dispatchTime;
+        em.dispatchTime = 0L;
+        em.queueTime = t;
+        recorder.record(RequestMetrics.QUEUE, t);
+        waitCount++;
+        totalWaitTime += t;
+        if (t > maxWaitTime) {
+            maxWaitTime = t;
+        }
+        if (queueTimeout > 0L && t > queueTimeout) {
+            WorkerDispatcher.shed(em);
+            shedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /** Request解析後、受信完了していればスクリプトを実行. **/
+    static final void executeRequest(ScriptScope scope, HttpElement em,
+            CompileManager man, Map<String,Object> shareMemory,
+            StaticFileCache staticFiles, HttpInfo info,
+            GzipCompressor compressor, RequestMetrics.Recorder recorder)
+            throws IOException {
+        if (executionRequest(em, info, recorder)) {
+            executeScript(scope, em, man, shareMemory, staticFiles, info,
+                    compressor, recorder);
+        }
+    }
+
     /** Request処理. **/
-    private static final boolean executionRequest(HttpElement em)
+    private static final boolean executionRequest(HttpElement em,
+            HttpInfo info, RequestMetrics.Recorder recorder)
+            throws IOException {
+        synchronized (em) {
+            return analysisRequest(em, info, recorder);
+        }
+    }
+
+    /** Request解析. **/
+    private static final boolean analysisRequest(HttpElement em,
+            HttpInfo info, RequestMetrics.Recorder recorder)
             throws IOException {
 
         // 既に受信処理が終わっている場合.
@@ -137,19 +258,33 @@ public class ScriptWorkerThread extends Thread {
         HttpRequest request = em.getRequest();
         if (request == null) {
 
-            // HTTPリクエストが存在しない場合は、新規作成.
-            int endPoint = HttpAnalysis.endPoint(buffer);
-            if (endPoint == -1) {
+            // HTTPリクエストが存在しない場合は、前回の続きからヘッダを解析.
+            HttpParser parser = em.getParser();
+            if (!parser.parse(buffer)) {
 
                 // 受信途中の場合.
                 return false;
             }
-            request = HttpAnalysis.getRequest(buffer, endPoint);
+            request = parser.getRequest();
             em.setRequest(request);
+
+            // ヘッダ受信完了までの時間は、待ち行列での待機を除いて記録.
+            recorder.record(RequestMetrics.HEADER, System.nanoTime()
+                    - em.requestTime - em.queueTime);
+
+            // KeepAliveの判別.
+            em.setKeepAlive(em.incRequestCount() < info.getKeepAliveRequests()
+                    && request.isKeepAlive());
         }
 
         String method = request.getMethod();
 
+        // POST以外でBodyが指定されている場合は、Bodyを読み込まないので、
+        // 次のリクエストとして解析されないように、レスポンス送信後に切断.
+        if (!"POST".equals(method) && hasBody(request)) {
+            em.setKeepAlive(false);
+        }
+
         // OPTIONの場合は、Optionヘッダを返却.
         if ("OPTIONS".equals(method)) {
 
@@ -161,32 +296,59 @@ public class ScriptWorkerThread extends Thread {
         else if ("POST".equals(method)) {
 
             // ContentLengthを取得.
-            int contentLength = request.getContentLength();
-            if (contentLength <= -1) {
+            boolean chunked = request.isChunked();
+            int contentLength = chunked ? -1 : request.getContentLength();
+            if (!chunked && contentLength <= -1) {
 
                 // 存在しない場合はコネクション強制クローズ.
-                // chunkedの受信は対応しない.
                 // 411エラー.
+                em.setKeepAlive(false);
                 errorResponse(em, 411);
                 return false;
             }
 
             // 指定サイズを超えるBody長.
-            if (contentLength > Def.MAX_CONTENT_LENGTH) {
+            // パラメータとして読み込むBodyは、ヒープ上に読み込むので別の上限で確認.
+            if (contentLength > info.getMaxContentLength()
+                    || (contentLength > info.getMaxParamsLength()
+                    && isParamsBody(request))) {
 
                 // 413エラー.
+                em.setKeepAlive(false);
                 errorResponse(em, 413);
                 return false;
             }
 
+            // 大きなBody、またはchunked形式の場合は、ヘッダ受信時点で
+            // スクリプトを実行して、Bodyは逐次受信する.
+            if (chunked || contentLength > info.getRequestSpoolSize()) {
+                HttpBody body = new HttpBody(contentLength,
+                        info.getMaxContentLength(), info.getRequestSpoolSize(),
+                        info.getRequestReadTimeout());
+                body.setElement(em);
+                body.receive(buffer);
+                request.setInputStream(body);
+                em.setBody(body);
+
+                // 残りのBodyは、受信が進まない場合にタイムアウト.
+                if (!body.isEnd()) {
+                    em.setDeadline(NioElement.TIMEOUT_READ,
+                            System.currentTimeMillis()
+                                    + info.getRequestReadTimeout());
+                }
+            }
             // Body情報が受信完了かチェック.
-            if (buffer.size() >= contentLength) {
+            else if (buffer.size() >= contentLength) {
                 byte[] body = new byte[contentLength];
                 buffer.read(body);
                 request.setBody(body);
             } else {
 
                 // PostのBody受信中.
+                // 受信が進まない場合にタイムアウト.
+                em.setDeadline(NioElement.TIMEOUT_READ,
+                        System.currentTimeMillis()
+                                + info.getRequestReadTimeout());
                 return false;
             }
         }
@@ -194,97 +356,180 @@ public class ScriptWorkerThread extends Thread {
         else if (!"GET".equals(method)) {
 
             // 405エラー.
+            em.setKeepAlive(false);
             errorResponse(em, 405);
             return false;
         }
 
         // 受信完了.
+        // 受信バッファには、パイプライン化された次のリクエストが
+        // 存在する可能性があるので破棄しない.
+        // スクリプト実行中は、Bodyの逐次受信以外はタイムアウトしない.
+        if (em.getBody() == null) {
+            em.clearDeadline();
+        }
         em.setEndReceive(true);
-        em.destroyBuffer();
         return true;
     }
 
+    /** パラメータとして読み込むBodyかチェック. **/
+    private static final boolean isParamsBody(HttpRequest request)
+            throws IOException {
+        String contentType = request.getHeader("Content-Type");
+        return contentType != null
+                && (contentType.indexOf("application/json") == 0
+                || contentType.indexOf("application/x-www-form-urlencoded") == 0);
+    }
+
+    /** Bodyが指定されているかチェック. **/
+    private static final boolean hasBody(HttpRequest request)
+            throws IOException {
+        if (request.isChunked()) {
+            return true;
+        }
+        String len = request.getHeader("Content-Length");
+        return len != null && !"0".equals(len.trim());
+    }
+
     /** Response処理. **/
-    private static final void executeScript(DbFactory dbFactory,
-            HttpElement em, CompileManager man, Map<String,Object> shareMemory) {
+    private static final void executeScript(ScriptScope scope,
+            HttpElement em, CompileManager man, Map<String,Object> shareMemory,
+            StaticFileCache staticFiles, HttpInfo info,
+            GzipCompressor compressor, RequestMetrics.Recorder recorder) {
 
         // 既に送信処理が終わっている場合.
         if (em.isEndSend()) {
             return;
         }
         OriginBindings b = null;
+        HttpResponse res = null;
+        HttpBody body = em.getBody();
         try {
             HttpRequest req = em.getRequest();
             em.setRequest(null);
             
             // アクセス対象のパスを取得.
-            String path = Def.SCRPIT_DIR + getPath(req.getUrl());
-            
-            // 実行ファイルのパスが存在しない場合.
-            if (!Utils.isFile(path + JS_PLUS)) {
-                
-                // 存在しない場合.
-                errorResponse(em, 404);
-                return;
-            }
-            
-            // パスを、[スクリプトファイル]と[パス]に分解.
-            String scriptFile = null;
-            int p = path.lastIndexOf("/");
-            if(p == -1) {
-                scriptFile = path;
-                path = "";
+            String url = getPath(req.getUrl());
+            String path = Def.SCRPIT_DIR + url;
+            String scriptFile;
+            String filterFile;
+            Map<String, String> pathParams = null;
+            RouteTable routes = man.getRoutes();
+            if (routes != null) {
+
+                // ルートテーブルから、スクリプト、フィルタ、パス変数を取得.
+                // パス変数で一致した場合でも、同じパスのファイルが存在する場合は
+                // 静的ファイルとして処理.
+                RouteTable.Match m = routes.get(url);
+                if (m == null
+                        || (m.getRoute().isParams() && man.isFile(path))) {
+                    staticFile(em, req, path, staticFiles);
+                    return;
+                }
+                RouteTable.Route route = m.getRoute();
+                scriptFile = route.getScript();
+                filterFile = route.getFilter();
+                if (route.isParams()) {
+                    pathParams = m.getParams();
+                }
+
+                // パス変数を含む場合は、パターン単位で記録.
+                url = route.getPattern();
             } else {
-                scriptFile = path.substring(p+1);
-                path = path.substring(0,p+1);
+
+                // 実行ファイルのパスが存在しない場合.
+                if (!man.isFile(path + JS_PLUS)) {
+
+                    // 静的ファイルとして処理.
+                    staticFile(em, req, path, staticFiles);
+                    return;
+                }
+
+                // パスを、[スクリプトファイル]と[パス]に分解.
+                int p = path.lastIndexOf("/");
+
+                // スクリプト名の頭に@マークがある
+                // ものは、処理できない.
+                if (path.startsWith("@", p + 1)) {
+
+                    // 存在しない場合.
+                    errorResponse(em, 404);
+                    return;
+                }
+                scriptFile = path + JS_PLUS;
+                filterFile = path.substring(0, p + 1) + FILTER_NAME;
+                if (!man.isFile(filterFile)) {
+                    filterFile = null;
+                }
             }
-            
-            // スクリプト名の頭に@マークがある
-            // ものは、処理できない.
-            if(scriptFile.startsWith("@")) {
-                
-                // 存在しない場合.
-                errorResponse(em, 404);
-                return;
+
+            // 待ち時間はスクリプトのパスが決まった時点で、パス毎に記録.
+            em.path = url;
+            if (em.queueTime != 0L) {
+                recorder.recordPath(RequestMetrics.QUEUE, em.path,
+                        em.queueTime);
+                em.queueTime = 0L;
             }
-            
-            scriptFile += JS_PLUS;
             String method = req.getMethod();
             Object params = null;
             if ("GET".equals(method)) {
-                params = getParams(req.getUrl());
+                params = HttpAnalysis.paramsAnalysis(req, info.getMaxParams());
             } else if ("POST".equals(method)) {
-                params = postParams(req);
+                params = postParams(req, body, scope.getJsonReader(),
+                        info.getMaxParams(), info.getMaxParamsLength());
+            }
+
+            // パラメータ数が最大値を超える場合は、400エラー.
+            if (params == null) {
+                errorResponse(em, 400, "パラメータ数が最大値を超えています");
+                return;
             }
             boolean gzip = isGzip(req);
             
-            b = new OriginBindings(dbFactory, CREATE_BASE_DAO);
-            HttpResponse res = new HttpResponse();
+            b = scope.getBindings();
+            res = new HttpResponse();
+            res.writer = new ResponseWriter(em, res, gzip ? compressor : null,
+                    HTTP_11.equals(req.getVersion()),
+                    info.getResponseChunkSize(), info.getResponseSendTimeout());
             b.put(Def.SCRIPT_PARAMS, params);
+            b.put(Def.SCRIPT_PATH_PARAMS,
+                    pathParams == null ? new HashMap<String, String>()
+                            : pathParams);
             b.put(Def.SCRIPT_REQUEST, req);
             b.put(Def.SCRIPT_RESPONSE, res);
             b.put(Def.SHARE_MEMORY, shareMemory);
-            String ret = "";
+            Object ret = "";
+            ByteBuffer[] json = null;
+            long startTime = System.nanoTime();
+            long compileTime = 0L;
+            long t;
+            RequestMetrics.takeJsonTime();
             try {
                 
                 // フィルタ処理が存在する場合は、最初にフィルタを実行.
-                if (Utils.isFile(path + FILTER_NAME)) {
-                    CompileElement ce = man.get(path + FILTER_NAME);
+                if (filterFile != null) {
+                    t = System.nanoTime();
+                    CompileElement ce = man.get(filterFile);
                     ce.update();
-                    Object filterResult = ExecuteScript.execute(ce, b);
+                    compileTime += System.nanoTime() - t;
+                    Object filterResult = ExecuteScript.execute(ce, scope);
                     
                     // フィルタ実行結果、OKの場合.
                     if("true".equals(""+filterResult)) {
                         
                         // スクリプトの実行.
-                        ce = man.get(path + scriptFile);
+                        t = System.nanoTime();
+                        ce = man.get(scriptFile);
                         ce.update();
-                        ret = (String) ExecuteScript.execute(ce, b);
+                        compileTime += System.nanoTime() - t;
+                        ret = ExecuteScript.execute(ce, scope);
                         
                     // フィルター内でエラーメッセージを送付していない場合.
                     } else if(!em.isEndSend()) {
                         
-                        if(!"false".equals(""+filterResult)) {
+                        if(res.isCommitted()) {
+                            res.writer.abort();
+                        } else if(!"false".equals(""+filterResult)) {
                             errorResponse(em, 500, ""+filterResult);
                         } else {
                             errorResponse(em, 500, "処理に失敗しました");
@@ -294,32 +539,94 @@ public class ScriptWorkerThread extends Thread {
                 } else {
                     
                     // スクリプトの実行.
-                    CompileElement ce = man.get(path + scriptFile);
+                    t = System.nanoTime();
+                    CompileElement ce = man.get(scriptFile);
                     ce.update();
-                    ret = (String) ExecuteScript.execute(ce, b);
+                    compileTime += System.nanoTime() - t;
+                    ret = ExecuteScript.execute(ce, scope);
+                }
+
+                // 文字列以外の戻り値は、UTF8のJSONバイナリに直接変換.
+                if (!(ret instanceof String) && !res.isCommitted()) {
+                    t = System.nanoTime();
+                    json = scope.getJsonWriter().encode(ret);
+                    RequestMetrics.addJsonTime(System.nanoTime() - t);
                 }
             } catch (HttpRedirectException redirect) {
-                redirectResponse(em, redirect);
+                if (res.isCommitted()) {
+                    res.writer.abort();
+                } else {
+                    redirectResponse(em, redirect);
+                }
                 return;
             } catch (HttpException httpException) {
-                errorResponse(em, httpException.getStatus(),
-                        httpException.getMessage());
+                if (res.isCommitted()) {
+                    res.writer.abort();
+                } else {
+                    errorResponse(em, httpException.getStatus(),
+                            httpException.getMessage());
+                }
+                return;
+            } finally {
+
+                // スクリプト実行時間は、コンパイルとJSON変換を除いて記録.
+                t = RequestMetrics.takeJsonTime();
+                recorder.record(RequestMetrics.COMPILE, em.path, compileTime);
+                recorder.record(RequestMetrics.EXECUTE, em.path,
+                        System.nanoTime() - startTime - compileTime - t);
+                if (t != 0L) {
+                    recorder.record(RequestMetrics.JSON, em.path, t);
+                }
+            }
+
+            // ストリーミング送信中の場合は、スクリプトの戻り値は利用せずに送信終了.
+            if (res.isCommitted()) {
+                em.setRequest(null);
+                em.setEndReceive(true);
+                em.setEndSend(true);
+                res.writer.close();
                 return;
             }
-            if (ret == null) {
-                ret = "";
-                gzip = false;
+            if (json != null) {
+                sendJson(gzip ? compressor : null, scope.getJsonWriter(),
+                        recorder, em, res.getStatus(), res, json);
+                return;
+            }
+            sendResponse(gzip ? compressor : null, recorder, em,
+                    res.getStatus(), res, (String) ret);
+        } catch (HttpException httpException) {
+
+            // パラメータの読み込みで、Body長が最大値を超えた場合.
+            // 残りのBodyは受信しないで切断.
+            try {
+                em.setKeepAlive(false);
+                errorResponse(em, httpException.getStatus(),
+                        httpException.getMessage());
+            } catch (Exception ee) {
             }
-            sendResponse(gzip, em, res.getStatus(), res, ret);
         } catch (Exception e) {
             LOG.info("error", e);
+            if (res != null && res.isCommitted()) {
+                res.writer.abort();
+                return;
+            }
             try {
-                errorResponse(em, 500, e.getMessage());
+
+                if (body != null && body.isOverflow()) {
+                    errorResponse(em, 413);
+                } else {
+                    errorResponse(em, 500, e.getMessage());
+                }
             } catch (Exception ee) {
             }
         } finally {
             if (b != null) {
-                b.close();
+                scope.reset();
+            }
+
+            // 読み込まれなかったBodyは破棄.
+            if (body != null) {
+                body.close();
             }
         }
     }
@@ -336,29 +643,36 @@ public class ScriptWorkerThread extends Thread {
         return url;
     }
 
-    /** GETパラメータを取得. **/
-    private static final Object getParams(String url) throws IOException {
-        int p = url.indexOf("?");
-        if (p != -1) {
-            return HttpAnalysis.paramsAnalysis(url, p + 1);
-        }
-        return new HashMap<String, String>();
-    }
+    /**
+     * POSTパラメータを取得. パラメータ数が最大値を超える場合は[null].
+     * 逐次受信のBodyが、パラメータとして読み込むBodyの最大長を超える場合は
+     * HttpException(413).
+     */
+    private static final Object postParams(HttpRequest req, HttpBody body,
+            JsonReader reader, int max, int maxLength) throws IOException {
+        String contentType = req.getHeader("Content-Type");
+        byte[] b;
+        if (body != null) {
 
-    /** POSTパラメータを取得. **/
-    private static final Object postParams(HttpRequest req) throws IOException {
-        String v = new String(req.getBody(), "UTF8");
-        req.setBody(null);
+            // 逐次受信のBodyは、JSONとフォーム形式の場合のみパラメータとして読み込む.
+            // それ以外は、スクリプトでrequest.getInputStream()から読み込む.
+            if (!isParamsBody(req)) {
+                return new HashMap<String, String>();
+            }
+            if ((b = body.readBytes(maxLength)) == null) {
+                throw new HttpException(413, HttpStatus.getMessage(413));
+            }
+        } else if ((b = req.getBody()) == null) {
+            return new HashMap<String, String>();
+        }
 
-        // Body内容がJSON形式の場合.
-        String contentType = req.getHeader("Content-Type");
-        if (contentType.indexOf("application/json") == 0) {
-            return Json.decode(v);
-        } else if ("application/x-www-form-urlencoded".equals(contentType)) {
-            return HttpAnalysis.paramsAnalysis(v, 0);
-        } else {
-            return HttpAnalysis.paramsAnalysis(v, 0);
+        // Body内容がJSON形式の場合は、UTF8のバイナリのまま解析.
+        if (contentType != null && contentType.indexOf("application/json") == 0) {
+            return Json.decode(reader, b, 0, b.length);
         }
+
+        // フォーム形式は位置のみを解析して、URLデコードはアクセス時に行う.
+        return HttpAnalysis.paramsAnalysis(b, 0, b.length, max);
     }
 
     /** GZIP返却許可チェック. **/
@@ -373,25 +687,76 @@ public class ScriptWorkerThread extends Thread {
     /** Options送信. **/
     private static final void sendOptions(HttpElement em) throws IOException {
         em.setRequest(null);
-        em.destroyBuffer();
         em.setEndReceive(true);
         em.setEndSend(true);
-        em.getSendData().set(OPSIONS_RESPONSE);
+        em.getSendData().set(em.isKeepAlive() ? OPSIONS_RESPONSE_KEEP_ALIVE
+                : OPSIONS_RESPONSE);
     }
 
     /** レスポンス送信. **/
-    private static final void sendResponse(boolean gzip, HttpElement em,
-            int status, HttpResponse header, String body) throws IOException {
+    private static final void sendResponse(GzipCompressor compressor,
+            RequestMetrics.Recorder recorder, HttpElement em, int status,
+            HttpResponse header, String body) throws IOException {
         em.setRequest(null);
-        em.destroyBuffer();
         em.setEndReceive(true);
         em.setEndSend(true);
-        if (gzip && body.length() > Def.NOT_GZIP_BODY_LENGTH) {
+        closeIfReceiving(em);
+        if (compressor != null
+                && compressor.isCompress(header.ContentType, body.length())) {
+
+            // UTF8変換しながら圧縮した結果を、そのまま送信.
             header.setHeader("Content-Encoding", "gzip");
-            em.getSendData()
-                    .set(stateResponse(status, header, pressGzip(body)));
+            long t = System.nanoTime();
+            ByteBuffer[] b = compressor.compress(body);
+            recorder.record(RequestMetrics.GZIP, em.path, System.nanoTime()
+                    - t);
+            em.getSendData().set(stateResponse(status, header,
+                    em.isKeepAlive(), b, compressor.getLength()));
         } else {
-            em.getSendData().set(stateResponse(status, header, body));
+            em.getSendData().set(stateResponse(status, header,
+                    em.isKeepAlive(), body));
+        }
+    }
+
+    /**
+     * JSONレスポンス送信. JsonWriterのバッファをそのまま送信し、
+     * 送信が完了した場合のみバッファを再利用する.
+     **/
+    private static final void sendJson(GzipCompressor compressor,
+            JsonWriter writer, RequestMetrics.Recorder recorder,
+            HttpElement em, int status, HttpResponse header,
+            ByteBuffer[] body) throws IOException {
+        em.setRequest(null);
+        em.setEndReceive(true);
+        em.setEndSend(true);
+        closeIfReceiving(em);
+        long len = writer.getLength();
+        if (compressor != null
+                && compressor.isCompress(header.ContentType, len)) {
+
+            // 圧縮した場合は、圧縮前のバッファは送信しない.
+            header.setHeader("Content-Encoding", "gzip");
+            long t = System.nanoTime();
+            ByteBuffer[] b = compressor.compress(body, len);
+            writer.release();
+            recorder.record(RequestMetrics.GZIP, em.path, System.nanoTime()
+                    - t);
+            em.getSendData().set(stateResponse(status, header,
+                    em.isKeepAlive(), b, compressor.getLength()));
+            return;
+        }
+        SendData sd = em.getSendData();
+        sd.set(stateResponse(status, header, em.isKeepAlive(), body, len));
+        if (sd.isEmpty()) {
+            writer.release();
+        }
+    }
+
+    /** Bodyの受信途中でレスポンスを返却する場合は、送信後にコネクションを切断. **/
+    static final void closeIfReceiving(HttpElement em) {
+        HttpBody body = em.getBody();
+        if (body != null && !body.isEnd()) {
+            em.setKeepAlive(false);
         }
     }
 
@@ -399,23 +764,69 @@ public class ScriptWorkerThread extends Thread {
     private static final void redirectResponse(HttpElement em,
             HttpRedirectException redirect) throws IOException {
         em.setRequest(null);
-        em.destroyBuffer();
         em.setEndReceive(true);
         em.setEndSend(true);
+        closeIfReceiving(em);
         HttpResponse res = new HttpResponse();
         res.setHeader("Location", redirect.getUrl());
-        em.getSendData().set(stateResponse(redirect.getStatus(), res, ""));
+        em.getSendData().set(stateResponse(redirect.getStatus(), res,
+                em.isKeepAlive(), ""));
     }
 
-    /** GZIP圧縮. **/
-    private static final byte[] pressGzip(String body) throws IOException {
-        ByteArrayOutputStream bo = new ByteArrayOutputStream();
-        GZIPOutputStream go = new GZIPOutputStream(bo);
-        go.write(body.getBytes("UTF8"));
-        go.flush();
-        go.finish();
-        go.close();
-        return bo.toByteArray();
+    /** 静的ファイル送信. **/
+    private static final void staticFile(HttpElement em, HttpRequest req,
+            String path, StaticFileCache staticFiles) throws IOException {
+
+        // GET以外、スクリプトファイル、@マークから始まるファイル、
+        // 上位ディレクトリの参照は処理できない.
+        if (!"GET".equals(req.getMethod())
+                || path.toLowerCase().endsWith(JS_PLUS)
+                || path.indexOf("/@") != -1 || path.indexOf("/../") != -1
+                || path.endsWith("/..")) {
+            errorResponse(em, 404);
+            return;
+        }
+        StaticFileCache.Entry file = staticFiles.get(path);
+        if (file == null) {
+            errorResponse(em, 404);
+            return;
+        }
+        try {
+            HttpResponse res = new HttpResponse();
+            res.setHeader("Last-Modified", file.getLastModifiedString());
+            res.setHeader("ETag", file.getEtag());
+
+            em.setRequest(null);
+            em.setEndReceive(true);
+            em.setEndSend(true);
+
+            // 条件付きGETで、ファイルが更新されていない場合.
+            if (file.isNotModified(req.getHeader("If-None-Match"),
+                    req.getHeader("If-Modified-Since"))) {
+                file.release();
+                file = null;
+                em.getSendData().set(stateResponse(304, res,
+                        em.isKeepAlive(), NO_BODY));
+                return;
+            }
+
+            // ファイルの内容はtransferToで送信.
+            String mime = file.getMimeType();
+            if (mime == null) {
+                mime = MimeType.UNKNONW_MIME_TYPE;
+            } else if (staticFiles.isCharset(mime)) {
+                mime += "; charset=UTF-8";
+            }
+            res.put("Content-Type", mime);
+            ByteBuffer[] head = stateHeader(200, res, em.isKeepAlive(),
+                    file.getLength());
+            em.getSendData().set(file.region(), head);
+            file = null;
+        } finally {
+            if (file != null) {
+                file.release();
+            }
+        }
     }
 
     /** エラーレスポンスを送信. **/
@@ -451,52 +862,122 @@ public class ScriptWorkerThread extends Thread {
 
         // 処理結果を返却.
         em.setRequest(null);
-        em.destroyBuffer();
         em.setEndReceive(true);
         em.setEndSend(true);
-        em.getSendData().set(stateResponse(status, header, res));
+        closeIfReceiving(em);
+        em.getSendData().set(stateResponse(status, header,
+                em.isKeepAlive(), res));
     }
 
-    /** ステータス指定Response返却用バイナリの生成. **/
-    private static final byte[] stateResponse(int state, HttpResponse header,
-            String b) throws IOException {
-        return stateResponse(state, header, b.getBytes("UTF8"));
+    /** ステータス指定Response返却用データの生成. **/
+    private static final ByteBuffer[] stateResponse(int state,
+            HttpResponse header, boolean keepAlive, String b)
+            throws IOException {
+        return stateResponse(state, header, keepAlive, b.getBytes("UTF8"));
     }
 
-    /** ステータス指定Response返却用バイナリの生成. **/
-    private static final byte[] stateResponse(int state, HttpResponse header,
-            byte[] b) throws IOException {
-        byte[] stateBinary = new StringBuilder(String.valueOf(state))
-                .append(" ").append(HttpStatus.getMessage(state)).toString()
-                .getBytes("UTF8");
+    /**
+     * ステータス指定Response返却用データの生成. ステータス行、固定ヘッダ、可変ヘッダ、
+     * Bodyをコピーせずに、それぞれ別のByteBufferとして返却します.
+     **/
+    private static final ByteBuffer[] stateResponse(int state,
+            HttpResponse header, boolean keepAlive, byte[] b)
+            throws IOException {
+        return new ByteBuffer[] {
+                ByteBuffer.wrap(stateLine(state)),
+                ByteBuffer.wrap(keepAlive ? STATE_RESPONSE_2_KEEP_ALIVE
+                        : STATE_RESPONSE_2),
+                ByteBuffer.wrap(stateFoot(header, b.length)),
+                ByteBuffer.wrap(b) };
+    }
 
-        byte[] foot = (new StringBuilder(String.valueOf(b.length))
-                .append("\r\n").append(HttpResponse.headers(header))
-                .append("\r\n").toString()).getBytes("UTF8");
-        int all = STATE_RESPONSE_1.length + stateBinary.length
-                + STATE_RESPONSE_2.length + foot.length + b.length;
-        byte[] ret = new byte[all];
-
-        int pos = 0;
-        System.arraycopy(STATE_RESPONSE_1, 0, ret, pos, STATE_RESPONSE_1.length);
-        pos += STATE_RESPONSE_1.length;
-        System.arraycopy(stateBinary, 0, ret, pos, stateBinary.length);
-        pos += stateBinary.length;
-        System.arraycopy(STATE_RESPONSE_2, 0, ret, pos, STATE_RESPONSE_2.length);
-        pos += STATE_RESPONSE_2.length;
-        System.arraycopy(foot, 0, ret, pos, foot.length);
-        pos += foot.length;
-        System.arraycopy(b, 0, ret, pos, b.length);
-        
+    /** ステータス指定Response返却用データの生成. Bodyは複数のByteBufferで設定します. **/
+    private static final ByteBuffer[] stateResponse(int state,
+            HttpResponse header, boolean keepAlive, ByteBuffer[] b,
+            long length) throws IOException {
+        ByteBuffer[] ret = new ByteBuffer[b.length + 3];
+        ret[0] = ByteBuffer.wrap(stateLine(state));
+        ret[1] = ByteBuffer.wrap(keepAlive ? STATE_RESPONSE_2_KEEP_ALIVE
+                : STATE_RESPONSE_2);
+        ret[2] = ByteBuffer.wrap(stateFoot(header, length));
+        System.arraycopy(b, 0, ret, 3, b.length);
         return ret;
     }
 
+    /** ステータス指定Response返却用ヘッダデータの生成. **/
+    private static final ByteBuffer[] stateHeader(int state,
+            HttpResponse header, boolean keepAlive, long length)
+            throws IOException {
+        return new ByteBuffer[] {
+                ByteBuffer.wrap(stateLine(state)),
+                ByteBuffer.wrap(keepAlive ? STATE_RESPONSE_2_KEEP_ALIVE
+                        : STATE_RESPONSE_2),
+                ByteBuffer.wrap(stateFoot(header, length)) };
+    }
+
+    /** ストリーミング送信用のヘッダデータの生成. **/
+    static final ByteBuffer[] streamHeader(int state, HttpResponse header,
+            boolean keepAlive) throws IOException {
+        return new ByteBuffer[] {
+                ByteBuffer.wrap(stateLine(state)),
+                ByteBuffer.wrap(keepAlive ? STATE_RESPONSE_3_KEEP_ALIVE
+                        : STATE_RESPONSE_3),
+                ByteBuffer.wrap(new StringBuilder(HttpResponse.headers(header))
+                        .append("\r\n").toString().getBytes("UTF8")) };
+    }
+
+    /** Content-Length以降の可変ヘッダを生成. **/
+    private static final byte[] stateFoot(HttpResponse header, long length)
+            throws IOException {
+        return (new StringBuilder(String.valueOf(length)).append("\r\n")
+                .append(HttpResponse.headers(header)).append("\r\n")
+                .toString()).getBytes("UTF8");
+    }
+
+    /** ステータス行を取得. **/
+    private static final byte[] stateLine(int state) throws IOException {
+        byte[] ret;
+        if (state < 0 || state >= STATE_LINE.length) {
+            return createStateLine(state);
+        } else if ((ret = STATE_LINE[state]) == null) {
+            ret = createStateLine(state);
+            STATE_LINE[state] = ret;
+        }
+        return ret;
+    }
+
+    /** ステータス行を生成. **/
+    private static final byte[] createStateLine(int state) throws IOException {
+        return new StringBuilder(STATE_RESPONSE_1).append(state).append(" ")
+                .append(HttpStatus.getMessage(state)).toString()
+                .getBytes("UTF8");
+    }
+
     /** Optionsレスポンス. **/
     private static final byte[] OPSIONS_RESPONSE;
+    private static final byte[] OPSIONS_RESPONSE_KEEP_ALIVE;
 
     /** ステータス指定レスポンス. **/
-    private static final byte[] STATE_RESPONSE_1;
+    private static final String STATE_RESPONSE_1 = "HTTP/1.1 ";
     private static final byte[] STATE_RESPONSE_2;
+    private static final byte[] STATE_RESPONSE_2_KEEP_ALIVE;
+
+    /** ストリーミング送信用レスポンス(Content-Lengthなし). **/
+    private static final byte[] STATE_RESPONSE_3;
+    private static final byte[] STATE_RESPONSE_3_KEEP_ALIVE;
+
+    /** HTTP/1.1. **/
+    private static final String HTTP_11 = "HTTP/1.1";
+
+    /** 空のBody. **/
+    private static final byte[] NO_BODY = new byte[0];
+
+    /** ステータス行キャッシュ. **/
+    private static final byte[][] STATE_LINE = new byte[600][];
+
+    /** Connectionヘッダ. **/
+    private static final String CONNECTION_CLOSE = "Connection: close\r\n";
+    private static final String CONNECTION_KEEP_ALIVE = "Connection: keep-alive\r\n";
 
     static {
         String headers = PermissionAccessHeader.get();
@@ -504,37 +985,51 @@ public class ScriptWorkerThread extends Thread {
             headers += ",";
         }
         byte[] b;
-        byte[] s1;
+        byte[] bk;
         byte[] s2;
+        byte[] s2k;
+        byte[] s3;
+        byte[] s3k;
         try {
-            b = ("HTTP/1.1 200 OK\r\n" + "Allow: GET, POST, HEAD, OPTIONS\r\n"
+            String o = "HTTP/1.1 200 OK\r\n" + "Allow: GET, POST, HEAD, OPTIONS\r\n"
                     + "Cache-Control: no-cache\r\n"
                     + "X-Accel-Buffering: no\r\n"
                     + "Access-Control-Allow-Origin: *\r\n"
                     + "Access-Control-Allow-Headers: content-type, "+headers+" *\r\n"
                     + "Access-Control-Allow-Methods: GET, POST, HEAD, OPTIONS\r\n"
                     + "Server: "
-                    + Def.SERVER_NAME + "\r\n" + "Connection: close\r\n" + "Content-Length: 0\r\n\r\n")
+                    + Def.SERVER_NAME + "\r\n";
+            b = (o + CONNECTION_CLOSE + "Content-Length: 0\r\n\r\n")
+                    .getBytes("UTF8");
+            bk = (o + CONNECTION_KEEP_ALIVE + "Content-Length: 0\r\n\r\n")
                     .getBytes("UTF8");
 
-            s1 = ("HTTP/1.1 ").getBytes("UTF8");
-            s2 = ("\r\n" + "Cache-Control: no-cache\r\n"
+            o = "\r\n" + "Cache-Control: no-cache\r\n"
                     + "X-Accel-Buffering: no\r\n"
                     + "Access-Control-Allow-Origin: *\r\n"
                     + "Access-Control-Allow-Headers: content-type, "+headers+" *\r\n"
                     + "Access-Control-Allow-Methods: GET, POST, HEAD, OPTIONS\r\n"
                     + "Server: "
-                    + Def.SERVER_NAME + "\r\n" + "Connection: close\r\n"
-                    + "Content-Length: ")
+                    + Def.SERVER_NAME + "\r\n";
+            s2 = (o + CONNECTION_CLOSE + "Content-Length: ").getBytes("UTF8");
+            s2k = (o + CONNECTION_KEEP_ALIVE + "Content-Length: ")
                     .getBytes("UTF8");
+            s3 = (o + CONNECTION_CLOSE).getBytes("UTF8");
+            s3k = (o + CONNECTION_KEEP_ALIVE).getBytes("UTF8");
 
         } catch (Exception e) {
             b = null;
-            s1 = null;
+            bk = null;
             s2 = null;
+            s2k = null;
+            s3 = null;
+            s3k = null;
         }
         OPSIONS_RESPONSE = b;
-        STATE_RESPONSE_1 = s1;
+        OPSIONS_RESPONSE_KEEP_ALIVE = bk;
         STATE_RESPONSE_2 = s2;
+        STATE_RESPONSE_2_KEEP_ALIVE = s2k;
+        STATE_RESPONSE_3 = s3;
+        STATE_RESPONSE_3_KEEP_ALIVE = s3k;
     }
 }
\ No newline at end of file
@@ -0,0 +1,274 @@
+package origin.script;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import origin.net.FileRegion;
+import origin.net.http.MimeType;
+import origin.util.LruCache;
+
+/**
+ * 静的ファイルキャッシュ. オープン済みのFileChannelとファイル情報を保持して、
+ * アクセス毎のファイル情報取得とオープン処理を省略します.
+ * ファイル情報の再チェックは、指定間隔毎に行います.
+ */
+public final class StaticFileCache {
+
+    /** Http日付フォーマット. **/
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+
+    /** 静的ファイル要素. **/
+    public static final class Entry {
+        private final String path;
+        private FileChannel channel;
+        private final long length;
+        private final long lastModified;
+        private final String lastModifiedString;
+        private final String etag;
+        private final String mimeType;
+        private long checkTime;
+        private int refs = 0;
+        private boolean closed = false;
+
+        private Entry(String path, FileChannel channel, long length,
+                long lastModified, String mimeType, long checkTime) {
+            this.path = path;
+            this.channel = channel;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.lastModifiedString = createHttpDate().format(
+                    new Date(lastModified));
+            this.etag = new StringBuilder("\"")
+                    .append(Long.toHexString(lastModified)).append("-")
+                    .append(Long.toHexString(length)).append("\"").toString();
+            this.mimeType = mimeType;
+            this.checkTime = checkTime;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getLastModifiedString() {
+            return lastModifiedString;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * 条件付きGETの条件に一致するかチェック.
+         *
+         * @param ifNoneMatch
+         *            If-None-Matchヘッダを設定します.
+         * @param ifModifiedSince
+         *            If-Modified-Sinceヘッダを設定します.
+         * @return boolean [true]の場合、304を返却します.
+         */
+        public boolean isNotModified(String ifNoneMatch, String ifModifiedSince) {
+
+            // If-None-Matchが存在する場合は、If-Modified-Sinceは無視する.
+            if (ifNoneMatch != null) {
+                return "*".equals(ifNoneMatch.trim())
+                        || ifNoneMatch.indexOf(etag) != -1;
+            } else if (ifModifiedSince != null) {
+                if (lastModifiedString.equals(ifModifiedSince)) {
+                    return true;
+                }
+                try {
+                    long t = createHttpDate().parse(ifModifiedSince).getTime();
+                    return (lastModified / 1000L) <= (t / 1000L);
+                } catch (Exception e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 送信用のファイル領域を取得. 取得したファイル領域は、送信完了時に解放されます.
+         *
+         * @return FileRegion ファイル領域が返却されます.
+         */
+        public FileRegion region() {
+            return new FileRegion(channel, 0L, length) {
+                public void release() {
+                    if (channel != null) {
+                        channel = null;
+                        Entry.this.release();
+                    }
+                }
+            };
+        }
+
+        /** 利用開始. **/
+        private final boolean acquire() {
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                refs++;
+                return true;
+            }
+        }
+
+        /** 利用終了. **/
+        public void release() {
+            synchronized (this) {
+                if (--refs > 0 || !closed) {
+                    return;
+                }
+            }
+            closeChannel();
+        }
+
+        /** クローズ. 利用中の場合は、利用終了時にクローズします. **/
+        private final void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (refs > 0) {
+                    return;
+                }
+            }
+            closeChannel();
+        }
+
+        /** FileChannelクローズ. **/
+        private final void closeChannel() {
+            FileChannel ch;
+            synchronized (this) {
+                ch = channel;
+                channel = null;
+            }
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+    }
+
+    /** LRUキャッシュ. **/
+    private final LruCache<String, Entry> cache;
+
+    /** ファイル情報再チェック間隔. **/
+    private final int checkInterval;
+
+    /** MimeType. **/
+    private final MimeType mime;
+
+    /**
+     * コンストラクタ.
+     *
+     * @param size
+     *            オープン済みファイルの最大キャッシュ数を設定します.
+     * @param checkInterval
+     *            ファイル情報の再チェック間隔(ミリ秒)を設定します.
+     * @param mime
+     *            MimeTypeを設定します.
+     */
+    public StaticFileCache(int size, int checkInterval, MimeType mime) {
+        this.cache = new LruCache<String, Entry>(size <= 0 ? 1 : size) {
+            protected void maxDataByRemove(String key, Entry value) {
+                if (value != null) {
+                    value.close();
+                }
+            }
+        };
+        this.checkInterval = checkInterval;
+        this.mime = mime;
+    }
+
+    /**
+     * 静的ファイル要素を取得. 取得した要素は、利用後にEntry.releaseを呼び出す必要があります.
+     *
+     * @param path
+     *            対象のファイルパスを設定します.
+     * @return Entry 静的ファイル要素が返却されます. [null]の場合はファイルが存在しません.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public Entry get(String path) throws IOException {
+        final long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Entry ret = cache.get(path);
+            if (ret != null && now < ret.checkTime && ret.acquire()) {
+                return ret;
+            }
+
+            // ファイル情報をチェック.
+            File f = new File(path);
+            if (!f.isFile() || !f.canRead()) {
+                if (ret != null) {
+                    remove(path, ret);
+                }
+                return null;
+            }
+            long len = f.length();
+            long time = f.lastModified();
+            if (ret != null) {
+                if (ret.length == len && ret.lastModified == time
+                        && ret.acquire()) {
+                    ret.checkTime = now + checkInterval;
+                    return ret;
+                }
+                remove(path, ret);
+            }
+
+            // 新しくファイルをオープン.
+            ret = new Entry(path, new RandomAccessFile(f, "r").getChannel(),
+                    len, time, mime.get(path), now + checkInterval);
+            ret.acquire();
+            cache.put(path, ret);
+            return ret;
+        }
+    }
+
+    /**
+     * 指定MimeTypeがCharsetを付加する必要があるかチェック.
+     *
+     * @param mimeType
+     *            対象のMimeTypeを設定します.
+     * @return boolean [true]の場合、charsetの設定は必要です.
+     */
+    public boolean isCharset(String mimeType) {
+        return mime.isCharset(mimeType);
+    }
+
+    /** キャッシュから削除. **/
+    private final void remove(String path, Entry e) {
+        e.close();
+        cache.put(path, null);
+    }
+
+    /** Http日付フォーマットを生成. **/
+    private static final SimpleDateFormat createHttpDate() {
+        SimpleDateFormat ret = new SimpleDateFormat(HTTP_DATE_FORMAT,
+                Locale.US);
+        ret.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return ret;
+    }
+}
@@ -0,0 +1,363 @@
+package origin.script;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import origin.db.core.DbFactory;
+import origin.net.http.HttpStatus;
+import origin.pref.Def;
+import origin.util.atomic.AtomicNumber;
+import origin.util.atomic.AtomicNumber32;
+
+/**
+ * ワーカースレッド振り分け処理.
+ *
+ * workerModeが[virtual]の場合は、ワーカースレッドの代わりにリクエスト毎のタスクを
+ * 仮想スレッド(利用できない場合はスレッドプール)で実行します.
+ *
+ * 新しいリクエストは、待ち行列が最も少ないワーカースレッドに割り当て、
+ * リクエストの送信完了(KeepAliveのリセット)まで、同じワーカースレッドで処理します.
+ * 全てのワーカースレッドの待ち行列が上限に達している場合、または待ち時間が
+ * 上限を超えた場合は、生成済みの503レスポンスを返却して切断します.
+ */
+public final class WorkerDispatcher {
+    private static final Log LOG = LogFactory.getLog(WorkerDispatcher.class);
+
+    /** 503レスポンス. **/
+    private static final byte[] SHED_RESPONSE;
+
+    /** ワーカーモード. **/
+    public static final String MODE_THREAD = "thread";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private final ScriptWorkerThread[] worker;
+    private final ScriptTaskExecutor executor;
+    private final int queueSize;
+    private final AtomicNumber32 counter = new AtomicNumber32(0);
+    private final AtomicNumber dispatchCount = new AtomicNumber(0L);
+    private final AtomicNumber shedCount = new AtomicNumber(0L);
+
+    /**
+     * コンストラクタ.
+     *
+     * @param dbFactory
+     *            DBファクトリオブジェクトを設定します.
+     * @param compileManager
+     *            コンパイルマネージャを設定します.
+     * @param memory
+     *            共有メモリを設定します.
+     * @param staticFiles
+     *            静的ファイルキャッシュを設定します.
+     * @param info
+     *            Http設定を設定します.
+     * @param metrics
+     *            リクエスト処理のレイテンシを設定します.
+     */
+    public WorkerDispatcher(DbFactory dbFactory, CompileManager compileManager,
+            Map<String,Object> memory, StaticFileCache staticFiles,
+            HttpInfo info, RequestMetrics metrics) {
+        this.queueSize = info.getWorkerQueueSize();
+
+        // タスク実行モード.
+        if (MODE_VIRTUAL.equals(info.getWorkerMode())) {
+            this.worker = new ScriptWorkerThread[0];
+            this.executor = new ScriptTaskExecutor(dbFactory, compileManager,
+                    memory, staticFiles, info, metrics);
+            return;
+        }
+        int len = info.getWorkerThread();
+        ScriptWorkerThread[] w = new ScriptWorkerThread[len];
+        for (int i = 0; i < len; i++) {
+            w[i] = new ScriptWorkerThread(dbFactory, compileManager, memory,
+                    staticFiles, info, metrics, this, i);
+        }
+        this.worker = w;
+        this.executor = null;
+    }
+
+    /**
+     * ワーカースレッドを開始.
+     */
+    public void startThread() {
+        // タスク実行モードでは、リクエスト毎に実行するので処理なし.
+        for (int i = 0; i < worker.length; i++) {
+            worker[i].startThread();
+        }
+    }
+
+    /**
+     * ワーカースレッドを停止して、全て終了するまで待機.
+     */
+    public void stopThread() {
+        if (executor != null) {
+            executor.stop();
+            return;
+        }
+        ScriptWorkerThread[] w = worker;
+        int len = w.length;
+        for (int i = 0; i < len; i++) {
+            w[i].stopThread();
+        }
+        boolean allEndFlag = false;
+        while (!allEndFlag) {
+            allEndFlag = true;
+            for (int i = 0; i < len; i++) {
+                if (!w[i].isEndThread()) {
+                    allEndFlag = false;
+                    break;
+                }
+            }
+            if (!allEndFlag) {
+                try {
+                    Thread.sleep(5);
+                } catch (Exception e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 要素をワーカースレッドに登録.
+     *
+     * @param em
+     *            対象の要素を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    public void register(HttpElement em) throws IOException {
+
+        // タスク実行モードの場合.
+        if (executor != null) {
+            if (executor.register(em)) {
+                dispatchCount.inc();
+            } else if (!em.isEndSend()) {
+                shed(em);
+                shedCount.inc();
+            }
+            return;
+        }
+
+        // 既にワーカースレッドの待ち行列に存在する場合.
+        if (em.queued.put(1) != 0) {
+            return;
+        }
+
+        // 処理中のリクエストは、割り当て済みのワーカースレッドで処理.
+        int no = em.getWorkerNo();
+        if (no != -1) {
+            worker[no].register(em);
+            return;
+        }
+
+        // 503を返却済みの場合は、以降の受信データは処理しない.
+        if (em.isEndSend()) {
+            em.queued.set(0);
+            return;
+        }
+
+        // 待ち行列が最も少ないワーカースレッドに割り当てる.
+        // 同数の場合に偏らないように、検索開始位置をずらす.
+        ScriptWorkerThread[] w = worker;
+        int len = w.length;
+        int off = (counter.inc() & 0x7fffffff) % len;
+        int min = Integer.MAX_VALUE;
+        int load;
+        for (int i = 0, n = off; i < len; i++, n++) {
+            if (n == len) {
+                n = 0;
+            }
+            if ((load = w[n].getLoad()) < min) {
+                min = load;
+                no = n;
+                if (load == 0) {
+                    break;
+                }
+            }
+        }
+
+        // 全ての待ち行列が上限に達している場合.
+        if (queueSize > 0 && min > queueSize) {
+            em.queued.set(0);
+            shed(em);
+            shedCount.inc();
+            return;
+        }
+        dispatchCount.inc();
+        em.dispatchTime = System.nanoTime();
+        w[no].register(em);
+    }
+
+    /**
+     * 503レスポンスを返却して、送信後に切断.
+     *
+     * @param em
+     *            対象の要素を設定します.
+     * @exception IOException
+     *                I/O例外.
+     */
+    static final void shed(HttpElement em) throws IOException {
+        synchronized (em) {
+            em.setRequest(null);
+            em.setEndReceive(true);
+            em.setEndSend(true);
+            em.setKeepAlive(false);
+        }
+        em.getSendData().set(SHED_RESPONSE);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(" shed Http request");
+        }
+    }
+
+    /**
+     * ワーカーモードを取得.
+     *
+     * @return String [thread]、[virtual]、仮想スレッドが利用できない
+     *         タスク実行モードの場合は[pool]が返却されます.
+     */
+    public String getMode() {
+        if (executor == null) {
+            return MODE_THREAD;
+        }
+        return executor.isVirtual() ? MODE_VIRTUAL : "pool";
+    }
+
+    /**
+     * ワーカースレッド数を取得.
+     *
+     * @return int ワーカースレッド数(タスク実行モードの場合は最大同時実行数)が
+     *         返却されます.
+     */
+    public int getWorkerLength() {
+        return executor != null ? executor.getMaxConcurrent() : worker.length;
+    }
+
+    /**
+     * 実行中のタスク数を取得.
+     *
+     * @return int 実行中のタスク数が返却されます. ワーカースレッドモードの
+     *         場合は[-1]が返却されます.
+     */
+    public int getActiveCount() {
+        return executor != null ? executor.getActiveCount() : -1;
+    }
+
+    /**
+     * 待ち行列の合計数を取得.
+     *
+     * @return int 待ち行列の合計数が返却されます.
+     */
+    public int getQueueSize() {
+        if (executor != null) {
+            return executor.getQueueSize();
+        }
+        int ret = 0;
+        for (int i = 0; i < worker.length; i++) {
+            ret += worker[i].getQueueSize();
+        }
+        return ret;
+    }
+
+    /**
+     * ワーカースレッド毎の待ち行列数を取得.
+     *
+     * @param no
+     *            ワーカースレッド番号を設定します.
+     * @return int 待ち行列数が返却されます.
+     */
+    public int getQueueSize(int no) {
+        return worker[no].getQueueSize();
+    }
+
+    /**
+     * 振り分けたリクエスト数を取得.
+     *
+     * @return long 振り分けたリクエスト数が返却されます.
+     */
+    public long getDispatchCount() {
+        return dispatchCount.get();
+    }
+
+    /**
+     * 503を返却したリクエスト数を取得.
+     *
+     * @return long 503を返却したリクエスト数が返却されます.
+     */
+    public long getShedCount() {
+        long ret = shedCount.get();
+        if (executor != null) {
+            ret += executor.getShedCount();
+        }
+        for (int i = 0; i < worker.length; i++) {
+            ret += worker[i].getShedCount();
+        }
+        return ret;
+    }
+
+    /**
+     * 待ち時間を計測したリクエスト数を取得.
+     *
+     * @return long リクエスト数が返却されます.
+     */
+    public long getWaitCount() {
+        long ret = executor != null ? executor.getWaitCount() : 0L;
+        for (int i = 0; i < worker.length; i++) {
+            ret += worker[i].getWaitCount();
+        }
+        return ret;
+    }
+
+    /**
+     * 待ち時間の合計を取得.
+     *
+     * @return long 待ち時間の合計(マイクロ秒)が返却されます.
+     */
+    public long getTotalWaitTime() {
+        long ret = executor != null ? executor.getTotalWaitTime() : 0L;
+        for (int i = 0; i < worker.length; i++) {
+            ret += worker[i].getTotalWaitTime();
+        }
+        return ret / 1000L;
+    }
+
+    /**
+     * 最大待ち時間を取得.
+     *
+     * @return long 最大待ち時間(マイクロ秒)が返却されます.
+     */
+    public long getMaxWaitTime() {
+        long ret = executor != null ? executor.getMaxWaitTime() : 0L;
+        long n;
+        for (int i = 0; i < worker.length; i++) {
+            if ((n = worker[i].getMaxWaitTime()) > ret) {
+                ret = n;
+            }
+        }
+        return ret / 1000L;
+    }
+
+    static {
+        byte[] b;
+        try {
+            String body = "{\"result\": false, \"status\": 503, \"message\": \""
+                    + HttpStatus.getMessage(503) + "\"}";
+            byte[] bb = body.getBytes("UTF8");
+            byte[] h = ("HTTP/1.1 503 " + HttpStatus.getMessage(503) + "\r\n"
+                    + "Retry-After: 1\r\n"
+                    + "Cache-Control: no-cache\r\n"
+                    + "Server: " + Def.SERVER_NAME + "\r\n"
+                    + "Connection: close\r\n"
+                    + "Content-Type: application/json; charset=UTF-8\r\n"
+                    + "Content-Length: " + bb.length + "\r\n\r\n")
+                    .getBytes("UTF8");
+            b = new byte[h.length + bb.length];
+            System.arraycopy(h, 0, b, 0, h.length);
+            System.arraycopy(bb, 0, b, h.length, bb.length);
+        } catch (Exception e) {
+            b = null;
+        }
+        SHED_RESPONSE = b;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import javax.script.Bindings;
+import javax.script.ScriptContext;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -12,11 +13,12 @@ import origin.Origin;
 import origin.pref.Mode;
 
 import origin.script.OriginComponent;
+import origin.script.ReuseComponent;
 
 /**
  * コンソール出力.
  */
-public class ConsoleComponent implements OriginComponent {
+public class ConsoleComponent implements OriginComponent, ReuseComponent {
     private static final Log LOG = LogFactory.getLog(Origin.class);
     private Bindings bindings = null;
 
@@ -27,6 +29,19 @@ public class ConsoleComponent implements OriginComponent {
         bindings = b;
     }
 
+    /**
+     * 実行前のリセット処理.
+     * 
+     * @param context
+     *            対象のScriptContextを設定します.
+     * @param b
+     *            対象のBindingsを設定します.
+     */
+    @Override
+    public void reset(ScriptContext context, Bindings b) {
+        bindings = b;
+    }
+
     /**
      * このオブジェクトの生成に対して、Bindingsを設定する場合は[true].
      * 
@@ -1,6 +1,7 @@
 package origin.script.component;
 
 import javax.script.Bindings;
+import javax.script.ScriptContext;
 
 import origin.net.http.HttpRequest;
 import origin.net.http.HttpStatus;
@@ -9,11 +10,12 @@ import origin.script.HttpRedirectException;
 import origin.util.Utils;
 
 import origin.script.OriginComponent;
+import origin.script.ReuseComponent;
 
 /**
  * Httpコンポーネント.
  */
-public class HttpComponent implements OriginComponent {
+public class HttpComponent implements OriginComponent, ReuseComponent {
     private Bindings bindings;
 
     public HttpComponent() {
@@ -23,6 +25,19 @@ public class HttpComponent implements OriginComponent {
         bindings = b;
     }
 
+    /**
+     * 実行前のリセット処理.
+     * 
+     * @param context
+     *            対象のScriptContextを設定します.
+     * @param b
+     *            対象のBindingsを設定します.
+     */
+    @Override
+    public void reset(ScriptContext context, Bindings b) {
+        bindings = b;
+    }
+
     /**
      * このオブジェクトの生成に対して、Bindingsを設定する場合は[true].
      * 
@@ -1,8 +1,13 @@
 package origin.script.component;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.script.Bindings;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
 
 import origin.script.CompileElement;
 import origin.script.CompileManager;
@@ -11,23 +16,91 @@ import origin.util.Utils;
 
 import origin.script.JsFunction;
 import origin.script.OriginComponent;
+import origin.script.ReuseComponent;
 
 /**
  * Require命令.
+ *
+ * モジュールキャッシュが有効な場合は、モジュールをリクエストのglobalではなく、
+ * モジュール専用のglobalで実行します. リクエストのglobalはリクエスト毎に
+ * 作成されるので、リクエストでのglobalや組み込みオブジェクトの変更は、
+ * 他のリクエストに影響しません. モジュール専用のglobalで見つからない名前は、
+ * 実行中のリクエストのBindings(params、request、dbなど)から取得します.
  */
-public class RequireFunction extends JsFunction implements OriginComponent {
+public class RequireFunction extends JsFunction implements OriginComponent,
+        ReuseComponent {
     private ScriptContext ctx;
     private ScriptEngine engine;
     private CompileManager man;
 
+    /** モジュールキャッシュ. 無効の場合は[null]. **/
+    private Map<String, Module> modules;
+
+    /** モジュール実行用のScriptContext. **/
+    private SimpleScriptContext moduleContext;
+
+    /** モジュール要素. **/
+    private static final class Module {
+        final CompileElement element;
+        final Object exports;
+
+        Module(CompileElement element, Object exports) {
+            this.element = element;
+            this.exports = exports;
+        }
+    }
+
     public RequireFunction() {
     }
 
     public RequireFunction(ScriptContext ctx, ScriptEngine engine,
             CompileManager man) {
+        this(ctx, engine, man, false);
+    }
+
+    /**
+     * コンストラクタ.
+     * 
+     * @param ctx
+     *            対象のScriptContextを設定します.
+     * @param engine
+     *            スクリプトエンジンを設定します.
+     * @param man
+     *            コンパイルマネージャを設定します.
+     * @param moduleCache
+     *            [true]の場合、モジュールを1度だけ実行して、exportsを再利用します.
+     */
+    public RequireFunction(ScriptContext ctx, ScriptEngine engine,
+            CompileManager man, boolean moduleCache) {
         this.ctx = ctx;
         this.engine = engine;
         this.man = man;
+        this.modules = moduleCache && man != null ? new HashMap<String, Module>()
+                : null;
+        if (modules != null) {
+            moduleContext = new SimpleScriptContext();
+            moduleContext.setBindings(new SimpleBindings(),
+                    ScriptContext.ENGINE_SCOPE);
+            moduleContext.setBindings(
+                    ctx.getBindings(ScriptContext.ENGINE_SCOPE),
+                    ScriptContext.GLOBAL_SCOPE);
+        }
+    }
+
+    /**
+     * 実行前のリセット処理.
+     * 
+     * @param context
+     *            対象のScriptContextを設定します.
+     * @param b
+     *            対象のBindingsを設定します.
+     */
+    @Override
+    public void reset(ScriptContext context, Bindings b) {
+        ctx = context;
+        if (moduleContext != null) {
+            moduleContext.setBindings(b, ScriptContext.GLOBAL_SCOPE);
+        }
     }
 
     /**
@@ -98,8 +171,12 @@ public class RequireFunction extends JsFunction implements OriginComponent {
             Bindings b = ctx.getBindings(ScriptContext.ENGINE_SCOPE);
             b.put(ScriptEngine.FILENAME, file);
 
-            // コンパイルマネージャが存在する場合.
-            if (man != null) {
+            // モジュールキャッシュが有効な場合.
+            if (modules != null) {
+                return module(file);
+
+                // コンパイルマネージャが存在する場合.
+            } else if (man != null) {
                 CompileElement e = man.get(file);
                 e.update();
                 return e.getCompile().eval(ctx);
@@ -113,4 +190,34 @@ public class RequireFunction extends JsFunction implements OriginComponent {
             throw new HttpException(500, e);
         }
     }
+
+    /**
+     * モジュールを取得.
+     * 
+     * 同じコンパイル結果のモジュールは1度だけ実行して、exportsを再利用します.
+     * コンパイルキャッシュが破棄、または再コンパイルされた場合は再実行します.
+     * モジュール内で[module.cache = false]とした場合は、毎回実行します.
+     */
+    private final Object module(String file) throws Exception {
+        CompileElement e = man.getModule(file);
+        Module m = modules.get(file);
+        if (m != null && m.element == e) {
+            return m.exports;
+        }
+        moduleContext.getBindings(ScriptContext.ENGINE_SCOPE).put(
+                ScriptEngine.FILENAME, file);
+        Object ret = e.getCompile().eval(moduleContext);
+        if (!(ret instanceof Map)) {
+            modules.remove(file);
+            return ret;
+        }
+        Map<?, ?> o = (Map<?, ?>) ret;
+        ret = o.get("exports");
+        if (Boolean.FALSE.equals(o.get("cache"))) {
+            modules.remove(file);
+        } else {
+            modules.put(file, new Module(e, ret));
+        }
+        return ret;
+    }
 }
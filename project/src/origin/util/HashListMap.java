@@ -0,0 +1,401 @@
+package origin.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 登録順を保持する文字列Map.
+ *
+ * キーと要素は登録順の配列で保持し、オープンアドレス法のハッシュテーブルで
+ * 配列位置を検索します. ハッシュ値はオブジェクト毎のランダムな係数で
+ * 計算するので、String.hashCode()が衝突するキーを大量に送信されても、
+ * 検索が線形にはなりません.
+ *
+ * リクエストパラメータやヘッダのような、リクエスト毎に作成して破棄する
+ * 用途を想定しているので、削除は配列を詰めてテーブルを作り直します.
+ * 同期化は行いません.
+ *
+ * 継承先では、putLazyで要素を未設定のままキーを登録して、valueで
+ * 最初にアクセスされた時点の要素を返却できます.
+ */
+public class HashListMap extends AbstractMap<String, String>
+        implements ConvertGet<String> {
+    private static final int DEF_LENGTH = 8;
+
+    private final int seed;
+    private String[] keys;
+    private String[] values;
+    private int[] hashes;
+    private int[] table;
+    private int size;
+    private int modCount;
+
+    /**
+     * コンストラクタ.
+     */
+    public HashListMap() {
+        this(DEF_LENGTH);
+    }
+
+    /**
+     * コンストラクタ.
+     *
+     * @param length
+     *            初期の要素数を設定します.
+     */
+    public HashListMap(int length) {
+        int n = DEF_LENGTH;
+        while (n < length) {
+            n <<= 1;
+        }
+        seed = ThreadLocalRandom.current().nextInt();
+        keys = new String[n];
+        values = new String[n];
+        hashes = new int[n];
+        table = new int[n << 1];
+    }
+
+    /** ハッシュ値を計算. 2文字単位でmurmur3のブロック処理を行う. **/
+    private final int hash(String key) {
+        int len = key.length();
+        int h = seed ^ len;
+        int k;
+        int i = 1;
+        for (; i < len; i += 2) {
+            k = key.charAt(i - 1) | (key.charAt(i) << 16);
+            k *= 0xcc9e2d51;
+            k = Integer.rotateLeft(k, 15) * 0x1b873593;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        if ((len & 1) != 0) {
+            k = key.charAt(len - 1) * 0xcc9e2d51;
+            h ^= Integer.rotateLeft(k, 15) * 0x1b873593;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /** 配列位置を検索. 存在しない場合は-1. **/
+    private final int indexOf(String key, int h) {
+        int[] t = table;
+        int mask = t.length - 1;
+        int p = h & mask;
+        int n;
+        while ((n = t[p]) != 0) {
+            if (hashes[--n] == h && key.equals(keys[n])) {
+                return n;
+            }
+            p = (p + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** テーブルに配列位置を登録. **/
+    private static final void link(int[] t, int h, int no) {
+        int mask = t.length - 1;
+        int p = h & mask;
+        while (t[p] != 0) {
+            p = (p + 1) & mask;
+        }
+        t[p] = no + 1;
+    }
+
+    /** 配列とテーブルを拡張. **/
+    private final void grow() {
+        int n = keys.length << 1;
+        String[] k = new String[n];
+        String[] v = new String[n];
+        int[] h = new int[n];
+        System.arraycopy(keys, 0, k, 0, size);
+        System.arraycopy(values, 0, v, 0, size);
+        System.arraycopy(hashes, 0, h, 0, size);
+        keys = k;
+        values = v;
+        hashes = h;
+        table = new int[n << 1];
+        rehash();
+    }
+
+    /** テーブルを作り直す. **/
+    private final void rehash() {
+        int[] t = table;
+        for (int i = 0; i < size; i++) {
+            link(t, hashes[i], i);
+        }
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null || value == null) {
+            return null;
+        }
+        int h = hash(key);
+        int no = indexOf(key, h);
+        if (no != -1) {
+            String ret = value(no);
+            values[no] = value;
+            return ret;
+        }
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = key;
+        values[size] = value;
+        hashes[size] = h;
+        link(table, h, size);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        String k = key.toString();
+        int no = indexOf(k, hash(k));
+        return no == -1 ? null : value(no);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null) {
+            return false;
+        }
+        String k = key.toString();
+        return indexOf(k, hash(k)) != -1;
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        String k = key.toString();
+        int no = indexOf(k, hash(k));
+        if (no == -1) {
+            return null;
+        }
+        return removeAt(no);
+    }
+
+    /** 指定位置を削除して、配列を詰める. **/
+    private final String removeAt(int no) {
+        String ret = value(no);
+        int len = size - no - 1;
+        if (len > 0) {
+            System.arraycopy(keys, no + 1, keys, no, len);
+            System.arraycopy(values, no + 1, values, no, len);
+            System.arraycopy(hashes, no + 1, hashes, no, len);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        Arrays.fill(table, 0);
+        rehash();
+        modCount++;
+        removed(no);
+        return ret;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+            values[i] = null;
+        }
+        Arrays.fill(table, 0);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 登録順のキーを取得.
+     *
+     * @param no
+     *            0からsize()-1までの位置を設定します.
+     * @return String キーが返却されます.
+     */
+    public String getKey(int no) {
+        if (no < 0 || no >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(no));
+        }
+        return keys[no];
+    }
+
+    /**
+     * 登録順の要素を取得.
+     *
+     * @param no
+     *            0からsize()-1までの位置を設定します.
+     * @return String 要素が返却されます.
+     */
+    public String getValue(int no) {
+        if (no < 0 || no >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(no));
+        }
+        return value(no);
+    }
+
+    /**
+     * 要素を未設定のままキーを登録.
+     * 既に登録されている場合は、登録位置はそのままで要素を未設定にします.
+     *
+     * @param key
+     *            対象のキーを設定します.
+     * @return int 登録位置が返却されます.
+     */
+    protected final int putLazy(String key) {
+        int h = hash(key);
+        int no = indexOf(key, h);
+        if (no != -1) {
+            values[no] = null;
+            return no;
+        }
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = key;
+        values[size] = null;
+        hashes[size] = h;
+        link(table, h, size);
+        modCount++;
+        return size++;
+    }
+
+    /**
+     * 要素を取得.
+     * putLazyで登録した要素は[null]が返却されるので、継承先で要素を作成して
+     * setLazyで設定します.
+     *
+     * @param no
+     *            登録位置を設定します.
+     * @return String 要素が返却されます.
+     */
+    protected String value(int no) {
+        return values[no];
+    }
+
+    /**
+     * putLazyで登録した要素を設定.
+     *
+     * @param no
+     *            登録位置を設定します.
+     * @param value
+     *            要素を設定します.
+     */
+    protected final void setLazy(int no, String value) {
+        values[no] = value;
+    }
+
+    /**
+     * 削除後の処理.
+     * 指定位置より後ろの要素は、1つ前に移動しています.
+     *
+     * @param no
+     *            削除した登録位置が設定されます.
+     */
+    protected void removed(int no) {
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                HashListMap.this.clear();
+            }
+        };
+    }
+
+    /** 登録順のイテレータ. **/
+    private final class EntryIterator
+            implements Iterator<Map.Entry<String, String>> {
+        private int next = 0;
+        private int last = -1;
+        private int expected = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (expected != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new AbstractMap.SimpleImmutableEntry<String, String>(
+                    keys[last], value(last));
+        }
+
+        @Override
+        public void remove() {
+            if (last == -1) {
+                throw new IllegalStateException();
+            }
+            if (expected != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expected = modCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i != 0) {
+                buf.append(",");
+            }
+            buf.append("\"").append(keys[i]).append("\": \"")
+                    .append(value(i)).append("\"");
+        }
+        return buf.append("}").toString();
+    }
+
+    // original 取得.
+    @Override
+    public Object getOriginal(String n) {
+        return get(n);
+    }
+}
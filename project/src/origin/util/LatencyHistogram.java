@@ -0,0 +1,154 @@
+package origin.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * レイテンシヒストグラム.
+ *
+ * HdrHistogramと同様に、値を2のべき乗毎のバケットと、バケット内を等分割した
+ * サブバケットで管理します. 記録はロックフリーのO(1)で、相対誤差は約3%です.
+ * 値の単位は呼び出し元で統一してください(通常はマイクロ秒).
+ */
+public final class LatencyHistogram {
+
+    /** サブバケット数(2のSUB_BITS乗). **/
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+
+    /** 最大シフト数. これを超える値は最大値として扱います. **/
+    private static final int MAX_SHIFT = 30;
+
+    /** カウンタ配列長. **/
+    private static final int LENGTH = (MAX_SHIFT + 2) * SUB;
+
+    /** 記録可能な最大値. **/
+    public static final long MAX_VALUE = ((long) SUB << (MAX_SHIFT + 1)) - 1L;
+
+    /** 統計情報の位置. **/
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int MAX = 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+    private final AtomicLongArray stats = new AtomicLongArray(3);
+
+    /**
+     * 値を記録.
+     *
+     * @param value
+     *            記録する値を設定します.
+     */
+    public void record(long value) {
+        if (value < 0L) {
+            value = 0L;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        counts.incrementAndGet(index(value));
+        stats.incrementAndGet(COUNT);
+        stats.addAndGet(SUM, value);
+        long m;
+        while ((m = stats.get(MAX)) < value) {
+            if (stats.compareAndSet(MAX, m, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 他のヒストグラムの内容を加算. 読み込み時のマージに利用します.
+     *
+     * @param h
+     *            加算するヒストグラムを設定します.
+     */
+    public void add(LatencyHistogram h) {
+        long n;
+        for (int i = 0; i < LENGTH; i++) {
+            if ((n = h.counts.get(i)) != 0L) {
+                counts.addAndGet(i, n);
+            }
+        }
+        stats.addAndGet(COUNT, h.stats.get(COUNT));
+        stats.addAndGet(SUM, h.stats.get(SUM));
+        if ((n = h.stats.get(MAX)) > stats.get(MAX)) {
+            stats.set(MAX, n);
+        }
+    }
+
+    /**
+     * 記録数を取得.
+     *
+     * @return long 記録数が返却されます.
+     */
+    public long getCount() {
+        return stats.get(COUNT);
+    }
+
+    /**
+     * 最大値を取得.
+     *
+     * @return long 最大値が返却されます.
+     */
+    public long getMax() {
+        return stats.get(MAX);
+    }
+
+    /**
+     * 平均値を取得.
+     *
+     * @return double 平均値が返却されます.
+     */
+    public double getMean() {
+        long c = stats.get(COUNT);
+        return c == 0L ? 0d : (double) stats.get(SUM) / c;
+    }
+
+    /**
+     * パーセンタイル値を取得.
+     *
+     * @param percentile
+     *            パーセンタイル(0.0 - 100.0)を設定します.
+     * @return long 対象のパーセンタイル値(バケット内の最大値)が返却されます.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0L;
+        long[] c = new long[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            total += (c[i] = counts.get(i));
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+        long target = (long) Math.ceil(total
+                * (Math.min(100d, Math.max(0d, percentile)) / 100d));
+        if (target < 1L) {
+            target = 1L;
+        }
+        long n = 0L;
+        for (int i = 0; i < LENGTH; i++) {
+            if ((n += c[i]) >= target) {
+                return Math.min(highestValue(i), stats.get(MAX));
+            }
+        }
+        return stats.get(MAX);
+    }
+
+    /** 値のインデックスを取得. **/
+    private static final int index(long v) {
+        if (v < (SUB << 1)) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) (v >>> shift) - SUB;
+    }
+
+    /** インデックスが表す範囲の最大値を取得. **/
+    private static final long highestValue(int index) {
+        if (index < (SUB << 1)) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        long low = (long) ((index & (SUB - 1)) + SUB) << shift;
+        return low + (1L << shift) - 1L;
+    }
+}
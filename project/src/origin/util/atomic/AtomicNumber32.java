@@ -88,6 +88,34 @@ public class AtomicNumber32 {
         return r;
     }
 
+    /**
+     * 指定ビットを立てて前回の値を取得.
+     * 
+     * @param bit
+     *            対象のビットを設定します.
+     * @return int 前回の値が返却されます.
+     */
+    public int or(int bit) {
+        int ret;
+        while (!ato.compareAndSet((ret = ato.get()), ret | bit))
+            ;
+        return ret;
+    }
+
+    /**
+     * 指定ビット以外を落として前回の値を取得.
+     * 
+     * @param bit
+     *            残すビットを設定します.
+     * @return int 前回の値が返却されます.
+     */
+    public int and(int bit) {
+        int ret;
+        while (!ato.compareAndSet((ret = ato.get()), ret & bit))
+            ;
+        return ret;
+    }
+
     /**
      * 1インクリメント.
      * 